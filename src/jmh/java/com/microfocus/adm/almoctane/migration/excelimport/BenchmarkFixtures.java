@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates small in-memory excel sheets in the importer format, used as input by the benchmarks. The content is
+ * random but reproducible, with the texts of {@link WorkbookGenerator}, which writes the large sheets of the scale
+ * tests.
+ */
+final class BenchmarkFixtures {
+    static final String STRING_UDF = "automation_notes_udf";
+    static final String LONG_UDF = "priority_level_udf";
+    static final String BOOLEAN_UDF = "reviewed_udf";
+    static final String DATE_UDF = "review_date_udf";
+    static final String FLOAT_UDF = "weight_udf";
+
+    private static final List<String> HEADER = new ArrayList<>(MandatoryFields.getMandatoryFieldsList());
+
+    static {
+        HEADER.addAll(Arrays.asList(STRING_UDF, LONG_UDF, BOOLEAN_UDF, DATE_UDF, FLOAT_UDF));
+    }
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * @return - The definitions of the UDF columns of the generated sheets.
+     */
+    static List<FieldDefinition> udfDefinitions() {
+        return Arrays.asList(
+                new FieldDefinition(STRING_UDF, FieldDefinition.FieldType.STRING, null, null, false, true),
+                new FieldDefinition(LONG_UDF, FieldDefinition.FieldType.LONG, null, null, false, true),
+                new FieldDefinition(BOOLEAN_UDF, FieldDefinition.FieldType.BOOLEAN, null, null, false, true),
+                new FieldDefinition(DATE_UDF, FieldDefinition.FieldType.DATE, null, null, false, true),
+                new FieldDefinition(FLOAT_UDF, FieldDefinition.FieldType.FLOAT, null, null, false, true));
+    }
+
+    /**
+     * Creates a sheet with a header and the given number of tests, each followed by its steps.
+     *
+     * @param tests        - The number of tests.
+     * @param stepsPerTest - The number of steps of every test.
+     * @return - The workbook containing the sheet.
+     */
+    static XSSFWorkbook createWorkbook(int tests, int stepsPerTest) {
+        Random random = new Random(42);
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        XSSFSheet sheet = workbook.createSheet();
+
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < HEADER.size(); i++) {
+            header.createCell(i).setCellValue(HEADER.get(i));
+        }
+
+        int rowIndex = 1;
+        for (int test = 0; test < tests; test++) {
+            String testId = "T" + test;
+            Row row = sheet.createRow(rowIndex++);
+            set(row, MandatoryFields.UNIQUE_ID.fieldName(), testId);
+            set(row, MandatoryFields.TYPE.fieldName(), "test_manual");
+            set(row, MandatoryFields.NAME.fieldName(), "Test " + test + " " + text(random, 6));
+            set(row, MandatoryFields.DESCRIPTION.fieldName(), "<p>" + text(random, 40) + "</p>");
+            set(row, MandatoryFields.PHASE.fieldName(), "New");
+            set(row, MandatoryFields.OWNER.fieldName(), "owner" + (test % 20) + "@example.com");
+            set(row, MandatoryFields.DESIGNER.fieldName(), "designer" + (test % 20) + "@example.com");
+            set(row, MandatoryFields.USER_TAG.fieldName(), "regression,area" + (test % 10));
+            set(row, MandatoryFields.TEST_TYPE.fieldName(), "End to End");
+            set(row, MandatoryFields.PRODUCT_AREAS.fieldName(), "Area " + (test % 50));
+            set(row, MandatoryFields.ESTIMATED_DURATION.fieldName(), Integer.toString(5 + test % 60));
+            set(row, STRING_UDF, text(random, 12));
+            set(row, LONG_UDF, Integer.toString(test % 5));
+            set(row, BOOLEAN_UDF, test % 2 == 0 ? "true" : "false");
+            set(row, DATE_UDF, String.format("%02d-03-2019 10:15:00 UTC", 1 + test % 28));
+            set(row, FLOAT_UDF, (test % 100) / 10.0 + "");
+
+            for (int step = 0; step < stepsPerTest; step++) {
+                Row stepRow = sheet.createRow(rowIndex++);
+                set(stepRow, MandatoryFields.UNIQUE_ID.fieldName(), testId + "-" + step);
+                set(stepRow, MandatoryFields.TYPE.fieldName(), "step");
+                if (step > 0 && step % 25 == 0 && test > 0) {
+                    set(stepRow, MandatoryFields.STEP_TYPE.fieldName(), EntityModelHelper.StepTypes.CALL.stepTypeName());
+                    set(stepRow, MandatoryFields.STEP_DESCRIPTION.fieldName(), "T" + (test - 1));
+                } else {
+                    set(stepRow, MandatoryFields.STEP_TYPE.fieldName(), step % 3 == 2
+                            ? EntityModelHelper.StepTypes.VALIDATION.stepTypeName()
+                            : EntityModelHelper.StepTypes.SIMPLE.stepTypeName());
+                    set(stepRow, MandatoryFields.STEP_DESCRIPTION.fieldName(), text(random, 10 + random.nextInt(40)));
+                }
+            }
+        }
+
+        return workbook;
+    }
+
+    /**
+     * @param random - The random generator.
+     * @param words  - The number of words.
+     * @return - A text with the given number of words and, from time to time, line breaks.
+     */
+    static String text(Random random, int words) {
+        return WorkbookGenerator.text(random, words);
+    }
+
+    private static void set(Row row, String column, String value) {
+        row.createCell(HEADER.indexOf(column)).setCellValue(value);
+    }
+}
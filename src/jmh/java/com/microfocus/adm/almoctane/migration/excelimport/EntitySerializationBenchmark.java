@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.model.EntityModel;
+import com.hpe.adm.nga.sdk.model.ModelParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a manual test entity and serializing it as the body of the create request, with the importer
+ * JSON writer and with the SDK model parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EntitySerializationBenchmark {
+    private String name;
+    private String description;
+    private EntityModel owner;
+    private EntityModel phase;
+    private EntityModel testType;
+    private EntityModel productArea;
+    private EntityModel userTag;
+    private EntityModel manualTest;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        name = "Test " + BenchmarkFixtures.text(random, 6);
+        description = "<p>" + BenchmarkFixtures.text(random, 40) + "</p>";
+        owner = EntityReference.of("workspace_user", "1001", "owner@example.com");
+        phase = EntityReference.of("phase", "1002", "New");
+        testType = EntityReference.of("list_node", "1003", "End to End");
+        productArea = EntityReference.of("product_area", "1004", "Area 1");
+        userTag = EntityReference.of("user_tag", "1005", "regression");
+        manualTest = build();
+    }
+
+    @Benchmark
+    public EntityModel build() {
+        return new EntityModelBuilder()
+                .name(name)
+                .description(description)
+                .productAreas(Collections.singletonList(productArea))
+                .owner(owner)
+                .designer(owner)
+                .phase(phase)
+                .estimatedDuration(30L)
+                .testType(Collections.singletonList(testType))
+                .userTags(Arrays.asList(userTag, userTag))
+                .build();
+    }
+
+    @Benchmark
+    public String serializeWithEntityJsonWriter() {
+        return EntityJsonWriter.toCreateRequestJson(Collections.singletonList(manualTest));
+    }
+
+    @Benchmark
+    public String serializeWithModelParser() {
+        return ModelParser.getInstance().getEntityJSONObject(manualTest).toString();
+    }
+}
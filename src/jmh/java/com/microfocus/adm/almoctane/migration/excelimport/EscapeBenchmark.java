@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JSON escaping of step descriptions of different sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EscapeBenchmark {
+    @Param({"10", "100", "2000"})
+    public int words;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = BenchmarkFixtures.text(new Random(42), words);
+    }
+
+    @Benchmark
+    public String escapeMetaCharacters() {
+        return StringUtils.escapeMetaCharacters(text);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the initialization done once for the header of the sheet: the indexes of the mandatory columns and the
+ * UDF conversion plan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HeaderInitBenchmark {
+    private Row header;
+    private UDFHandler udfHandler;
+
+    @Setup
+    public void setUp() {
+        XSSFWorkbook workbook = BenchmarkFixtures.createWorkbook(1, 1);
+        header = workbook.getSheetAt(0).getRow(0);
+        udfHandler = new UDFHandler(ImportTracer.disabled());
+        udfHandler.initFieldDefinitions(BenchmarkFixtures.udfDefinitions());
+    }
+
+    @Benchmark
+    public Map<String, Integer> initMandatoryColumns() {
+        return ExcelImportRow.initRowIndices(header);
+    }
+
+    @Benchmark
+    public void initUDFConversionPlan() {
+        udfHandler.initRowIndexes(header, null);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the access to the cells of the rows: all the mandatory fields of the tests and the step fields.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RowAccessBenchmark {
+    @Param({"1000"})
+    public int tests;
+
+    @Param({"10"})
+    public int stepsPerTest;
+
+    private List<Row> rows;
+    private Map<String, Integer> columnIndexes;
+
+    @Setup
+    public void setUp() {
+        XSSFWorkbook workbook = BenchmarkFixtures.createWorkbook(tests, stepsPerTest);
+        columnIndexes = ExcelImportRow.initRowIndices(workbook.getSheetAt(0).getRow(0));
+
+        rows = new ArrayList<>();
+        workbook.getSheetAt(0).forEach(rows::add);
+        rows.remove(0);
+    }
+
+    @Benchmark
+    public void readAllFields(Blackhole blackhole) {
+        for (Row row : rows) {
+            ExcelImportRow excelImportRow = new ExcelImportRow(row, columnIndexes);
+            if (excelImportRow.isManualTestRootRow()) {
+                blackhole.consume(excelImportRow.getUniqueId());
+                blackhole.consume(excelImportRow.getName());
+                blackhole.consume(excelImportRow.getDescription());
+                blackhole.consume(excelImportRow.getPhase());
+                blackhole.consume(excelImportRow.getOwner());
+                blackhole.consume(excelImportRow.getDesigner());
+                blackhole.consume(excelImportRow.getUserTags());
+                blackhole.consume(excelImportRow.getTestType());
+                blackhole.consume(excelImportRow.getApplicationModule());
+                blackhole.consume(excelImportRow.getCoveredContent());
+                blackhole.consume(excelImportRow.getEstimatedDuration());
+            } else {
+                blackhole.consume(excelImportRow.getStepType());
+                blackhole.consume(excelImportRow.getStep());
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the step script of a large test, from the step rows to the encoded request body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StepScriptBenchmark {
+    @Param({"50", "500", "5000"})
+    public int steps;
+
+    private List<ExcelImportRow> stepRows;
+    private Map<String, Integer> columnIndexes;
+    private Map<String, String> migratedTestsIdsMap;
+    private StepScriptBuilder stepScriptBuilder;
+
+    @Setup
+    public void setUp() {
+        XSSFWorkbook workbook = BenchmarkFixtures.createWorkbook(2, steps);
+        columnIndexes = ExcelImportRow.initRowIndices(workbook.getSheetAt(0).getRow(0));
+
+        stepRows = new ArrayList<>();
+        for (Row row : workbook.getSheetAt(0)) {
+            ExcelImportRow excelImportRow = new ExcelImportRow(row, columnIndexes);
+            if (row.getRowNum() > steps + 1 && "step".equals(excelImportRow.getType())) {
+                stepRows.add(excelImportRow);
+            }
+        }
+
+        migratedTestsIdsMap = new HashMap<>();
+        migratedTestsIdsMap.put("T0", "1001");
+        stepScriptBuilder = new StepScriptBuilder();
+    }
+
+    @Benchmark
+    public StepScript buildScript() {
+        for (ExcelImportRow row : stepRows) {
+            ExcelImporter.buildSteps(row, stepScriptBuilder, migratedTestsIdsMap);
+        }
+        return stepScriptBuilder.build();
+    }
+}
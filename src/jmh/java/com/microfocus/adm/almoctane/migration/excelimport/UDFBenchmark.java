@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.model.EntityModel;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of the UDF cells of the tests into field models.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UDFBenchmark {
+    @Param({"1000"})
+    public int tests;
+
+    private List<ExcelImportRow> testRows;
+    private UDFHandler udfHandler;
+
+    @Setup
+    public void setUp() {
+        XSSFWorkbook workbook = BenchmarkFixtures.createWorkbook(tests, 0);
+        Row header = workbook.getSheetAt(0).getRow(0);
+        Map<String, Integer> columnIndexes = ExcelImportRow.initRowIndices(header);
+        udfHandler = new UDFHandler(ImportTracer.disabled());
+        udfHandler.initFieldDefinitions(BenchmarkFixtures.udfDefinitions());
+        udfHandler.initRowIndexes(header, null);
+
+        testRows = new ArrayList<>();
+        for (Row row : workbook.getSheetAt(0)) {
+            if (row.getRowNum() > 0) {
+                testRows.add(new ExcelImportRow(row, columnIndexes));
+            }
+        }
+    }
+
+    @Benchmark
+    public void addUDFs(Blackhole blackhole) {
+        for (ExcelImportRow row : testRows) {
+            EntityModel entityModel = new EntityModel();
+            udfHandler.addUDFsToEntityModel(row, entityModel);
+            blackhole.consume(entityModel);
+        }
+    }
+}
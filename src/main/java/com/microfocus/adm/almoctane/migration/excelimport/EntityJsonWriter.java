@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.model.*;
+import org.json.JSONObject;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class writes entity models as the JSON body of Octane requests.
+ * The references to existing entities ({@link EntityReference}) are written using their cached JSON, so the same
+ * users, phases, list items and user tags are not serialized again for every test.
+ */
+final class EntityJsonWriter {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_INSTANT;
+
+    private EntityJsonWriter() {
+    }
+
+    /**
+     * Creates the body of a request which creates entities (i.e. {"data":[{...},{...}]}).
+     *
+     * @param entityModels - The entities which will be created.
+     * @return - The JSON containing the entities.
+     */
+    static String toCreateRequestJson(Collection<EntityModel> entityModels) {
+        StringBuilder sb = new StringBuilder(512 * entityModels.size());
+
+        sb.append("{\"data\":[");
+        boolean first = true;
+        for (EntityModel entityModel : entityModels) {
+            if (!first) {
+                sb.append(',');
+            }
+            writeEntity(sb, entityModel);
+            first = false;
+        }
+        sb.append("]}");
+
+        return sb.toString();
+    }
+
+    /**
+     * Writes the entity model as a JSON object.
+     *
+     * @param sb          - The string builder where the JSON is written.
+     * @param entityModel - The entity model.
+     */
+    static void writeEntity(StringBuilder sb, EntityModel entityModel) {
+        if (entityModel instanceof EntityReference) {
+            sb.append(((EntityReference) entityModel).toJson());
+            return;
+        }
+
+        sb.append('{');
+        boolean first = true;
+        for (FieldModel fieldModel : entityModel.getValues()) {
+            if (!first) {
+                sb.append(',');
+            }
+            StringUtils.appendJsonString(sb, fieldModel.getName());
+            sb.append(':');
+            writeFieldValue(sb, fieldModel);
+            first = false;
+        }
+        sb.append('}');
+    }
+
+    /**
+     * Writes the value of a field.
+     *
+     * @param sb         - The string builder where the JSON is written.
+     * @param fieldModel - The field.
+     */
+    private static void writeFieldValue(StringBuilder sb, FieldModel fieldModel) {
+        Object value = fieldModel.getValue();
+
+        if (value == null) {
+            sb.append("null");
+        } else if (fieldModel instanceof StringFieldModel) {
+            StringUtils.appendJsonString(sb, (String) value);
+        } else if (fieldModel instanceof LongFieldModel
+                || fieldModel instanceof FloatFieldModel
+                || fieldModel instanceof BooleanFieldModel) {
+            sb.append(value);
+        } else if (fieldModel instanceof DateFieldModel) {
+            StringUtils.appendJsonString(sb,
+                    DATE_FORMATTER.format(((ZonedDateTime) value).withZoneSameInstant(ZoneOffset.UTC)));
+        } else if (fieldModel instanceof ReferenceFieldModel) {
+            writeReference(sb, (EntityModel) value);
+        } else if (fieldModel instanceof MultiReferenceFieldModel) {
+            sb.append("{\"data\":[");
+            boolean first = true;
+            for (Object item : (Collection<?>) value) {
+                if (!first) {
+                    sb.append(',');
+                }
+                writeReference(sb, (EntityModel) item);
+                first = false;
+            }
+            sb.append("]}");
+        } else {
+            writeWithModelParser(sb, fieldModel);
+        }
+    }
+
+    /**
+     * Writes a reference to an entity. Entity models which are not {@link EntityReference}s are reduced to their type and
+     * id when these are known.
+     *
+     * @param sb          - The string builder where the JSON is written.
+     * @param entityModel - The referenced entity.
+     */
+    private static void writeReference(StringBuilder sb, EntityModel entityModel) {
+        if (entityModel == null) {
+            sb.append("null");
+        } else if (entityModel instanceof EntityReference
+                || entityModel.getId() == null
+                || entityModel.getType() == null) {
+            writeEntity(sb, entityModel);
+        } else {
+            sb.append(EntityReference.of(entityModel.getType(), entityModel.getId(), null).toJson());
+        }
+    }
+
+    /**
+     * Writes a field which has a type not known by this writer using the SDK serialization.
+     *
+     * @param sb         - The string builder where the JSON is written.
+     * @param fieldModel - The field.
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeWithModelParser(StringBuilder sb, FieldModel fieldModel) {
+        Set<FieldModel> fields = new HashSet<>(Collections.singletonList(fieldModel));
+        Object json = ModelParser.getInstance().getEntityJSONObject(new EntityModel(fields)).opt(fieldModel.getName());
+
+        sb.append(json == null ? "null" : JSONObject.valueToString(json));
+    }
+}
@@ -29,11 +29,14 @@ class EntityModelHelper {
     static final String RELEASES = "releases";
     static final String FEATURES = "features";
     static final String USER_TAGS = "user_tags";
+    static final String USER_TAG = "user_tag";
+    static final String WORK_ITEM = "work_item";
     static final String USER_STORIES = "stories";
     static final String USERS = "workspace_users";
     static final String LIST_NODES = "list_nodes";
     static final String MANUAL_TESTS = "manual_tests";
     static final String PRODUCT_AREAS = "product_areas";
+    static final String PRODUCT_AREA = "product_area";
     static final String ESTIMATED_DURATION = "estimated_duration";
 
     /**
@@ -93,52 +96,6 @@ class EntityModelHelper {
         }
     }
 
-    /**
-     * Creates a new entity model containing only the basic fields (i.e id, name and type)
-     *
-     * @param entityModel - The fields will be taken from this entity model
-     * @return - A new entity model with the basic fields mentioned above
-     */
-    static EntityModel getEssentialFields(EntityModel entityModel) {
-        return new EntityModelBuilder()
-                .id(entityModel.getId())
-                .name(getName(entityModel))
-                .type(getType(entityModel))
-                .build();
-    }
-
-    /**
-     * Creates a new entity model containing only the basic fields needed to reference a user
-     * (i.e id, name, type and email)
-     *
-     * @param entityModel - The fields will be taken from this entity model
-     * @return - A new entity model with the fields mentioned above
-     */
-    static EntityModel getUserFields(EntityModel entityModel) {
-        return new EntityModelBuilder()
-                .id(entityModel.getId())
-                .name(getName(entityModel))
-                .type(getType(entityModel))
-                .email(getEmail(entityModel))
-                .build();
-    }
-
-    /**
-     * Creates a new entity model containing only the basic fields needed to reference an application module
-     * (i.e id, name, type and parent)
-     *
-     * @param entityModel - The fields will be taken from this entity model
-     * @return - A new entity model with the fields mentioned above
-     */
-    static EntityModel getApplicationModuleFields(EntityModel entityModel) {
-        return new EntityModelBuilder()
-                .id(entityModel.getId())
-                .name(getName(entityModel))
-                .type(getType(entityModel))
-                .parent(getParent(entityModel))
-                .build();
-    }
-
     /**
      * This method creates a map with an entity model string attribute as key and the entity model's necessary fields
      * as value.
@@ -167,6 +124,9 @@ class EntityModelHelper {
      * @return - The name field from the entity model
      */
     public static String getName(EntityModel entityModel) {
+        if (entityModel instanceof EntityReference) {
+            return ((EntityReference) entityModel).getName();
+        }
         return entityModel.getValue(Fields.NAME.field()).getValue().toString();
     }
 
@@ -174,7 +134,10 @@ class EntityModelHelper {
      * @param entityModel - The entity model is used to get the field
      * @return - The type field from the entity model
      */
-    private static String getType(EntityModel entityModel) {
+    static String getType(EntityModel entityModel) {
+        if (entityModel instanceof EntityReference) {
+            return entityModel.getType();
+        }
         return entityModel.getValue(Fields.TYPE.field()).getValue().toString();
     }
 
@@ -186,11 +149,4 @@ class EntityModelHelper {
         return entityModel.getValue(Fields.EMAIL.field()).getValue().toString();
     }
 
-    /**
-     * @param entityModel - The entity model is used to get the field
-     * @return - The parent field from the entity model
-     */
-    private static EntityModel getParent(EntityModel entityModel) {
-        return (EntityModel) entityModel.getValue(Fields.PARENT.field()).getValue();
-    }
 }
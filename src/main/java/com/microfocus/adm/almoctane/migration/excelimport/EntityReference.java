@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.model.EntityModel;
+import com.hpe.adm.nga.sdk.model.StringFieldModel;
+
+/**
+ * This is a lightweight entity model used to reference an existing Octane entity (i.e. users, phases, list items,
+ * user tags, application modules). It contains only the id, the type and, if known, the name of the entity.
+ *
+ * The JSON used to reference the entity in a request body is built only once. The references of a workspace are
+ * interned by its {@link WorkspaceEntities}, so there is only one instance for every entity. The references must not
+ * be modified.
+ */
+final class EntityReference extends EntityModel {
+    private final String id;
+    private final String type;
+    private final String name;
+    private final String json;
+
+    private EntityReference(String type, String id, String name) {
+        this.id = id;
+        this.type = type;
+        this.name = name;
+
+        super.setValue(new StringFieldModel(EntityModelHelper.Fields.ID.field(), id));
+        super.setValue(new StringFieldModel(EntityModelHelper.Fields.TYPE.field(), type));
+        if (name != null) {
+            super.setValue(new StringFieldModel(EntityModelHelper.Fields.NAME.field(), name));
+        }
+
+        StringBuilder sb = new StringBuilder(32 + type.length() + id.length());
+        sb.append("{\"type\":");
+        StringUtils.appendJsonString(sb, type);
+        sb.append(",\"id\":");
+        StringUtils.appendJsonString(sb, id);
+        sb.append('}');
+        this.json = sb.toString();
+    }
+
+    /**
+     * Creates a reference which is not interned. The references used by a migration are returned by
+     * {@link WorkspaceEntities#reference(String, String, String)}.
+     *
+     * @param type - The type of the entity.
+     * @param id   - The id of the entity.
+     * @param name - The name of the entity. It can be null if the name is not needed.
+     * @return - The reference for the entity.
+     */
+    static EntityReference of(String type, String id, String name) {
+        return new EntityReference(type, id, name);
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return - The name of the entity or null if it is not known.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return - The JSON which references the entity in a request body (i.e. {"type":"phase","id":"1001"}).
+     */
+    String toJson() {
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+}
@@ -15,6 +15,7 @@
 package com.microfocus.adm.almoctane.migration.excelimport;
 
 import com.hpe.adm.nga.sdk.model.EntityModel;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,23 +23,27 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 
 /**
- * This class helps extracting the data from the excel sheet.
+ * This class helps extracting the data from the excel sheet. The values are read from the excel row, or from a copy
+ * of its cell values when the row was detached from the sheet (see {@link #detach()}).
  */
 class ExcelImportRow {
     private static final Logger logger = LoggerFactory.getLogger(ExcelImportRow.class);
 
     private final Row row;
-    private static HashMap<String, Integer> columnIndexes;
-    private static final List<String> missingMandatoryFields = MandatoryFields.getMandatoryFieldsList();
+    private final String[] cells;
+    private final int rowNum;
+    private final Map<String, Integer> columnIndexes;
 
     /**
-     * Initializes the columnIndexes map. The map will contain the name of the mandatory fields mapped to their
+     * Creates the columnIndexes map. The map will contain the name of the mandatory fields mapped to their
      * corresponding index in the excel sheet.
      *
      * @param firstRow - The header of the excel sheet
+     * @return - The column indexes of the mandatory fields, which are used to read the rows of the sheet.
      **/
-    public static void initRowIndices(Row firstRow) {
-        columnIndexes = new HashMap<>();
+    public static Map<String, Integer> initRowIndices(Row firstRow) {
+        Map<String, Integer> columnIndexes = new HashMap<>();
+        List<String> missingMandatoryFields = MandatoryFields.getMandatoryFieldsList();
 
         firstRow.forEach(
                 (column) -> {
@@ -52,19 +57,22 @@ class ExcelImportRow {
             throw new RuntimeException(String.format(
                     "There are fields missing!!\n\t\tThe following fields are missing: %s", missingMandatoryFields.toString()));
         }
+
+        return columnIndexes;
     }
 
     /**
      * This method validates the unique id column for duplicate ids.
      *
-     * @param rowIterator - The iterator of the excel sheet.
+     * @param rowIterator   - The iterator of the excel sheet.
+     * @param columnIndexes - The column indexes of the mandatory fields.
      */
-    public static void validateUniqueId(Iterator<Row> rowIterator) {
+    public static void validateUniqueId(Iterator<Row> rowIterator, Map<String, Integer> columnIndexes) {
         ExcelImportRow row = null;
 
         //skip the header
         if (rowIterator.hasNext()) {
-            row = new ExcelImportRow(rowIterator.next());
+            row = new ExcelImportRow(rowIterator.next(), columnIndexes);
         }
 
         Set<String> ids = new HashSet<>();
@@ -73,23 +81,105 @@ class ExcelImportRow {
             if (ids.contains(row.getUniqueId())) {
                 throw new RuntimeException(
                         String.format("The unique_id column is not valid! Row with index %s has unique id %s, which is duplicated.",
-                                row.getRow().getRowNum(), row.getUniqueId()));
+                                row.getRowNum(), row.getUniqueId()));
             }
 
             ids.add(row.getUniqueId());
-            row = new ExcelImportRow(rowIterator.next());
+            row = new ExcelImportRow(rowIterator.next(), columnIndexes);
+        }
+    }
+
+    /**
+     * Counts the manual tests of the sheet. Only the type cell of every row is read.
+     *
+     * @param rowIterator   - The iterator of the excel sheet, positioned after the header.
+     * @param columnIndexes - The column indexes of the mandatory fields.
+     * @return - The number of manual test rows.
+     */
+    public static int countManualTests(Iterator<Row> rowIterator, Map<String, Integer> columnIndexes) {
+        int count = 0;
+        while (rowIterator.hasNext()) {
+            if (new ExcelImportRow(rowIterator.next(), columnIndexes).isManualTestRootRow()) {
+                count++;
+            }
         }
+        return count;
     }
 
-    public ExcelImportRow(Row row) {
+    /**
+     * @param row           - The excel row.
+     * @param columnIndexes - The column indexes of the mandatory fields, created by initRowIndices.
+     */
+    public ExcelImportRow(Row row, Map<String, Integer> columnIndexes) {
         this.row = row;
+        this.cells = null;
+        this.rowNum = row.getRowNum();
+        this.columnIndexes = columnIndexes;
+    }
+
+    private ExcelImportRow(String[] cells, int rowNum, Map<String, Integer> columnIndexes) {
+        this.row = null;
+        this.cells = cells;
+        this.rowNum = rowNum;
+        this.columnIndexes = columnIndexes;
     }
 
     /**
-     * @return - The excel row.
+     * Creates a detached row from the values of its cells, i.e. a row received from the coordinator of a sharded
+     * import.
+     *
+     * @param cells         - The cell values indexed by the column index.
+     * @param rowNum        - The index of the row in the sheet.
+     * @param columnIndexes - The column indexes of the mandatory fields.
+     * @return - The detached row.
      */
-    public Row getRow() {
-        return row;
+    static ExcelImportRow detached(String[] cells, int rowNum, Map<String, Integer> columnIndexes) {
+        return new ExcelImportRow(cells, rowNum, columnIndexes);
+    }
+
+    /**
+     * Reads the values of all the cells of an excel row.
+     *
+     * @param row - The excel row.
+     * @return - The cell values indexed by the column index. The missing cells are null.
+     */
+    static String[] readCells(Row row) {
+        String[] cells = new String[Math.max(0, row.getLastCellNum())];
+        for (Cell cell : row) {
+            cells[cell.getColumnIndex()] = cell.toString();
+        }
+        return cells;
+    }
+
+    /**
+     * Copies the cell values of the row, so they can be read without the excel sheet (i.e. by other threads).
+     *
+     * @return - A row which does not reference the excel sheet.
+     */
+    ExcelImportRow detach() {
+        if (cells != null) {
+            return this;
+        }
+        return new ExcelImportRow(readCells(row), rowNum, columnIndexes);
+    }
+
+    /**
+     * @return - The index of the row in the excel sheet.
+     */
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * @param columnIndex - The index of the column.
+     * @return - The value of the cell on the given column or null if the row has no such cell.
+     */
+    String getCell(int columnIndex) {
+        if (cells != null) {
+            return columnIndex < cells.length ? cells[columnIndex] : null;
+        }
+        Cell cell = row.getCell(columnIndex);
+        return cell != null ? cell.toString() : null;
     }
 
     /**
@@ -176,7 +266,7 @@ class ExcelImportRow {
                 return null;
             } catch (NumberFormatException e) {
                 logger.warn(String.format("Error converting cell value to number! At row unique id: \"%s\", Exception detailed message: \"%s\". The Estimated Duration field will be left blank by default.",
-                        new ExcelImportRow(row).getUniqueId(),
+                        getUniqueId(),
                         e.getMessage()));
                 return null;
             }
@@ -246,11 +336,7 @@ class ExcelImportRow {
      * @return - The value of the cell on the current row and the column with the fieldName column header.
      */
     private String getField(MandatoryFields fieldName) {
-        int index = columnIndexes.get(fieldName.fieldName());
-        if (row.getCell(index) != null) {
-            return row.getCell(index).toString();
-        }
-        return null;
+        return getCell(columnIndexes.get(fieldName.fieldName()));
     }
 
     /**
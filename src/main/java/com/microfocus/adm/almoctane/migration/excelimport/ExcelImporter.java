@@ -19,8 +19,6 @@ import com.hpe.adm.nga.sdk.authentication.Authentication;
 import com.hpe.adm.nga.sdk.exception.OctaneException;
 import com.hpe.adm.nga.sdk.exception.OctanePartialException;
 import com.hpe.adm.nga.sdk.model.EntityModel;
-import com.hpe.adm.nga.sdk.model.StringFieldModel;
-import com.hpe.adm.nga.sdk.network.google.GoogleHttpClient;
 import com.microfocus.adm.almoctane.migration.excelimport.EntityModelHelper.StepTypes;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
@@ -31,10 +29,16 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
 /**
  * This is the class where all the import logic is stored.
@@ -43,9 +47,15 @@ class ExcelImporter {
     private static final Logger logger = LoggerFactory.getLogger(ExcelImporter.class);
 
     private static final String TEST_TYPE = "Test_Type";
+    private static final String CREATE_TEST_STAGE = "create_test";
+    private static final String BUILD_STEPS_STAGE = "build_steps";
+    private static final String PARSE_SHEET_STAGE = "parse_sheet";
+    private static final String VALIDATE_SHEET_STAGE = "validate_sheet";
+    private static final String CREATE_REFERENCES_STAGE = "create_references";
+    private static final int REFERENCE_BATCH_SIZE = 100;
 
-    private static final AtomicInteger initErrors = new AtomicInteger();
-    private static int currentTestSteps;
+    private final AtomicInteger initErrors = new AtomicInteger();
+    private int currentTestSteps;
 
     private final int sharedSpace;
     private final int workspace;
@@ -65,23 +75,53 @@ class ExcelImporter {
 
     private EntityModel defaultTestTypeValue;
     private OctaneRequestHelper requestHelper;
-    private GoogleHttpClient scriptUploadClient;
+    private ImporterHttpClient octaneClient;
+    private ImporterHttpClient scriptUploadClient;
     private EntityModel rootApplicationEntityModel;
 
     private Map<String, EntityModel> testTypeListValues;
     private Map<String, EntityModel> users;
     private Map<String, EntityModel> phases;
-    private Map<String, EntityModel> userTags;
+    private SingleFlightCache<String, EntityModel> userTags;
 
     private final Map<String, String> migratedTestsIdsMap;
 
+    private XSSFWorkbook workbook;
     private XSSFSheet sheet;
-    private Map<String, EntityModel> createdApplicationModules;
+    private ProductAreaTrie productAreas;
+    private WorkspaceEntities entities;
     private ExcelImportRow excelImportRow;
+    private Map<String, Integer> columnIndexes;
+    private final MigrationStatus migrationStatus = new MigrationStatus();
     private final UDFHandler udfHandler;
+    private RequestCompression requestCompression;
+    private final Path metricsDirectory;
+    private final int progressIntervalSeconds;
+    private final Path traceFile;
+    private final ImportTracer tracer;
+    private final Path recordTrafficFile;
+    private final Path replayTrafficFile;
+    private final double replayLatencyScale;
+    private final RequestScheduler.Tenant requestTenant;
+    private TrafficCassette trafficCassette;
+    private Map<String, Deque<TrafficCassette.Exchange>> replayedExchanges;
+    private ShardClient shardClient;
 
-    private static final ExecutorService executorService =
-            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() - 1);
+    /**
+     * The step uploads of all the migrations which run in the JVM share this executor. It is never shut down, its
+     * threads are daemon threads.
+     */
+    private static final ThreadPoolExecutor executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "step-upload-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
 
     public ExcelImporter(
             final String server,
@@ -89,6 +129,42 @@ class ExcelImporter {
             final int workspace,
             final File migrationFile,
             final String defaultUserEmail
+    ) {
+        this(server, sharedSpace, workspace, migrationFile, defaultUserEmail, new ImportSettings());
+    }
+
+    public ExcelImporter(
+            final String server,
+            final int sharedSpace,
+            final int workspace,
+            final File migrationFile,
+            final String defaultUserEmail,
+            final ImportSettings settings
+    ) {
+        this(server, sharedSpace, workspace, migrationFile, defaultUserEmail, settings,
+                settings.getTraceFile() != null ? new ImportTracer(settings.getTraceCapacity()) : ImportTracer.disabled());
+    }
+
+    /**
+     * Creates an importer which records its spans in the given tracer, i.e. the tracer of a {@link FanOutImporter}
+     * which imports the same sheet in several workspaces.
+     *
+     * @param server           - The Octane server.
+     * @param sharedSpace      - The shared space.
+     * @param workspace        - The workspace where the tests are imported.
+     * @param migrationFile    - The excel file.
+     * @param defaultUserEmail - The email of the default user.
+     * @param settings         - The settings of the import.
+     * @param tracer           - The tracer of the import.
+     */
+    ExcelImporter(
+            final String server,
+            final int sharedSpace,
+            final int workspace,
+            final File migrationFile,
+            final String defaultUserEmail,
+            final ImportSettings settings,
+            final ImportTracer tracer
     ) {
         logger.info("Init Migration Tool");
         this.server = server;
@@ -101,7 +177,16 @@ class ExcelImporter {
 
         migratedTestsIdsMap = new HashMap<>();
 
-        udfHandler = new UDFHandler();
+        this.tracer = tracer;
+        udfHandler = new UDFHandler(tracer);
+        requestCompression = settings.createRequestCompression();
+        metricsDirectory = settings.getMetricsDirectory();
+        progressIntervalSeconds = settings.getProgressIntervalSeconds();
+        traceFile = settings.getTraceFile();
+        recordTrafficFile = settings.getRecordTrafficFile();
+        replayTrafficFile = settings.getReplayTrafficFile();
+        replayLatencyScale = settings.getReplayLatencyScale();
+        requestTenant = RequestScheduler.get().tenant(workspace, settings.getRequestWeight());
     }
 
     /**
@@ -117,14 +202,36 @@ class ExcelImporter {
         try {
             logger.info("Initializing sheet...");
             initSheet();
-        } catch (IOException e) {
+        } catch (IOException | RuntimeException e) {
             StringUtils.logException(logger, "Error initializing sheet", e);
+            closeSheet();
             initErrors.addAndGet(1);
             return MigrationStatus.Status.INIT_SHEET_FAILED;
         }
 
+        boolean initialized = false;
+        try {
+            MigrationStatus.Status status = initWorkspace(authentication);
+            initialized = status == MigrationStatus.Status.INIT_SUCCESS;
+            return status;
+        } finally {
+            if (!initialized) {
+                closeSheet();
+            }
+        }
+    }
+
+    /**
+     * Initializes the clients and loads the entities of the workspace. The sheet is not opened, so this is used when
+     * the tests are read by a {@link FanOutImporter}.
+     *
+     * @param authentication - The authentication used to initialize the script upload client.
+     * @return - Status of the initialization.
+     */
+    MigrationStatus.Status initWorkspace(Authentication authentication) {
         try {
             logger.info("Initializing script upload client...");
+            initTraffic();
             initScriptUploadClient(authentication);
         } catch (Exception e) {
             StringUtils.logException(logger, "Error initializing script upload client", e);
@@ -144,6 +251,98 @@ class ExcelImporter {
         initURL();
         initHelper();
 
+        MigrationStatus.Status status = initMetadata();
+        if (status != MigrationStatus.Status.INIT_SUCCESS) {
+            releaseEntities();
+        }
+        return status;
+    }
+
+    /**
+     * Initializes the importer with the clients of a daemon session instead of logging in. The metadata of the
+     * workspace is loaded only if the session has no fresh copy of it, and after loading it is kept in the session
+     * for the next imports.
+     *
+     * @param session - The session of the workspace.
+     * @return - Status of the initialization.
+     */
+    MigrationStatus.Status init(WorkspaceSession session) {
+        try {
+            logger.info("Initializing sheet...");
+            initSheet();
+        } catch (IOException | RuntimeException e) {
+            StringUtils.logException(logger, "Error initializing sheet", e);
+            closeSheet();
+            initErrors.addAndGet(1);
+            return MigrationStatus.Status.INIT_SHEET_FAILED;
+        }
+
+        boolean initialized = false;
+        try {
+            MigrationStatus.Status status = initSession(session);
+            initialized = status == MigrationStatus.Status.INIT_SUCCESS;
+            return status;
+        } finally {
+            if (!initialized) {
+                closeSheet();
+            }
+        }
+    }
+
+    /**
+     * Initializes the clients and the entities of the workspace from a daemon session.
+     *
+     * @param session - The session of the workspace.
+     * @return - Status of the initialization.
+     */
+    private MigrationStatus.Status initSession(WorkspaceSession session) {
+        octaneClient = session.getOctaneClient();
+        scriptUploadClient = session.getScriptUploadClient();
+        octane = session.getOctane();
+        requestCompression = session.getRequestCompression();
+        octaneClient.reportTo(migrationStatus.getMetrics());
+        scriptUploadClient.reportTo(migrationStatus.getMetrics());
+        octaneClient.traceTo(tracer);
+        scriptUploadClient.traceTo(tracer);
+        octaneClient.scheduleAs(requestTenant);
+        scriptUploadClient.scheduleAs(requestTenant);
+
+        initURL();
+        initHelper();
+
+        WorkspaceSession.Metadata metadata = session.getMetadata();
+        if (metadata == null) {
+            MigrationStatus.Status status = initMetadata();
+            if (status == MigrationStatus.Status.INIT_SUCCESS) {
+                session.setMetadata(new WorkspaceSession.Metadata(users, phases, userTags, productAreas,
+                        testTypeListValues, udfHandler.getFieldDefinitions()));
+            } else {
+                releaseEntities();
+            }
+            return status;
+        }
+
+        logger.info("Using the cached entities of the workspace");
+        users = metadata.getUsers();
+        phases = metadata.getPhases();
+        userTags = metadata.getUserTags();
+        productAreas = metadata.getProductAreas();
+        rootApplicationEntityModel = productAreas.getRoot();
+        testTypeListValues = metadata.getTestTypes();
+        defaultTestTypeValue = testTypeListValues.get(defaultTestTypeValueName);
+        udfHandler.initFieldDefinitions(metadata.getFieldDefinitions());
+        udfHandler.initDefaultRelease(defaultReleaseName);
+
+        logger.info("Initialization done");
+        return MigrationStatus.Status.INIT_SUCCESS;
+    }
+
+    /**
+     * Loads the entities of the workspace which are needed by the migration.
+     *
+     * @return - Status of the initialization.
+     */
+    private MigrationStatus.Status initMetadata() {
         try {
             logger.info("Getting necessary entities from Octane...");
             initEntities();
@@ -172,80 +371,380 @@ class ExcelImporter {
         }
 
         logger.info("Initializing the default release..");
-        UDFHandler.initDefaultRelease(defaultReleaseName);
+        udfHandler.initDefaultRelease(defaultReleaseName);
 
         logger.info("Initialization done");
         return MigrationStatus.Status.INIT_SUCCESS;
     }
 
     /**
-     * This method imports the tests from excel to Octane
+     * This method imports the tests from excel to Octane. The excel file is closed when the migration ends.
      *
      * @return - The migration status.
      */
     @SuppressWarnings("UnusedReturnValue")
     public MigrationStatus.Status migrate() {
-        if (initErrors.get() > 0) {
-            logger.error(String.format("Cannot start migration! There are %s errors", initErrors));
-            return MigrationStatus.Status.CANNOT_MIGRATE;
+        try {
+            if (initErrors.get() > 0) {
+                logger.error(String.format("Cannot start migration! There are %s errors", initErrors));
+                return MigrationStatus.Status.CANNOT_MIGRATE;
+            }
+
+            return migrateSheet();
+        } finally {
+            closeSheet();
+            releaseEntities();
+        }
+    }
+
+    /**
+     * Imports the tests read by a {@link FanOutImporter} or received from the coordinator of a sharded import. The
+     * header was already validated by the reader of the sheet.
+     *
+     * @param descriptions  - The test descriptions of this importer.
+     * @param header        - The column names of the sheet, indexed by the column index.
+     * @param columnIndexes - The column indexes of the mandatory fields.
+     * @param totalTests    - The number of tests in the sheet.
+     * @return - The migration status.
+     */
+    MigrationStatus.Status migrate(TestDescriptionSource descriptions, String[] header,
+                                   Map<String, Integer> columnIndexes, int totalTests) {
+        try {
+            if (initErrors.get() > 0) {
+                logger.error(String.format("Cannot start migration! There are %s errors", initErrors));
+                return MigrationStatus.Status.CANNOT_MIGRATE;
+            }
+
+            this.columnIndexes = columnIndexes;
+            udfHandler.initRowIndexes(header, requestHelper);
+            return migrateDescriptions(descriptions, totalTests);
+        } finally {
+            releaseEntities();
         }
+    }
 
+    /**
+     * Creates the user tags and the application modules of the sheet which are missing from the workspace, in bulk
+     * requests of up to {@value #REFERENCE_BATCH_SIZE} entities, so the creation of the tests does not wait for them.
+     * The application modules are created level by level, so their parents exist. The entities of a failed request
+     * are created one by one when a test needs them. This should be used after the initialization, before the
+     * migration starts.
+     *
+     * @param references - The user tags and the application modules of the sheet.
+     */
+    void createMissingReferences(SheetReferences references) {
+        long traceStart = tracer.begin();
+        try {
+            createMissingUserTags(references.getUserTags());
+            productAreas.createMissing(references.getApplicationModules(), (names, parents) ->
+                    createInBulk(EntityModelHelper.PRODUCT_AREA, EntityModelHelper.PRODUCT_AREAS, names.size(),
+                            i -> new EntityModelBuilder().name(names.get(i)).parent(parents.get(i)).build(),
+                            () -> productAreas.addAll(requestHelper.getApplicationModules())));
+        } finally {
+            tracer.end(CREATE_REFERENCES_STAGE, ImportTracer.STAGE_CATEGORY, traceStart, null, 0);
+        }
+    }
+
+    /**
+     * Creates the missing user tags in bulk requests and adds them to the user tags cache. The user tags are claimed
+     * in the cache before they are created, so the ones which another import of the workspace is creating are not
+     * created again.
+     *
+     * @param names - The names of the user tags needed by the sheet.
+     */
+    private void createMissingUserTags(Collection<String> names) {
+        List<String> missingNames = userTags.reserve(names);
+
+        List<String> ids = null;
+        try {
+            ids = createInBulk(EntityModelHelper.USER_TAG, EntityModelHelper.USER_TAGS, missingNames.size(),
+                    i -> new EntityModelBuilder().name(missingNames.get(i)).type(EntityModelHelper.USER_TAG).build(),
+                    () -> userTags.putAll(EntityModelHelper.getMapFromList(requestHelper.getUserTags(),
+                            EntityModelHelper::getName, entities::reference)));
+        } finally {
+            for (int i = 0; i < missingNames.size(); i++) {
+                String id = ids != null ? ids.get(i) : null;
+                userTags.complete(missingNames.get(i),
+                        id != null ? entities.reference(EntityModelHelper.USER_TAG, id, missingNames.get(i)) : null);
+            }
+        }
+    }
+
+    /**
+     * Creates entities of one type in bulk requests. When a request fails, the entities are loaded again from Octane,
+     * since the server may have created some of them.
+     *
+     * @param type       - The type of the entities.
+     * @param collection - The collection where the entities are created.
+     * @param count      - The number of entities.
+     * @param newEntity  - Builds the entity with the given index.
+     * @param reload     - Loads the existing entities of the type again.
+     * @return - The ids of the created entities in the order of their indexes, null for the ones which were not
+     * created.
+     */
+    private List<String> createInBulk(String type,
+                                      String collection,
+                                      int count,
+                                      IntFunction<EntityModel> newEntity,
+                                      Runnable reload) {
+        List<String> ids = new ArrayList<>(Collections.nCopies(count, (String) null));
+        if (count == 0) {
+            return ids;
+        }
+
+        logger.info(String.format("Creating %s missing entities of type %s", count, type));
+        for (int from = 0; from < count; from += REFERENCE_BATCH_SIZE) {
+            int to = Math.min(from + REFERENCE_BATCH_SIZE, count);
+            try {
+                List<EntityModel> entityModels = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    entityModels.add(newEntity.apply(i));
+                }
+
+                List<EntityModel> createdEntities = requestHelper.createEntities(entityModels, collection);
+                for (int i = from; i < to; i++) {
+                    ids.set(i, createdEntities.get(i - from).getId());
+                }
+            } catch (Exception e) {
+                StringUtils.logException(logger, String.format(
+                        "The entities of type %s could not be created in bulk, they will be created one by one", type), e);
+                try {
+                    reload.run();
+                } catch (Exception ex) {
+                    StringUtils.logException(logger, String.format("The entities of type %s could not be loaded", type), ex);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Shares the created tests, user tags and product areas with the other workers of a sharded import: the call
+     * steps can target the tests created by the other workers and a user tag or product area is created by only one
+     * worker. This should be used before the migration starts.
+     *
+     * @param shardClient - The connection of this worker to the coordinator.
+     */
+    void shareWith(ShardClient shardClient) {
+        this.shardClient = shardClient;
+    }
+
+    /**
+     * @return - The status of the migration, with the counters of the migrated and failed tests and steps.
+     */
+    MigrationStatus getMigrationStatus() {
+        return migrationStatus;
+    }
+
+    /**
+     * Imports the tests of the sheet.
+     *
+     * @return - The migration status.
+     */
+    private MigrationStatus.Status migrateSheet() {
         Iterator<Row> rowIterator = sheet.iterator();
 
-        StringBuilder sb = new StringBuilder();
+        StepScriptBuilder sb = new StepScriptBuilder();
         int testsCount = 0;
+        int totalTests;
+        SheetReferences references;
 
         if (rowIterator.hasNext()) {
+            long traceStart = tracer.begin();
             try {
                 Row headerRow = rowIterator.next();
-                ExcelImportRow.initRowIndices(headerRow);
-                UDFHandler.initRowIndexes(headerRow);
+                columnIndexes = ExcelImportRow.initRowIndices(headerRow);
+                udfHandler.initRowIndexes(headerRow, requestHelper);
 
                 Iterator<Row> columnIterator = sheet.rowIterator();
-                ExcelImportRow.validateUniqueId(columnIterator);
+                ExcelImportRow.validateUniqueId(columnIterator, columnIndexes);
 
+                Iterator<Row> countIterator = sheet.rowIterator();
+                countIterator.next();
+                totalTests = ExcelImportRow.countManualTests(countIterator, columnIndexes);
+
+                Iterator<Row> referenceIterator = sheet.rowIterator();
+                referenceIterator.next();
+                references = SheetReferences.scan(referenceIterator, columnIndexes);
             } catch (RuntimeException e) {
                 logger.error(String.format("There are initialization failures!\n\t\t%s", e.getMessage()));
                 return MigrationStatus.Status.INCORRECT_FILE;
+            } finally {
+                tracer.end(VALIDATE_SHEET_STAGE, ImportTracer.STAGE_CATEGORY, traceStart, null, 0);
             }
         } else {
             logger.error("The worksheet is empty. Please provide a correct worksheet!");
             return MigrationStatus.Status.EMPTY_FILE;
         }
 
-        if (rowIterator.hasNext()) {
-            Row currentRow = rowIterator.next();
-            excelImportRow = new ExcelImportRow(currentRow);
+        createMissingReferences(references);
 
-            testsCount = createTestWithSteps(rowIterator, sb, testsCount);
-        } else {
-            logger.error("There are no tests in the given worksheet. Please provide a correct worksheet!");
-            return MigrationStatus.Status.EMPTY_FILE;
-        }
+        ProgressReporter progressReporter = startProgressReporter(totalTests);
+        try {
+            if (rowIterator.hasNext()) {
+                Row currentRow = rowIterator.next();
+                excelImportRow = new ExcelImportRow(currentRow, columnIndexes);
 
-        while (rowIterator.hasNext()) {
-            testsCount = createTestWithSteps(rowIterator, sb, testsCount);
+                testsCount = createTestWithSteps(rowIterator, sb, testsCount);
+            } else {
+                logger.error("There are no tests in the given worksheet. Please provide a correct worksheet!");
+                return MigrationStatus.Status.EMPTY_FILE;
+            }
+
+            while (rowIterator.hasNext()) {
+                testsCount = createTestWithSteps(rowIterator, sb, testsCount);
+            }
+
+            if (excelImportRow.getType() != null && excelImportRow.isManualTestRootRow()) {
+                testsCount = createTestWithSteps(rowIterator, sb, testsCount);
+            }
+
+            logger.info("TESTS CREATED: " + testsCount);
+
+            awaitStepUploads();
+        } finally {
+            if (progressReporter != null) {
+                progressReporter.close();
+            }
         }
 
-        if (excelImportRow.getType() != null && excelImportRow.isManualTestRootRow()) {
-            testsCount = createTestWithSteps(rowIterator, sb, testsCount);
+        return finishMigration();
+    }
+
+    /**
+     * Imports the tests of a stream of test descriptions.
+     *
+     * @param descriptions - The test descriptions.
+     * @param totalTests   - The number of tests in the sheet.
+     * @return - The migration status.
+     */
+    private MigrationStatus.Status migrateDescriptions(TestDescriptionSource descriptions, int totalTests) {
+        StepScriptBuilder sb = new StepScriptBuilder();
+        int testsCount = 0;
+
+        ProgressReporter progressReporter = startProgressReporter(totalTests);
+        try {
+            TestDescription description;
+            while ((description = descriptions.next()) != null) {
+                if (createTestWithSteps(description, sb)) {
+                    testsCount++;
+                }
+            }
+
+            logger.info("TESTS CREATED: " + testsCount);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn(String.format("Interrupted after %s tests were created", testsCount));
+        } finally {
+            awaitStepUploads();
+            if (progressReporter != null) {
+                progressReporter.close();
+            }
         }
 
-        logger.info("TESTS CREATED: " + testsCount);
+        return finishMigration();
+    }
 
-        executorService.shutdown();
+    /**
+     * Logs the summaries and writes the metrics, the trace and the recorded traffic at the end of the migration.
+     *
+     * @return - The migration status.
+     */
+    private MigrationStatus.Status finishMigration() {
+        requestCompression.logSummary(logger);
+        migrationStatus.getMetrics().logSummary(logger);
+        exportMetrics();
+        writeTrace();
+        closeTrafficCassette();
 
         return computeStatus();
     }
 
+    /**
+     * Starts the periodic progress reports if they are turned on.
+     *
+     * @param totalTests - The number of tests in the sheet.
+     * @return - The started progress reporter or null if the progress is not reported.
+     */
+    private ProgressReporter startProgressReporter(int totalTests) {
+        logger.info(String.format("Found %s tests to migrate", totalTests));
+        if (progressIntervalSeconds <= 0) {
+            return null;
+        }
+
+        ProgressReporter progressReporter = new ProgressReporter(migrationStatus.getMetrics(), totalTests,
+                () -> requestHelper.getPendingUploads(), TimeUnit.SECONDS.toMillis(progressIntervalSeconds));
+        progressReporter.start();
+        return progressReporter;
+    }
+
+    /**
+     * Waits for the step uploads of this migration which are still queued or running, so the status and the metrics
+     * include them.
+     */
+    private void awaitStepUploads() {
+        try {
+            while (!requestHelper.awaitUploads(1, TimeUnit.MINUTES)) {
+                logger.info("Waiting for the step uploads to finish...");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for the step uploads to finish");
+        }
+    }
+
+    /**
+     * Writes the metrics of the migration if a metrics directory was set.
+     */
+    private void exportMetrics() {
+        if (metricsDirectory == null) {
+            return;
+        }
+
+        try {
+            migrationStatus.getMetrics().export(metricsDirectory);
+            logger.info(String.format("The migration metrics were written to %s", metricsDirectory.toAbsolutePath()));
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Unable to write the migration metrics", e);
+        }
+    }
+
+    /**
+     * Writes the recorded spans if tracing is on.
+     */
+    private void writeTrace() {
+        if (traceFile == null || !tracer.isEnabled()) {
+            return;
+        }
+
+        try {
+            tracer.write(traceFile);
+            logger.info(String.format("The migration trace was written to %s (%s spans dropped)",
+                    traceFile.toAbsolutePath(), tracer.getDroppedSpans()));
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Unable to write the migration trace", e);
+        }
+    }
+
+    /**
+     * Finishes the recording of the Octane traffic if it is on.
+     */
+    private void closeTrafficCassette() {
+        if (trafficCassette != null) {
+            trafficCassette.close();
+            logger.info(String.format("The Octane traffic was recorded in %s", recordTrafficFile.toAbsolutePath()));
+            trafficCassette = null;
+        }
+    }
+
     /**
      * Calculates the status of the migration based on number of tests imported and number of tests failed
      *
      * @return - The migration status
      */
     private MigrationStatus.Status computeStatus() {
-        int failedTests = MigrationStatus.getFailedTests();
-        int failedSteps = MigrationStatus.getFailedSteps();
+        int failedTests = migrationStatus.getFailedTests();
+        int failedSteps = migrationStatus.getFailedSteps();
 
         if (failedSteps > 0 && failedTests > 0) {
             return MigrationStatus.Status.NOT_ALL_TESTS_AND_STEPS_WERE_MIGRATED;
@@ -266,58 +765,143 @@ class ExcelImporter {
      * Creates a manual tests and uploads the steps for it.
      *
      * @param rowIterator - The iterator for the excel sheet.
-     * @param sb          - The string builder for the test steps.
+     * @param sb          - The script builder for the test steps.
      * @param count       - The number of tests that are migrated
      * @return - The number of the tests that were migrated
      */
-    private int createTestWithSteps(Iterator<Row> rowIterator, StringBuilder sb, int count) {
+    private int createTestWithSteps(Iterator<Row> rowIterator, StepScriptBuilder sb, int count) {
         if (excelImportRow.getType() != null && excelImportRow.isManualTestRootRow()) {
+            ImportMetrics metrics = migrationStatus.getMetrics();
+            ImportTracer.setUniqueId(excelImportRow.getUniqueId());
             try {
-                EntityModel createdTestManualEntity = createManualTest(excelImportRow);
-
-                migratedTestsIdsMap.put(excelImportRow.getUniqueId(), createdTestManualEntity.getId());
-
-                MigrationStatus.addMigratedTest();
+                EntityModel createdTestManualEntity = createAndRecordManualTest(excelImportRow);
 
+                long traceStart = tracer.begin();
+                long stageStart = System.nanoTime();
+                Object rowParseEvent = ImportEvents.beginRowParse(excelImportRow.getUniqueId());
                 excelImportRow = buildCurrentManualTestStepsAndAdvanceIterator(rowIterator, excelImportRow, sb);
+                ImportEvents.endRowParse(rowParseEvent, currentTestSteps);
+                metrics.recordStage(BUILD_STEPS_STAGE, stageStart);
+                tracer.end(BUILD_STEPS_STAGE, ImportTracer.STAGE_CATEGORY, traceStart, null, 0);
 
-                uploadStepsForTest(createdTestManualEntity, sb.toString());
+                uploadStepsForTest(createdTestManualEntity, sb);
 
                 count++;
-            } catch (OctanePartialException e) {
-                String exceptionMessage = e.getErrorModels().iterator().next().getValue("description").getValue().toString();
-                logger.error(String.format("Error creating manual test with unique_id \"%s\". Exception message: %s", excelImportRow.getUniqueId(), exceptionMessage));
-                advanceIteratorAndChangeExcelImportRow(rowIterator);
-                MigrationStatus.addFailedTest();
-            } catch (OctaneException e) {
-                logger.error(String.format("Error creating manual test with unique_id \"%s\". Exception message: %s", excelImportRow.getUniqueId(), e.getMessage()));
-                advanceIteratorAndChangeExcelImportRow(rowIterator);
-                MigrationStatus.addFailedTest();
             } catch (Exception e) {
-                MigrationStatus.addFailedTest();
-                StringUtils.logException(logger, "Error creating test", e);
+                logTestFailure(excelImportRow, e);
                 advanceIteratorAndChangeExcelImportRow(rowIterator);
             } finally {
-                sb.setLength(0);
+                sb.reset();
+                ImportTracer.setUniqueId(null);
             }
         } else {
-            if (excelImportRow.getType() == null) {
-                MigrationStatus.addFailedStep();
-                logger.error(String.format("The row with unique id \"%s\" does not have a type defined, therefore it will no be migrated!",
-                        excelImportRow.getUniqueId()));
-                advanceIteratorAndChangeExcelImportRow(rowIterator);
-            } else if (!excelImportRow.getType().equals("test_manual") || !excelImportRow.getType().equals("step")) {
-                logger.error(String.format("The row with unique id \"%s\" has a wrong type defined, therefore it will no be migrated! Row type \"%s\"",
-                        excelImportRow.getUniqueId(), excelImportRow.getTestType()));
-                advanceIteratorAndChangeExcelImportRow(rowIterator);
-            } else {
-                advanceIteratorAndChangeExcelImportRow(rowIterator);
-                throw new RuntimeException("Something went wrong!");
-            }
+            rejectRow(excelImportRow);
+            advanceIteratorAndChangeExcelImportRow(rowIterator);
         }
         return count;
     }
 
+    /**
+     * Creates a manual test of a test description and uploads its steps.
+     *
+     * @param description - The test description.
+     * @param sb          - The script builder for the test steps.
+     * @return - true if the test was created.
+     */
+    private boolean createTestWithSteps(TestDescription description, StepScriptBuilder sb) {
+        ExcelImportRow testRow = description.getTestRow();
+        if (!description.isManualTest()) {
+            rejectRow(testRow);
+            return false;
+        }
+
+        ImportMetrics metrics = migrationStatus.getMetrics();
+        ImportTracer.setUniqueId(testRow.getUniqueId());
+        try {
+            EntityModel createdTestManualEntity = createAndRecordManualTest(testRow);
+
+            long traceStart = tracer.begin();
+            long stageStart = System.nanoTime();
+            Object rowParseEvent = ImportEvents.beginRowParse(testRow.getUniqueId());
+            for (ExcelImportRow stepRow : description.getStepRows()) {
+                buildSteps(stepRow, sb, uniqueId -> getMigratedTestId(uniqueId, testRow));
+                currentTestSteps++;
+            }
+            ImportEvents.endRowParse(rowParseEvent, currentTestSteps);
+            metrics.recordStage(BUILD_STEPS_STAGE, stageStart);
+            tracer.end(BUILD_STEPS_STAGE, ImportTracer.STAGE_CATEGORY, traceStart, null, 0);
+
+            uploadStepsForTest(createdTestManualEntity, sb);
+            return true;
+        } catch (Exception e) {
+            logTestFailure(testRow, e);
+            currentTestSteps = 0;
+            return false;
+        } finally {
+            sb.reset();
+            ImportTracer.setUniqueId(null);
+        }
+    }
+
+    /**
+     * Creates the manual test in Octane and keeps its id for the call steps of the next tests.
+     *
+     * @param row - The row with the manual test.
+     * @return - The entity model of the manual tests which was uploaded in Octane.
+     */
+    private EntityModel createAndRecordManualTest(ExcelImportRow row) {
+        long traceStart = tracer.begin();
+        long stageStart = System.nanoTime();
+        EntityModel createdTestManualEntity = createManualTest(row);
+        migrationStatus.getMetrics().recordStage(CREATE_TEST_STAGE, stageStart);
+        tracer.end(CREATE_TEST_STAGE, ImportTracer.STAGE_CATEGORY, traceStart, EntityModelHelper.MANUAL_TESTS, 0);
+
+        migratedTestsIdsMap.put(row.getUniqueId(), createdTestManualEntity.getId());
+        if (shardClient != null) {
+            shardClient.testMigrated(row.getUniqueId(), createdTestManualEntity.getId());
+        }
+
+        migrationStatus.addMigratedTest();
+        return createdTestManualEntity;
+    }
+
+    /**
+     * Logs the failure of a manual test and counts it as failed.
+     *
+     * @param row - The row with the manual test.
+     * @param e   - The reason of the failure.
+     */
+    private void logTestFailure(ExcelImportRow row, Exception e) {
+        if (e instanceof OctanePartialException) {
+            String exceptionMessage = ((OctanePartialException) e).getErrorModels().iterator().next().getValue("description").getValue().toString();
+            logger.error(String.format("Error creating manual test with unique_id \"%s\". Exception message: %s", row.getUniqueId(), exceptionMessage));
+        } else if (e instanceof OctaneException) {
+            logger.error(String.format("Error creating manual test with unique_id \"%s\". Exception message: %s", row.getUniqueId(), e.getMessage()));
+        } else {
+            StringUtils.logException(logger, "Error creating test", e);
+        }
+        migrationStatus.addFailedTest();
+        if (shardClient != null) {
+            shardClient.testFailed(row.getUniqueId());
+        }
+    }
+
+    /**
+     * Logs a row which is not a manual test and is not a step of a manual test, therefore it is not migrated.
+     *
+     * @param row - The rejected row.
+     */
+    private void rejectRow(ExcelImportRow row) {
+        if (row.getType() == null) {
+            migrationStatus.addFailedStep();
+            logger.error(String.format("The row with unique id \"%s\" does not have a type defined, therefore it will no be migrated!",
+                    row.getUniqueId()));
+        } else {
+            logger.error(String.format("The row with unique id \"%s\" has a wrong type defined, therefore it will no be migrated! Row type \"%s\"",
+                    row.getUniqueId(), row.getTestType()));
+        }
+    }
+
     /**
      * This method advances iterator and updates the excelImportRow.
      *
@@ -325,15 +909,33 @@ class ExcelImporter {
      */
     private void advanceIteratorAndChangeExcelImportRow(Iterator<Row> rowIterator) {
         if (rowIterator.hasNext()) {
-            excelImportRow = new ExcelImportRow(rowIterator.next());
+            excelImportRow = new ExcelImportRow(rowIterator.next(), columnIndexes);
         }
     }
 
     /**
-     * Initializes the Octane request helper.
+     * Initializes the Octane request helper, with the references of the workspace. The references are held until the
+     * migration ends, or until the initialization fails.
      */
     private void initHelper() {
-        requestHelper = new OctaneRequestHelper(URL, octane, scriptUploadClient, defaultUserEmail);
+        entities = WorkspaceEntities.acquire(server, sharedSpace, workspace);
+        try {
+            requestHelper = new OctaneRequestHelper(URL, octane, octaneClient, scriptUploadClient, defaultUserEmail,
+                    migrationStatus, tracer, entities);
+        } catch (RuntimeException e) {
+            releaseEntities();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the references of the workspace, if they are held.
+     */
+    private void releaseEntities() {
+        if (entities != null) {
+            entities.release();
+            entities = null;
+        }
     }
 
     /**
@@ -344,14 +946,37 @@ class ExcelImporter {
     }
 
     /**
-     * Opens the excel sheet.
+     * Opens the excel sheet. The workbook is read into memory, so the file is closed right away, and the workbook is
+     * kept open until the migration ends.
      *
      * @throws IOException - In case the excel cannot be opened
      */
     private void initSheet() throws IOException {
-        FileInputStream file = new FileInputStream(migrationFile);
-        XSSFWorkbook workbook = new XSSFWorkbook(file);
+        long traceStart = tracer.begin();
+
+        try (FileInputStream file = new FileInputStream(migrationFile)) {
+            workbook = new XSSFWorkbook(file);
+        }
         sheet = workbook.getSheetAt(0);
+
+        tracer.end(PARSE_SHEET_STAGE, ImportTracer.STAGE_CATEGORY, traceStart, null, 0);
+    }
+
+    /**
+     * Closes the excel workbook, if it is open.
+     */
+    private void closeSheet() {
+        if (workbook == null) {
+            return;
+        }
+
+        try {
+            workbook.close();
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Error closing the excel file", e);
+        }
+        workbook = null;
+        sheet = null;
     }
 
     /**
@@ -360,7 +985,8 @@ class ExcelImporter {
      * @param authentication - The authentication with the default user.
      */
     private void initOctane(Authentication authentication) {
-        octane = new Octane.Builder(authentication)
+        octaneClient = createHttpClient();
+        octane = new Octane.Builder(authentication, octaneClient)
                 .Server(server)
                 .sharedSpace(sharedSpace)
                 .workSpace(workspace)
@@ -373,57 +999,89 @@ class ExcelImporter {
      * @param authentication - The authentication with the default user.
      */
     private void initScriptUploadClient(Authentication authentication) {
-        scriptUploadClient = new GoogleHttpClient(server);
+        scriptUploadClient = createHttpClient();
         scriptUploadClient.authenticate(authentication);
     }
 
     /**
-     * Initializes the user map, application modules map, and test type map.
+     * Starts the recording of the Octane traffic or loads the recorded traffic which is replayed.
+     *
+     * @throws IOException - In case the cassette file cannot be created or read.
+     */
+    private void initTraffic() throws IOException {
+        if (replayTrafficFile != null) {
+            logger.info(String.format("Replaying the Octane traffic recorded in %s", replayTrafficFile.toAbsolutePath()));
+            replayedExchanges = TrafficCassette.load(replayTrafficFile);
+        } else if (recordTrafficFile != null) {
+            trafficCassette = TrafficCassette.record(recordTrafficFile, server);
+        }
+    }
+
+    /**
+     * @return - A client which sends the requests to the server, or which serves the recorded responses if the
+     * traffic is replayed.
+     */
+    private ImporterHttpClient createHttpClient() {
+        ImporterHttpClient client;
+        if (replayedExchanges != null) {
+            client = new ReplayHttpClient(server, replayedExchanges, replayLatencyScale, migrationStatus.getMetrics());
+        } else {
+            client = new ImporterHttpClient(server, requestCompression, migrationStatus.getMetrics());
+            if (trafficCassette != null) {
+                client.recordTo(trafficCassette);
+            }
+        }
+        client.scheduleAs(requestTenant);
+        client.traceTo(tracer);
+        return client;
+    }
+
+    /**
+     * Initializes the user map, application modules map, test type map and the metadata of the manual test fields.
      */
     private void initEntities() {
         initUserList();
         initProductAreas();
         initTestTypeListAndDefaultTestTypeValue();
+        udfHandler.initFieldDefinitions(requestHelper);
     }
 
     /**
      * Initializes the phases map.
      */
     private void initPhases() {
-        phases = EntityModelHelper.getMapFromList(requestHelper.getPhases(), EntityModelHelper::getName, EntityModelHelper::getEssentialFields);
+        phases = EntityModelHelper.getMapFromList(requestHelper.getPhases(), EntityModelHelper::getName, entities::reference);
     }
 
     /**
-     * Initializes the user tags map.
+     * Adds the user tags from Octane to the user tags cache of the workspace.
      */
     private void initUserTags() {
-        userTags = EntityModelHelper.getMapFromList(requestHelper.getUserTags(), EntityModelHelper::getName, EntityModelHelper::getEssentialFields);
+        userTags = entities.getUserTags().putAll(
+                EntityModelHelper.getMapFromList(requestHelper.getUserTags(), EntityModelHelper::getName, entities::reference));
     }
 
     /**
      * Initializes the user map.
      */
     private void initUserList() {
-        users = EntityModelHelper.getMapFromList(requestHelper.getUsers(), EntityModelHelper::getEmail, EntityModelHelper::getUserFields);
+        users = EntityModelHelper.getMapFromList(requestHelper.getUsers(), EntityModelHelper::getEmail, entities::reference);
     }
 
     /**
-     * Initializes the root application module and the created application modules map.
+     * Initializes the root application module and adds the application modules from Octane to the tree of the
+     * workspace.
      */
     private void initProductAreas() {
         rootApplicationEntityModel = requestHelper.getApplicationModulesRoot();
-
-        createdApplicationModules = EntityModelHelper.getMapFromList(
-                requestHelper.getApplicationModules(),
-                EntityModelHelper::getName,
-                EntityModelHelper::getApplicationModuleFields);
+        productAreas = entities.getProductAreas(rootApplicationEntityModel).addAll(requestHelper.getApplicationModules());
     }
 
     /**
      * Initializes the test types map with the test type list values from Octane.
      */
     private void initTestTypeListAndDefaultTestTypeValue() {
-        testTypeListValues = EntityModelHelper.getMapFromList(requestHelper.getList(TEST_TYPE), EntityModelHelper::getName, EntityModelHelper::getEssentialFields);
+        testTypeListValues = EntityModelHelper.getMapFromList(requestHelper.getList(TEST_TYPE), EntityModelHelper::getName, entities::reference);
 
         testTypeListValues.forEach((testTypeName, testTypeEntityModel) -> {
             if (testTypeName.equals(defaultTestTypeValueName)) {
@@ -437,17 +1095,17 @@ class ExcelImporter {
      *
      * @param rowIterator           - The iterator for the excel sheet.
      * @param currentExcelImportRow - The row which contains a test step.
-     * @param sb                    - The string builder for the test steps
+     * @param sb                    - The script builder for the test steps
      * @return - The next row after the test script, which represents a test.
      */
     private ExcelImportRow buildCurrentManualTestStepsAndAdvanceIterator(Iterator<Row> rowIterator,
                                                                          ExcelImportRow currentExcelImportRow,
-                                                                         StringBuilder sb) {
+                                                                         StepScriptBuilder sb) {
         while (rowIterator.hasNext()) {
-            currentExcelImportRow = new ExcelImportRow(rowIterator.next());
+            currentExcelImportRow = new ExcelImportRow(rowIterator.next(), columnIndexes);
 
             if (currentExcelImportRow.getType() != null && currentExcelImportRow.getType().equals("step")) {
-                buildSteps(currentExcelImportRow, sb);
+                buildSteps(currentExcelImportRow, sb, migratedTestsIdsMap);
                 currentTestSteps++;
             } else if (currentExcelImportRow.isManualTestRootRow()) {
                 break;
@@ -461,11 +1119,11 @@ class ExcelImporter {
      * Uploads the steps for the migrated test.
      *
      * @param createdTestManualEntity - The manual test which was uploaded to Octane.
-     * @param steps                   - The steps string that will be uploaded for the test.
+     * @param steps                   - The script builder containing the steps that will be uploaded for the test.
      */
-    private void uploadStepsForTest(EntityModel createdTestManualEntity, String steps) {
-        if (createdTestManualEntity != null && !steps.equals("")) {
-            OctaneRequestHelper.uploadSteps(buildStepsJson(steps), createdTestManualEntity.getId(), executorService);
+    private void uploadStepsForTest(EntityModel createdTestManualEntity, StepScriptBuilder steps) {
+        if (createdTestManualEntity != null && steps.hasSteps()) {
+            requestHelper.uploadSteps(steps.build(), createdTestManualEntity.getId(), executorService);
 
             addUploadedSteps();
 
@@ -477,10 +1135,8 @@ class ExcelImporter {
      * Adds to the current test steps.
      */
     private void addUploadedSteps() {
-        while (currentTestSteps > 0) {
-            MigrationStatus.addUploadedStep();
-            currentTestSteps--;
-        }
+        migrationStatus.addUploadedSteps(currentTestSteps);
+        currentTestSteps = 0;
     }
 
     /**
@@ -490,6 +1146,8 @@ class ExcelImporter {
      * @return - The entity model of the manual tests which was uploaded in Octane.
      */
     private EntityModel createManualTest(ExcelImportRow row) {
+        Object buildEvent = ImportEvents.beginEntityBuild(row.getUniqueId());
+
         List<EntityModel> applicationModulesList = getApplicationModules(row);
         if (applicationModulesList != null && applicationModulesList.size() == 0) {
             applicationModulesList.add(rootApplicationEntityModel);
@@ -503,7 +1161,7 @@ class ExcelImporter {
             owner = users.get(row.getOwner().trim());
         }
         if (owner == null) {
-            owner = OctaneRequestHelper.getDefaultUser();
+            owner = requestHelper.getDefaultUser();
             logger.warn(String.format("For the entity with unique_id \"%s\" the default value for owner \"%s\" was used instead of \"%s\"",
                     row.getUniqueId(), defaultUserEmail, row.getOwner()));
         }
@@ -538,8 +1196,9 @@ class ExcelImporter {
         setUserTags(row, testEntityBuilder);
 
         EntityModel testEntityModel = testEntityBuilder.build();
-        udfHandler.addUDFsToEntityModel(excelImportRow.getRow(), testEntityModel);
-        EntityModel createdTestManualEntity = OctaneRequestHelper.createEntity(testEntityModel, EntityModelHelper.MANUAL_TESTS);
+        ImportEvents.endEntityBuild(buildEvent);
+        udfHandler.addUDFsToEntityModel(row, testEntityModel);
+        EntityModel createdTestManualEntity = requestHelper.createEntity(testEntityModel, EntityModelHelper.MANUAL_TESTS);
 
         logger.info(String.format("Uploaded test with original id: %s => target id: %s", row.getUniqueId(), createdTestManualEntity.getId()));
 
@@ -588,7 +1247,8 @@ class ExcelImporter {
     }
 
     /**
-     * Sets the user tags for the entity model. If the user tags do not exist in Octane, they are created.
+     * Sets the user tags for the entity model. If the user tags do not exist in Octane, they are created. A new user
+     * tag is created only once, the rows which need it at the same time wait for its creation.
      *
      * @param row               - The row containing the manual test and the user tags for test.
      * @param testEntityBuilder - The test entity model builder where the user tags will be added.
@@ -596,19 +1256,11 @@ class ExcelImporter {
     private void setUserTags(ExcelImportRow row, EntityModelBuilder testEntityBuilder) {
         if (row.getUserTags() != null) {
             String[] userTagStrings = row.getUserTags().split(",");
-            List<EntityModel> userTagsList = row.extractUserTagEntityModelFromStringList(userTags);
-
-            if (userTagsList.size() < userTagStrings.length) {
-                for (String userTag : userTagStrings) {
-                    if (userTags.get(userTag.trim()) == null) {
-                        EntityModel userTagEntityModel = new EntityModelBuilder().name(userTag.trim()).type("user_tag").build();
+            List<EntityModel> userTagsList = new ArrayList<>(userTagStrings.length);
 
-                        EntityModel createdUserTag = OctaneRequestHelper.createEntity(userTagEntityModel, EntityModelHelper.USER_TAGS);
-
-                        userTagsList.add(createdUserTag);
-                        userTags.put(userTag.trim(), createdUserTag);
-                    }
-                }
+            for (String userTag : userTagStrings) {
+                userTagsList.add(userTags.get(userTag.trim(), name -> entities.reference(EntityModelHelper.USER_TAG,
+                        getOrCreateShared(EntityModelHelper.USER_TAG, name, () -> createUserTag(name)), name)));
             }
 
             testEntityBuilder.userTags(userTagsList);
@@ -656,11 +1308,8 @@ class ExcelImporter {
      * @param entityName             - The name of the entity that is searched.
      */
     private void getPossibleEntityForCoveredContent(List<EntityModel> coveredContentEntities, String id, String entityName) {
-        EntityModel coveredContentEntityModel = requestHelper.getEntityWithEssentialFields(entityName, id);
+        EntityModel coveredContentEntityModel = requestHelper.getWorkItemReference(entityName, id);
         if (coveredContentEntityModel != null) {
-            coveredContentEntityModel.removeValue(EntityModelHelper.Fields.TYPE.field());
-            coveredContentEntityModel.setValue(new StringFieldModel(EntityModelHelper.Fields.TYPE.field(), "work_item"));
-
             coveredContentEntities.add(coveredContentEntityModel);
         }
     }
@@ -696,7 +1345,7 @@ class ExcelImporter {
             if (designer != null) {
                 testEntityBuilder.designer(designer);
             } else {
-                testEntityBuilder.designer(OctaneRequestHelper.getDefaultUser());
+                testEntityBuilder.designer(requestHelper.getDefaultUser());
                 logger.warn(String.format("For the entity with unique_id \"%s\" the default value for designer \"%s\" was used instead of \"%s\"",
                         row.getUniqueId(), defaultUserEmail, row.getDesigner()));
             }
@@ -704,59 +1353,117 @@ class ExcelImporter {
     }
 
     /**
-     * Returns the application module or creates it in case it does not exist in Octane.
+     * Returns the application module or creates it in case it does not exist in Octane. The application module is
+     * given by its path from the root (i.e. Payments/Cards/Refunds) and the missing modules of the path are created.
+     * A new application module is created only once, the rows which need it at the same time wait for its creation.
      *
-     * @param applicationModule - The name of the application module.
-     * @return - The application module.
+     * @param applicationModule - The path of the application module.
+     * @return - The application module or null if it could not be created.
      */
     private EntityModel getOrCreateApplicationModule(String applicationModule) {
         if (applicationModule.equals("")) {
             return rootApplicationEntityModel;
         }
 
-        EntityModel newApplicationModule = createdApplicationModules.get(applicationModule);
+        return productAreas.getOrCreate(applicationModule, (path, name, parent) ->
+                getOrCreateShared(EntityModelHelper.PRODUCT_AREA, path, () -> createApplicationModule(name, parent)));
+    }
 
-        if (newApplicationModule == null) {
-            try {
-                newApplicationModule = new EntityModelBuilder()
-                        .name(applicationModule)
-                        .parent(rootApplicationEntityModel)
-                        .build();
-            } catch (Exception e) {
-                StringUtils.logException(logger, "Application module could not be created!", e);
-                return null;
-            }
-            EntityModel returnedAppModule = OctaneRequestHelper.createEntity(newApplicationModule, EntityModelHelper.PRODUCT_AREAS);
+    /**
+     * Creates an application module.
+     *
+     * @param applicationModule - The name of the application module.
+     * @param parent            - The parent application module.
+     * @return - The id of the created application module or null if it could not be created.
+     */
+    private String createApplicationModule(String applicationModule, EntityModel parent) {
+        EntityModel newApplicationModule;
+        try {
+            newApplicationModule = new EntityModelBuilder()
+                    .name(applicationModule)
+                    .parent(parent)
+                    .build();
+        } catch (Exception e) {
+            StringUtils.logException(logger, "Application module could not be created!", e);
+            return null;
+        }
+        return requestHelper.createEntity(newApplicationModule, EntityModelHelper.PRODUCT_AREAS).getId();
+    }
 
-            newApplicationModule.setValue(new StringFieldModel(EntityModelHelper.Fields.TYPE.field(), returnedAppModule.getType()));
-            newApplicationModule.setValue(new StringFieldModel(EntityModelHelper.Fields.ID.field(), returnedAppModule.getId()));
+    /**
+     * Creates a user tag.
+     *
+     * @param userTag - The name of the user tag.
+     * @return - The id of the created user tag.
+     */
+    private String createUserTag(String userTag) {
+        EntityModel userTagEntityModel = new EntityModelBuilder().name(userTag).type(EntityModelHelper.USER_TAG).build();
+        return requestHelper.createEntity(userTagEntityModel, EntityModelHelper.USER_TAGS).getId();
+    }
 
-            createdApplicationModules.put(applicationModule, newApplicationModule);
-        }
+    /**
+     * Creates an entity which is missing from the workspace. In a sharded import the entity is created by only one
+     * worker and the other workers get its id from the coordinator.
+     *
+     * @param kind    - The type of the entity.
+     * @param name    - The name of the entity.
+     * @param creator - Creates the entity and returns its id.
+     * @return - The id of the entity or null if it could not be created.
+     */
+    private String getOrCreateShared(String kind, String name, Supplier<String> creator) {
+        return shardClient != null ? shardClient.getOrCreate(kind, name, creator) : creator.get();
+    }
 
-        return newApplicationModule;
+    /**
+     * Returns the id of a migrated test for a call step. In a sharded import the test can be created by another worker,
+     * then its id is received from the coordinator, which waits until the test is created if it comes before the
+     * calling test in the sheet.
+     *
+     * @param uniqueId - The unique_id of the called test.
+     * @param caller   - The row of the calling test.
+     * @return - The id of the test or null if the test was not migrated.
+     */
+    private String getMigratedTestId(String uniqueId, ExcelImportRow caller) {
+        String testId = migratedTestsIdsMap.get(uniqueId);
+        if (testId == null && shardClient != null) {
+            testId = shardClient.resolveTest(uniqueId, caller.getRowNum());
+            if (testId != null) {
+                migratedTestsIdsMap.put(uniqueId, testId);
+            }
+        }
+        return testId;
     }
 
     /**
-     * Builds a string with all the test steps. The steps can be : Call step, Validation step or simple step. The Call step
+     * Adds the test step to the script. The steps can be : Call step, Validation step or simple step. The Call step
      * must have ids from the unique_id column.
      *
-     * @param row                - The row with the test step.
-     * @param stepsStringBuilder - The string builder where the steps are built.
+     * @param row                 - The row with the test step.
+     * @param stepScriptBuilder   - The script builder where the steps are built.
+     * @param migratedTestsIdsMap - The ids of the migrated tests mapped by their unique_id, used for the call steps.
      */
-    private void buildSteps(ExcelImportRow row, StringBuilder stepsStringBuilder) {
-        final String step = row.getStep().replace("\t\n", "");
+    static void buildSteps(ExcelImportRow row, StepScriptBuilder stepScriptBuilder, Map<String, String> migratedTestsIdsMap) {
+        buildSteps(row, stepScriptBuilder, migratedTestsIdsMap::get);
+    }
+
+    /**
+     * Adds the test step to the script.
+     *
+     * @param row               - The row with the test step.
+     * @param stepScriptBuilder - The script builder where the steps are built.
+     * @param migratedTestIds   - Returns the id of a migrated test by its unique_id, or null, used for the call steps.
+     */
+    private static void buildSteps(ExcelImportRow row, StepScriptBuilder stepScriptBuilder, Function<String, String> migratedTestIds) {
+        final String step = row.getStep();
 
         if (row.getStepType().equals(StepTypes.SIMPLE.stepTypeName())) {
-            stepsStringBuilder.append("- ").append(StringUtils.escapeMetaCharacters(step)).append("\\n");
+            stepScriptBuilder.appendSimpleStep(step);
         } else if (row.getStepType().equals(StepTypes.VALIDATION.stepTypeName())) {
-            stepsStringBuilder.append("- ?").append(StringUtils.escapeMetaCharacters(step)).append("\\n");
+            stepScriptBuilder.appendValidationStep(step);
         } else if (row.getStepType().equals(StepTypes.CALL.stepTypeName())) {
-            String testId = migratedTestsIdsMap.get(row.getStep());
+            String testId = migratedTestIds.apply(step);
             if (testId != null) {
-                stepsStringBuilder.append("- @")
-                        .append(testId)
-                        .append("\\n");
+                stepScriptBuilder.appendCallStep(testId);
             } else {
                 logger.warn(String.format("For the entry with unique id \"%s\" the call step for id \"%s\" could not be found and will be ignored.",
                         row.getUniqueId(),
@@ -768,14 +1475,4 @@ class ExcelImporter {
                     row.getStepType()));
         }
     }
-
-    /**
-     * Builds the JSON with the test steps.
-     *
-     * @param manualSteps - The string containing all the steps for the test
-     * @return - A new string containing the JSON for the manual test
-     */
-    private String buildStepsJson(final String manualSteps) {
-        return String.format("{\"script\":\"%s\",\"comment\":\"\",\"revision_type\":\"Minor\"}", manualSteps);
-    }
 }
\ No newline at end of file
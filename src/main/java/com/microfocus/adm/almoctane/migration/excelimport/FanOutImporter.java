@@ -0,0 +1,354 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.authentication.Authentication;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class imports the tests of one excel sheet into several workspaces of a shared space in a single pass.
+ *
+ * The sheet is opened, validated and read only once: its rows are converted into {@link TestDescription}s which do not
+ * depend on the workspace. Every workspace has its own {@link ExcelImporter} (with its own Octane client, entity maps
+ * and migrated test ids) which consumes the shared {@link TestDescriptionStream} in its own thread, so the workspaces
+ * are imported concurrently.
+ */
+class FanOutImporter {
+    private static final Logger logger = LoggerFactory.getLogger(FanOutImporter.class);
+
+    private static final String PARSE_SHEET_STAGE = "parse_sheet";
+    private static final String VALIDATE_SHEET_STAGE = "validate_sheet";
+    private static final String READ_TESTS_STAGE = "read_tests";
+    private static final String WORKSPACE_MDC_KEY = "workspace";
+
+    private final String server;
+    private final int sharedSpace;
+    private final List<Integer> workspaces;
+    private final File migrationFile;
+    private final String defaultUserEmail;
+    private final ImportSettings settings;
+    private final ImportTracer tracer;
+    private XSSFWorkbook workbook;
+
+    public FanOutImporter(
+            final String server,
+            final int sharedSpace,
+            final List<Integer> workspaces,
+            final File migrationFile,
+            final String defaultUserEmail,
+            final ImportSettings settings
+    ) {
+        if (workspaces.isEmpty()) {
+            throw new IllegalArgumentException("At least one workspace is needed");
+        }
+
+        this.server = server;
+        this.sharedSpace = sharedSpace;
+        this.workspaces = new ArrayList<>(new LinkedHashSet<>(workspaces));
+        this.migrationFile = migrationFile;
+        this.defaultUserEmail = defaultUserEmail;
+        this.settings = settings;
+        this.tracer = settings.getTraceFile() != null ? new ImportTracer(settings.getTraceCapacity()) : ImportTracer.disabled();
+    }
+
+    /**
+     * Reads the sheet, initializes the workspaces and imports the tests in all of them. The excel file is closed when
+     * the migration ends.
+     *
+     * @param authentication - The authentication used for all the workspaces.
+     * @return - The status of the migration of every workspace, in the order of the workspaces.
+     */
+    public Map<Integer, MigrationStatus.Status> migrate(Authentication authentication) {
+        try {
+            Map<Integer, MigrationStatus.Status> statuses = migrateWorkspaces(authentication);
+            statuses.forEach((workspace, status) ->
+                    logger.info(String.format("Workspace %s: %s", workspace, status)));
+            return statuses;
+        } finally {
+            closeSheet();
+            writeTrace(settings.getTraceFile());
+        }
+    }
+
+    /**
+     * @param authentication - The authentication used for all the workspaces.
+     * @return - The status of the migration of every workspace.
+     */
+    private Map<Integer, MigrationStatus.Status> migrateWorkspaces(Authentication authentication) {
+        XSSFSheet sheet;
+        try {
+            logger.info("Initializing sheet...");
+            sheet = openSheet();
+        } catch (IOException | RuntimeException e) {
+            StringUtils.logException(logger, "Error initializing sheet", e);
+            return getStatuses(MigrationStatus.Status.INIT_SHEET_FAILED);
+        }
+
+        Iterator<Row> rowIterator = sheet.iterator();
+        if (!rowIterator.hasNext()) {
+            logger.error("The worksheet is empty. Please provide a correct worksheet!");
+            return getStatuses(MigrationStatus.Status.EMPTY_FILE);
+        }
+
+        String[] header;
+        Map<String, Integer> columnIndexes;
+        int totalTests;
+        SheetReferences references;
+        long traceStart = tracer.begin();
+        try {
+            Row headerRow = rowIterator.next();
+            header = ExcelImportRow.readCells(headerRow);
+            columnIndexes = ExcelImportRow.initRowIndices(headerRow);
+
+            ExcelImportRow.validateUniqueId(sheet.rowIterator(), columnIndexes);
+
+            Iterator<Row> countIterator = sheet.rowIterator();
+            countIterator.next();
+            totalTests = ExcelImportRow.countManualTests(countIterator, columnIndexes);
+
+            Iterator<Row> referenceIterator = sheet.rowIterator();
+            referenceIterator.next();
+            references = SheetReferences.scan(referenceIterator, columnIndexes);
+        } catch (RuntimeException e) {
+            logger.error(String.format("There are initialization failures!\n\t\t%s", e.getMessage()));
+            return getStatuses(MigrationStatus.Status.INCORRECT_FILE);
+        } finally {
+            tracer.end(VALIDATE_SHEET_STAGE, ImportTracer.STAGE_CATEGORY, traceStart, null, 0);
+        }
+
+        if (!rowIterator.hasNext()) {
+            logger.error("There are no tests in the given worksheet. Please provide a correct worksheet!");
+            return getStatuses(MigrationStatus.Status.EMPTY_FILE);
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(workspaces.size(), new WorkspaceThreadFactory());
+        try {
+            Map<Integer, ExcelImporter> importers = new LinkedHashMap<>();
+            Map<Integer, Future<MigrationStatus.Status>> initializations = new LinkedHashMap<>();
+            for (int workspace : workspaces) {
+                ExcelImporter importer = new ExcelImporter(server, sharedSpace, workspace, migrationFile,
+                        defaultUserEmail, settings.forWorkspace(workspace), tracer);
+                importers.put(workspace, importer);
+                initializations.put(workspace, executorService.submit(
+                        inWorkspace(workspace, () -> importer.initWorkspace(authentication))));
+            }
+
+            Map<Integer, MigrationStatus.Status> initStatuses = getResults(initializations);
+
+            TestDescriptionStream stream = new TestDescriptionStream();
+            Map<Integer, Future<MigrationStatus.Status>> migrations = new LinkedHashMap<>();
+            for (int workspace : workspaces) {
+                if (initStatuses.get(workspace) != MigrationStatus.Status.INIT_SUCCESS) {
+                    logger.error(String.format("Workspace %s will not be migrated: %s", workspace, initStatuses.get(workspace)));
+                    continue;
+                }
+
+                ExcelImporter importer = importers.get(workspace);
+                TestDescriptionStream.Cursor cursor = stream.openCursor();
+                migrations.put(workspace, executorService.submit(inWorkspace(workspace, () -> {
+                    try (TestDescriptionStream.Cursor workspaceCursor = cursor) {
+                        importer.createMissingReferences(references);
+                        return importer.migrate(workspaceCursor, header, columnIndexes, totalTests);
+                    }
+                })));
+            }
+
+            if (!migrations.isEmpty()) {
+                logger.info(String.format("Found %s tests to migrate in %s workspaces", totalTests, migrations.size()));
+                publishTests(rowIterator, columnIndexes, stream, tracer);
+            }
+
+            Map<Integer, MigrationStatus.Status> migrationStatuses = getResults(migrations);
+            Map<Integer, MigrationStatus.Status> statuses = new LinkedHashMap<>();
+            for (int workspace : workspaces) {
+                statuses.put(workspace, migrationStatuses.getOrDefault(workspace, initStatuses.get(workspace)));
+            }
+            return statuses;
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Reads the rows of the sheet, after the header, and publishes them as test descriptions (see
+     * {@link TestDescription#group(Iterator, java.util.function.Consumer)}).
+     *
+     * @param rowIterator   - The iterator of the sheet, positioned after the header.
+     * @param columnIndexes - The column indexes of the mandatory fields.
+     * @param stream        - The stream where the descriptions are published.
+     * @param tracer        - The tracer of the import.
+     */
+    static void publishTests(Iterator<Row> rowIterator, Map<String, Integer> columnIndexes, TestDescriptionStream stream,
+                             ImportTracer tracer) {
+        long traceStart = tracer.begin();
+        try {
+            Iterator<ExcelImportRow> rows = new Iterator<ExcelImportRow>() {
+                @Override
+                public boolean hasNext() {
+                    return rowIterator.hasNext();
+                }
+
+                @Override
+                public ExcelImportRow next() {
+                    return new ExcelImportRow(rowIterator.next(), columnIndexes);
+                }
+            };
+            TestDescription.group(rows, stream::publish);
+            stream.finish();
+        } catch (RuntimeException e) {
+            StringUtils.logException(logger, "Error reading the tests of the sheet", e);
+            stream.fail(e);
+        } finally {
+            tracer.end(READ_TESTS_STAGE, ImportTracer.STAGE_CATEGORY, traceStart, null, 0);
+        }
+    }
+
+    /**
+     * Opens the excel sheet. The workbook is read into memory, so the file is closed right away, and the workbook is
+     * kept open until the migration ends.
+     *
+     * @return - The first sheet of the excel file.
+     * @throws IOException - In case the excel cannot be opened
+     */
+    private XSSFSheet openSheet() throws IOException {
+        long traceStart = tracer.begin();
+
+        try (InputStream file = new FileInputStream(migrationFile)) {
+            workbook = new XSSFWorkbook(file);
+            return workbook.getSheetAt(0);
+        } finally {
+            tracer.end(PARSE_SHEET_STAGE, ImportTracer.STAGE_CATEGORY, traceStart, null, 0);
+        }
+    }
+
+    /**
+     * Closes the excel workbook, if it is open.
+     */
+    private void closeSheet() {
+        if (workbook == null) {
+            return;
+        }
+
+        try {
+            workbook.close();
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Error closing the excel file", e);
+        }
+        workbook = null;
+    }
+
+    /**
+     * Runs a task of a workspace with the workspace in the logging context (MDC key "workspace"), so the log lines of
+     * the workspaces can be told apart.
+     *
+     * @param workspace - The workspace.
+     * @param task      - The task.
+     * @return - The task which sets the logging context.
+     */
+    private static Callable<MigrationStatus.Status> inWorkspace(int workspace, Callable<MigrationStatus.Status> task) {
+        return () -> {
+            MDC.put(WORKSPACE_MDC_KEY, Integer.toString(workspace));
+            try {
+                return task.call();
+            } finally {
+                MDC.remove(WORKSPACE_MDC_KEY);
+            }
+        };
+    }
+
+    /**
+     * Waits for the tasks of the workspaces.
+     *
+     * @param tasks - The tasks mapped by their workspace.
+     * @return - The statuses returned by the tasks. A task which failed unexpectedly has the CANNOT_MIGRATE status.
+     */
+    private static Map<Integer, MigrationStatus.Status> getResults(Map<Integer, Future<MigrationStatus.Status>> tasks) {
+        Map<Integer, MigrationStatus.Status> results = new LinkedHashMap<>();
+
+        for (Map.Entry<Integer, Future<MigrationStatus.Status>> task : tasks.entrySet()) {
+            try {
+                results.put(task.getKey(), task.getValue().get());
+            } catch (ExecutionException e) {
+                StringUtils.logException(logger, String.format("Error migrating workspace %s", task.getKey()), e);
+                results.put(task.getKey(), MigrationStatus.Status.CANNOT_MIGRATE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the workspaces", e);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * @param status - A status.
+     * @return - The same status for all the workspaces.
+     */
+    private Map<Integer, MigrationStatus.Status> getStatuses(MigrationStatus.Status status) {
+        Map<Integer, MigrationStatus.Status> statuses = new LinkedHashMap<>();
+        workspaces.forEach(workspace -> statuses.put(workspace, status));
+        return statuses;
+    }
+
+    /**
+     * Writes the recorded spans of all the workspaces if tracing is on.
+     *
+     * @param traceFile - The file where the trace is written or null if the tracing is off.
+     */
+    private void writeTrace(Path traceFile) {
+        if (traceFile == null || !tracer.isEnabled()) {
+            return;
+        }
+
+        try {
+            tracer.write(traceFile);
+            logger.info(String.format("The migration trace was written to %s (%s spans dropped)",
+                    traceFile.toAbsolutePath(), tracer.getDroppedSpans()));
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Unable to write the migration trace", e);
+        }
+    }
+
+    /**
+     * Names the threads which import the workspaces.
+     */
+    private static final class WorkspaceThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "fan-out-" + threadCount.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class contains the metadata of an Octane field which is needed in order to convert the excel values of the
+ * field (i.e. type, referenced entity type, list root and multi-value flag).
+ */
+final class FieldDefinition {
+    static final String LIST_NODE = "list_node";
+    static final String WORKSPACE_USER = "workspace_user";
+    static final String RELEASE = "release";
+
+    /**
+     * The field types which can be imported.
+     */
+    enum FieldType {
+        STRING,
+        LONG,
+        FLOAT,
+        BOOLEAN,
+        DATE,
+        REFERENCE,
+        UNSUPPORTED;
+
+        /**
+         * @param octaneFieldType - The field_type value from the Octane metadata.
+         * @return - The field type used by the importer.
+         */
+        static FieldType fromOctaneFieldType(String octaneFieldType) {
+            switch (octaneFieldType) {
+                case "string":
+                case "memo":
+                    return STRING;
+                case "integer":
+                    return LONG;
+                case "float":
+                    return FLOAT;
+                case "boolean":
+                    return BOOLEAN;
+                case "date":
+                case "date_time":
+                    return DATE;
+                case "reference":
+                    return REFERENCE;
+                default:
+                    return UNSUPPORTED;
+            }
+        }
+    }
+
+    private final String name;
+    private final FieldType fieldType;
+    private final String targetType;
+    private final String listRootLogicalName;
+    private final boolean multiple;
+    private final boolean editable;
+
+    FieldDefinition(String name, FieldType fieldType, String targetType, String listRootLogicalName, boolean multiple, boolean editable) {
+        this.name = name;
+        this.fieldType = fieldType;
+        this.targetType = targetType;
+        this.listRootLogicalName = listRootLogicalName;
+        this.multiple = multiple;
+        this.editable = editable;
+    }
+
+    /**
+     * Parses the response of the metadata/fields request.
+     *
+     * @param json - The response of the request.
+     * @return - The definitions of the fields.
+     */
+    static List<FieldDefinition> parseFields(String json) {
+        JSONArray data = new JSONObject(json).getJSONArray("data");
+        List<FieldDefinition> fieldDefinitions = new ArrayList<>(data.length());
+
+        for (int i = 0; i < data.length(); i++) {
+            JSONObject field = data.getJSONObject(i);
+            JSONObject fieldTypeData = field.optJSONObject("field_type_data");
+
+            String targetType = null;
+            String listRootLogicalName = null;
+            boolean multiple = false;
+
+            if (fieldTypeData != null) {
+                multiple = fieldTypeData.optBoolean("multiple", false);
+                JSONArray targets = fieldTypeData.optJSONArray("targets");
+                if (targets != null && targets.length() > 0) {
+                    targetType = targets.getJSONObject(0).optString("type", null);
+                    listRootLogicalName = targets.getJSONObject(0).optString("logical_name", null);
+                }
+            }
+
+            fieldDefinitions.add(new FieldDefinition(
+                    field.getString("name"),
+                    FieldType.fromOctaneFieldType(field.optString("field_type", "")),
+                    targetType,
+                    listRootLogicalName,
+                    multiple,
+                    field.optBoolean("editable", true)));
+        }
+
+        return fieldDefinitions;
+    }
+
+    /**
+     * @return - The name of the field.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return - The type of the field.
+     */
+    FieldType getFieldType() {
+        return fieldType;
+    }
+
+    /**
+     * @return - The type of the referenced entities or null if the field is not a reference.
+     */
+    String getTargetType() {
+        return targetType;
+    }
+
+    /**
+     * @return - The logical name of the list root for list fields, null otherwise.
+     */
+    String getListRootLogicalName() {
+        return LIST_NODE.equals(targetType) ? listRootLogicalName : null;
+    }
+
+    /**
+     * @return - true if the field can reference more than one entity.
+     */
+    boolean isMultiple() {
+        return multiple;
+    }
+
+    /**
+     * @return - true if the value of the field can be set.
+     */
+    boolean isEditable() {
+        return editable;
+    }
+
+    /**
+     * @return - The name of the collection of the referenced entities (i.e. releases, workspace_users).
+     */
+    String getTargetCollection() {
+        if (targetType == null) {
+            return null;
+        }
+        if (targetType.endsWith("y")) {
+            return targetType.substring(0, targetType.length() - 1) + "ies";
+        }
+        return targetType + "s";
+    }
+}
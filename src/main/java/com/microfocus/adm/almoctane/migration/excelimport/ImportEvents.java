@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+/**
+ * This class emits the Java Flight Recorder events of the import stages and Octane calls, so the stages can be seen
+ * next to the CPU and GC data of a recording. The events are in the "Octane Importer" category.
+ *
+ * If the JVM has no Flight Recorder (i.e. a Java 8 runtime older than 8u262) the events are never created. If JFR is
+ * available but the events are not enabled in a recording, a begin method only checks the event type and returns
+ * null. The end methods do nothing for a null event.
+ */
+final class ImportEvents {
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+    private ImportEvents() {
+    }
+
+    /**
+     * Starts the event for reading the step rows of a test.
+     *
+     * @param uniqueId - The unique id of the test.
+     * @return - The started event or null if the event is not recorded.
+     */
+    static Object beginRowParse(String uniqueId) {
+        return JFR_AVAILABLE ? JfrEvents.beginRowParse(uniqueId) : null;
+    }
+
+    /**
+     * @param event - The event returned by beginRowParse.
+     * @param steps - The number of steps which were read.
+     */
+    static void endRowParse(Object event, int steps) {
+        if (event != null) {
+            JfrEvents.commitRowParse(event, steps);
+        }
+    }
+
+    /**
+     * Starts the event for building the manual test entity from its row.
+     *
+     * @param uniqueId - The unique id of the test.
+     * @return - The started event or null if the event is not recorded.
+     */
+    static Object beginEntityBuild(String uniqueId) {
+        return JFR_AVAILABLE ? JfrEvents.beginEntityBuild(uniqueId) : null;
+    }
+
+    /**
+     * @param event - The event returned by beginEntityBuild.
+     */
+    static void endEntityBuild(Object event) {
+        if (event != null) {
+            JfrEvents.commitEntityBuild(event);
+        }
+    }
+
+    /**
+     * Starts the event for finding the entity referenced by a UDF value.
+     *
+     * @param collection - The collection of the referenced entity (i.e. releases).
+     * @param value      - The UDF value (i.e. the release name).
+     * @return - The started event or null if the event is not recorded.
+     */
+    static Object beginReferenceResolve(String collection, String value) {
+        return JFR_AVAILABLE ? JfrEvents.beginReferenceResolve(collection, value) : null;
+    }
+
+    /**
+     * @param event    - The event returned by beginReferenceResolve.
+     * @param cacheHit - true if the reference was found in the cache, without a request.
+     * @param found    - true if the referenced entity exists.
+     */
+    static void endReferenceResolve(Object event, boolean cacheHit, boolean found) {
+        if (event != null) {
+            JfrEvents.commitReferenceResolve(event, cacheHit, found);
+        }
+    }
+
+    /**
+     * Starts the event for the request which creates an entity.
+     *
+     * @param entityType - The type of the created entity.
+     * @param uniqueId   - The unique id of the test being imported or null.
+     * @return - The started event or null if the event is not recorded.
+     */
+    static Object beginEntityCreate(String entityType, String uniqueId) {
+        return JFR_AVAILABLE ? JfrEvents.beginEntityCreate(entityType, uniqueId) : null;
+    }
+
+    /**
+     * @param event   - The event returned by beginEntityCreate.
+     * @param success - true if the entity was created.
+     */
+    static void endEntityCreate(Object event, boolean success) {
+        if (event != null) {
+            JfrEvents.commitEntityCreate(event, success);
+        }
+    }
+
+    /**
+     * Starts the event for the request which uploads the steps of a test.
+     *
+     * @param testId   - The id of the test.
+     * @param uniqueId - The unique id of the test or null.
+     * @param bytes    - The size of the script request body.
+     * @return - The started event or null if the event is not recorded.
+     */
+    static Object beginScriptUpload(String testId, String uniqueId, long bytes) {
+        return JFR_AVAILABLE ? JfrEvents.beginScriptUpload(testId, uniqueId, bytes) : null;
+    }
+
+    /**
+     * @param event   - The event returned by beginScriptUpload.
+     * @param success - true if the steps were uploaded.
+     */
+    static void endScriptUpload(Object event, boolean success) {
+        if (event != null) {
+            JfrEvents.commitScriptUpload(event, success);
+        }
+    }
+
+    /**
+     * Starts the event for a request which is sent again.
+     *
+     * @param request    - The method and the entity type of the request (i.e. PUT tests).
+     * @param reason     - The reason of the retry.
+     * @param statusCode - The HTTP status of the rejected request.
+     * @return - The started event or null if the event is not recorded.
+     */
+    static Object beginRetry(String request, String reason, int statusCode) {
+        return JFR_AVAILABLE ? JfrEvents.beginRetry(request, reason, statusCode) : null;
+    }
+
+    /**
+     * @param event   - The event returned by beginRetry.
+     * @param success - true if the retried request succeeded.
+     */
+    static void endRetry(Object event, boolean success) {
+        if (event != null) {
+            JfrEvents.commitRetry(event, success);
+        }
+    }
+
+    /**
+     * @return - true if the JVM has the Flight Recorder API.
+     */
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, ImportEvents.class.getClassLoader());
+            return jdk.jfr.FlightRecorder.isAvailable();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class watches an inbox directory and imports the workbooks which are dropped in it, using the warm workspace
+ * sessions of an {@link ImportServer}, so a file is imported shortly after it was exported, without the login and the
+ * metadata loading of a cold start.
+ *
+ * A file is imported only after it is complete: its size and modification time must not change for the settle time.
+ * A file which was already older than the settle time when it showed up (i.e. it was written elsewhere and renamed or
+ * moved into the inbox, which keeps its modification time) is complete and is imported right away.
+ * The file is then moved to the processing directory and imported. When the import ends the file is moved to the done
+ * directory, or to the failed directory if the import could not run, together with its report (the job as JSON, with
+ * the counters and the metrics of the migration). The files left in the processing directory by a stopped watcher are
+ * imported again at the next start.
+ */
+class ImportFolderWatcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ImportFolderWatcher.class);
+
+    static final String PROCESSING_DIRECTORY = "processing";
+    static final String DONE_DIRECTORY = "done";
+    static final String FAILED_DIRECTORY = "failed";
+    static final String REPORT_SUFFIX = ".report.json";
+    private static final String WORKBOOK_EXTENSION = ".xlsx";
+
+    private final ImportServer importServer;
+    private final Path inbox;
+    private final Path processing;
+    private final Path done;
+    private final Path failed;
+    private final int workspace;
+    private final long settleNanos;
+
+    // only used by the watcher thread
+    private final Map<Path, FileState> candidates = new HashMap<>();
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * @param importServer - The server which runs the imports. It is not closed by the watcher.
+     * @param inbox        - The directory where the workbooks are dropped.
+     * @param workspace    - The workspace where the tests are imported.
+     * @param settleMillis - The time the size of a file must not change before the file is imported.
+     */
+    ImportFolderWatcher(final ImportServer importServer,
+                        final Path inbox,
+                        final int workspace,
+                        final long settleMillis) {
+        this.importServer = importServer;
+        this.inbox = inbox.toAbsolutePath();
+        this.processing = this.inbox.resolve(PROCESSING_DIRECTORY);
+        this.done = this.inbox.resolve(DONE_DIRECTORY);
+        this.failed = this.inbox.resolve(FAILED_DIRECTORY);
+        this.workspace = workspace;
+        this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+    }
+
+    /**
+     * Creates the directories, queues the files which are already in the inbox and starts watching it.
+     *
+     * @return - The current ImportFolderWatcher
+     * @throws IOException - In case the directories cannot be created or watched.
+     */
+    ImportFolderWatcher start() throws IOException {
+        Files.createDirectories(processing);
+        Files.createDirectories(done);
+        Files.createDirectories(failed);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(processing)) {
+            for (Path file : files) {
+                logger.info(String.format("Importing again %s, which was not finished", file.getFileName()));
+                move(file, inbox);
+            }
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        inbox.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        scanInbox();
+
+        thread = new Thread(this::watch, "import-folder-watcher");
+        thread.start();
+        logger.info(String.format("Watching %s for workbooks to import into workspace %s", inbox, workspace));
+        return this;
+    }
+
+    /**
+     * Stops watching the inbox. The imports which were already queued are not stopped.
+     */
+    @Override
+    public void close() {
+        if (thread == null) {
+            return;
+        }
+
+        thread.interrupt();
+        try {
+            watchService.close();
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Unable to close the watch service", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Collects the changed files and imports the files which are complete, until the watcher is closed.
+     */
+    private void watch() {
+        long pollNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(10), settleNanos / 2);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.poll(pollNanos, TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            scanInbox();
+                        } else {
+                            addCandidate(inbox.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        logger.error(String.format("The inbox %s is not accessible anymore, the watcher stops", inbox));
+                        return;
+                    }
+                }
+                submitCompleteFiles();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher was closed
+        } catch (IOException | RuntimeException e) {
+            StringUtils.logException(logger, "The inbox watcher failed", e);
+        }
+    }
+
+    /**
+     * Adds all the workbooks from the inbox to the candidates.
+     *
+     * @throws IOException - In case the inbox cannot be read.
+     */
+    private void scanInbox() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inbox)) {
+            for (Path file : files) {
+                addCandidate(file);
+            }
+        }
+    }
+
+    /**
+     * @param file - A file which was created or modified in the inbox.
+     */
+    private void addCandidate(Path file) {
+        if (isWorkbook(file) && !candidates.containsKey(file)) {
+            candidates.put(file, new FileState());
+        }
+    }
+
+    /**
+     * Submits the candidates which are not empty and did not change for the settle time, and forgets the candidates
+     * which were removed.
+     * A file which cannot be moved to the processing directory (i.e. it is still open in the exporter) is tried again
+     * after the settle time.
+     */
+    private void submitCompleteFiles() {
+        long now = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, FileState>> iterator = candidates.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<Path, FileState> candidate = iterator.next();
+            Path file = candidate.getKey();
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                iterator.remove();
+                continue;
+            }
+            if (!attributes.isRegularFile()) {
+                iterator.remove();
+                continue;
+            }
+
+            // an empty file was created but not written yet
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (attributes.size() == 0 || (candidate.getValue().update(attributes.size(), modified, now) < settleNanos
+                    && !candidate.getValue().arrivedComplete(modified, nowMillis, settleNanos))) {
+                continue;
+            }
+
+            Path moved;
+            try {
+                moved = move(file, processing);
+            } catch (IOException e) {
+                StringUtils.logException(logger, String.format("Unable to move %s, it will be tried again", file.getFileName()), e);
+                candidate.getValue().reset();
+                continue;
+            }
+            iterator.remove();
+            submit(moved);
+        }
+    }
+
+    /**
+     * Queues the import of a file and moves the file to the done or failed directory when the import ends.
+     *
+     * @param file - The file from the processing directory.
+     */
+    private void submit(Path file) {
+        ImportJob job = importServer.submit(file, workspace, 0, importServer.getSettings().getRequestWeight());
+        logger.info(String.format("Queued %s as job %s", file.getFileName(), job.getId()));
+        job.getCompletion().thenAccept(this::archive);
+    }
+
+    /**
+     * Moves the file of a job to the done or failed directory and writes the report of the job next to it.
+     *
+     * @param job - The finished job.
+     */
+    private void archive(ImportJob job) {
+        Path directory = job.getState() == ImportJob.State.FINISHED ? done : failed;
+        try {
+            Path archived = move(job.getFile(), directory);
+            Files.write(archived.resolveSibling(archived.getFileName() + REPORT_SUFFIX),
+                    job.toJson(true).toString(2).getBytes(StandardCharsets.UTF_8));
+            logger.info(String.format("Job %s ended with %s, the file was moved to %s", job.getId(), job.getStatus(), archived));
+        } catch (IOException e) {
+            StringUtils.logException(logger, String.format("Unable to archive the file of job %s", job.getId()), e);
+        }
+    }
+
+    /**
+     * Moves a file to a directory. If the directory already has a file with the same name, the current time is added
+     * to the name.
+     *
+     * @param file      - The file.
+     * @param directory - The directory.
+     * @return - The moved file.
+     * @throws IOException - In case the file cannot be moved.
+     */
+    private static Path move(Path file, Path directory) throws IOException {
+        String name = file.getFileName().toString();
+        Path target = directory.resolve(name);
+        if (Files.exists(target)) {
+            int extension = name.lastIndexOf('.');
+            target = directory.resolve(name.substring(0, extension) + "-" + System.currentTimeMillis() + name.substring(extension));
+        }
+
+        try {
+            return Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            return Files.move(file, target);
+        }
+    }
+
+    /**
+     * @param file - A file from the inbox.
+     * @return - true if the file is a workbook, and not a temporary file of the office applications.
+     */
+    private static boolean isWorkbook(Path file) {
+        String name = file.getFileName().toString();
+        return name.toLowerCase(Locale.ROOT).endsWith(WORKBOOK_EXTENSION) && !name.startsWith("~$") && !name.startsWith(".");
+    }
+
+    /**
+     * The size and the modification time of a candidate file, and since when they did not change.
+     */
+    private static final class FileState {
+        private long size = -1;
+        private long modified = -1;
+        private long stableSince;
+        private boolean firstUpdate = true;
+
+        /**
+         * @param size     - The current size of the file.
+         * @param modified - The current modification time of the file.
+         * @param now      - The current time.
+         * @return - The time since the file did not change.
+         */
+        long update(long size, long modified, long now) {
+            if (size != this.size || modified != this.modified) {
+                this.size = size;
+                this.modified = modified;
+                this.stableSince = now;
+            }
+            return now - stableSince;
+        }
+
+        /**
+         * Tells if the file was already complete when it was first seen, i.e. it was renamed or moved into the inbox.
+         * A file which is still being written has a recent modification time, so it must wait for the settle time.
+         *
+         * @param modified    - The current modification time of the file.
+         * @param nowMillis   - The current wall clock time.
+         * @param settleNanos - The settle time.
+         * @return - true only at the first update, if the file was not modified for the settle time.
+         */
+        boolean arrivedComplete(long modified, long nowMillis, long settleNanos) {
+            boolean first = firstUpdate;
+            firstUpdate = false;
+            return first && TimeUnit.MILLISECONDS.toNanos(nowMillis - modified) >= settleNanos;
+        }
+
+        /**
+         * Forgets the size and the modification time, so the file must be stable for the settle time again.
+         */
+        void reset() {
+            size = -1;
+            modified = -1;
+            firstUpdate = false;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.json.JSONObject;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class contains an import submitted to the {@link ImportServer}: the file, the target workspace and the
+ * progress of the import. The counters and the metrics are read from the status of the migration while it runs.
+ */
+final class ImportJob {
+    /**
+     * The states of a job.
+     */
+    enum State {
+        QUEUED,
+        RUNNING,
+        FINISHED,
+        FAILED
+    }
+
+    private final String id;
+    private final Path file;
+    private final int workspace;
+    private final ImportSettings settings;
+    private final Instant submittedAt = Instant.now();
+    private volatile State state = State.QUEUED;
+    private volatile MigrationStatus.Status status;
+    private volatile MigrationStatus migrationStatus;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private final CompletableFuture<ImportJob> completion = new CompletableFuture<>();
+
+    ImportJob(String id, Path file, int workspace, ImportSettings settings) {
+        this.id = id;
+        this.file = file;
+        this.workspace = workspace;
+        this.settings = settings;
+    }
+
+    /**
+     * Marks the job as running.
+     *
+     * @param migrationStatus - The status of the migration which runs the job.
+     */
+    void started(MigrationStatus migrationStatus) {
+        this.migrationStatus = migrationStatus;
+        this.startedAt = Instant.now();
+        this.state = State.RUNNING;
+    }
+
+    /**
+     * Marks the job as finished. The job is failed if the migration could not start.
+     *
+     * @param status - The final status of the migration.
+     */
+    void finished(MigrationStatus.Status status) {
+        this.status = status;
+        this.finishedAt = Instant.now();
+        this.state = isMigrated(status) ? State.FINISHED : State.FAILED;
+        completion.complete(this);
+    }
+
+    String getId() {
+        return id;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    int getWorkspace() {
+        return workspace;
+    }
+
+    ImportSettings getSettings() {
+        return settings;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    /**
+     * @return - A future which is completed with the job when the job has finished or failed.
+     */
+    CompletableFuture<ImportJob> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * @return - The final status of the migration or null if the job did not finish.
+     */
+    MigrationStatus.Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return - The metrics of the migration or null if the job did not start.
+     */
+    ImportMetrics getMetrics() {
+        MigrationStatus current = migrationStatus;
+        return current != null ? current.getMetrics() : null;
+    }
+
+    /**
+     * @param withMetrics - true in order to include the metrics of the migration.
+     * @return - The job as JSON.
+     */
+    JSONObject toJson(boolean withMetrics) {
+        JSONObject json = new JSONObject()
+                .put("id", id)
+                .put("file", file.toString())
+                .put("workspace", workspace)
+                .put("state", state.name())
+                .put("submitted_at", submittedAt.toString());
+
+        MigrationStatus current = migrationStatus;
+        if (current != null) {
+            json.put("started_at", startedAt.toString())
+                    .put("migrated_tests", current.getMigratedTests())
+                    .put("failed_tests", current.getFailedTests())
+                    .put("uploaded_steps", current.getUploadedSteps())
+                    .put("failed_steps", current.getFailedSteps());
+        }
+        if (finishedAt != null) {
+            json.put("finished_at", finishedAt.toString())
+                    .put("status", status.name());
+            if (startedAt != null) {
+                json.put("duration_ms", finishedAt.toEpochMilli() - startedAt.toEpochMilli());
+            }
+        }
+        if (withMetrics && current != null) {
+            json.put("metrics", current.getMetrics().toJson());
+        }
+
+        return json;
+    }
+
+    /**
+     * @param status - The final status of a migration.
+     * @return - true if the migration ran, even if not all the tests were migrated.
+     */
+    private static boolean isMigrated(MigrationStatus.Status status) {
+        switch (status) {
+            case SUCCESS:
+            case NOT_ALL_TESTS_WERE_MIGRATED:
+            case NOT_ALL_STEPS_WERE_UPLOADED:
+            case NOT_ALL_TESTS_AND_STEPS_WERE_MIGRATED:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is the registry of the migration metrics: counters and latency histograms, optionally split by labels
+ * (i.e. the HTTP method and the entity type of an Octane request). The metrics are updated without locks.
+ *
+ * At the end of the migration the metrics can be written as JSON and in the Prometheus text format.
+ */
+final class ImportMetrics {
+    static final String TESTS_MIGRATED = "importer_tests_migrated_total";
+    static final String TESTS_FAILED = "importer_tests_failed_total";
+    static final String STEPS_UPLOADED = "importer_steps_uploaded_total";
+    static final String STEPS_FAILED = "importer_steps_failed_total";
+    static final String HTTP_REQUESTS = "importer_http_requests_total";
+    static final String HTTP_REQUEST_DURATION = "importer_http_request_duration_seconds";
+    static final String HTTP_REQUEST_QUEUE_DURATION = "importer_http_request_queue_seconds";
+    static final String STAGE_DURATION = "importer_stage_duration_seconds";
+
+    static final String METHOD_LABEL = "method";
+    static final String ENTITY_LABEL = "entity";
+    static final String OUTCOME_LABEL = "outcome";
+    static final String STAGE_LABEL = "stage";
+    static final String TRAFFIC_CLASS_LABEL = "traffic_class";
+
+    static final String JSON_FILE_NAME = "metrics.json";
+    static final String PROMETHEUS_FILE_NAME = "metrics.prom";
+
+    private final ConcurrentMap<String, Series<LongAdder>> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Series<LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+    private final LongAdder inFlightRequests = new LongAdder();
+
+    /**
+     * Increments a counter.
+     *
+     * @param name   - The name of the counter.
+     * @param labels - The label names and values, alternating (i.e. "method", "GET").
+     */
+    void increment(String name, String... labels) {
+        counter(name, labels).increment();
+    }
+
+    /**
+     * Adds a value to a counter.
+     *
+     * @param name   - The name of the counter.
+     * @param value  - The value which is added.
+     * @param labels - The label names and values, alternating (i.e. "method", "GET").
+     */
+    void add(String name, long value, String... labels) {
+        counter(name, labels).add(value);
+    }
+
+    /**
+     * Records a duration in a histogram.
+     *
+     * @param name   - The name of the histogram.
+     * @param nanos  - The duration in nanoseconds.
+     * @param labels - The label names and values, alternating (i.e. "stage", "create_test").
+     */
+    void record(String name, long nanos, String... labels) {
+        String key = key(name, labels);
+        Series<LatencyHistogram> series = histograms.get(key);
+        if (series == null) {
+            series = histograms.computeIfAbsent(key, k -> new Series<>(name, labels, new LatencyHistogram()));
+        }
+        series.value.record(nanos);
+    }
+
+    /**
+     * Records the time passed since the given start in the stage duration histogram.
+     *
+     * @param stage      - The name of the pipeline stage.
+     * @param startNanos - The value of System.nanoTime() when the stage started.
+     */
+    void recordStage(String stage, long startNanos) {
+        record(STAGE_DURATION, System.nanoTime() - startNanos, STAGE_LABEL, stage);
+    }
+
+    /**
+     * Marks the start of a request to Octane.
+     */
+    void requestStarted() {
+        inFlightRequests.increment();
+    }
+
+    /**
+     * Marks the end of a request to Octane.
+     */
+    void requestFinished() {
+        inFlightRequests.decrement();
+    }
+
+    /**
+     * @return - The number of requests to Octane which are executing.
+     */
+    long getInFlightRequests() {
+        return inFlightRequests.sum();
+    }
+
+    /**
+     * @param name   - The name of the counter.
+     * @param labels - The label names and values, alternating.
+     * @return - The current value of the counter.
+     */
+    long getCount(String name, String... labels) {
+        Series<LongAdder> series = counters.get(key(name, labels));
+        return series == null ? 0 : series.value.sum();
+    }
+
+    /**
+     * @param name   - The name of the histogram.
+     * @param labels - The label names and values, alternating.
+     * @return - The current values of the histogram or null if nothing was recorded.
+     */
+    LatencyHistogram.Snapshot getHistogram(String name, String... labels) {
+        Series<LatencyHistogram> series = histograms.get(key(name, labels));
+        return series == null ? null : series.value.snapshot();
+    }
+
+    /**
+     * @return - The metrics as a JSON object.
+     */
+    JSONObject toJson() {
+        JSONArray countersJson = new JSONArray();
+        for (Series<LongAdder> series : sorted(counters)) {
+            countersJson.put(new JSONObject()
+                    .put("name", series.name)
+                    .put("labels", series.labelsJson())
+                    .put("value", series.value.sum()));
+        }
+
+        JSONArray histogramsJson = new JSONArray();
+        for (Series<LatencyHistogram> series : sorted(histograms)) {
+            LatencyHistogram.Snapshot snapshot = series.value.snapshot();
+
+            JSONObject buckets = new JSONObject();
+            long cumulative = 0;
+            for (int i = 0; i < snapshot.getBucketsNumber(); i++) {
+                cumulative += snapshot.getBucketCount(i);
+                buckets.put(bucketLabel(i), cumulative);
+            }
+
+            histogramsJson.put(new JSONObject()
+                    .put("name", series.name)
+                    .put("labels", series.labelsJson())
+                    .put("count", snapshot.getCount())
+                    .put("sum_ms", snapshot.getSumNanos() / 1_000_000.0)
+                    .put("mean_ms", snapshot.getMeanMillis())
+                    .put("p50_ms", snapshot.getPercentileMillis(0.5))
+                    .put("p95_ms", snapshot.getPercentileMillis(0.95))
+                    .put("p99_ms", snapshot.getPercentileMillis(0.99))
+                    .put("max_ms", snapshot.getMaxNanos() / 1_000_000.0)
+                    .put("buckets_ms", buckets));
+        }
+
+        return new JSONObject()
+                .put("counters", countersJson)
+                .put("histograms", histogramsJson);
+    }
+
+    /**
+     * @return - The metrics in the Prometheus text format.
+     */
+    String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+
+        String lastName = null;
+        for (Series<LongAdder> series : sorted(counters)) {
+            if (!series.name.equals(lastName)) {
+                sb.append("# TYPE ").append(series.name).append(" counter\n");
+                lastName = series.name;
+            }
+            sb.append(series.name).append(series.labelsPrometheus(null)).append(' ').append(series.value.sum()).append('\n');
+        }
+
+        lastName = null;
+        for (Series<LatencyHistogram> series : sorted(histograms)) {
+            if (!series.name.equals(lastName)) {
+                sb.append("# TYPE ").append(series.name).append(" histogram\n");
+                lastName = series.name;
+            }
+
+            LatencyHistogram.Snapshot snapshot = series.value.snapshot();
+            long cumulative = 0;
+            for (int i = 0; i < snapshot.getBucketsNumber(); i++) {
+                cumulative += snapshot.getBucketCount(i);
+                String le = i < LatencyHistogram.BUCKET_BOUNDS_MILLIS.length
+                        ? Double.toString(LatencyHistogram.BUCKET_BOUNDS_MILLIS[i] / 1000.0)
+                        : "+Inf";
+                sb.append(series.name).append("_bucket").append(series.labelsPrometheus(le)).append(' ').append(cumulative).append('\n');
+            }
+            sb.append(series.name).append("_sum").append(series.labelsPrometheus(null)).append(' ')
+                    .append(snapshot.getSumNanos() / 1_000_000_000.0).append('\n');
+            sb.append(series.name).append("_count").append(series.labelsPrometheus(null)).append(' ')
+                    .append(snapshot.getCount()).append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Writes the metrics.json and metrics.prom files in the given directory.
+     *
+     * @param directory - The directory where the files are written. It is created if it does not exist.
+     * @throws IOException - In case the files cannot be written.
+     */
+    void export(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(JSON_FILE_NAME), StandardCharsets.UTF_8)) {
+            writer.write(toJson().toString(2));
+        }
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(PROMETHEUS_FILE_NAME), StandardCharsets.UTF_8)) {
+            writer.write(toPrometheus());
+        }
+    }
+
+    /**
+     * Logs the number of calls and the latency of every HTTP operation and pipeline stage.
+     *
+     * @param logger - The logger used for logging the summary.
+     */
+    void logSummary(Logger logger) {
+        List<Series<LatencyHistogram>> series = sorted(histograms);
+        if (series.isEmpty()) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Series<LatencyHistogram> histogram : series) {
+            LatencyHistogram.Snapshot snapshot = histogram.value.snapshot();
+            sb.append(String.format("\t\t\t%s%s count: %s, mean: %.1f ms, p95: %.1f ms, max: %.1f ms\n",
+                    histogram.name, histogram.labelsPrometheus(null), snapshot.getCount(), snapshot.getMeanMillis(),
+                    snapshot.getPercentileMillis(0.95), snapshot.getMaxNanos() / 1_000_000.0));
+        }
+
+        logger.info("Migration timings:\n" + sb.toString());
+    }
+
+    private LongAdder counter(String name, String... labels) {
+        String key = key(name, labels);
+        Series<LongAdder> series = counters.get(key);
+        if (series == null) {
+            series = counters.computeIfAbsent(key, k -> new Series<>(name, labels, new LongAdder()));
+        }
+        return series.value;
+    }
+
+    private static String key(String name, String... labels) {
+        if (labels.length == 0) {
+            return name;
+        }
+
+        StringBuilder sb = new StringBuilder(name);
+        for (String label : labels) {
+            sb.append('\u0000').append(label);
+        }
+        return sb.toString();
+    }
+
+    private static <T> List<Series<T>> sorted(ConcurrentMap<String, Series<T>> seriesMap) {
+        List<Map.Entry<String, Series<T>>> entries = new ArrayList<>(seriesMap.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+
+        List<Series<T>> series = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Series<T>> entry : entries) {
+            series.add(entry.getValue());
+        }
+        return series;
+    }
+
+    private static String bucketLabel(int index) {
+        return index < LatencyHistogram.BUCKET_BOUNDS_MILLIS.length
+                ? Long.toString(LatencyHistogram.BUCKET_BOUNDS_MILLIS[index])
+                : "+Inf";
+    }
+
+    /**
+     * A metric together with its name and labels.
+     */
+    private static final class Series<T> {
+        private final String name;
+        private final String[] labels;
+        private final T value;
+
+        Series(String name, String[] labels, T value) {
+            if (labels.length % 2 != 0) {
+                throw new IllegalArgumentException(String.format("The labels of the metric \"%s\" must be name and value pairs", name));
+            }
+            this.name = name;
+            this.labels = labels.clone();
+            this.value = value;
+        }
+
+        JSONObject labelsJson() {
+            JSONObject json = new JSONObject();
+            for (int i = 0; i < labels.length; i += 2) {
+                json.put(labels[i], labels[i + 1]);
+            }
+            return json;
+        }
+
+        String labelsPrometheus(String le) {
+            if (labels.length == 0 && le == null) {
+                return "";
+            }
+
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(labels[i]).append("=\"");
+                appendPrometheusEscaped(sb, labels[i + 1]);
+                sb.append('"');
+            }
+            if (le != null) {
+                if (labels.length > 0) {
+                    sb.append(',');
+                }
+                sb.append("le=\"").append(le).append('"');
+            }
+            return sb.append('}').toString();
+        }
+
+        private static void appendPrometheusEscaped(StringBuilder sb, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\' || c == '"') {
+                    sb.append('\\').append(c);
+                } else if (c == '\n') {
+                    sb.append("\\n");
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.authentication.Authentication;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is a long running importer which accepts import jobs over a local HTTP/JSON endpoint. The clients of every
+ * workspace stay logged in and the metadata of the workspace is cached between the jobs (see {@link WorkspaceSession}),
+ * so a small import does not pay for the login and for loading the metadata.
+ *
+ * The jobs of a workspace run one after the other, the jobs of different workspaces run concurrently. The endpoint is
+ * bound to the loopback interface:
+ * <ul>
+ * <li>POST /jobs with {"file": "/path/tests.xlsx", "workspace": 1002} submits a job, optionally with
+ * "progress_interval_seconds" and "request_weight"</li>
+ * <li>GET /jobs lists the jobs</li>
+ * <li>GET /jobs/{id} returns the state, the counters and the metrics of a job</li>
+ * <li>GET /jobs/{id}/metrics returns the metrics of a job in the Prometheus text format</li>
+ * </ul>
+ */
+class ImportServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ImportServer.class);
+
+    private static final String JOBS_PATH = "/jobs";
+    private static final String METRICS_PATH = "/metrics";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String TEXT_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int MAX_RETAINED_JOBS = 1000;
+
+    private final String server;
+    private final int sharedSpace;
+    private final String defaultUserEmail;
+    private final Authentication authentication;
+    private final ImportSettings settings;
+    private final long metadataTtlMillis;
+
+    private final AtomicLong jobCount = new AtomicLong();
+    private final Map<String, ImportJob> jobs = new LinkedHashMap<>();
+    private final Map<Integer, ExecutorService> workspaceExecutors = new HashMap<>();
+    private final Map<Integer, WorkspaceSession> sessions = new HashMap<>();
+    private HttpServer httpServer;
+
+    /**
+     * @param server            - The Octane server.
+     * @param sharedSpace       - The shared space of the workspaces.
+     * @param defaultUserEmail  - The email of the default user.
+     * @param authentication    - The authentication used for all the workspaces.
+     * @param settings          - The settings of the imports. The tracing and the traffic recording are not used.
+     * @param metadataTtlMillis - The time after which the metadata of a workspace is loaded again.
+     */
+    public ImportServer(final String server,
+                        final int sharedSpace,
+                        final String defaultUserEmail,
+                        final Authentication authentication,
+                        final ImportSettings settings,
+                        final long metadataTtlMillis) {
+        this.server = server;
+        this.sharedSpace = sharedSpace;
+        this.defaultUserEmail = defaultUserEmail;
+        this.authentication = authentication;
+        this.settings = settings;
+        this.metadataTtlMillis = metadataTtlMillis;
+    }
+
+    /**
+     * Starts the HTTP endpoint.
+     *
+     * @param port - The port, 0 for any free port.
+     * @return - The current ImportServer
+     * @throws IOException - In case the port cannot be bound.
+     */
+    public ImportServer start(int port) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext(JOBS_PATH, this::handle);
+        httpServer.start();
+        logger.info(String.format("The import server is listening on http://localhost:%s%s", getPort(), JOBS_PATH));
+        return this;
+    }
+
+    /**
+     * @return - The port of the HTTP endpoint.
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Queues an import job.
+     *
+     * @param file                    - The excel file.
+     * @param workspace               - The workspace where the tests are imported.
+     * @param progressIntervalSeconds - The interval of the progress reports of the job, 0 turns them off.
+     * @param requestWeight           - The share of the request budget of the job.
+     * @return - The queued job.
+     */
+    ImportJob submit(Path file, int workspace, int progressIntervalSeconds, double requestWeight) {
+        String id = Long.toString(jobCount.incrementAndGet());
+        ImportJob job = new ImportJob(id, file, workspace,
+                settings.forJob(id, progressIntervalSeconds).requestWeight(requestWeight));
+
+        synchronized (this) {
+            jobs.put(job.getId(), job);
+            removeOldJobs();
+            workspaceExecutors.computeIfAbsent(workspace, this::createWorkspaceExecutor).execute(() -> run(job));
+        }
+
+        logger.info(String.format("Queued job %s: %s => workspace %s", job.getId(), file, workspace));
+        return job;
+    }
+
+    /**
+     * @return - The settings of the imports.
+     */
+    ImportSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * @param id - The id of the job.
+     * @return - The job or null if it does not exist.
+     */
+    synchronized ImportJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Stops the HTTP endpoint and signs out of the workspaces. The queued jobs are dropped and the running jobs are
+     * interrupted.
+     */
+    @Override
+    public void close() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+
+        List<ExecutorService> executors;
+        synchronized (this) {
+            executors = new ArrayList<>(workspaceExecutors.values());
+        }
+        for (ExecutorService executor : executors) {
+            executor.shutdownNow();
+        }
+        try {
+            for (ExecutorService executor : executors) {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            sessions.values().forEach(WorkspaceSession::close);
+            sessions.clear();
+        }
+        logger.info("The import server was stopped");
+    }
+
+    /**
+     * Runs a job in the thread of its workspace.
+     *
+     * @param job - The job.
+     */
+    private void run(ImportJob job) {
+        ExcelImporter excelImporter = new ExcelImporter(server, sharedSpace, job.getWorkspace(),
+                job.getFile().toFile(), defaultUserEmail, job.getSettings());
+        job.started(excelImporter.getMigrationStatus());
+        logger.info(String.format("Started job %s", job.getId()));
+
+        MigrationStatus.Status status;
+        try {
+            WorkspaceSession session = getSession(job.getWorkspace());
+            if (session == null) {
+                status = MigrationStatus.Status.INIT_OCTANE_FAILED;
+            } else {
+                status = excelImporter.init(session);
+                if (status == MigrationStatus.Status.INIT_SUCCESS) {
+                    status = excelImporter.migrate();
+                } else if (status != MigrationStatus.Status.INIT_SHEET_FAILED) {
+                    session.invalidateMetadata();
+                }
+            }
+        } catch (RuntimeException e) {
+            StringUtils.logException(logger, String.format("Job %s failed", job.getId()), e);
+            status = MigrationStatus.Status.CANNOT_MIGRATE;
+        }
+
+        job.finished(status);
+        logger.info(String.format("Finished job %s: %s", job.getId(), status));
+    }
+
+    /**
+     * Returns the session of a workspace, logging in the first time the workspace is used.
+     *
+     * @param workspace - The workspace.
+     * @return - The session or null if the login failed.
+     */
+    private WorkspaceSession getSession(int workspace) {
+        synchronized (this) {
+            WorkspaceSession session = sessions.get(workspace);
+            if (session != null) {
+                return session;
+            }
+        }
+
+        WorkspaceSession session;
+        try {
+            session = WorkspaceSession.open(server, sharedSpace, workspace, authentication, settings, metadataTtlMillis);
+        } catch (Exception e) {
+            StringUtils.logException(logger, String.format("Unable to log in to workspace %s", workspace), e);
+            return null;
+        }
+
+        synchronized (this) {
+            sessions.put(workspace, session);
+        }
+        return session;
+    }
+
+    /**
+     * @param workspace - The workspace.
+     * @return - The executor which runs the jobs of the workspace one after the other.
+     */
+    private ExecutorService createWorkspaceExecutor(int workspace) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "import-workspace-" + workspace);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Forgets the oldest finished jobs when there are too many jobs.
+     */
+    private void removeOldJobs() {
+        Iterator<ImportJob> iterator = jobs.values().iterator();
+        while (jobs.size() > MAX_RETAINED_JOBS && iterator.hasNext()) {
+            ImportJob.State state = iterator.next().getState();
+            if (state == ImportJob.State.FINISHED || state == ImportJob.State.FAILED) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Handles the requests of the job API.
+     *
+     * @param exchange - The HTTP exchange.
+     * @throws IOException - In case the response cannot be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+
+            if (path.equals(JOBS_PATH) || path.equals(JOBS_PATH + "/")) {
+                if ("POST".equals(method)) {
+                    handleSubmit(exchange);
+                } else if ("GET".equals(method)) {
+                    handleList(exchange);
+                } else {
+                    sendError(exchange, 405, "Method not allowed");
+                }
+                return;
+            }
+
+            if (!"GET".equals(method)) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            String jobPath = path.substring(JOBS_PATH.length() + 1);
+            boolean metrics = jobPath.endsWith(METRICS_PATH);
+            ImportJob job = getJob(metrics ? jobPath.substring(0, jobPath.length() - METRICS_PATH.length()) : jobPath);
+            if (job == null) {
+                sendError(exchange, 404, "Job not found");
+            } else if (metrics) {
+                ImportMetrics jobMetrics = job.getMetrics();
+                send(exchange, 200, TEXT_CONTENT_TYPE, jobMetrics != null ? jobMetrics.toPrometheus() : "");
+            } else {
+                send(exchange, 200, JSON_CONTENT_TYPE, job.toJson(true).toString());
+            }
+        } catch (RuntimeException e) {
+            StringUtils.logException(logger, "Error handling the request", e);
+            sendError(exchange, 500, String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Submits the job described by the request body.
+     *
+     * @param exchange - The HTTP exchange.
+     * @throws IOException - In case the request cannot be read or the response cannot be sent.
+     */
+    private void handleSubmit(HttpExchange exchange) throws IOException {
+        JSONObject request;
+        try {
+            request = new JSONObject(readBody(exchange.getRequestBody()));
+        } catch (JSONException e) {
+            sendError(exchange, 400, "The body is not a JSON object: " + e.getMessage());
+            return;
+        }
+
+        if (!request.has("file") || !request.has("workspace")) {
+            sendError(exchange, 400, "The \"file\" and \"workspace\" fields are mandatory");
+            return;
+        }
+
+        int workspace = request.optInt("workspace", 0);
+        if (workspace <= 0) {
+            sendError(exchange, 400, "The \"workspace\" field must be a positive number");
+            return;
+        }
+
+        Path file = Paths.get(request.getString("file"));
+        if (!Files.isRegularFile(file)) {
+            sendError(exchange, 400, String.format("The file %s does not exist", file));
+            return;
+        }
+
+        double requestWeight = request.optDouble("request_weight", settings.getRequestWeight());
+        if (!(requestWeight > 0)) {
+            sendError(exchange, 400, "The \"request_weight\" field must be bigger than 0");
+            return;
+        }
+
+        ImportJob job = submit(file, workspace,
+                request.optInt("progress_interval_seconds", settings.getProgressIntervalSeconds()), requestWeight);
+        send(exchange, 202, JSON_CONTENT_TYPE, job.toJson(false).toString());
+    }
+
+    /**
+     * Sends the list of the jobs.
+     *
+     * @param exchange - The HTTP exchange.
+     * @throws IOException - In case the response cannot be sent.
+     */
+    private void handleList(HttpExchange exchange) throws IOException {
+        JSONArray jobsJson = new JSONArray();
+        synchronized (this) {
+            jobs.values().forEach(job -> jobsJson.put(job.toJson(false)));
+        }
+        send(exchange, 200, JSON_CONTENT_TYPE, new JSONObject().put("jobs", jobsJson).toString());
+    }
+
+    private static void sendError(HttpExchange exchange, int statusCode, String message) throws IOException {
+        send(exchange, statusCode, JSON_CONTENT_TYPE, new JSONObject().put("error", message).toString());
+    }
+
+    private static void send(HttpExchange exchange, int statusCode, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static String readBody(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
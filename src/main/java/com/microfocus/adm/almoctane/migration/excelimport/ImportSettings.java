@@ -0,0 +1,268 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.json.JSONObject;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * This class contains the optional settings of an import. The default values keep the behaviour of a plain import.
+ */
+class ImportSettings {
+    private boolean compressRequests = false;
+    private int compressionThresholdBytes = 64 * 1024;
+    private Path metricsDirectory = null;
+    private int progressIntervalSeconds = 30;
+    private Path traceFile = null;
+    private int traceCapacity = 1 << 16;
+    private Path recordTrafficFile = null;
+    private Path replayTrafficFile = null;
+    private double replayLatencyScale = 1;
+    private double requestWeight = 1;
+
+    /**
+     * Turns on the gzip compression of the request bodies which are at least as big as the threshold.
+     *
+     * @param thresholdBytes - The minimum size of a request body which is compressed.
+     * @return - The current ImportSettings
+     */
+    public ImportSettings compressRequests(int thresholdBytes) {
+        this.compressRequests = true;
+        this.compressionThresholdBytes = thresholdBytes;
+        return this;
+    }
+
+    /**
+     * Turns on the export of the migration metrics. At the end of the migration the metrics are written in the
+     * metrics.json and metrics.prom (Prometheus text format) files.
+     *
+     * @param directory - The directory where the metrics files are written.
+     * @return - The current ImportSettings
+     */
+    public ImportSettings exportMetrics(String directory) {
+        this.metricsDirectory = Paths.get(directory);
+        return this;
+    }
+
+    /**
+     * @return - The directory where the metrics are written or null if the metrics are not exported.
+     */
+    Path getMetricsDirectory() {
+        return metricsDirectory;
+    }
+
+    /**
+     * Changes the interval of the progress reports logged during the migration.
+     *
+     * @param intervalSeconds - The interval in seconds. A value of 0 turns the progress reports off.
+     * @return - The current ImportSettings
+     */
+    public ImportSettings reportProgress(int intervalSeconds) {
+        this.progressIntervalSeconds = intervalSeconds;
+        return this;
+    }
+
+    /**
+     * @return - The interval of the progress reports in seconds, 0 if the progress is not reported.
+     */
+    int getProgressIntervalSeconds() {
+        return progressIntervalSeconds;
+    }
+
+    /**
+     * Turns on the tracing of the Octane requests and of the import stages. At the end of the migration the spans are
+     * written in the Chrome trace event format. When more spans are recorded than the capacity, the oldest are dropped.
+     *
+     * @param file     - The file where the trace is written.
+     * @param capacity - The number of spans which are kept.
+     * @return - The current ImportSettings
+     */
+    public ImportSettings trace(String file, int capacity) {
+        this.traceFile = Paths.get(file);
+        this.traceCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * @return - The file where the trace is written or null if the tracing is off.
+     */
+    Path getTraceFile() {
+        return traceFile;
+    }
+
+    /**
+     * @return - The number of spans which are kept.
+     */
+    int getTraceCapacity() {
+        return traceCapacity;
+    }
+
+    /**
+     * Turns on the recording of the Octane requests and of their responses in a cassette file, which can be replayed
+     * later with {@link #replayTraffic(String, double)}.
+     *
+     * @param file - The cassette file.
+     * @return - The current ImportSettings
+     */
+    public ImportSettings recordTraffic(String file) {
+        this.recordTrafficFile = Paths.get(file);
+        return this;
+    }
+
+    /**
+     * @return - The cassette file where the traffic is recorded or null if the traffic is not recorded.
+     */
+    Path getRecordTrafficFile() {
+        return recordTrafficFile;
+    }
+
+    /**
+     * Serves the Octane responses from a recorded cassette file instead of sending the requests to the server.
+     *
+     * @param file         - The cassette file.
+     * @param latencyScale - The multiplier of the recorded request durations (1 keeps the original latency, 0 turns
+     *                     it off).
+     * @return - The current ImportSettings
+     */
+    public ImportSettings replayTraffic(String file, double latencyScale) {
+        this.replayTrafficFile = Paths.get(file);
+        this.replayLatencyScale = latencyScale;
+        return this;
+    }
+
+    /**
+     * @return - The cassette file which is replayed or null if the requests are sent to the server.
+     */
+    Path getReplayTrafficFile() {
+        return replayTrafficFile;
+    }
+
+    /**
+     * @return - The multiplier of the recorded request durations.
+     */
+    double getReplayLatencyScale() {
+        return replayLatencyScale;
+    }
+
+    /**
+     * Changes the share of the request budget which the import gets when the {@link RequestScheduler} is on. An import
+     * with the weight 2 sends twice as many requests as an import with the weight 1 of the same workspace while both
+     * are waiting for the budget.
+     *
+     * @param weight - The weight of the import, bigger than 0.
+     * @return - The current ImportSettings
+     */
+    public ImportSettings requestWeight(double weight) {
+        this.requestWeight = weight;
+        return this;
+    }
+
+    /**
+     * @return - The weight of the import in the request scheduling.
+     */
+    double getRequestWeight() {
+        return requestWeight;
+    }
+
+    /**
+     * Creates the settings of one workspace of a fan-out import. The metrics are written in a sub-directory of the
+     * metrics directory, the cassette files get the workspace as prefix and the trace is written once for all the
+     * workspaces by the fan-out import.
+     *
+     * @param workspace - The workspace.
+     * @return - The settings of the workspace.
+     */
+    ImportSettings forWorkspace(int workspace) {
+        ImportSettings settings = new ImportSettings();
+        settings.compressRequests = compressRequests;
+        settings.compressionThresholdBytes = compressionThresholdBytes;
+        settings.metricsDirectory = metricsDirectory != null ? metricsDirectory.resolve("workspace-" + workspace) : null;
+        settings.progressIntervalSeconds = progressIntervalSeconds;
+        settings.recordTrafficFile = getWorkspaceFile(recordTrafficFile, workspace);
+        settings.replayTrafficFile = getWorkspaceFile(replayTrafficFile, workspace);
+        settings.replayLatencyScale = replayLatencyScale;
+        settings.requestWeight = requestWeight;
+        return settings;
+    }
+
+    /**
+     * Creates the settings of a job of the import server. The metrics are written in a sub-directory of the metrics
+     * directory, the tracing and the traffic recording are off, since they are not bound to a single import.
+     *
+     * @param jobId                   - The id of the job.
+     * @param progressIntervalSeconds - The interval of the progress reports of the job.
+     * @return - The settings of the job.
+     */
+    ImportSettings forJob(String jobId, int progressIntervalSeconds) {
+        ImportSettings settings = new ImportSettings();
+        settings.compressRequests = compressRequests;
+        settings.compressionThresholdBytes = compressionThresholdBytes;
+        settings.metricsDirectory = metricsDirectory != null ? metricsDirectory.resolve("job-" + jobId) : null;
+        settings.progressIntervalSeconds = progressIntervalSeconds;
+        settings.requestWeight = requestWeight;
+        return settings;
+    }
+
+    /**
+     * @return - The settings which are sent to the worker processes of a sharded import. The tracing and the traffic
+     * recording are not bound to a single process, so they are not sent.
+     */
+    JSONObject toWorkerJson() {
+        return new JSONObject()
+                .put("compress_requests", compressRequests)
+                .put("compression_threshold_bytes", compressionThresholdBytes)
+                .putOpt("metrics_directory", metricsDirectory != null ? metricsDirectory.toAbsolutePath().toString() : null)
+                .put("progress_interval_seconds", progressIntervalSeconds)
+                .put("request_weight", requestWeight);
+    }
+
+    /**
+     * Creates the settings of a worker process of a sharded import. The metrics are written in a sub-directory of the
+     * metrics directory.
+     *
+     * @param json   - The settings sent by the coordinator (see {@link #toWorkerJson()}).
+     * @param worker - The id of the worker.
+     * @return - The settings of the worker.
+     */
+    static ImportSettings forShardWorker(JSONObject json, int worker) {
+        ImportSettings settings = new ImportSettings();
+        settings.compressRequests = json.optBoolean("compress_requests", false);
+        settings.compressionThresholdBytes = json.optInt("compression_threshold_bytes", settings.compressionThresholdBytes);
+        settings.metricsDirectory = json.has("metrics_directory")
+                ? Paths.get(json.getString("metrics_directory")).resolve("worker-" + worker)
+                : null;
+        settings.progressIntervalSeconds = json.optInt("progress_interval_seconds", settings.progressIntervalSeconds);
+        settings.requestWeight = json.optDouble("request_weight", settings.requestWeight);
+        return settings;
+    }
+
+    /**
+     * @param file      - A file of the import or null.
+     * @param workspace - The workspace.
+     * @return - The file of the workspace, which has the workspace as prefix (i.e. workspace-1002-octane-traffic.jsonl.gz).
+     */
+    private static Path getWorkspaceFile(Path file, int workspace) {
+        return file != null ? file.resolveSibling("workspace-" + workspace + "-" + file.getFileName()) : null;
+    }
+
+    /**
+     * @return - A new compression setting for the HTTP clients of an import.
+     */
+    RequestCompression createRequestCompression() {
+        return new RequestCompression(compressRequests, compressionThresholdBytes);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class records spans for the Octane requests and the import stages and writes them in the Chrome trace event
+ * format, which can be opened in a timeline viewer (i.e. chrome://tracing or Perfetto).
+ *
+ * The spans are kept in a fixed size ring buffer: when the buffer is full the oldest spans are overwritten, so a long
+ * migration keeps only its last spans. Every import has its own tracer, which it passes to its clients and helpers, so
+ * the imports which run in the same JVM do not record their spans in the same buffer. The tracer of an import which is
+ * not traced is the disabled tracer: {@link #begin()} returns 0 and {@link #end} returns without doing anything.
+ */
+final class ImportTracer {
+    static final String HTTP_CATEGORY = "http";
+    static final String STAGE_CATEGORY = "stage";
+
+    private static final ImportTracer DISABLED = new ImportTracer(0);
+
+    private static final ThreadLocal<String> currentUniqueId = new ThreadLocal<>();
+
+    private final AtomicReferenceArray<Span> spans;
+    private final AtomicLong nextSpan = new AtomicLong();
+    private final int mask;
+    private final long originNanos = System.nanoTime();
+
+    /**
+     * @param capacity - The number of spans kept in the buffer. It is rounded up to a power of 2.
+     */
+    ImportTracer(int capacity) {
+        int size = capacity <= 0 ? 0 : Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.spans = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return - The tracer which records nothing, used by the imports which are not traced.
+     */
+    static ImportTracer disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Sets the unique id of the test processed by the current thread. The unique id is added to the spans recorded
+     * by the thread.
+     *
+     * @param uniqueId - The unique id of the test or null.
+     * @return - The previous unique id of the thread.
+     */
+    static String setUniqueId(String uniqueId) {
+        String previous = currentUniqueId.get();
+        if (uniqueId == null) {
+            currentUniqueId.remove();
+        } else {
+            currentUniqueId.set(uniqueId);
+        }
+        return previous;
+    }
+
+    /**
+     * @return - The unique id of the test processed by the current thread or null.
+     */
+    static String getUniqueId() {
+        return currentUniqueId.get();
+    }
+
+    /**
+     * @return - true if the spans are recorded.
+     */
+    boolean isEnabled() {
+        return mask >= 0;
+    }
+
+    /**
+     * @return - The start of a span or 0 if the tracing is off.
+     */
+    long begin() {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a span which started at the given time and ends now.
+     *
+     * @param name       - The name of the span (i.e. POST tests, create_test).
+     * @param category   - The category of the span (http or stage).
+     * @param startNanos - The value returned by begin().
+     * @param entity     - The Octane entity type or null.
+     * @param status     - The HTTP status code or 0 if there is none.
+     */
+    void end(String name, String category, long startNanos, String entity, int status) {
+        if (!isEnabled() || startNanos == 0) {
+            return;
+        }
+
+        long endNanos = System.nanoTime();
+        Thread thread = Thread.currentThread();
+        long sequence = nextSpan.getAndIncrement();
+        Span span = new Span(sequence, name, category, startNanos - originNanos, endNanos - startNanos,
+                thread.getId(), thread.getName(), entity, currentUniqueId.get(), status);
+
+        spans.set((int) (sequence & mask), span);
+    }
+
+    /**
+     * @return - The number of spans which were overwritten because the buffer was full.
+     */
+    long getDroppedSpans() {
+        return Math.max(0, nextSpan.get() - spans.length());
+    }
+
+    /**
+     * Writes the recorded spans in the Chrome trace event format.
+     *
+     * @param file - The file where the trace is written.
+     * @throws IOException - In case the file cannot be written.
+     */
+    void write(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(writer);
+        }
+    }
+
+    /**
+     * Writes the recorded spans in the Chrome trace event format.
+     *
+     * @param writer - The writer where the trace is written.
+     * @throws IOException - In case the trace cannot be written.
+     */
+    void write(Writer writer) throws IOException {
+        List<Span> recorded = new ArrayList<>(spans.length());
+        for (int i = 0; i < spans.length(); i++) {
+            Span span = spans.get(i);
+            if (span != null) {
+                recorded.add(span);
+            }
+        }
+        recorded.sort(Comparator.<Span>comparingLong(span -> span.startNanos).thenComparingLong(span -> span.sequence));
+
+        Map<Long, String> threads = new TreeMap<>();
+        for (Span span : recorded) {
+            threads.putIfAbsent(span.threadId, span.threadName);
+        }
+
+        BufferedWriter out = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+        StringBuilder sb = new StringBuilder(256);
+
+        out.write("{\"displayTimeUnit\":\"ms\",\"otherData\":{\"dropped_spans\":");
+        out.write(Long.toString(getDroppedSpans()));
+        out.write("},\"traceEvents\":[");
+
+        boolean first = true;
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            sb.setLength(0);
+            if (!first) {
+                sb.append(",\n");
+            }
+            sb.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(thread.getKey())
+                    .append(",\"args\":{\"name\":");
+            StringUtils.appendJsonString(sb, thread.getValue());
+            sb.append("}}");
+            out.append(sb);
+            first = false;
+        }
+
+        for (Span span : recorded) {
+            sb.setLength(0);
+            if (!first) {
+                sb.append(",\n");
+            }
+            span.appendJson(sb);
+            out.append(sb);
+            first = false;
+        }
+
+        out.write("]}\n");
+        out.flush();
+    }
+
+    /**
+     * A recorded span. The times are relative to the creation of the tracer.
+     */
+    private static final class Span {
+        private final long sequence;
+        private final String name;
+        private final String category;
+        private final long startNanos;
+        private final long durationNanos;
+        private final long threadId;
+        private final String threadName;
+        private final String entity;
+        private final String uniqueId;
+        private final int status;
+
+        Span(long sequence, String name, String category, long startNanos, long durationNanos, long threadId, String threadName,
+             String entity, String uniqueId, int status) {
+            this.sequence = sequence;
+            this.name = name;
+            this.category = category;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.threadId = threadId;
+            this.threadName = threadName;
+            this.entity = entity;
+            this.uniqueId = uniqueId;
+            this.status = status;
+        }
+
+        /**
+         * Writes the span as a complete ("X") trace event. The trace event times are in microseconds.
+         *
+         * @param sb - The string builder where the event is written.
+         */
+        void appendJson(StringBuilder sb) {
+            sb.append("{\"name\":");
+            StringUtils.appendJsonString(sb, name);
+            sb.append(",\"cat\":");
+            StringUtils.appendJsonString(sb, category);
+            sb.append(",\"ph\":\"X\",\"pid\":1,\"tid\":").append(threadId)
+                    .append(",\"ts\":").append(startNanos / 1000).append('.').append(threeDigits(startNanos % 1000))
+                    .append(",\"dur\":").append(durationNanos / 1000).append('.').append(threeDigits(durationNanos % 1000))
+                    .append(",\"args\":{");
+
+            boolean first = true;
+            if (entity != null) {
+                sb.append("\"entity\":");
+                StringUtils.appendJsonString(sb, entity);
+                first = false;
+            }
+            if (uniqueId != null) {
+                sb.append(first ? "" : ",").append("\"unique_id\":");
+                StringUtils.appendJsonString(sb, uniqueId);
+                first = false;
+            }
+            if (status != 0) {
+                sb.append(first ? "" : ",").append("\"status\":").append(status);
+            }
+            sb.append("}}");
+        }
+
+        private static String threeDigits(long value) {
+            return value < 10 ? "00" + value : value < 100 ? "0" + value : Long.toString(value);
+        }
+    }
+}
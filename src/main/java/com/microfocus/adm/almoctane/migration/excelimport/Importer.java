@@ -18,7 +18,13 @@ import com.hpe.adm.nga.sdk.authentication.Authentication;
 import com.hpe.adm.nga.sdk.authentication.SimpleClientAuthentication;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is the class from where the importer can be run.
@@ -31,6 +37,12 @@ public class Importer {
     private static final int sharedSpace = 0;
     //change the workspace
     private static final int workspace = 0;
+    //add workspaces here in order to import the file into all of them in one pass (the workspace above is then ignored)
+    private static final int[] fanOutWorkspaces = {};
+    //change to the number of worker processes in order to split the import of a large sheet between several JVMs (0 imports in this process)
+    private static final int shardWorkers = 0;
+    //change the number of tests which a worker imports at a time
+    private static final int testsPerShard = 200;
 
     //change the user
     private static final String user = "";
@@ -44,14 +56,68 @@ public class Importer {
     //change the name of the file
     private static final String fileName = "";
 
+    //set to true in order to send gzip compressed request bodies to Octane
+    private static final boolean compressRequests = false;
+    //change the minimum size of a request body which is compressed
+    private static final int compressionThresholdBytes = 64 * 1024;
+
+    //set to true in order to write the migration metrics (JSON and Prometheus text format) at the end of the migration
+    private static final boolean exportMetrics = false;
+    //change the directory where the metrics files are written
+    private static final String metricsDirectory = "metrics";
+
+    //change the interval (in seconds) of the progress reports, 0 turns them off
+    private static final int progressIntervalSeconds = 30;
+
+    //set to true in order to write a timeline of the Octane requests and import stages (Chrome trace event format)
+    private static final boolean trace = false;
+    //change the file where the trace is written
+    private static final String traceFile = "import-trace.json";
+    //change the number of spans kept in the trace, the oldest spans are dropped
+    private static final int traceCapacity = 1 << 16;
+
+    //set to true in order to record the Octane requests and responses in a cassette file
+    private static final boolean recordTraffic = false;
+    //set to true in order to serve the Octane responses from the cassette file instead of the server
+    private static final boolean replayTraffic = false;
+    //change the cassette file
+    private static final String trafficFile = "octane-traffic.jsonl.gz";
+    //change the multiplier of the recorded request durations when replaying (0 turns the latency off)
+    private static final double replayLatencyScale = 1.0;
+
+    //set to true in order to run the importer as a server which accepts import jobs on http://localhost:<serverPort>/jobs
+    private static final boolean serverMode = false;
+    //change the port of the import server
+    private static final int serverPort = 8085;
+    //change the time (in seconds) after which the server loads the users, phases, lists and fields of a workspace again
+    private static final int metadataTtlSeconds = 600;
+
+    //set to true in order to import the workbooks dropped in <watchDirectory> into <workspace>, as soon as they are complete
+    private static final boolean watchFolder = false;
+    //change the directory which is watched; the imported files are moved to its done and failed sub-directories
+    private static final String watchDirectory = "inbox";
+    //change the time (in seconds) the size of a dropped file must not change before it is imported
+    private static final int watchSettleSeconds = 5;
+
+    //change the maximum number of Octane requests in flight, shared by all the imports (0 means no maximum)
+    private static final int maxRequestsInFlight = 0;
+    //change the maximum number of Octane requests per second, shared by all the imports (0 means no maximum)
+    private static final double maxRequestsPerSecond = 0;
+    //change the maximum number of step script uploads in flight, so the other requests always have free budget (0 means no maximum)
+    private static final int maxScriptUploadsInFlight = 0;
+    //change the share of the request budget of this import (or of every job of the import server)
+    private static final double requestWeight = 1.0;
+
     private static final Authentication authentication = new SimpleClientAuthentication(user, password);
 
     /**
      * After completing the fields from above, this method can be run to import the tests into Octane.
      *
      * @throws URISyntaxException - In case the path to the file is not correct.
+     * @throws IOException        - In case the port of the import server cannot be bound or the watched directory
+     *                            cannot be created.
      */
-    public static void main(String[] args) throws URISyntaxException {
+    public static void main(String[] args) throws URISyntaxException, IOException {
         // HTTP
         System.setProperty("http.proxyHost", proxyServer);
         System.setProperty("http.proxyPort", proxyPort);
@@ -59,18 +125,84 @@ public class Importer {
         // HTTPS
         System.setProperty("https.proxyHost", proxyServer);
         System.setProperty("https.proxyPort", proxyPort);
+
+        RequestScheduler.configure(maxRequestsInFlight, maxRequestsPerSecond,
+                Collections.singletonMap(TrafficClass.SCRIPT_UPLOAD, maxScriptUploadsInFlight));
+
+        if (serverMode || watchFolder) {
+            ImportServer importServer = new ImportServer(server, sharedSpace, user, authentication,
+                    createSettings(), TimeUnit.SECONDS.toMillis(metadataTtlSeconds));
+            if (serverMode) {
+                importServer.start(serverPort);
+            }
+            ImportFolderWatcher folderWatcher = watchFolder
+                    ? new ImportFolderWatcher(importServer, Paths.get(watchDirectory), workspace,
+                    TimeUnit.SECONDS.toMillis(watchSettleSeconds)).start()
+                    : null;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (folderWatcher != null) {
+                    folderWatcher.close();
+                }
+                importServer.close();
+            }));
+            return;
+        }
+
         final File excelFile = new File(Importer.class.getClassLoader().getResource(fileName).toURI());
 
+        ImportSettings settings = createSettings();
+
+        if (shardWorkers > 0) {
+            new ShardedImporter(server, sharedSpace, workspace, excelFile, user, settings)
+                    .migrate(user, password, shardWorkers, testsPerShard);
+            return;
+        }
+
+        if (fanOutWorkspaces.length > 0) {
+            List<Integer> workspaces = new ArrayList<>();
+            for (int fanOutWorkspace : fanOutWorkspaces) {
+                workspaces.add(fanOutWorkspace);
+            }
+
+            new FanOutImporter(server, sharedSpace, workspaces, excelFile, user, settings).migrate(authentication);
+            return;
+        }
+
         ExcelImporter excelImporter = new ExcelImporter(
                 server,
                 sharedSpace,
                 workspace,
                 excelFile,
-                user
+                user,
+                settings
         );
 
         excelImporter.init(authentication);
 
         excelImporter.migrate();
     }
+
+    /**
+     * @return - The settings of the import, based on the fields from above.
+     */
+    private static ImportSettings createSettings() {
+        ImportSettings settings = new ImportSettings()
+                .reportProgress(progressIntervalSeconds)
+                .requestWeight(requestWeight);
+        if (compressRequests) {
+            settings.compressRequests(compressionThresholdBytes);
+        }
+        if (exportMetrics) {
+            settings.exportMetrics(metricsDirectory);
+        }
+        if (trace) {
+            settings.trace(traceFile, traceCapacity);
+        }
+        if (replayTraffic) {
+            settings.replayTraffic(trafficFile, replayLatencyScale);
+        } else if (recordTraffic) {
+            settings.recordTraffic(trafficFile);
+        }
+        return settings;
+    }
 }
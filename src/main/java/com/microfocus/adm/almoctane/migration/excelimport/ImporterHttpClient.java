@@ -0,0 +1,448 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.google.api.client.http.AbstractHttpContent;
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.HttpRequest;
+import com.hpe.adm.nga.sdk.exception.OctaneException;
+import com.hpe.adm.nga.sdk.model.FieldModel;
+import com.hpe.adm.nga.sdk.network.OctaneHttpRequest;
+import com.hpe.adm.nga.sdk.network.OctaneHttpResponse;
+import com.hpe.adm.nga.sdk.network.google.GoogleHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This is the HTTP client used by the importer. Besides the requests handled by the GoogleHttpClient, it can execute
+ * script upload requests whose body is streamed from the encoded step script, it can compress the bodies of large
+ * requests and it records the duration of every request in the migration metrics. The requests and their responses
+ * can also be recorded in a {@link TrafficCassette}.
+ */
+class ImporterHttpClient extends GoogleHttpClient {
+    private static final Logger logger = LoggerFactory.getLogger(ImporterHttpClient.class);
+
+    private static final String GZIP_ENCODING = "gzip";
+    private static final String HTTP_STATUS_CODE = "http_status_code";
+    private static final String WORKSPACES_PATH = "/workspaces/";
+    private static final String OTHER_ENTITY = "other";
+    private static final String SUCCESS_OUTCOME = "success";
+    private static final String ERROR_OUTCOME = "error";
+    private static final String COMPRESSION_REJECTED = "compression_rejected";
+
+    private final String urlDomain;
+    private final RequestCompression compression;
+    private volatile ImportMetrics metrics;
+    private volatile ImportTracer tracer = ImportTracer.disabled();
+    private final ThreadLocal<Boolean> compressedRequest = new ThreadLocal<>();
+    private volatile TrafficCassette cassette;
+    private volatile RequestScheduler.Tenant tenant;
+
+    /**
+     * @param urlDomain - The Octane server.
+     */
+    public ImporterHttpClient(String urlDomain) {
+        this(urlDomain, RequestCompression.disabled());
+    }
+
+    /**
+     * @param urlDomain   - The Octane server.
+     * @param compression - The compression settings for the request bodies.
+     */
+    public ImporterHttpClient(String urlDomain, RequestCompression compression) {
+        this(urlDomain, compression, new ImportMetrics());
+    }
+
+    /**
+     * @param urlDomain   - The Octane server.
+     * @param compression - The compression settings for the request bodies.
+     * @param metrics     - The metrics of the migration which uses the client.
+     */
+    ImporterHttpClient(String urlDomain, RequestCompression compression, ImportMetrics metrics) {
+        super(urlDomain);
+        this.urlDomain = urlDomain;
+        this.compression = compression;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records the requests executed from now on in the metrics of another migration. This is used when the client is
+     * kept between migrations.
+     *
+     * @param metrics - The metrics of the migration which uses the client.
+     */
+    void reportTo(ImportMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records the spans of the requests executed from now on in the tracer of a migration.
+     *
+     * @param tracer - The tracer of the migration which uses the client.
+     */
+    void traceTo(ImportTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Schedules the requests executed from now on as requests of a job, so they wait for their fair share of the
+     * request budget when the {@link RequestScheduler} is on.
+     *
+     * @param tenant - The tenant of the job which uses the client.
+     */
+    void scheduleAs(RequestScheduler.Tenant tenant) {
+        this.tenant = tenant;
+    }
+
+    /**
+     * Records the requests executed from now on and their responses.
+     *
+     * @param cassette - The cassette where the requests are recorded.
+     */
+    void recordTo(TrafficCassette cassette) {
+        this.cassette = cassette;
+    }
+
+    /**
+     * Executes the request and records its duration and outcome in the migration metrics, split by the HTTP method
+     * and the Octane entity type. If the requests are scheduled, the request first waits for its share of the request
+     * budget in the lane of its {@link TrafficClass} and the wait is recorded separately. If tracing is on, a span is
+     * recorded for the request, and if the traffic is recorded the response is written to the cassette.
+     *
+     * @param octaneHttpRequest - The request which is executed.
+     * @return - The response of the server.
+     */
+    @Override
+    public OctaneHttpResponse execute(OctaneHttpRequest octaneHttpRequest) {
+        String method = String.valueOf(octaneHttpRequest.getOctaneRequestMethod());
+        String entity = getEntityType(octaneHttpRequest.getRequestUrl());
+        String outcome = ERROR_OUTCOME;
+        int statusCode = 0;
+        ImportTracer tracer = this.tracer;
+        ImportMetrics metrics = this.metrics;
+        RequestScheduler.Tenant tenant = this.tenant;
+        TrafficClass trafficClass = TrafficClass.of(octaneHttpRequest);
+        RequestScheduler.Slot slot = tenant != null ? tenant.acquire(trafficClass) : null;
+        if (slot != null && slot.isScheduled()) {
+            metrics.record(ImportMetrics.HTTP_REQUEST_QUEUE_DURATION, slot.getWaitNanos(),
+                    ImportMetrics.METHOD_LABEL, method, ImportMetrics.ENTITY_LABEL, entity,
+                    ImportMetrics.TRAFFIC_CLASS_LABEL, trafficClass.label());
+        }
+        metrics.requestStarted();
+        TrafficCassette cassette = this.cassette;
+        String bodyDigest = cassette != null ? TrafficCassette.bodyDigest(octaneHttpRequest) : null;
+        long traceStart = tracer.begin();
+        long start = System.nanoTime();
+
+        try {
+            OctaneHttpResponse response = send(octaneHttpRequest);
+            outcome = SUCCESS_OUTCOME;
+            statusCode = response.getStatusCode();
+            if (cassette != null) {
+                cassette.recordResponse(method, getRelativeUrl(octaneHttpRequest), bodyDigest, start,
+                        System.nanoTime() - start, statusCode, response.getContent());
+            }
+            return response;
+        } catch (OctaneException e) {
+            statusCode = getHttpStatusCode(e);
+            if (cassette != null) {
+                cassette.recordError(method, getRelativeUrl(octaneHttpRequest), bodyDigest, start,
+                        System.nanoTime() - start, e);
+            }
+            throw e;
+        } finally {
+            if (slot != null) {
+                slot.close();
+            }
+            metrics.requestFinished();
+            tracer.end(method + ' ' + entity, ImportTracer.HTTP_CATEGORY, traceStart, entity, statusCode);
+            metrics.record(ImportMetrics.HTTP_REQUEST_DURATION, System.nanoTime() - start,
+                    ImportMetrics.METHOD_LABEL, method, ImportMetrics.ENTITY_LABEL, entity);
+            metrics.increment(ImportMetrics.HTTP_REQUESTS,
+                    ImportMetrics.METHOD_LABEL, method, ImportMetrics.ENTITY_LABEL, entity, ImportMetrics.OUTCOME_LABEL, outcome);
+        }
+    }
+
+    /**
+     * Sends the request to the server.
+     *
+     * @param octaneHttpRequest - The request which is sent.
+     * @return - The response of the server.
+     */
+    OctaneHttpResponse send(OctaneHttpRequest octaneHttpRequest) {
+        return executeWithCompressionFallback(octaneHttpRequest);
+    }
+
+    /**
+     * @param octaneHttpRequest - The request.
+     * @return - The url of the request without the server (i.e. /api/shared_spaces/1001/workspaces/1002/phases).
+     */
+    String getRelativeUrl(OctaneHttpRequest octaneHttpRequest) {
+        String requestUrl = octaneHttpRequest.getRequestUrl();
+        return requestUrl != null && requestUrl.startsWith(urlDomain) ? requestUrl.substring(urlDomain.length()) : requestUrl;
+    }
+
+    /**
+     * Executes the request. In case a compressed request is rejected by the server, the request is sent again
+     * without compression and, if this succeeds, the compression is turned off.
+     *
+     * @param octaneHttpRequest - The request which is executed.
+     * @return - The response of the server.
+     */
+    private OctaneHttpResponse executeWithCompressionFallback(OctaneHttpRequest octaneHttpRequest) {
+        try {
+            return super.execute(octaneHttpRequest);
+        } catch (OctaneException e) {
+            if (!Boolean.TRUE.equals(compressedRequest.get()) || !isCompressionRejected(e)) {
+                throw e;
+            }
+
+            int statusCode = getHttpStatusCode(e);
+            compressedRequest.set(Boolean.FALSE);
+            logger.warn(String.format("The server rejected a compressed request with status %s, retrying without compression",
+                    statusCode));
+
+            Object retryEvent = ImportEvents.beginRetry(
+                    octaneHttpRequest.getOctaneRequestMethod() + " " + getEntityType(octaneHttpRequest.getRequestUrl()),
+                    COMPRESSION_REJECTED, statusCode);
+            boolean retried = false;
+            try {
+                OctaneHttpResponse response = super.execute(octaneHttpRequest);
+                retried = true;
+                compression.fallback();
+                return response;
+            } finally {
+                ImportEvents.endRetry(retryEvent, retried);
+            }
+        } finally {
+            compressedRequest.remove();
+        }
+    }
+
+    @Override
+    protected HttpRequest convertOctaneRequestToGoogleHttpRequest(OctaneHttpRequest octaneHttpRequest) {
+        HttpRequest httpRequest = super.convertOctaneRequestToGoogleHttpRequest(octaneHttpRequest);
+
+        if (octaneHttpRequest instanceof StepScriptPutRequest) {
+            httpRequest.setContent(new StepScriptContent(((StepScriptPutRequest) octaneHttpRequest).getStepScript()));
+        }
+
+        compressContent(httpRequest);
+
+        return httpRequest;
+    }
+
+    /**
+     * Replaces the request content with its gzip compressed version if the content is large enough. A request which
+     * was rejected once in compressed form is not compressed again.
+     *
+     * @param httpRequest - The request which will be executed.
+     */
+    private void compressContent(HttpRequest httpRequest) {
+        HttpContent content = httpRequest.getContent();
+        if (content == null || Boolean.FALSE.equals(compressedRequest.get())) {
+            return;
+        }
+
+        try {
+            if (compression.shouldCompress(content.getLength())) {
+                httpRequest.setContent(new GzipContent(content, compression));
+                httpRequest.getHeaders().setContentEncoding(GZIP_ENCODING);
+                compressedRequest.set(Boolean.TRUE);
+            }
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Unable to get the length of the request content, it will not be compressed", e);
+        }
+    }
+
+    /**
+     * @param e - The exception thrown by the request.
+     * @return - true if the status of the response shows that the server could not handle the compressed body
+     * (415 Unsupported Media Type or 501 Not Implemented). Other errors, i.e. a 400 for an invalid entity, are not
+     * caused by the compression, so the request is not sent again.
+     */
+    private static boolean isCompressionRejected(OctaneException e) {
+        int statusCode = getHttpStatusCode(e);
+        return statusCode == 415 || statusCode == 501;
+    }
+
+    /**
+     * @param e - The exception thrown by the request.
+     * @return - The HTTP status code of the response or -1 if it is not known.
+     */
+    static int getHttpStatusCode(OctaneException e) {
+        if (e.getError() == null) {
+            return -1;
+        }
+
+        FieldModel statusCode = e.getError().getValue(HTTP_STATUS_CODE);
+        if (statusCode == null || statusCode.getValue() == null) {
+            return -1;
+        }
+
+        try {
+            return Double.valueOf(statusCode.getValue().toString()).intValue();
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the Octane entity type targeted by a request, which is the first path segment after the workspace
+     * (i.e. tests for .../workspaces/1002/tests/1001/script).
+     *
+     * @param requestUrl - The url of the request.
+     * @return - The entity type or "other" for the requests which are not made in a workspace (i.e. sign in).
+     */
+    static String getEntityType(String requestUrl) {
+        if (requestUrl == null) {
+            return OTHER_ENTITY;
+        }
+
+        int workspaceStart = requestUrl.indexOf(WORKSPACES_PATH);
+        if (workspaceStart < 0) {
+            return OTHER_ENTITY;
+        }
+
+        int entityStart = requestUrl.indexOf('/', workspaceStart + WORKSPACES_PATH.length());
+        if (entityStart < 0) {
+            return OTHER_ENTITY;
+        }
+        entityStart++;
+
+        int entityEnd = entityStart;
+        while (entityEnd < requestUrl.length() && requestUrl.charAt(entityEnd) != '/' && requestUrl.charAt(entityEnd) != '?') {
+            entityEnd++;
+        }
+
+        return entityEnd > entityStart ? requestUrl.substring(entityStart, entityEnd) : OTHER_ENTITY;
+    }
+
+    /**
+     * A PUT request which uploads a step script. The body is not kept as a string, it is streamed from the script
+     * when the request is executed.
+     */
+    static class StepScriptPutRequest extends OctaneHttpRequest.PutOctaneHttpRequest {
+        private final StepScript stepScript;
+
+        /**
+         * @param requestUrl - The url of the script resource of the test.
+         * @param stepScript - The encoded script JSON.
+         */
+        StepScriptPutRequest(String requestUrl, StepScript stepScript) {
+            super(requestUrl, OctaneHttpRequest.JSON_CONTENT_TYPE, "");
+            this.stepScript = stepScript;
+        }
+
+        /**
+         * @return - The encoded script JSON.
+         */
+        StepScript getStepScript() {
+            return stepScript;
+        }
+    }
+
+    /**
+     * HTTP content which writes the encoded step script to the request body.
+     */
+    private static class StepScriptContent extends AbstractHttpContent {
+        private final StepScript stepScript;
+
+        StepScriptContent(StepScript stepScript) {
+            super(OctaneHttpRequest.JSON_CONTENT_TYPE);
+            this.stepScript = stepScript;
+        }
+
+        @Override
+        public long getLength() {
+            return stepScript.length();
+        }
+
+        @Override
+        public boolean retrySupported() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            stepScript.writeTo(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * HTTP content which gzip compresses another content while it is written to the request body.
+     */
+    private static class GzipContent extends AbstractHttpContent {
+        private final HttpContent content;
+        private final RequestCompression compression;
+
+        GzipContent(HttpContent content, RequestCompression compression) {
+            super(content.getType());
+            this.content = content;
+            this.compression = compression;
+        }
+
+        @Override
+        public long getLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean retrySupported() {
+            return content.retrySupported();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            CountingOutputStream countingOut = new CountingOutputStream(out);
+            GZIPOutputStream gzipOut = new GZIPOutputStream(countingOut, 8192);
+
+            content.writeTo(gzipOut);
+            gzipOut.finish();
+            countingOut.flush();
+
+            compression.addCompressedRequest(content.getLength(), countingOut.count);
+        }
+    }
+
+    /**
+     * Output stream which counts the bytes written to the wrapped stream.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import jdk.jfr.*;
+
+/**
+ * This class contains the Java Flight Recorder event types of the importer. It must be used only through
+ * {@link ImportEvents}, which checks that JFR is available before this class is loaded.
+ *
+ * The methods mirror the ones of ImportEvents. The begin methods return null when the event type is not enabled in
+ * any recording, so nothing else is done for it.
+ */
+final class JfrEvents {
+    private static final String CATEGORY = "Octane Importer";
+
+    private JfrEvents() {
+    }
+
+    static Object beginRowParse(String uniqueId) {
+        RowParseEvent event = new RowParseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.uniqueId = uniqueId;
+        event.begin();
+        return event;
+    }
+
+    static void commitRowParse(Object event, int steps) {
+        RowParseEvent rowParseEvent = (RowParseEvent) event;
+        rowParseEvent.steps = steps;
+        rowParseEvent.commit();
+    }
+
+    static Object beginEntityBuild(String uniqueId) {
+        EntityBuildEvent event = new EntityBuildEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.uniqueId = uniqueId;
+        event.begin();
+        return event;
+    }
+
+    static void commitEntityBuild(Object event) {
+        ((EntityBuildEvent) event).commit();
+    }
+
+    static Object beginReferenceResolve(String collection, String value) {
+        ReferenceResolveEvent event = new ReferenceResolveEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.collection = collection;
+        event.value = value;
+        event.begin();
+        return event;
+    }
+
+    static void commitReferenceResolve(Object event, boolean cacheHit, boolean found) {
+        ReferenceResolveEvent referenceResolveEvent = (ReferenceResolveEvent) event;
+        referenceResolveEvent.cacheHit = cacheHit;
+        referenceResolveEvent.found = found;
+        referenceResolveEvent.commit();
+    }
+
+    static Object beginEntityCreate(String entityType, String uniqueId) {
+        EntityCreateEvent event = new EntityCreateEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.entityType = entityType;
+        event.uniqueId = uniqueId;
+        event.begin();
+        return event;
+    }
+
+    static void commitEntityCreate(Object event, boolean success) {
+        EntityCreateEvent entityCreateEvent = (EntityCreateEvent) event;
+        entityCreateEvent.success = success;
+        entityCreateEvent.commit();
+    }
+
+    static Object beginScriptUpload(String testId, String uniqueId, long bytes) {
+        ScriptUploadEvent event = new ScriptUploadEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.testId = testId;
+        event.uniqueId = uniqueId;
+        event.bytes = bytes;
+        event.begin();
+        return event;
+    }
+
+    static void commitScriptUpload(Object event, boolean success) {
+        ScriptUploadEvent scriptUploadEvent = (ScriptUploadEvent) event;
+        scriptUploadEvent.success = success;
+        scriptUploadEvent.commit();
+    }
+
+    static Object beginRetry(String request, String reason, int statusCode) {
+        RetryEvent event = new RetryEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.request = request;
+        event.reason = reason;
+        event.statusCode = statusCode;
+        event.begin();
+        return event;
+    }
+
+    static void commitRetry(Object event, boolean success) {
+        RetryEvent retryEvent = (RetryEvent) event;
+        retryEvent.success = success;
+        retryEvent.commit();
+    }
+
+    @Name("com.microfocus.octane.importer.RowParse")
+    @Label("Row Parse")
+    @Description("Reading the step rows of a manual test from the excel sheet")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class RowParseEvent extends Event {
+        @Label("Unique Id")
+        String uniqueId;
+
+        @Label("Steps")
+        int steps;
+    }
+
+    @Name("com.microfocus.octane.importer.EntityBuild")
+    @Label("Entity Build")
+    @Description("Building the manual test entity from its excel row, including the UDFs")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class EntityBuildEvent extends Event {
+        @Label("Unique Id")
+        String uniqueId;
+    }
+
+    @Name("com.microfocus.octane.importer.ReferenceResolve")
+    @Label("Reference Resolve")
+    @Description("Finding the Octane entity referenced by a UDF value")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ReferenceResolveEvent extends Event {
+        @Label("Collection")
+        String collection;
+
+        @Label("Value")
+        String value;
+
+        @Label("Cache Hit")
+        boolean cacheHit;
+
+        @Label("Found")
+        boolean found;
+    }
+
+    @Name("com.microfocus.octane.importer.EntityCreate")
+    @Label("Entity Create")
+    @Description("The request which creates an entity in Octane")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class EntityCreateEvent extends Event {
+        @Label("Entity Type")
+        String entityType;
+
+        @Label("Unique Id")
+        String uniqueId;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("com.microfocus.octane.importer.ScriptUpload")
+    @Label("Script Upload")
+    @Description("The request which uploads the steps of a manual test")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ScriptUploadEvent extends Event {
+        @Label("Test Id")
+        String testId;
+
+        @Label("Unique Id")
+        String uniqueId;
+
+        @Label("Bytes")
+        long bytes;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("com.microfocus.octane.importer.Retry")
+    @Label("Request Retry")
+    @Description("A request which is sent again after it was rejected")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class RetryEvent extends Event {
+        @Label("Request")
+        String request;
+
+        @Label("Reason")
+        String reason;
+
+        @Label("Status Code")
+        int statusCode;
+
+        @Label("Success")
+        boolean success;
+    }
+}
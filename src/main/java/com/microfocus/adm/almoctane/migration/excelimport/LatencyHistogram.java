@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is a latency histogram with fixed buckets. Recording a value does not take any lock, so it can be used from
+ * the import thread and from the step upload threads at the same time.
+ */
+final class LatencyHistogram {
+    /**
+     * The upper bounds of the buckets in milliseconds. The last bucket holds all the values above the last bound.
+     */
+    static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private static final long[] BUCKET_BOUNDS_NANOS = new long[BUCKET_BOUNDS_MILLIS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            BUCKET_BOUNDS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BUCKET_BOUNDS_MILLIS[i]);
+        }
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MILLIS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos - The duration in nanoseconds.
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        buckets[bucketIndex(nanos)].increment();
+        count.increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * @return - A copy of the current values of the histogram.
+     */
+    Snapshot snapshot() {
+        long[] bucketCounts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            bucketCounts[i] = buckets[i].sum();
+        }
+
+        return new Snapshot(bucketCounts, count.sum(), sumNanos.sum(), maxNanos.get());
+    }
+
+    /**
+     * @param nanos - The duration in nanoseconds.
+     * @return - The index of the bucket which holds the duration.
+     */
+    private static int bucketIndex(long nanos) {
+        int low = 0;
+        int high = BUCKET_BOUNDS_NANOS.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (nanos <= BUCKET_BOUNDS_NANOS[middle]) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * The values of a histogram at a given moment.
+     */
+    static final class Snapshot {
+        private final long[] bucketCounts;
+        private final long count;
+        private final long sumNanos;
+        private final long maxNanos;
+
+        Snapshot(long[] bucketCounts, long count, long sumNanos, long maxNanos) {
+            this.bucketCounts = bucketCounts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * @return - The number of recorded durations.
+         */
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * @return - The sum of the recorded durations in nanoseconds.
+         */
+        long getSumNanos() {
+            return sumNanos;
+        }
+
+        /**
+         * @return - The longest recorded duration in nanoseconds.
+         */
+        long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @param index - The index of the bucket.
+         * @return - The number of durations in the bucket (not cumulative).
+         */
+        long getBucketCount(int index) {
+            return bucketCounts[index];
+        }
+
+        /**
+         * @return - The number of buckets, including the last one which has no upper bound.
+         */
+        int getBucketsNumber() {
+            return bucketCounts.length;
+        }
+
+        /**
+         * Estimates a percentile as the upper bound of the bucket where it falls. For the last bucket, the longest
+         * recorded duration is returned.
+         *
+         * @param percentile - The percentile (i.e. 0.95).
+         * @return - The estimated duration in milliseconds or 0 if nothing was recorded.
+         */
+        double getPercentileMillis(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(percentile * count);
+            long cumulative = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                cumulative += bucketCounts[i];
+                if (cumulative >= rank) {
+                    return i < BUCKET_BOUNDS_MILLIS.length
+                            ? Math.min(BUCKET_BOUNDS_MILLIS[i], toMillis(maxNanos))
+                            : toMillis(maxNanos);
+                }
+            }
+
+            return toMillis(maxNanos);
+        }
+
+        /**
+         * @return - The average duration in milliseconds or 0 if nothing was recorded.
+         */
+        double getMeanMillis() {
+            return count == 0 ? 0 : toMillis(sumNanos) / count;
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
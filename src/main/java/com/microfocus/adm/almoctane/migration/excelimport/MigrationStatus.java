@@ -14,13 +14,13 @@
 
 package com.microfocus.adm.almoctane.migration.excelimport;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 /**
  * This class exposes a set of messages which can be used in order to provide an explicit status at the end of the
  * migration.
  *
- * The methods provided in this class can help compute and decide on the final status.
+ * The methods provided in this class can help compute and decide on the final status. The counters are kept in the
+ * {@link ImportMetrics} registry of the migration, together with the timings of the requests and of the import stages.
+ * Every migration has its own status, so several migrations can run in the same JVM.
  */
 final class MigrationStatus {
     /**
@@ -43,80 +43,73 @@ final class MigrationStatus {
         SUCCESS
     }
 
-    private static int migratedTests = 0;
-    private static int uploadedSteps = 0;
-
-    private static int failedTests = 0;
-    private static AtomicInteger failedSteps = new AtomicInteger(0);
+    private final ImportMetrics metrics = new ImportMetrics();
 
     /**
      * Increments the migratedTests
      */
-    public static void addMigratedTest() {
-        migratedTests++;
+    public void addMigratedTest() {
+        metrics.increment(ImportMetrics.TESTS_MIGRATED);
     }
 
     /**
-     * Increments the uploadedSteps
+     * Adds to the uploadedSteps
+     *
+     * @param steps - The number of uploaded steps.
      */
-    public static void addUploadedStep() {
-        uploadedSteps++;
+    public void addUploadedSteps(int steps) {
+        metrics.add(ImportMetrics.STEPS_UPLOADED, steps);
     }
 
     /**
      * Increments the failedTests
      */
-    public static void addFailedTest() {
-        failedTests++;
+    public void addFailedTest() {
+        metrics.increment(ImportMetrics.TESTS_FAILED);
     }
 
     /**
      * Increments the failedSteps
      */
-    public static void addFailedStep() {
-        failedSteps.addAndGet(1);
+    public void addFailedStep() {
+        metrics.increment(ImportMetrics.STEPS_FAILED);
     }
 
     /**
      * @return migratedTests
      */
-    public static int getMigratedTests() {
-        return migratedTests;
+    public int getMigratedTests() {
+        return (int) metrics.getCount(ImportMetrics.TESTS_MIGRATED);
     }
 
     /**
      *
      * @return uploadedSteps
      */
-    public static int getUploadedSteps() {
-        return uploadedSteps;
+    public int getUploadedSteps() {
+        return (int) metrics.getCount(ImportMetrics.STEPS_UPLOADED);
     }
 
     /**
      *
      * @return failedTests
      */
-    public static int getFailedTests() {
-        return failedTests;
+    public int getFailedTests() {
+        return (int) metrics.getCount(ImportMetrics.TESTS_FAILED);
     }
 
     /**
      *
      * @return failedSteps number
      */
-    public static int getFailedSteps() {
-        return failedSteps.get();
+    public int getFailedSteps() {
+        return (int) metrics.getCount(ImportMetrics.STEPS_FAILED);
     }
 
     /**
-     * Resets the value of the parameters.
-     * This should be used after a migration has finished.
+     * @return - The metrics registry of the current migration.
      */
-    public static void reset() {
-        failedSteps = new AtomicInteger(0);
-        failedTests = 0;
-
-        uploadedSteps = 0;
-        migratedTests = 0;
+    ImportMetrics getMetrics() {
+        return metrics;
     }
 }
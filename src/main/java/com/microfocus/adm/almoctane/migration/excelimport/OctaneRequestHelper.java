@@ -16,61 +16,135 @@ package com.microfocus.adm.almoctane.migration.excelimport;
 
 import com.hpe.adm.nga.sdk.Octane;
 import com.hpe.adm.nga.sdk.entities.OctaneCollection;
+import com.hpe.adm.nga.sdk.exception.OctaneException;
 import com.hpe.adm.nga.sdk.exception.OctanePartialException;
 import com.hpe.adm.nga.sdk.model.EntityModel;
+import com.hpe.adm.nga.sdk.model.ModelParser;
 import com.hpe.adm.nga.sdk.network.OctaneHttpRequest;
-import com.hpe.adm.nga.sdk.network.google.GoogleHttpClient;
+import com.hpe.adm.nga.sdk.network.OctaneHttpResponse;
 import com.hpe.adm.nga.sdk.query.Query;
 import com.hpe.adm.nga.sdk.query.QueryMethod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * This class helps perform Octane requests.
+ * This class helps perform Octane requests. Every migration has its own helper, bound to the workspace, to the
+ * clients of the migration and to the references of the workspace (see {@link WorkspaceEntities}).
  */
 class OctaneRequestHelper {
     private static final Logger logger = LoggerFactory.getLogger(ExcelImporter.class);
+    private static final String UPLOAD_QUEUE_STAGE = "upload_queue_wait";
+    private static final String UPLOAD_STEPS_STAGE = "upload_steps";
 
-    private static String url;
-    private static Octane octane;
-    private static EntityModel defaultUser;
-    private static GoogleHttpClient scriptUploadClient;
+    private final String url;
+    private final String workspaceUrl;
+    private final Octane octane;
+    private final EntityModel defaultUser;
+    private final ImporterHttpClient octaneClient;
+    private final ImporterHttpClient scriptUploadClient;
+    private final MigrationStatus migrationStatus;
+    private final ImportTracer tracer;
+    private final WorkspaceEntities entities;
+    private final AtomicInteger pendingUploads = new AtomicInteger();
 
-    public OctaneRequestHelper(String octaneUrl, Octane octane, GoogleHttpClient scriptUploadClient, String defaultUserEmail) {
-        OctaneRequestHelper.url = octaneUrl.concat("/tests/id/script");
+    public OctaneRequestHelper(String octaneUrl,
+                               Octane octane,
+                               ImporterHttpClient octaneClient,
+                               ImporterHttpClient scriptUploadClient,
+                               String defaultUserEmail,
+                               MigrationStatus migrationStatus,
+                               ImportTracer tracer,
+                               WorkspaceEntities entities) {
+        this.url = octaneUrl.concat("/tests/id/script");
+        this.workspaceUrl = octaneUrl;
 
-        OctaneRequestHelper.octane = octane;
-        OctaneRequestHelper.scriptUploadClient = scriptUploadClient;
-        OctaneRequestHelper.defaultUser = OctaneRequestHelper.getUserByEmail(defaultUserEmail);
+        this.octane = octane;
+        this.octaneClient = octaneClient;
+        this.scriptUploadClient = scriptUploadClient;
+        this.migrationStatus = migrationStatus;
+        this.tracer = tracer;
+        this.entities = entities;
+        this.defaultUser = getUserByEmail(defaultUserEmail);
     }
 
     /**
      * @return - The default user.
      */
-    public static EntityModel getDefaultUser() {
+    public EntityModel getDefaultUser() {
         return defaultUser;
     }
 
     /**
-     * Executes a request in order to create an entity in Octane.
+     * Executes a request in order to create an entity in Octane. The request body is written by the
+     * EntityJsonWriter, so the references to existing entities are not serialized again.
      *
      * @param entityModel - The entity model for the manual test.
      * @param entityType  - The type of the entity which will be created.
      * @return - Created test.
      * @throws OctanePartialException - In case the request fails.
      */
-    public static EntityModel createEntity(EntityModel entityModel, String entityType) {
-        OctaneCollection<EntityModel> createdEntity = octane
-                .entityList(entityType)
-                .create()
-                .entities(Collections.singletonList(entityModel))
-                .execute();
+    public EntityModel createEntity(EntityModel entityModel, String entityType) {
+        Object createEvent = ImportEvents.beginEntityCreate(entityType, ImportTracer.getUniqueId());
+        boolean created = false;
+        try {
+            OctaneHttpResponse response = octaneClient.execute(new OctaneHttpRequest.PostOctaneHttpRequest(
+                    workspaceUrl + "/" + entityType,
+                    OctaneHttpRequest.JSON_CONTENT_TYPE,
+                    EntityJsonWriter.toCreateRequestJson(Collections.singletonList(entityModel))
+            ));
+
+            OctaneCollection<EntityModel> createdEntity = ModelParser.getInstance().getEntities(response.getContent());
 
-        return createdEntity.stream().findFirst().orElseThrow(() ->
-                new RuntimeException(String.format("Unable to create entity of type %s!", entityType)));
+            EntityModel entity = createdEntity.stream().findFirst().orElseThrow(() ->
+                    new RuntimeException(String.format("Unable to create entity of type %s!", entityType)));
+            created = true;
+            return entity;
+        } finally {
+            ImportEvents.endEntityCreate(createEvent, created);
+        }
+    }
+
+    /**
+     * Executes a request which creates several entities of the same type.
+     *
+     * @param entityModels - The entity models.
+     * @param entityType   - The type of the entities which will be created.
+     * @return - The created entities, in the order of the entity models.
+     * @throws RuntimeException       - In case the server did not create all the entities.
+     * @throws OctanePartialException - In case the request fails.
+     */
+    public List<EntityModel> createEntities(List<EntityModel> entityModels, String entityType) {
+        Object createEvent = ImportEvents.beginEntityCreate(entityType, ImportTracer.getUniqueId());
+        boolean created = false;
+        try {
+            OctaneHttpResponse response = octaneClient.execute(new OctaneHttpRequest.PostOctaneHttpRequest(
+                    workspaceUrl + "/" + entityType,
+                    OctaneHttpRequest.JSON_CONTENT_TYPE,
+                    EntityJsonWriter.toCreateRequestJson(entityModels)
+            ));
+
+            List<EntityModel> createdEntities = new ArrayList<>(ModelParser.getInstance().getEntities(response.getContent()));
+            if (createdEntities.size() != entityModels.size()) {
+                throw new RuntimeException(String.format("Only %s of %s entities of type %s were created!",
+                        createdEntities.size(), entityModels.size(), entityType));
+            }
+            created = true;
+            return createdEntities;
+        } finally {
+            ImportEvents.endEntityCreate(createEvent, created);
+        }
     }
 
     /**
@@ -81,7 +155,7 @@ class OctaneRequestHelper {
      * @throws OctanePartialException - In case the request fails.
      */
     public EntityModel getApplicationModulesRoot() {
-        return EntityModelHelper.getEssentialFields(octane.entityList(EntityModelHelper.PRODUCT_AREAS).get()
+        return entities.reference(octane.entityList(EntityModelHelper.PRODUCT_AREAS).get()
                 .addFields(EntityModelHelper.Fields.NAME.field())
                 .query(
                         Query.statement(
@@ -101,7 +175,7 @@ class OctaneRequestHelper {
      * @throws RuntimeException       - In case  the list is not found or the request failed.
      * @throws OctanePartialException - In case the request fails.
      */
-    public static EntityModel getListRoot(String listName) {
+    public EntityModel getListRoot(String listName) {
         return octane.entityList(EntityModelHelper.LIST_NODES).get()
                 .addFields(EntityModelHelper.Fields.NAME.field(), EntityModelHelper.Fields.LOGICAL_NAME.field())
                 .query(Query.statement(EntityModelHelper.Fields.NAME.field(), QueryMethod.EqualTo, listName)
@@ -121,14 +195,87 @@ class OctaneRequestHelper {
      * - null if there was no list item found.
      * @throws OctanePartialException - In case the request fails.
      */
-    public static EntityModel getListItem(String listRootId, String listItemName) {
+    public EntityModel getListItem(String listRootId, String listItemName) {
         return octane.entityList(EntityModelHelper.LIST_NODES).get()
                 .addFields(EntityModelHelper.Fields.NAME.field())
                 .query(Query.statement(EntityModelHelper.Fields.LIST_ROOT.field(), QueryMethod.EqualTo,
                         Query.statement(EntityModelHelper.Fields.ID.field(), QueryMethod.EqualTo, listRootId))
                         .and(Query.statement(EntityModelHelper.Fields.NAME.field(), QueryMethod.EqualTo, listItemName))
                         .build())
-                .execute().stream().findFirst().orElse(null);
+                .execute().stream().findFirst().map(entities::reference).orElse(null);
+    }
+
+    /**
+     * Executes a request in order to get the metadata of the fields of an entity.
+     *
+     * @param entityName - The name of the entity (i.e. test_manual).
+     * @return - The definitions of the entity's fields.
+     * @throws OctaneException - In case the request fails.
+     */
+    public List<FieldDefinition> getFieldDefinitions(String entityName) {
+        String query = String.format("\"entity_name EQ '%s'\"", entityName);
+        try {
+            OctaneHttpResponse response = octaneClient.execute(new OctaneHttpRequest.GetOctaneHttpRequest(
+                    workspaceUrl + "/metadata/fields?query=" + URLEncoder.encode(query, "UTF-8").replace("+", "%20")));
+
+            return FieldDefinition.parseFields(response.getContent());
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Executes the requests needed in order to get the items of all the given lists: one request for the list roots
+     * and one for their items.
+     *
+     * @param listRootLogicalNames - The logical names of the list roots.
+     * @return - A map with the logical name of the list root as key and, as value, a map with the references to the
+     * list items mapped by their names.
+     * @throws OctanePartialException - In case the request fails.
+     */
+    public Map<String, Map<String, EntityModel>> getListItemsByListRoot(Collection<String> listRootLogicalNames) {
+        Map<String, Map<String, EntityModel>> listItems = new HashMap<>();
+        if (listRootLogicalNames.isEmpty()) {
+            return listItems;
+        }
+
+        Query.QueryBuilder rootsQuery = null;
+        for (String logicalName : listRootLogicalNames) {
+            Query.QueryBuilder statement = Query.statement(EntityModelHelper.Fields.LOGICAL_NAME.field(), QueryMethod.EqualTo, logicalName);
+            rootsQuery = rootsQuery == null ? statement : rootsQuery.or(statement);
+        }
+
+        Map<String, String> rootLogicalNamesById = new HashMap<>();
+        Query.QueryBuilder itemsQuery = null;
+        for (EntityModel listRoot : octane.entityList(EntityModelHelper.LIST_NODES).get()
+                .addFields(EntityModelHelper.Fields.NAME.field(), EntityModelHelper.Fields.LOGICAL_NAME.field())
+                .query(rootsQuery.build())
+                .execute()) {
+            String logicalName = listRoot.getValue(EntityModelHelper.Fields.LOGICAL_NAME.field()).getValue().toString();
+            rootLogicalNamesById.put(listRoot.getId(), logicalName);
+            listItems.put(logicalName, new HashMap<>());
+
+            Query.QueryBuilder statement = Query.statement(EntityModelHelper.Fields.LIST_ROOT.field(), QueryMethod.EqualTo,
+                    Query.statement(EntityModelHelper.Fields.ID.field(), QueryMethod.EqualTo, listRoot.getId()));
+            itemsQuery = itemsQuery == null ? statement : itemsQuery.or(statement);
+        }
+
+        if (itemsQuery == null) {
+            return listItems;
+        }
+
+        for (EntityModel listItem : octane.entityList(EntityModelHelper.LIST_NODES).get()
+                .addFields(EntityModelHelper.Fields.NAME.field(), EntityModelHelper.Fields.LIST_ROOT.field())
+                .query(itemsQuery.build())
+                .execute()) {
+            EntityModel listRoot = (EntityModel) listItem.getValue(EntityModelHelper.Fields.LIST_ROOT.field()).getValue();
+            Map<String, EntityModel> items = listItems.get(rootLogicalNamesById.get(listRoot.getId()));
+            if (items != null) {
+                items.put(EntityModelHelper.getName(listItem), entities.reference(listItem));
+            }
+        }
+
+        return listItems;
     }
 
     /**
@@ -138,7 +285,7 @@ class OctaneRequestHelper {
      * @return - A collection with entity models, which are list's items.
      * @throws OctanePartialException - In case the request fails.
      */
-    private static OctaneCollection<EntityModel> getListItems(String listRootId) {
+    private OctaneCollection<EntityModel> getListItems(String listRootId) {
         return octane.entityList(EntityModelHelper.LIST_NODES).get()
                 .addFields(EntityModelHelper.Fields.NAME.field())
                 .query(Query.statement(EntityModelHelper.Fields.LIST_ROOT.field(), QueryMethod.EqualTo,
@@ -156,36 +303,98 @@ class OctaneRequestHelper {
      * - null if there was no list item found.
      * @throws OctanePartialException - In case the request fails.
      */
-    public static EntityModel getEntityByName(String entityType, String itemName) {
+    public EntityModel getEntityByName(String entityType, String itemName) {
         return octane.entityList(entityType).get()
                 .addFields(EntityModelHelper.Fields.NAME.field())
                 .query(Query.statement(EntityModelHelper.Fields.NAME.field(), QueryMethod.EqualTo, itemName).build())
-                .execute().stream().findFirst().orElse(null);
+                .execute().stream().findFirst().map(entities::reference).orElse(null);
     }
 
 
     /**
      * Uploads steps to a test with the test id given as input. This is done on a different thread.
+     * The script stays encoded while the upload waits in the queue and it is streamed into the request body.
      *
-     * @param stepsJson       - The JSON with the steps.
+     * @param stepScript      - The encoded JSON with the steps.
      * @param testId          - Id of the test where the steps are uploaded.
      * @param executorService - The executor service where we submit the task of uploading test's steps.
      */
-    public static void uploadSteps(String stepsJson, String testId, ExecutorService executorService) {
-        executorService.submit(() -> {
-            try {
-                OctaneHttpRequest.PutOctaneHttpRequest putOctaneHttpRequest = new OctaneHttpRequest.PutOctaneHttpRequest(
-                        url.replace(EntityModelHelper.Fields.ID.field(), testId),
-                        OctaneHttpRequest.JSON_CONTENT_TYPE,
-                        stepsJson
-                );
-
-                scriptUploadClient.execute(putOctaneHttpRequest);
-            } catch (OctanePartialException e) {
-                MigrationStatus.addFailedStep();
-                logger.error("Error creating script for manual test with id");
+    public void uploadSteps(StepScript stepScript, String testId, ExecutorService executorService) {
+        String uniqueId = ImportTracer.getUniqueId();
+        long queuedAt = System.nanoTime();
+        long traceQueuedAt = tracer.begin();
+        pendingUploads.incrementAndGet();
+        try {
+            executorService.submit(() -> {
+                ImportMetrics metrics = migrationStatus.getMetrics();
+                String previousUniqueId = ImportTracer.setUniqueId(uniqueId);
+                tracer.end(UPLOAD_QUEUE_STAGE, ImportTracer.STAGE_CATEGORY, traceQueuedAt, EntityModelHelper.MANUAL_TESTS, 0);
+                long traceStart = tracer.begin();
+                long uploadStart = System.nanoTime();
+                metrics.record(ImportMetrics.STAGE_DURATION, uploadStart - queuedAt, ImportMetrics.STAGE_LABEL, UPLOAD_QUEUE_STAGE);
+                Object uploadEvent = ImportEvents.beginScriptUpload(testId, uniqueId, stepScript.length());
+                boolean uploaded = false;
+                try {
+                    ImporterHttpClient.StepScriptPutRequest putOctaneHttpRequest = new ImporterHttpClient.StepScriptPutRequest(
+                            url.replace(EntityModelHelper.Fields.ID.field(), testId),
+                            stepScript
+                    );
+
+                    scriptUploadClient.execute(putOctaneHttpRequest);
+                    uploaded = true;
+                } catch (OctanePartialException e) {
+                    migrationStatus.addFailedStep();
+                    logger.error("Error creating script for manual test with id");
+                } finally {
+                    ImportEvents.endScriptUpload(uploadEvent, uploaded);
+                    metrics.recordStage(UPLOAD_STEPS_STAGE, uploadStart);
+                    tracer.end(UPLOAD_STEPS_STAGE, ImportTracer.STAGE_CATEGORY, traceStart, EntityModelHelper.MANUAL_TESTS, 0);
+                    ImportTracer.setUniqueId(previousUniqueId);
+                    uploadFinished();
+                }
+            });
+        } catch (RuntimeException e) {
+            uploadFinished();
+            throw e;
+        }
+    }
+
+    /**
+     * @return - The number of step uploads of this migration which are queued or running.
+     */
+    int getPendingUploads() {
+        return pendingUploads.get();
+    }
+
+    /**
+     * Waits until all the step uploads of this migration are finished. The uploads of other migrations which share
+     * the executor are not waited for.
+     *
+     * @param timeout - The maximum time to wait.
+     * @param unit    - The unit of the timeout.
+     * @return - true if all the uploads are finished, false if the timeout elapsed before.
+     * @throws InterruptedException - In case the current thread is interrupted while waiting.
+     */
+    boolean awaitUploads(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (pendingUploads) {
+            while (pendingUploads.get() > 0) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                pendingUploads.wait(remainingMillis);
+            }
+        }
+        return true;
+    }
+
+    private void uploadFinished() {
+        if (pendingUploads.decrementAndGet() == 0) {
+            synchronized (pendingUploads) {
+                pendingUploads.notifyAll();
             }
-        });
+        }
     }
 
     /**
@@ -206,11 +415,11 @@ class OctaneRequestHelper {
      * @return -  An entity model for the searched user.
      * @throws OctanePartialException - In case the request fails.
      */
-    public static EntityModel getUserByEmail(String email) {
+    public EntityModel getUserByEmail(String email) {
         return octane.entityList(EntityModelHelper.USERS).get()
                 .addFields(EntityModelHelper.Fields.EMAIL.field(), EntityModelHelper.Fields.NAME.field())
                 .query(Query.statement(EntityModelHelper.Fields.EMAIL.field(), QueryMethod.EqualTo, email).build())
-                .execute().stream().findFirst().orElse(null);
+                .execute().stream().findFirst().map(entities::reference).orElse(null);
     }
 
     /**
@@ -226,23 +435,21 @@ class OctaneRequestHelper {
     }
 
     /**
-     * Executes a request in order to get an entity by id.
+     * Executes a request in order to get a work item by id.
      *
      * @param entityType - The entity type which is used in the request.
      * @param entityId   - The id of the entity.
-     * @return - The entity with the id given as input.
+     * @return - A reference to the work item with the id given as input.
      * - null in case the entity was not found.
      * @throws OctanePartialException - In case the request fails.
      */
-    public EntityModel getEntityWithEssentialFields(String entityType, String entityId) {
-        OctaneCollection<EntityModel> entityModels = octane.entityList(entityType).get()
+    public EntityModel getWorkItemReference(String entityType, String entityId) {
+        return octane.entityList(entityType).get()
                 .addFields(EntityModelHelper.Fields.NAME.field())
                 .query(Query.statement(EntityModelHelper.Fields.ID.field(), QueryMethod.EqualTo, entityId).build())
-                .execute();
-        if (entityModels.stream().findFirst().isPresent()) {
-            return EntityModelHelper.getEssentialFields(entityModels.stream().findFirst().get());
-        }
-        return null;
+                .execute().stream().findFirst()
+                .map(entityModel -> entities.reference(EntityModelHelper.WORK_ITEM, entityModel.getId(), EntityModelHelper.getName(entityModel)))
+                .orElse(null);
     }
 
     /**
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.model.EntityModel;
+import com.hpe.adm.nga.sdk.model.FieldModel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This is the tree of the application modules (product areas) of a workspace, indexed by path. A path is made of the
+ * names of the application modules from the root to the module, separated by {@value #PATH_SEPARATOR}
+ * (i.e. Payments/Cards/Refunds), so modules with the same name in different branches do not collide, and a path is
+ * resolved with one lookup per level.
+ *
+ * The children of a module are kept in a {@link SingleFlightCache}, so a missing module is created only once even when
+ * several tests, or several imports of the workspace (see {@link WorkspaceEntities}), need it at the same time. The
+ * tree is safe for concurrent use.
+ */
+final class ProductAreaTrie {
+    static final char PATH_SEPARATOR = '/';
+
+    /**
+     * Creates one missing application module.
+     */
+    interface Creator {
+        /**
+         * @param path   - The path of the application module.
+         * @param name   - The name of the application module.
+         * @param parent - The parent of the application module.
+         * @return - The id of the created application module or null if it could not be created.
+         */
+        String create(String path, String name, EntityModel parent);
+    }
+
+    /**
+     * Creates the missing application modules of one level of the tree.
+     */
+    interface LevelCreator {
+        /**
+         * @param names   - The names of the application modules.
+         * @param parents - The parents of the application modules, in the order of the names.
+         * @return - The ids of the created application modules in the order of the names, null for the ones which
+         * could not be created.
+         */
+        List<String> create(List<String> names, List<EntityModel> parents);
+    }
+
+    private final WorkspaceEntities entities;
+    private final Node root;
+    private final long failureTtlMillis;
+    private final ConcurrentMap<String, Node> nodesById = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, EntityModel> modulesByName = new ConcurrentHashMap<>();
+
+    /**
+     * @param entities         - The references of the workspace.
+     * @param root             - The root application module.
+     * @param failureTtlMillis - The time a failed creation of an application module is kept.
+     */
+    ProductAreaTrie(WorkspaceEntities entities, EntityModel root, long failureTtlMillis) {
+        this.entities = entities;
+        this.root = new Node(root, failureTtlMillis);
+        this.failureTtlMillis = failureTtlMillis;
+        nodesById.put(root.getId(), this.root);
+    }
+
+    /**
+     * Adds the existing application modules to the tree, under their parents. The modules which are already in the
+     * tree are not changed, the modules whose parent is not in the tree are only found by name.
+     *
+     * @param productAreas - The application modules, with their name and parent.
+     * @return - The current ProductAreaTrie
+     */
+    ProductAreaTrie addAll(Collection<EntityModel> productAreas) {
+        Map<String, List<EntityModel>> modulesByParent = new HashMap<>();
+        for (EntityModel productArea : productAreas) {
+            String parentId = getParentId(productArea);
+            if (parentId != null) {
+                modulesByParent.computeIfAbsent(parentId, id -> new ArrayList<>()).add(productArea);
+            }
+            if (!productArea.getId().equals(root.reference.getId())) {
+                modulesByName.putIfAbsent(EntityModelHelper.getName(productArea), entities.reference(productArea));
+            }
+        }
+
+        List<Node> parents = new ArrayList<>(nodesById.values());
+        while (!parents.isEmpty()) {
+            List<Node> children = new ArrayList<>();
+            for (Node parent : parents) {
+                List<EntityModel> modules = modulesByParent.remove(parent.reference.getId());
+                if (modules == null) {
+                    continue;
+                }
+
+                Map<String, Node> nodes = new LinkedHashMap<>();
+                for (EntityModel module : modules) {
+                    nodes.putIfAbsent(EntityModelHelper.getName(module),
+                            new Node(entities.reference(module), failureTtlMillis));
+                }
+                parent.children.putAll(nodes);
+                for (String name : nodes.keySet()) {
+                    Node child = parent.children.getIfPresent(name);
+                    if (child != null && nodesById.putIfAbsent(child.reference.getId(), child) == null) {
+                        children.add(child);
+                    }
+                }
+            }
+            parents = children;
+        }
+        return this;
+    }
+
+    /**
+     * @return - The root application module.
+     */
+    EntityModel getRoot() {
+        return root.reference;
+    }
+
+    /**
+     * Returns an existing application module. A name which is not a child of the root is also searched in the whole
+     * tree, as the sheets written before the paths were supported reference the modules by name.
+     *
+     * @param path - The path of the application module.
+     * @return - The application module or null if it does not exist.
+     */
+    EntityModel find(String path) {
+        Node node = root;
+        for (String name : parsePath(path)) {
+            node = node.children.getIfPresent(name);
+            if (node == null) {
+                return modulesByName.get(path.trim());
+            }
+        }
+        return node.reference;
+    }
+
+    /**
+     * Returns an application module, creating the missing modules of its path, from the root to the module.
+     *
+     * @param path    - The path of the application module.
+     * @param creator - Creates a missing application module.
+     * @return - The application module or null if a module of the path could not be created.
+     */
+    EntityModel getOrCreate(String path, Creator creator) {
+        EntityModel existing = find(path);
+        if (existing != null) {
+            return existing;
+        }
+
+        Node node = root;
+        StringBuilder nodePath = new StringBuilder(path.length());
+        for (String name : parsePath(path)) {
+            if (nodePath.length() > 0) {
+                nodePath.append(PATH_SEPARATOR);
+            }
+            nodePath.append(name);
+
+            Node parent = node;
+            String childPath = nodePath.toString();
+            node = parent.children.get(name, childName -> {
+                String id = creator.create(childPath, childName, parent.reference);
+                return id != null ? add(entities.reference(EntityModelHelper.PRODUCT_AREA, id, childName)) : null;
+            });
+            if (node == null) {
+                return null;
+            }
+        }
+        return node.reference;
+    }
+
+    /**
+     * Creates the missing application modules of the paths level by level: all the missing children of the root in
+     * one call of the creator, then all their missing children and so on, so a deep tree is created with one call per
+     * level. The modules are claimed before they are created, so the modules which another caller is creating are
+     * waited for instead of being created again. The paths under a module which could not be created are skipped.
+     *
+     * @param paths   - The paths of the application modules.
+     * @param creator - Creates the missing application modules of a level.
+     * @return - The number of created application modules.
+     */
+    int createMissing(Collection<String> paths, LevelCreator creator) {
+        List<List<String>> missingPaths = new ArrayList<>();
+        for (String path : paths) {
+            if (find(path) == null) {
+                missingPaths.add(parsePath(path));
+            }
+        }
+
+        int created = 0;
+        for (int level = 0; !missingPaths.isEmpty(); level++) {
+            Map<Node, Set<String>> missingChildren = new LinkedHashMap<>();
+            List<List<String>> deeperPaths = new ArrayList<>();
+            for (List<String> path : missingPaths) {
+                Node parent = walk(path, level);
+                if (parent == null || level >= path.size()) {
+                    continue;
+                }
+                missingChildren.computeIfAbsent(parent, node -> new LinkedHashSet<>()).add(path.get(level));
+                if (level + 1 < path.size()) {
+                    deeperPaths.add(path);
+                }
+            }
+
+            List<String> names = new ArrayList<>();
+            List<EntityModel> parents = new ArrayList<>();
+            List<Node> parentNodes = new ArrayList<>();
+            missingChildren.forEach((parent, children) -> {
+                for (String name : parent.children.reserve(children)) {
+                    names.add(name);
+                    parents.add(parent.reference);
+                    parentNodes.add(parent);
+                }
+            });
+
+            if (!names.isEmpty()) {
+                List<String> ids = null;
+                try {
+                    ids = creator.create(names, parents);
+                } finally {
+                    for (int i = 0; i < names.size(); i++) {
+                        String id = ids != null ? ids.get(i) : null;
+                        Node node = id != null ? add(entities.reference(EntityModelHelper.PRODUCT_AREA, id, names.get(i))) : null;
+                        parentNodes.get(i).children.complete(names.get(i), node);
+                        if (node != null) {
+                            created++;
+                        }
+                    }
+                }
+            }
+            missingPaths = deeperPaths;
+        }
+        return created;
+    }
+
+    /**
+     * Splits a path in the names of its application modules.
+     *
+     * @param path - The path (i.e. Payments / Cards / Refunds).
+     * @return - The trimmed names, without the empty ones.
+     */
+    static List<String> parsePath(String path) {
+        List<String> names = new ArrayList<>();
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf(PATH_SEPARATOR, start);
+            if (end < 0) {
+                end = path.length();
+            }
+            String name = path.substring(start, end).trim();
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+            start = end + 1;
+        }
+        return names;
+    }
+
+    /**
+     * @param path  - The names of the path.
+     * @param level - The number of names which are followed.
+     * @return - The node reached after the first names of the path or null if a module of the path does not exist.
+     * The modules which are being created are waited for.
+     */
+    private Node walk(List<String> path, int level) {
+        Node node = root;
+        for (int i = 0; i < level && node != null; i++) {
+            node = node.children.awaitIfPresent(path.get(i));
+        }
+        return node;
+    }
+
+    /**
+     * @param reference - The reference of a created application module.
+     * @return - The node of the application module.
+     */
+    private Node add(EntityModel reference) {
+        Node node = new Node(reference, failureTtlMillis);
+        Node existing = nodesById.putIfAbsent(reference.getId(), node);
+        return existing != null ? existing : node;
+    }
+
+    /**
+     * @param productArea - An application module.
+     * @return - The id of its parent or null if it has no parent.
+     */
+    private static String getParentId(EntityModel productArea) {
+        FieldModel parent = productArea.getValue(EntityModelHelper.Fields.PARENT.field());
+        Object value = parent != null ? parent.getValue() : null;
+        return value instanceof EntityModel ? ((EntityModel) value).getId() : null;
+    }
+
+    /**
+     * An application module and its children, mapped by name.
+     */
+    private static final class Node {
+        private final EntityModel reference;
+        private final SingleFlightCache<String, Node> children;
+
+        Node(EntityModel reference, long failureTtlMillis) {
+            this.reference = reference;
+            this.children = new SingleFlightCache<>(failureTtlMillis);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * This class logs the progress of the migration at a fixed interval: the number of processed tests out of the total,
+ * the test and step throughput, the requests in flight, the queued step uploads and the estimated time left.
+ *
+ * The values are read from the migration metrics on a separate thread, so the import itself is not slowed down.
+ * The ETA is based on a rolling (exponentially weighted) test rate, so it follows changes of the throughput.
+ */
+final class ProgressReporter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ProgressReporter.class);
+
+    //the weight of the last interval in the rolling test rate
+    private static final double RATE_WEIGHT = 0.3;
+
+    private final ImportMetrics metrics;
+    private final int totalTests;
+    private final LongSupplier queuedUploads;
+    private final long intervalMillis;
+    private final long startNanos;
+
+    private ScheduledExecutorService scheduler;
+
+    private long lastReportNanos;
+    private long lastTests;
+    private long lastSteps;
+    private double rollingTestRate = -1;
+
+    /**
+     * @param metrics        - The metrics of the migration.
+     * @param totalTests     - The number of tests in the excel file.
+     * @param queuedUploads  - Returns the number of step uploads waiting to be executed.
+     * @param intervalMillis - The interval between two progress reports.
+     */
+    ProgressReporter(ImportMetrics metrics, int totalTests, LongSupplier queuedUploads, long intervalMillis) {
+        this.metrics = metrics;
+        this.totalTests = totalTests;
+        this.queuedUploads = queuedUploads;
+        this.intervalMillis = intervalMillis;
+        this.startNanos = System.nanoTime();
+        this.lastReportNanos = startNanos;
+    }
+
+    /**
+     * Starts the periodic reports.
+     */
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "import-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                logger.info(report(System.nanoTime()));
+            } catch (RuntimeException e) {
+                StringUtils.logException(logger, "Unable to report the migration progress", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic reports and logs the final progress.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long tests = getProcessedTests();
+        logger.info(String.format("Processed %s/%s tests in %s (%.1f tests/s, %.1f steps/s)",
+                tests, totalTests, formatDuration(TimeUnit.NANOSECONDS.toSeconds(elapsedNanos)),
+                perSecond(tests, elapsedNanos), perSecond(metrics.getCount(ImportMetrics.STEPS_UPLOADED), elapsedNanos)));
+    }
+
+    /**
+     * Computes the progress since the previous report. This is called only by the reporting thread.
+     *
+     * @param nowNanos - The current value of System.nanoTime().
+     * @return - The progress message.
+     */
+    String report(long nowNanos) {
+        long tests = getProcessedTests();
+        long steps = metrics.getCount(ImportMetrics.STEPS_UPLOADED);
+        long intervalNanos = Math.max(1, nowNanos - lastReportNanos);
+
+        double testRate = perSecond(tests - lastTests, intervalNanos);
+        double stepRate = perSecond(steps - lastSteps, intervalNanos);
+        rollingTestRate = rollingTestRate < 0
+                ? testRate
+                : RATE_WEIGHT * testRate + (1 - RATE_WEIGHT) * rollingTestRate;
+
+        lastReportNanos = nowNanos;
+        lastTests = tests;
+        lastSteps = steps;
+
+        long remainingTests = Math.max(0, totalTests - tests);
+        String eta = rollingTestRate > 0
+                ? formatDuration(Math.round(remainingTests / rollingTestRate))
+                : "unknown";
+
+        return String.format("Progress: %s/%s tests (%.1f%%), %.1f tests/s, %.1f steps/s, %s requests in flight, %s step uploads queued, ETA %s",
+                tests, totalTests, totalTests > 0 ? 100.0 * tests / totalTests : 100.0,
+                testRate, stepRate, metrics.getInFlightRequests(), queuedUploads.getAsLong(), eta);
+    }
+
+    /**
+     * @return - The number of tests which were migrated or failed.
+     */
+    private long getProcessedTests() {
+        return metrics.getCount(ImportMetrics.TESTS_MIGRATED) + metrics.getCount(ImportMetrics.TESTS_FAILED);
+    }
+
+    private static double perSecond(long value, long nanos) {
+        return nanos > 0 ? value * 1_000_000_000.0 / nanos : 0;
+    }
+
+    /**
+     * @param seconds - A duration in seconds.
+     * @return - The duration as HH:mm:ss.
+     */
+    static String formatDuration(long seconds) {
+        return String.format("%02d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+    }
+}
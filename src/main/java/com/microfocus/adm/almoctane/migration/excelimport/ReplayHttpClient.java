@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.authentication.Authentication;
+import com.hpe.adm.nga.sdk.exception.OctaneException;
+import com.hpe.adm.nga.sdk.network.OctaneHttpRequest;
+import com.hpe.adm.nga.sdk.network.OctaneHttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This HTTP client serves the responses recorded in a {@link TrafficCassette} instead of sending the requests to a
+ * server, so the same migration can be run again offline. The requests are matched by their method, url and body
+ * digest and, for the same request, the responses are served in the recorded order. When the recorded responses of a
+ * GET or DELETE request are used up, the last one is served again and a warning is logged, since the replay may read
+ * an entity more often than the recording (i.e. when a cache was filled in a different order). A POST or PUT request
+ * whose responses are used up fails, since serving the same response again would give the same id to two created
+ * entities.
+ *
+ * The recorded duration of every request, multiplied by the latency scale, is waited before the response is served.
+ * The metrics and the traces are recorded as for a real server.
+ */
+class ReplayHttpClient extends ImporterHttpClient {
+    private static final Logger logger = LoggerFactory.getLogger(ReplayHttpClient.class);
+
+    private final Map<String, Deque<TrafficCassette.Exchange>> exchanges;
+    private final double latencyScale;
+    private final Set<String> repeatedKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param urlDomain    - The server used in the request urls.
+     * @param exchanges    - The recorded exchanges, which can be shared by several clients.
+     * @param latencyScale - The multiplier of the recorded durations (i.e. 1 for the original latency, 0 for none).
+     * @param metrics      - The metrics of the migration which uses the client.
+     */
+    ReplayHttpClient(String urlDomain, Map<String, Deque<TrafficCassette.Exchange>> exchanges, double latencyScale,
+                     ImportMetrics metrics) {
+        super(urlDomain, RequestCompression.disabled(), metrics);
+        this.exchanges = exchanges;
+        this.latencyScale = latencyScale;
+    }
+
+    @Override
+    public boolean authenticate(Authentication authentication) {
+        return true;
+    }
+
+    @Override
+    public void signOut() {
+    }
+
+    @Override
+    OctaneHttpResponse send(OctaneHttpRequest octaneHttpRequest) {
+        String bodyDigest = TrafficCassette.bodyDigest(octaneHttpRequest);
+        String key = TrafficCassette.key(String.valueOf(octaneHttpRequest.getOctaneRequestMethod()),
+                getRelativeUrl(octaneHttpRequest), bodyDigest);
+        TrafficCassette.Exchange exchange = next(key, bodyDigest == null);
+
+        sleep((long) (exchange.getDurationNanos() * latencyScale));
+
+        OctaneException error = exchange.toException();
+        if (error != null) {
+            throw error;
+        }
+        return new OctaneHttpResponse(exchange.getStatusCode(), exchange.getContent(), null);
+    }
+
+    /**
+     * @param key        - The key of the request.
+     * @param repeatLast - true if the last recorded response can be served again when the responses are used up.
+     * @return - The next recorded response of the request.
+     * @throws RuntimeException - In case the request was not recorded or its recorded responses are used up.
+     */
+    private TrafficCassette.Exchange next(String key, boolean repeatLast) {
+        Deque<TrafficCassette.Exchange> recorded = exchanges.get(key);
+        if (recorded == null) {
+            throw new RuntimeException(String.format("There is no recorded response for the request %s", key));
+        }
+
+        synchronized (recorded) {
+            if (recorded.size() > 1 || !repeatLast) {
+                TrafficCassette.Exchange exchange = recorded.poll();
+                if (exchange == null) {
+                    throw new RuntimeException(String.format(
+                            "The recorded responses for the request %s are used up, the replay sent it more often than the recording", key));
+                }
+                return exchange;
+            }
+        }
+
+        if (repeatedKeys.add(key)) {
+            logger.warn(String.format("The recorded responses for the request %s are used up, the last one is served again", key));
+        }
+        synchronized (recorded) {
+            return recorded.peek();
+        }
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class holds the request body compression settings and statistics.
+ * Request bodies which are at least as big as the threshold are sent gzip compressed. If the server rejects a
+ * compressed request, the compression is turned off for the rest of the migration.
+ */
+final class RequestCompression {
+    private final int thresholdBytes;
+    private final AtomicBoolean enabled;
+
+    private final LongAdder compressedRequests = new LongAdder();
+    private final LongAdder originalBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * @param enabled        - true if the request bodies should be compressed.
+     * @param thresholdBytes - The minimum size of a request body which is compressed.
+     */
+    RequestCompression(boolean enabled, int thresholdBytes) {
+        this.enabled = new AtomicBoolean(enabled);
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    /**
+     * @return - A compression setting which never compresses the requests.
+     */
+    static RequestCompression disabled() {
+        return new RequestCompression(false, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param contentLength - The length of the request body. A negative value means the length is not known.
+     * @return - true if a request body of the given length should be compressed.
+     */
+    boolean shouldCompress(long contentLength) {
+        return enabled.get() && contentLength >= thresholdBytes;
+    }
+
+    /**
+     * Turns the compression off after the server rejected a compressed request.
+     */
+    void fallback() {
+        if (enabled.compareAndSet(true, false)) {
+            fallbacks.increment();
+        }
+    }
+
+    /**
+     * Records a request body which was sent compressed.
+     *
+     * @param originalLength   - The size of the body before compression.
+     * @param compressedLength - The size of the compressed body.
+     */
+    void addCompressedRequest(long originalLength, long compressedLength) {
+        compressedRequests.increment();
+        originalBytes.add(originalLength);
+        compressedBytes.add(compressedLength);
+    }
+
+    /**
+     * @return - The number of compressed requests.
+     */
+    long getCompressedRequests() {
+        return compressedRequests.sum();
+    }
+
+    /**
+     * @return - The size of the compressed request bodies before compression.
+     */
+    long getOriginalBytes() {
+        return originalBytes.sum();
+    }
+
+    /**
+     * @return - The size of the compressed request bodies.
+     */
+    long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * @return - The number of bytes which were not sent because of the compression.
+     */
+    long getBytesSaved() {
+        return getOriginalBytes() - getCompressedBytes();
+    }
+
+    /**
+     * @return - The number of times the compression was turned off because the server rejected it.
+     */
+    long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * Logs the compression statistics.
+     *
+     * @param logger - The logger used for logging the statistics.
+     */
+    void logSummary(Logger logger) {
+        if (getCompressedRequests() > 0 || getFallbacks() > 0) {
+            logger.info(String.format("Compressed requests: %s, bytes before compression: %s, bytes sent: %s, bytes saved: %s, fallbacks: %s",
+                    getCompressedRequests(), getOriginalBytes(), getCompressedBytes(), getBytesSaved(), getFallbacks()));
+        }
+    }
+}
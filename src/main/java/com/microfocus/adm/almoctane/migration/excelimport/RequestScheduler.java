@@ -0,0 +1,529 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class schedules the Octane requests of all the imports which run in the JVM under a global budget: a maximum
+ * number of requests in flight and a maximum rate. When the budget is used up, the requests wait and the next request
+ * is chosen by weighted fair queuing, first between the workspaces and then between the imports (jobs) of the chosen
+ * workspace. Every request costs the same, so a job gets a share of the budget proportional to its weight, no matter
+ * how many threads send its requests, and a small job is not starved by a large one.
+ *
+ * The queuing uses start-time fair queuing: a workspace or a job which is served advances its tag by 1/weight and the
+ * waiting workspace or job with the smallest tag is served next. A workspace or job which was idle starts from the
+ * tag of the last served one, so it gets no credit for the time it was idle.
+ *
+ * Every {@link TrafficClass} has its own lane with its own fair queuing and, optionally, its own maximum number of
+ * requests in flight. The lanes are served by priority: a waiting request of a lower class is sent only when no
+ * request of a higher class is waiting, so the small requests which the creation of the tests waits for are never
+ * queued behind the script uploads, and the limit of the script upload lane keeps a part of the budget free for them.
+ *
+ * The scheduler is off by default, then the requests are not queued at all.
+ */
+final class RequestScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(RequestScheduler.class);
+    private static final Slot UNSCHEDULED = new Slot(null, 0);
+    private static volatile RequestScheduler instance = new RequestScheduler(0, 0);
+
+    private final int maxInFlight;
+    private final double requestsPerSecond;
+    private final double burst;
+    private final boolean enabled;
+    private final AtomicLong jobCount = new AtomicLong();
+
+    // guarded by this
+    private final Map<Integer, Double> workspaceWeights = new HashMap<>();
+    private final Map<TrafficClass, Lane> lanes = new EnumMap<>(TrafficClass.class);
+    private int inFlight;
+    private int rateWaiters;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    /**
+     * @param maxInFlight       - The maximum number of requests in flight, 0 for no maximum.
+     * @param requestsPerSecond - The maximum rate of the requests, 0 for no maximum.
+     */
+    RequestScheduler(int maxInFlight, double requestsPerSecond) {
+        this(maxInFlight, requestsPerSecond, Collections.emptyMap());
+    }
+
+    /**
+     * @param maxInFlight       - The maximum number of requests in flight, 0 for no maximum.
+     * @param requestsPerSecond - The maximum rate of the requests, 0 for no maximum.
+     * @param laneLimits        - The maximum number of requests in flight of the traffic classes, 0 for no maximum.
+     */
+    RequestScheduler(int maxInFlight, double requestsPerSecond, Map<TrafficClass, Integer> laneLimits) {
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : Integer.MAX_VALUE;
+        this.requestsPerSecond = Math.max(0, requestsPerSecond);
+        this.burst = Math.max(1, this.requestsPerSecond);
+        this.tokens = burst;
+
+        boolean limitedLanes = false;
+        for (TrafficClass trafficClass : TrafficClass.values()) {
+            int laneLimit = laneLimits.getOrDefault(trafficClass, 0);
+            lanes.put(trafficClass, new Lane(laneLimit > 0 ? laneLimit : Integer.MAX_VALUE));
+            limitedLanes |= laneLimit > 0;
+        }
+        this.enabled = this.maxInFlight != Integer.MAX_VALUE || this.requestsPerSecond > 0 || limitedLanes;
+    }
+
+    /**
+     * Turns on the scheduling of the requests of the imports which start from now on.
+     *
+     * @param maxInFlight       - The maximum number of requests in flight, 0 for no maximum.
+     * @param requestsPerSecond - The maximum rate of the requests, 0 for no maximum.
+     */
+    static void configure(int maxInFlight, double requestsPerSecond) {
+        configure(maxInFlight, requestsPerSecond, Collections.emptyMap());
+    }
+
+    /**
+     * Turns on the scheduling of the requests of the imports which start from now on, with a maximum number of
+     * requests in flight for some traffic classes.
+     *
+     * @param maxInFlight       - The maximum number of requests in flight, 0 for no maximum.
+     * @param requestsPerSecond - The maximum rate of the requests, 0 for no maximum.
+     * @param laneLimits        - The maximum number of requests in flight of the traffic classes, 0 for no maximum.
+     */
+    static void configure(int maxInFlight, double requestsPerSecond, Map<TrafficClass, Integer> laneLimits) {
+        instance = new RequestScheduler(maxInFlight, requestsPerSecond, laneLimits);
+        if (instance.isEnabled()) {
+            logger.info(String.format("The Octane requests are scheduled: %s in flight, %s per second",
+                    maxInFlight > 0 ? maxInFlight : "any number", requestsPerSecond > 0 ? requestsPerSecond : "any number"));
+            laneLimits.forEach((trafficClass, laneLimit) -> {
+                if (laneLimit > 0) {
+                    logger.info(String.format("The %s requests are limited to %s in flight", trafficClass.label(), laneLimit));
+                }
+            });
+        }
+    }
+
+    /**
+     * @return - The scheduler of the JVM.
+     */
+    static RequestScheduler get() {
+        return instance;
+    }
+
+    /**
+     * @return - true if the requests are queued when the budget is used up.
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Changes the weight of a workspace. The workspaces have the weight 1 by default.
+     *
+     * @param workspace - The workspace.
+     * @param weight    - The weight, bigger than 0.
+     */
+    synchronized void setWorkspaceWeight(int workspace, double weight) {
+        checkWeight(weight);
+        workspaceWeights.put(workspace, weight);
+        for (Lane lane : lanes.values()) {
+            WorkspaceQueue queue = lane.workspaceQueues.get(workspace);
+            if (queue != null) {
+                queue.weight = weight;
+            }
+        }
+    }
+
+    /**
+     * Creates the tenant of a new job. All the requests of a job must use the same tenant.
+     *
+     * @param workspace - The workspace of the job.
+     * @param weight    - The weight of the job inside its workspace, bigger than 0.
+     * @return - The tenant.
+     */
+    Tenant tenant(int workspace, double weight) {
+        checkWeight(weight);
+        return new Tenant(this, workspace, jobCount.incrementAndGet(), weight);
+    }
+
+    /**
+     * @return - The number of scheduled requests in flight.
+     */
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @param trafficClass - The traffic class.
+     * @return - The number of scheduled requests of the traffic class in flight.
+     */
+    synchronized int getInFlight(TrafficClass trafficClass) {
+        return lanes.get(trafficClass).inFlight;
+    }
+
+    /**
+     * Waits until the request of a job can be sent.
+     *
+     * @param tenant       - The tenant of the job.
+     * @param trafficClass - The class of the request.
+     * @return - The slot of the request, which must be closed when the request is finished.
+     */
+    private Slot acquire(Tenant tenant, TrafficClass trafficClass) {
+        if (!isEnabled()) {
+            return UNSCHEDULED;
+        }
+
+        long start = System.nanoTime();
+        Slot slot = new Slot(this, start);
+        synchronized (this) {
+            Lane lane = lanes.get(trafficClass);
+            JobQueue jobQueue = enqueue(lane, tenant, trafficClass, slot);
+            try {
+                while (!slot.granted) {
+                    long waitNanos = dispatch();
+                    if (slot.granted) {
+                        break;
+                    }
+                    if (waitNanos > 0) {
+                        rateWaiters++;
+                        try {
+                            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                        } finally {
+                            rateWaiters--;
+                        }
+                    } else {
+                        wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (!slot.granted) {
+                    jobQueue.waiting.remove(slot);
+                    if (jobQueue.waiting.isEmpty()) {
+                        removeIdle(lane, jobQueue);
+                    }
+                    dispatch();
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting to send a request to Octane", e);
+                }
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        slot.waitNanos = System.nanoTime() - start;
+        return slot;
+    }
+
+    /**
+     * Frees the budget used by a request and lets the next waiting request go.
+     *
+     * @param slot - The slot of the request.
+     */
+    private synchronized void release(Slot slot) {
+        inFlight--;
+        slot.lane.inFlight--;
+        dispatch();
+    }
+
+    /**
+     * Adds a request to the queue of its job in the lane of its class and, if the job was idle, the job to the queue
+     * of its workspace.
+     *
+     * @param lane         - The lane of the traffic class.
+     * @param tenant       - The tenant of the job.
+     * @param trafficClass - The class of the request.
+     * @param slot         - The slot of the request.
+     * @return - The queue of the job in the lane.
+     */
+    private JobQueue enqueue(Lane lane, Tenant tenant, TrafficClass trafficClass, Slot slot) {
+        WorkspaceQueue workspaceQueue = lane.workspaceQueues.computeIfAbsent(tenant.workspace,
+                workspace -> new WorkspaceQueue(workspace, workspaceWeights.getOrDefault(workspace, 1.0)));
+        JobQueue jobQueue = tenant.queues.computeIfAbsent(trafficClass, c -> new JobQueue(tenant, workspaceQueue));
+
+        if (jobQueue.waiting.isEmpty()) {
+            jobQueue.tag = Math.max(jobQueue.tag, workspaceQueue.virtualTime);
+            workspaceQueue.backlog.add(jobQueue);
+            if (workspaceQueue.backlog.size() == 1) {
+                workspaceQueue.tag = Math.max(workspaceQueue.tag, lane.virtualTime);
+                lane.backlog.add(workspaceQueue);
+            }
+        }
+        jobQueue.waiting.addLast(slot);
+        return jobQueue;
+    }
+
+    /**
+     * Removes a job which has no waiting requests from the queue of its workspace and, if the workspace has no more
+     * waiting jobs, the workspace from the lane.
+     *
+     * @param lane     - The lane.
+     * @param jobQueue - The queue of the job.
+     */
+    private static void removeIdle(Lane lane, JobQueue jobQueue) {
+        WorkspaceQueue workspaceQueue = jobQueue.workspaceQueue;
+        workspaceQueue.backlog.remove(jobQueue);
+        if (workspaceQueue.backlog.isEmpty()) {
+            lane.backlog.remove(workspaceQueue);
+        }
+    }
+
+    /**
+     * Grants the waiting requests while the budget allows it, by the priority of the lanes and, inside a lane, in the
+     * order of the fair queuing. When the rate stops the dispatch and no waiting request has a timed wait for the
+     * rate, i.e. a request was released while the others waited for a free slot, the waiting requests are woken up,
+     * so one of them waits for the rate.
+     *
+     * @return - The time until the rate allows the next request, or 0 if no request is waiting for the rate.
+     */
+    private long dispatch() {
+        boolean granted = false;
+        long waitNanos = 0;
+
+        while (inFlight < maxInFlight) {
+            Lane lane = nextLane();
+            if (lane == null) {
+                break;
+            }
+            if (requestsPerSecond > 0) {
+                refillTokens();
+                if (tokens < 1) {
+                    waitNanos = Math.max(1, (long) ((1 - tokens) / requestsPerSecond * TimeUnit.SECONDS.toNanos(1)));
+                    break;
+                }
+                tokens--;
+            }
+
+            WorkspaceQueue workspaceQueue = smallestTag(lane.backlog);
+            JobQueue jobQueue = smallestTag(workspaceQueue.backlog);
+            Slot slot = jobQueue.waiting.removeFirst();
+
+            lane.virtualTime = workspaceQueue.tag;
+            workspaceQueue.tag += 1 / workspaceQueue.weight;
+            workspaceQueue.virtualTime = jobQueue.tag;
+            jobQueue.tag += 1 / jobQueue.tenant.weight;
+
+            if (jobQueue.waiting.isEmpty()) {
+                removeIdle(lane, jobQueue);
+            }
+
+            slot.granted = true;
+            slot.lane = lane;
+            inFlight++;
+            lane.inFlight++;
+            granted = true;
+        }
+
+        if (granted || waitNanos > 0 && rateWaiters == 0) {
+            notifyAll();
+        }
+        return waitNanos;
+    }
+
+    /**
+     * @return - The lane with the highest priority which has waiting requests and is below its limit, or null if no
+     * lane can send a request.
+     */
+    private Lane nextLane() {
+        for (Lane lane : lanes.values()) {
+            if (!lane.backlog.isEmpty() && lane.inFlight < lane.maxInFlight) {
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the tokens earned since the last refill, up to the burst size.
+     */
+    private void refillTokens() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * requestsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+
+    private static <T extends Tagged> T smallestTag(List<T> queues) {
+        T smallest = queues.get(0);
+        for (int i = 1; i < queues.size(); i++) {
+            if (queues.get(i).tag() < smallest.tag()) {
+                smallest = queues.get(i);
+            }
+        }
+        return smallest;
+    }
+
+    private static void checkWeight(double weight) {
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException("The weight must be bigger than 0: " + weight);
+        }
+    }
+
+    /**
+     * A queue which is served by its tag.
+     */
+    private interface Tagged {
+        double tag();
+    }
+
+    /**
+     * The workspaces which have waiting requests of one traffic class.
+     */
+    private static final class Lane {
+        private final int maxInFlight;
+        private final Map<Integer, WorkspaceQueue> workspaceQueues = new HashMap<>();
+        private final List<WorkspaceQueue> backlog = new ArrayList<>();
+        private double virtualTime;
+        private int inFlight;
+
+        Lane(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    /**
+     * The jobs of a workspace which have waiting requests of one traffic class.
+     */
+    private static final class WorkspaceQueue implements Tagged {
+        private final int workspace;
+        private final List<JobQueue> backlog = new ArrayList<>();
+        private double weight;
+        private double tag;
+        private double virtualTime;
+
+        WorkspaceQueue(int workspace, double weight) {
+            this.workspace = workspace;
+            this.weight = weight;
+        }
+
+        @Override
+        public double tag() {
+            return tag;
+        }
+
+        @Override
+        public String toString() {
+            return "workspace " + workspace;
+        }
+    }
+
+    /**
+     * The waiting requests of one traffic class of a job.
+     */
+    private static final class JobQueue implements Tagged {
+        private final Tenant tenant;
+        private final WorkspaceQueue workspaceQueue;
+        private final Deque<Slot> waiting = new ArrayDeque<>();
+        private double tag;
+
+        JobQueue(Tenant tenant, WorkspaceQueue workspaceQueue) {
+            this.tenant = tenant;
+            this.workspaceQueue = workspaceQueue;
+        }
+
+        @Override
+        public double tag() {
+            return tag;
+        }
+
+        @Override
+        public String toString() {
+            return tenant.toString();
+        }
+    }
+
+    /**
+     * The requests of one job (i.e. one ExcelImporter). The tenant keeps the fair queuing state of the job in every
+     * lane.
+     */
+    static final class Tenant {
+        private final RequestScheduler scheduler;
+        private final int workspace;
+        private final long job;
+        private final double weight;
+        // guarded by the scheduler
+        private final Map<TrafficClass, JobQueue> queues = new EnumMap<>(TrafficClass.class);
+
+        private Tenant(RequestScheduler scheduler, int workspace, long job, double weight) {
+            this.scheduler = scheduler;
+            this.workspace = workspace;
+            this.job = job;
+            this.weight = weight;
+        }
+
+        /**
+         * Waits until a request of the job can be sent.
+         *
+         * @param trafficClass - The class of the request.
+         * @return - The slot of the request, which must be closed when the request is finished.
+         */
+        Slot acquire(TrafficClass trafficClass) {
+            return scheduler.acquire(this, trafficClass);
+        }
+
+        @Override
+        public String toString() {
+            return "workspace " + workspace + " job " + job;
+        }
+    }
+
+    /**
+     * The budget used by a request while it is in flight.
+     */
+    static final class Slot implements AutoCloseable {
+        private final RequestScheduler scheduler;
+        private final long requestedAtNanos;
+        private Lane lane;
+        private boolean granted;
+        private long waitNanos;
+        private boolean closed;
+
+        private Slot(RequestScheduler scheduler, long requestedAtNanos) {
+            this.scheduler = scheduler;
+            this.requestedAtNanos = requestedAtNanos;
+        }
+
+        /**
+         * @return - true if the request was queued by the scheduler.
+         */
+        boolean isScheduled() {
+            return scheduler != null;
+        }
+
+        /**
+         * @return - The time the request waited for the budget.
+         */
+        long getWaitNanos() {
+            return waitNanos;
+        }
+
+        /**
+         * Frees the budget of the request.
+         */
+        @Override
+        public void close() {
+            if (scheduler != null && !closed) {
+                closed = true;
+                scheduler.release(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * This is the connection of a worker of a sharded import to the {@link ShardCoordinator}. The requests are sent one at
+ * a time and wait for the answer of the coordinator.
+ */
+class ShardClient implements AutoCloseable {
+    private final Socket socket;
+    private final BufferedReader reader;
+    private final Writer writer;
+
+    /**
+     * Connects to the coordinator.
+     *
+     * @param port - The port of the coordinator on the loopback interface.
+     * @throws IOException - In case the coordinator cannot be reached.
+     */
+    ShardClient(int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return - The configuration of the worker: the Octane server and workspace, the settings, the header of the sheet
+     * and the id of the worker.
+     */
+    JSONObject getConfig() {
+        return call(request(ShardCoordinator.CONFIG_OP));
+    }
+
+    /**
+     * Finishes the current shard of the worker and gets the next one.
+     *
+     * @param columnIndexes - The column indexes of the mandatory fields.
+     * @return - The test descriptions of the next shard, or null if there are no more shards.
+     */
+    List<TestDescription> nextShard(Map<String, Integer> columnIndexes) {
+        JSONObject shard = call(request(ShardCoordinator.SHARD_OP));
+        if (shard.getInt(ShardCoordinator.SHARD_OP) < 0) {
+            return null;
+        }
+
+        JSONArray rows = shard.getJSONArray("rows");
+        List<ExcelImportRow> detachedRows = new ArrayList<>(rows.length());
+        for (int i = 0; i < rows.length(); i++) {
+            JSONObject row = rows.getJSONObject(i);
+            JSONArray cells = row.getJSONArray("cells");
+            String[] values = new String[cells.length()];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = cells.isNull(j) ? null : cells.getString(j);
+            }
+            detachedRows.add(ExcelImportRow.detached(values, row.getInt("row"), columnIndexes));
+        }
+
+        List<TestDescription> descriptions = new ArrayList<>();
+        TestDescription.group(detachedRows.iterator(), descriptions::add);
+        return descriptions;
+    }
+
+    /**
+     * Publishes the id of a created test for the call steps of the other workers.
+     *
+     * @param uniqueId - The unique_id of the test.
+     * @param testId   - The id of the test in Octane.
+     */
+    void testMigrated(String uniqueId, String testId) {
+        call(request(ShardCoordinator.TEST_OP).put("unique_id", uniqueId).put("id", testId));
+    }
+
+    /**
+     * Tells the coordinator that a test could not be created, so the call steps to it do not wait anymore.
+     *
+     * @param uniqueId - The unique_id of the test.
+     */
+    void testFailed(String uniqueId) {
+        call(request(ShardCoordinator.TEST_OP).put("unique_id", uniqueId));
+    }
+
+    /**
+     * Returns the id of a test created by any worker, waiting for it if it comes before the calling test.
+     *
+     * @param uniqueId  - The unique_id of the test.
+     * @param callerRow - The row of the calling test.
+     * @return - The id of the test or null if it was not created before the calling test.
+     */
+    String resolveTest(String uniqueId, int callerRow) {
+        return call(request(ShardCoordinator.RESOLVE_OP).put("unique_id", uniqueId).put("row", callerRow)).optString("id", null);
+    }
+
+    /**
+     * Returns the id of a user tag or product area which was created by another worker. If no worker created it yet,
+     * this worker creates it and the other workers wait for it.
+     *
+     * @param kind    - The type of the entity.
+     * @param name    - The name of the entity.
+     * @param creator - Creates the entity and returns its id.
+     * @return - The id of the entity or null if it could not be created.
+     */
+    String getOrCreate(String kind, String name, Supplier<String> creator) {
+        JSONObject entity = call(request(ShardCoordinator.ENTITY_OP).put("kind", kind).put("name", name));
+        if (!entity.optBoolean("create")) {
+            return entity.getString("id");
+        }
+
+        String id = null;
+        try {
+            id = creator.get();
+            return id;
+        } finally {
+            call(request(ShardCoordinator.ENTITY_CREATED_OP).put("kind", kind).put("name", name).putOpt("id", id));
+        }
+    }
+
+    /**
+     * Sends the result of the worker to the coordinator.
+     *
+     * @param status          - The final status of the migration of the worker.
+     * @param migrationStatus - The counters of the migration.
+     */
+    void finished(MigrationStatus.Status status, MigrationStatus migrationStatus) {
+        call(request(ShardCoordinator.FINISHED_OP)
+                .put("status", status.name())
+                .put("migrated_tests", migrationStatus.getMigratedTests())
+                .put("failed_tests", migrationStatus.getFailedTests())
+                .put("uploaded_steps", migrationStatus.getUploadedSteps())
+                .put("failed_steps", migrationStatus.getFailedSteps()));
+    }
+
+    /**
+     * @param columnIndexes - The column indexes of the mandatory fields.
+     * @return - The test descriptions of all the shards handed out to this worker, fetched one shard at a time.
+     */
+    TestDescriptionSource descriptions(Map<String, Integer> columnIndexes) {
+        return new TestDescriptionSource() {
+            private Iterator<TestDescription> shard = null;
+            private boolean finished;
+
+            @Override
+            public TestDescription next() {
+                while (!finished && (shard == null || !shard.hasNext())) {
+                    List<TestDescription> descriptions = nextShard(columnIndexes);
+                    finished = descriptions == null;
+                    shard = finished ? null : descriptions.iterator();
+                }
+                return finished ? null : shard.next();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Sends a request and waits for its answer.
+     *
+     * @param request - The request.
+     * @return - The answer of the coordinator.
+     */
+    private synchronized JSONObject call(JSONObject request) {
+        try {
+            writer.write(request.toString());
+            writer.write('\n');
+            writer.flush();
+
+            String line = reader.readLine();
+            if (line == null) {
+                throw new RuntimeException("The coordinator closed the connection");
+            }
+
+            JSONObject response = new JSONObject(line);
+            if (response.has("error")) {
+                throw new RuntimeException(String.format("The coordinator rejected the %s request: %s",
+                        request.getString(ShardCoordinator.OP), response.getString("error")));
+            }
+            return response;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to reach the coordinator", e);
+        }
+    }
+
+    private static JSONObject request(String op) {
+        return new JSONObject().put(ShardCoordinator.OP, op);
+    }
+
+    /**
+     * Reads the column indexes sent by the coordinator.
+     *
+     * @param config - The configuration of the worker.
+     * @return - The column indexes of the mandatory fields.
+     */
+    static Map<String, Integer> getColumnIndexes(JSONObject config) {
+        JSONObject json = config.getJSONObject("column_indexes");
+        Map<String, Integer> columnIndexes = new HashMap<>();
+        for (String key : json.keySet()) {
+            columnIndexes.put(key, json.getInt(key));
+        }
+        return columnIndexes;
+    }
+
+    /**
+     * Reads the header sent by the coordinator.
+     *
+     * @param config - The configuration of the worker.
+     * @return - The column names of the sheet, indexed by the column index.
+     */
+    static String[] getHeader(JSONObject config) {
+        JSONArray json = config.getJSONArray("header");
+        String[] header = new String[json.length()];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = json.isNull(i) ? null : json.getString(i);
+        }
+        return header;
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This is the coordinator of a sharded import. The workers connect to it on a loopback socket and send one JSON
+ * request per line, which is answered with one JSON line. The coordinator:
+ * <ul>
+ * <li>hands out the shards of the {@link ShardPlan} in the order of the sheet, one at a time to every worker, so the
+ * fast workers take more shards</li>
+ * <li>keeps the ids of the tests created by all the workers, so a call step can target a test of another shard. A call
+ * to a test which comes before the calling test waits until the test is created or fails, like in a sequential import,
+ * and a call to a test which comes after it is not resolved</li>
+ * <li>lets only one worker create a missing user tag or product area, the other workers wait for its id</li>
+ * <li>collects the results of the workers</li>
+ * </ul>
+ * A worker which disconnects before finishing its shard releases the shard (it is not imported again, since some of its
+ * tests may have been created) and the entities it was creating.
+ */
+class ShardCoordinator implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    static final String OP = "op";
+    static final String CONFIG_OP = "config";
+    static final String SHARD_OP = "shard";
+    static final String TEST_OP = "test";
+    static final String RESOLVE_OP = "resolve";
+    static final String ENTITY_OP = "entity";
+    static final String ENTITY_CREATED_OP = "entity_created";
+    static final String FINISHED_OP = "finished";
+
+    private final ShardPlan plan;
+    private final JSONObject workerConfig;
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+
+    // guarded by this
+    private final List<Connection> connections = new ArrayList<>();
+    private final Set<Integer> finishedShards = new HashSet<>();
+    private final Set<Integer> abandonedShards = new HashSet<>();
+    private final Map<String, String> testIds = new HashMap<>();
+    private final Set<String> failedTests = new HashSet<>();
+    private final Map<String, String> entityIds = new HashMap<>();
+    private final Map<String, Connection> entityCreators = new HashMap<>();
+    private final Map<Integer, JSONObject> results = new LinkedHashMap<>();
+    private int nextShard;
+    private int workerCount;
+
+    /**
+     * Starts listening for workers on a free port of the loopback interface.
+     *
+     * @param plan         - The plan of the import.
+     * @param workerConfig - The configuration which is sent to every worker.
+     * @throws IOException - In case the socket cannot be bound.
+     */
+    ShardCoordinator(ShardPlan plan, JSONObject workerConfig) throws IOException {
+        this.plan = plan;
+        this.workerConfig = workerConfig;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.acceptThread = new Thread(this::accept, "shard-coordinator");
+        this.acceptThread.setDaemon(true);
+        this.acceptThread.start();
+    }
+
+    /**
+     * @return - The port where the workers connect.
+     */
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return - The results sent by the workers which finished, by worker.
+     */
+    synchronized Map<Integer, JSONObject> getResults() {
+        return new LinkedHashMap<>(results);
+    }
+
+    /**
+     * @return - The number of shards which were not handed out or not finished.
+     */
+    synchronized int getUnfinishedShards() {
+        return plan.getShards().size() - finishedShards.size();
+    }
+
+    /**
+     * Stops accepting workers and closes the connections.
+     */
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Unable to close the coordinator socket", e);
+        }
+
+        List<Connection> open;
+        synchronized (this) {
+            open = new ArrayList<>(connections);
+        }
+        open.forEach(Connection::close);
+    }
+
+    /**
+     * Accepts the workers until the coordinator is closed.
+     */
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Connection connection = new Connection(socket);
+                synchronized (this) {
+                    connections.add(connection);
+                }
+                Thread thread = new Thread(connection, "shard-coordinator-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    StringUtils.logException(logger, "Unable to accept a worker", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers a request of a worker.
+     *
+     * @param connection - The connection of the worker.
+     * @param request    - The request.
+     * @return - The response.
+     * @throws InterruptedException - In case the thread is interrupted while waiting.
+     */
+    private JSONObject handle(Connection connection, JSONObject request) throws InterruptedException {
+        switch (request.getString(OP)) {
+            case CONFIG_OP:
+                return getConfig(connection);
+            case SHARD_OP:
+                return nextShard(connection);
+            case TEST_OP:
+                testFinished(request.getString("unique_id"), request.optString("id", null));
+                return new JSONObject();
+            case RESOLVE_OP:
+                return new JSONObject().putOpt("id",
+                        resolveTest(connection, request.getString("unique_id"), request.getInt("row")));
+            case ENTITY_OP:
+                return getOrLeaseEntity(connection, request.getString("kind"), request.getString("name"));
+            case ENTITY_CREATED_OP:
+                entityCreated(connection, request.getString("kind"), request.getString("name"), request.optString("id", null));
+                return new JSONObject();
+            case FINISHED_OP:
+                workerFinished(connection, request);
+                return new JSONObject();
+            default:
+                throw new IllegalArgumentException("Unknown operation " + request.getString(OP));
+        }
+    }
+
+    private synchronized JSONObject getConfig(Connection connection) {
+        connection.worker = ++workerCount;
+        return new JSONObject(workerConfig.toString())
+                .put("worker", connection.worker)
+                .put("header", toJson(plan.getHeader()))
+                .put("column_indexes", new JSONObject(plan.getColumnIndexes()))
+                .put("total_tests", plan.getTotalTests());
+    }
+
+    /**
+     * Marks the current shard of the worker as finished and hands out the next shard.
+     *
+     * @param connection - The connection of the worker.
+     * @return - The next shard with its rows, or a shard with the index -1 if all the shards were handed out.
+     */
+    private synchronized JSONObject nextShard(Connection connection) {
+        finishShard(connection);
+        if (nextShard >= plan.getShards().size()) {
+            return new JSONObject().put(SHARD_OP, -1);
+        }
+
+        ShardPlan.Shard shard = plan.getShards().get(nextShard++);
+        connection.shard = shard.getIndex();
+
+        JSONArray rows = new JSONArray();
+        for (Row row : plan.getRows(shard)) {
+            rows.put(new JSONObject().put("row", row.getRowNum()).put("cells", toJson(ExcelImportRow.readCells(row))));
+        }
+        logger.info(String.format("Worker %s imports %s", connection.worker, shard));
+        return new JSONObject().put(SHARD_OP, shard.getIndex()).put("rows", rows);
+    }
+
+    private void finishShard(Connection connection) {
+        if (connection.shard >= 0) {
+            finishedShards.add(connection.shard);
+            connection.shard = -1;
+            notifyAll();
+        }
+    }
+
+    private synchronized void testFinished(String uniqueId, String id) {
+        if (id != null) {
+            testIds.put(uniqueId, id);
+        } else if (!testIds.containsKey(uniqueId)) {
+            failedTests.add(uniqueId);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Returns the id of a test which is the target of a call step.
+     *
+     * @param connection - The connection of the calling worker.
+     * @param uniqueId   - The unique_id of the called test.
+     * @param callerRow  - The row of the calling test.
+     * @return - The id of the test or null if it was not (or will not be) created before the calling test.
+     * @throws InterruptedException - In case the thread is interrupted while waiting.
+     */
+    private synchronized String resolveTest(Connection connection, String uniqueId, int callerRow) throws InterruptedException {
+        Integer testRow = plan.getTestRow(uniqueId);
+        if (testRow == null || testRow > callerRow) {
+            return null;
+        }
+
+        int shard = plan.getShard(testRow).getIndex();
+        while (!testIds.containsKey(uniqueId) && !failedTests.contains(uniqueId)
+                && shard != connection.shard && !finishedShards.contains(shard) && !abandonedShards.contains(shard)) {
+            wait();
+        }
+        return testIds.get(uniqueId);
+    }
+
+    /**
+     * Returns the id of a user tag or product area which was created by a worker, or lets the worker create it.
+     *
+     * @param connection - The connection of the worker.
+     * @param kind       - The type of the entity.
+     * @param name       - The name of the entity.
+     * @return - The id of the entity, or "create": true if the worker must create the entity.
+     * @throws InterruptedException - In case the thread is interrupted while waiting.
+     */
+    private synchronized JSONObject getOrLeaseEntity(Connection connection, String kind, String name) throws InterruptedException {
+        String key = kind + ':' + name;
+        while (!entityIds.containsKey(key)) {
+            Connection creator = entityCreators.get(key);
+            if (creator == null || creator == connection) {
+                entityCreators.put(key, connection);
+                return new JSONObject().put("create", true);
+            }
+            wait();
+        }
+        return new JSONObject().put("id", entityIds.get(key));
+    }
+
+    private synchronized void entityCreated(Connection connection, String kind, String name, String id) {
+        String key = kind + ':' + name;
+        if (entityCreators.get(key) == connection) {
+            entityCreators.remove(key);
+        }
+        if (id != null) {
+            entityIds.put(key, id);
+        }
+        notifyAll();
+    }
+
+    private synchronized void workerFinished(Connection connection, JSONObject result) {
+        finishShard(connection);
+        result.remove(OP);
+        results.put(connection.worker, result);
+        logger.info(String.format("Worker %s finished: %s", connection.worker, result.optString("status")));
+    }
+
+    /**
+     * Releases the shard and the entity leases of a worker which disconnected.
+     *
+     * @param connection - The connection of the worker.
+     */
+    private synchronized void disconnected(Connection connection) {
+        connections.remove(connection);
+        if (connection.shard >= 0) {
+            logger.error(String.format("Worker %s disconnected before finishing shard %s, the rest of the shard is not imported",
+                    connection.worker, connection.shard));
+            abandonedShards.add(connection.shard);
+            connection.shard = -1;
+        }
+        entityCreators.values().removeIf(creator -> creator == connection);
+        notifyAll();
+    }
+
+    private static JSONArray toJson(String[] cells) {
+        JSONArray json = new JSONArray();
+        for (String cell : cells) {
+            json.put(cell != null ? cell : JSONObject.NULL);
+        }
+        return json;
+    }
+
+    /**
+     * The connection of a worker.
+     */
+    private final class Connection implements Runnable {
+        private final Socket socket;
+        // guarded by the coordinator
+        private int worker;
+        private int shard = -1;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JSONObject response;
+                    try {
+                        response = handle(this, new JSONObject(line));
+                    } catch (RuntimeException e) {
+                        StringUtils.logException(logger, String.format("Invalid request from worker %s", worker), e);
+                        response = new JSONObject().put("error", String.valueOf(e.getMessage()));
+                    }
+                    writer.write(response.toString());
+                    writer.write('\n');
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    StringUtils.logException(logger, String.format("The connection of worker %s failed", worker), e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+                disconnected(this);
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                StringUtils.logException(logger, "Unable to close the connection of a worker", e);
+            }
+        }
+    }
+}
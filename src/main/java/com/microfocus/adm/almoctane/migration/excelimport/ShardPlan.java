@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class partitions the rows of the excel sheet into shards for a sharded import. A shard is a range of rows which
+ * starts with a manual test (or with the first row after the header) and contains whole tests, so the steps of a test
+ * are always imported by the worker which creates the test.
+ *
+ * The plan also keeps the row of every manual test, so the coordinator knows whether the target of a call step comes
+ * before the calling test.
+ */
+final class ShardPlan {
+    private final Sheet sheet;
+    private final String[] header;
+    private final Map<String, Integer> columnIndexes;
+    private final List<Shard> shards;
+    private final Map<String, Integer> testRows;
+
+    private ShardPlan(Sheet sheet, String[] header, Map<String, Integer> columnIndexes, List<Shard> shards,
+                      Map<String, Integer> testRows) {
+        this.sheet = sheet;
+        this.header = header;
+        this.columnIndexes = columnIndexes;
+        this.shards = Collections.unmodifiableList(shards);
+        this.testRows = testRows;
+    }
+
+    /**
+     * Validates the sheet and partitions its rows.
+     *
+     * @param sheet         - The excel sheet, with the header on the first row.
+     * @param testsPerShard - The number of manual tests of a shard.
+     * @return - The plan of the sharded import.
+     */
+    static ShardPlan of(Sheet sheet, int testsPerShard) {
+        if (testsPerShard < 1) {
+            throw new IllegalArgumentException("A shard must have at least one test: " + testsPerShard);
+        }
+
+        Iterator<Row> rowIterator = sheet.iterator();
+        if (!rowIterator.hasNext()) {
+            throw new IllegalArgumentException("The worksheet is empty");
+        }
+
+        Row headerRow = rowIterator.next();
+        String[] header = ExcelImportRow.readCells(headerRow);
+        Map<String, Integer> columnIndexes = ExcelImportRow.initRowIndices(headerRow);
+        ExcelImportRow.validateUniqueId(sheet.rowIterator(), columnIndexes);
+
+        List<Shard> shards = new ArrayList<>();
+        Map<String, Integer> testRows = new HashMap<>();
+        int firstRow = -1;
+        int lastRow = -1;
+        int tests = 0;
+
+        while (rowIterator.hasNext()) {
+            ExcelImportRow row = new ExcelImportRow(rowIterator.next(), columnIndexes);
+
+            if (row.isManualTestRootRow()) {
+                if (tests == testsPerShard) {
+                    shards.add(new Shard(shards.size(), firstRow, lastRow, tests));
+                    firstRow = -1;
+                    tests = 0;
+                }
+                testRows.put(row.getUniqueId(), row.getRowNum());
+                tests++;
+            }
+
+            if (firstRow < 0) {
+                firstRow = row.getRowNum();
+            }
+            lastRow = row.getRowNum();
+        }
+
+        if (firstRow >= 0) {
+            shards.add(new Shard(shards.size(), firstRow, lastRow, tests));
+        }
+
+        return new ShardPlan(sheet, header, columnIndexes, shards, testRows);
+    }
+
+    /**
+     * @return - The column names of the sheet, indexed by the column index.
+     */
+    String[] getHeader() {
+        return header;
+    }
+
+    /**
+     * @return - The column indexes of the mandatory fields.
+     */
+    Map<String, Integer> getColumnIndexes() {
+        return columnIndexes;
+    }
+
+    /**
+     * @return - The shards, in the order of the sheet.
+     */
+    List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * @return - The number of manual tests in the sheet.
+     */
+    int getTotalTests() {
+        return testRows.size();
+    }
+
+    /**
+     * @param uniqueId - The unique_id of a manual test.
+     * @return - The row of the test or null if there is no manual test with this unique_id.
+     */
+    Integer getTestRow(String uniqueId) {
+        return testRows.get(uniqueId);
+    }
+
+    /**
+     * @param rowNum - The index of a row of the sheet.
+     * @return - The shard which contains the row.
+     */
+    Shard getShard(int rowNum) {
+        int low = 0;
+        int high = shards.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (shards.get(middle).getFirstRow() <= rowNum) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return shards.get(low);
+    }
+
+    /**
+     * Reads the cells of the rows of a shard. The sheet is not safe for concurrent use, so the callers must not read
+     * the shards concurrently.
+     *
+     * @param shard - The shard.
+     * @return - The rows of the shard, in the order of the sheet.
+     */
+    List<Row> getRows(Shard shard) {
+        List<Row> rows = new ArrayList<>(shard.getLastRow() - shard.getFirstRow() + 1);
+        for (int rowNum = shard.getFirstRow(); rowNum <= shard.getLastRow(); rowNum++) {
+            Row row = sheet.getRow(rowNum);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * A range of rows of the sheet.
+     */
+    static final class Shard {
+        private final int index;
+        private final int firstRow;
+        private final int lastRow;
+        private final int tests;
+
+        Shard(int index, int firstRow, int lastRow, int tests) {
+            this.index = index;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.tests = tests;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        int getFirstRow() {
+            return firstRow;
+        }
+
+        int getLastRow() {
+            return lastRow;
+        }
+
+        int getTests() {
+            return tests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("shard %s (rows %s-%s, %s tests)", index, firstRow, lastRow, tests);
+        }
+    }
+}
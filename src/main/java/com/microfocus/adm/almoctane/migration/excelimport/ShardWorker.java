@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.authentication.SimpleClientAuthentication;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * This is the worker process of a sharded import (see {@link ShardedImporter}). It connects to the coordinator, logs in
+ * to the workspace and imports the shards handed out by the coordinator until there are no more shards. The password
+ * is read from the OCTANE_IMPORTER_PASSWORD environment variable, so it does not show up in the process list.
+ */
+public final class ShardWorker {
+    private static final Logger logger = LoggerFactory.getLogger(ShardWorker.class);
+
+    static final String PASSWORD_VARIABLE = "OCTANE_IMPORTER_PASSWORD";
+    private static final String WORKER_MDC_KEY = "worker";
+
+    private ShardWorker() {
+    }
+
+    /**
+     * @param args - The port of the coordinator.
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: ShardWorker <coordinator port>");
+        }
+
+        MigrationStatus.Status status = run(Integer.parseInt(args[0]), System.getenv(PASSWORD_VARIABLE));
+        System.exit(status != null ? 0 : 1);
+    }
+
+    /**
+     * Imports the shards handed out by the coordinator.
+     *
+     * @param port     - The port of the coordinator on the loopback interface.
+     * @param password - The password of the Octane user.
+     * @return - The status of the migration of this worker or null if the coordinator could not be reached.
+     */
+    static MigrationStatus.Status run(int port, String password) {
+        try (ShardClient client = new ShardClient(port)) {
+            JSONObject config = client.getConfig();
+            int worker = config.getInt("worker");
+            MDC.put(WORKER_MDC_KEY, Integer.toString(worker));
+
+            Map<String, Integer> columnIndexes = ShardClient.getColumnIndexes(config);
+            ExcelImporter importer = new ExcelImporter(
+                    config.getString("server"),
+                    config.getInt("shared_space"),
+                    config.getInt("workspace"),
+                    new File(config.getString("file")),
+                    config.getString("default_user"),
+                    ImportSettings.forShardWorker(config.getJSONObject("settings"), worker));
+
+            MigrationStatus.Status status;
+            try {
+                status = importer.initWorkspace(new SimpleClientAuthentication(config.getString("user"), password));
+                if (status == MigrationStatus.Status.INIT_SUCCESS) {
+                    importer.shareWith(client);
+                    status = importer.migrate(client.descriptions(columnIndexes), ShardClient.getHeader(config),
+                            columnIndexes, config.getInt("total_tests"));
+                } else {
+                    logger.error(String.format("Worker %s will not import any shard: %s", worker, status));
+                }
+            } catch (RuntimeException e) {
+                StringUtils.logException(logger, String.format("Worker %s failed", worker), e);
+                status = MigrationStatus.Status.CANNOT_MIGRATE;
+            }
+
+            client.finished(status, importer.getMigrationStatus());
+            return status;
+        } catch (IOException | RuntimeException e) {
+            StringUtils.logException(logger, "The worker failed", e);
+            return null;
+        } finally {
+            MDC.remove(WORKER_MDC_KEY);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class imports a large excel sheet with several worker processes. The sheet is opened and validated once by
+ * this process, which partitions it into shards of whole tests ({@link ShardPlan}) and coordinates the workers
+ * ({@link ShardCoordinator}). Every worker ({@link ShardWorker}) is a separate JVM with its own Octane clients, which
+ * takes one shard at a time, so the conversion of the rows and the requests are spread over the processes.
+ *
+ * The call steps can target tests of other shards and the missing user tags and product areas are created only once,
+ * through the coordinator.
+ */
+class ShardedImporter {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedImporter.class);
+
+    private final String server;
+    private final int sharedSpace;
+    private final int workspace;
+    private final File migrationFile;
+    private final String defaultUserEmail;
+    private final ImportSettings settings;
+    private XSSFWorkbook workbook;
+
+    public ShardedImporter(
+            final String server,
+            final int sharedSpace,
+            final int workspace,
+            final File migrationFile,
+            final String defaultUserEmail,
+            final ImportSettings settings
+    ) {
+        this.server = server;
+        this.sharedSpace = sharedSpace;
+        this.workspace = workspace;
+        this.migrationFile = migrationFile;
+        this.defaultUserEmail = defaultUserEmail;
+        this.settings = settings;
+    }
+
+    /**
+     * Partitions the sheet, starts the workers and waits until all of them have finished. The excel file is closed
+     * when the migration ends.
+     *
+     * @param user          - The Octane user of the workers.
+     * @param password      - The password of the user, which is passed to the workers in their environment.
+     * @param workers       - The number of worker processes.
+     * @param testsPerShard - The number of tests of a shard.
+     * @return - The status of the whole migration.
+     */
+    public MigrationStatus.Status migrate(String user, String password, int workers, int testsPerShard) {
+        try {
+            return migrateShards(user, password, workers, testsPerShard);
+        } finally {
+            closeSheet();
+        }
+    }
+
+    /**
+     * Partitions the sheet, starts the workers and waits until all of them have finished. The shards are read from
+     * the sheet while the workers run.
+     *
+     * @param user          - The Octane user of the workers.
+     * @param password      - The password of the user, which is passed to the workers in their environment.
+     * @param workers       - The number of worker processes.
+     * @param testsPerShard - The number of tests of a shard.
+     * @return - The status of the whole migration.
+     */
+    private MigrationStatus.Status migrateShards(String user, String password, int workers, int testsPerShard) {
+        ShardPlan plan;
+        try {
+            logger.info("Initializing sheet...");
+            plan = ShardPlan.of(openSheet(), testsPerShard);
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Error initializing sheet", e);
+            return MigrationStatus.Status.INIT_SHEET_FAILED;
+        } catch (IllegalArgumentException e) {
+            logger.error("The worksheet is empty. Please provide a correct worksheet!");
+            return MigrationStatus.Status.EMPTY_FILE;
+        } catch (RuntimeException e) {
+            logger.error(String.format("There are initialization failures!\n\t\t%s", e.getMessage()));
+            return MigrationStatus.Status.INCORRECT_FILE;
+        }
+
+        if (plan.getShards().isEmpty()) {
+            logger.error("There are no tests in the given worksheet. Please provide a correct worksheet!");
+            return MigrationStatus.Status.EMPTY_FILE;
+        }
+        logger.info(String.format("Found %s tests to migrate in %s shards", plan.getTotalTests(), plan.getShards().size()));
+
+        JSONObject workerConfig = new JSONObject()
+                .put("server", server)
+                .put("shared_space", sharedSpace)
+                .put("workspace", workspace)
+                .put("file", migrationFile.getAbsolutePath())
+                .put("default_user", defaultUserEmail)
+                .put("user", user)
+                .put("settings", settings.toWorkerJson());
+
+        try (ShardCoordinator coordinator = new ShardCoordinator(plan, workerConfig)) {
+            List<Process> processes = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                processes.add(startWorker(coordinator.getPort(), password));
+            }
+            for (Process process : processes) {
+                process.waitFor();
+            }
+
+            return computeStatus(coordinator.getResults(), coordinator.getUnfinishedShards());
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Unable to start the workers", e);
+            return MigrationStatus.Status.CANNOT_MIGRATE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for the workers");
+            return MigrationStatus.Status.CANNOT_MIGRATE;
+        }
+    }
+
+    /**
+     * Starts a worker JVM with the class path of this JVM. The output of the worker goes to the output of this process.
+     *
+     * @param port     - The port of the coordinator.
+     * @param password - The password of the Octane user.
+     * @return - The worker process.
+     * @throws IOException - In case the process cannot be started.
+     */
+    private static Process startWorker(int port, String password) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder processBuilder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ShardWorker.class.getName(), Integer.toString(port)).inheritIO();
+        if (password != null) {
+            processBuilder.environment().put(ShardWorker.PASSWORD_VARIABLE, password);
+        }
+        return processBuilder.start();
+    }
+
+    /**
+     * Sums up the results of the workers.
+     *
+     * @param results          - The results of the workers which finished.
+     * @param unfinishedShards - The number of shards which were not imported.
+     * @return - The status of the whole migration.
+     */
+    private static MigrationStatus.Status computeStatus(Map<Integer, JSONObject> results, int unfinishedShards) {
+        int migratedTests = 0;
+        int failedTests = 0;
+        int uploadedSteps = 0;
+        int failedSteps = 0;
+        MigrationStatus.Status initFailure = MigrationStatus.Status.CANNOT_MIGRATE;
+
+        for (Map.Entry<Integer, JSONObject> result : results.entrySet()) {
+            JSONObject counters = result.getValue();
+            logger.info(String.format("Worker %s: %s", result.getKey(), counters));
+            migratedTests += counters.getInt("migrated_tests");
+            failedTests += counters.getInt("failed_tests");
+            uploadedSteps += counters.getInt("uploaded_steps");
+            failedSteps += counters.getInt("failed_steps");
+            if (counters.getString("status").startsWith("INIT_")) {
+                initFailure = MigrationStatus.Status.valueOf(counters.getString("status"));
+            }
+        }
+
+        logger.info(String.format("TESTS CREATED: %s, TESTS FAILED: %s, STEPS UPLOADED: %s, STEPS FAILED: %s",
+                migratedTests, failedTests, uploadedSteps, failedSteps));
+
+        if (migratedTests == 0 && failedTests == 0 && unfinishedShards > 0) {
+            logger.error("No worker imported any shard");
+            return initFailure;
+        }
+        if (unfinishedShards > 0) {
+            logger.error(String.format("%s shards were not imported", unfinishedShards));
+        }
+
+        boolean testsFailed = failedTests > 0 || unfinishedShards > 0;
+        if (testsFailed && failedSteps > 0) {
+            return MigrationStatus.Status.NOT_ALL_TESTS_AND_STEPS_WERE_MIGRATED;
+        }
+        if (failedSteps > 0) {
+            return MigrationStatus.Status.NOT_ALL_STEPS_WERE_UPLOADED;
+        }
+        if (testsFailed) {
+            return MigrationStatus.Status.NOT_ALL_TESTS_WERE_MIGRATED;
+        }
+        return MigrationStatus.Status.SUCCESS;
+    }
+
+    /**
+     * Opens the excel sheet. The workbook is read into memory, so the file is closed right away, and the workbook is
+     * kept open until the migration ends.
+     *
+     * @return - The first sheet of the excel file.
+     * @throws IOException - In case the excel cannot be opened
+     */
+    private XSSFSheet openSheet() throws IOException {
+        try (InputStream file = new FileInputStream(migrationFile)) {
+            workbook = new XSSFWorkbook(file);
+            return workbook.getSheetAt(0);
+        }
+    }
+
+    /**
+     * Closes the excel workbook, if it is open.
+     */
+    private void closeSheet() {
+        if (workbook == null) {
+            return;
+        }
+
+        try {
+            workbook.close();
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Error closing the excel file", e);
+        }
+        workbook = null;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.ss.usermodel.Row;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class contains the distinct user tags and application modules of the tests of a sheet. They are collected
+ * before the tests are created, so the missing ones can be created in a few bulk requests instead of one request in
+ * the middle of the creation of a test.
+ */
+final class SheetReferences {
+    private final Set<String> userTags = new LinkedHashSet<>();
+    private final Set<String> applicationModules = new LinkedHashSet<>();
+
+    /**
+     * Reads the user tags and the application modules of the manual tests of the sheet.
+     *
+     * @param rowIterator   - The iterator of the excel sheet, positioned after the header.
+     * @param columnIndexes - The column indexes of the mandatory fields.
+     * @return - The references of the sheet.
+     */
+    static SheetReferences scan(Iterator<Row> rowIterator, Map<String, Integer> columnIndexes) {
+        SheetReferences references = new SheetReferences();
+        while (rowIterator.hasNext()) {
+            references.add(new ExcelImportRow(rowIterator.next(), columnIndexes));
+        }
+        return references;
+    }
+
+    /**
+     * Adds the user tags and the application modules of a row, if the row is a manual test.
+     *
+     * @param row - The row.
+     */
+    void add(ExcelImportRow row) {
+        if (row.isManualTestRootRow()) {
+            addNames(userTags, row.getUserTags());
+            addNames(applicationModules, row.getApplicationModule());
+        }
+    }
+
+    /**
+     * @return - The names of the user tags.
+     */
+    Set<String> getUserTags() {
+        return Collections.unmodifiableSet(userTags);
+    }
+
+    /**
+     * @return - The names of the application modules.
+     */
+    Set<String> getApplicationModules() {
+        return Collections.unmodifiableSet(applicationModules);
+    }
+
+    /**
+     * @param names - The set where the names are added.
+     * @param cell  - The cell value with the names separated by a comma or null.
+     */
+    private static void addNames(Set<String> names, String cell) {
+        if (cell == null) {
+            return;
+        }
+        for (String name : cell.split(",")) {
+            String trimmedName = name.trim();
+            if (!trimmedName.isEmpty()) {
+                names.add(trimmedName);
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * This is a concurrent get-or-create cache. The first caller of a missing key creates the value, the concurrent callers
+ * of the same key wait for the same creation instead of creating the value again. It is used for the user tags and the
+ * application modules, which must be created only once even when several imports of the workspace need them at the
+ * same time.
+ *
+ * A failed creation is kept for the failure TTL: the callers of the key get the same failure without sending the
+ * create request again, and after the TTL the next caller tries again. A creation which returns null is not kept.
+ *
+ * The missing keys can also be claimed in bulk (see {@link #reserve(Collection)}), when their values are created by
+ * the caller in bulk requests: the other callers of a claimed key wait until the claim is completed, like for a
+ * creation started by {@link #get(Object, Function)}.
+ *
+ * @param <K> - The type of the keys (i.e. the name of the entity).
+ * @param <V> - The type of the values (i.e. the reference to the entity).
+ */
+final class SingleFlightCache<K, V> {
+    private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final long failureTtlNanos;
+
+    /**
+     * @param failureTtlMillis - The time a failed creation is kept.
+     */
+    SingleFlightCache(long failureTtlMillis) {
+        this.failureTtlNanos = failureTtlMillis * 1_000_000;
+    }
+
+    /**
+     * Adds the existing values (i.e. the entities loaded from Octane). The keys which already have a value, or which
+     * are being created, are not changed, except for the claimed keys which are completed with the added value.
+     *
+     * @param values - The values mapped by their keys.
+     * @return - The current SingleFlightCache
+     */
+    SingleFlightCache<K, V> putAll(Map<K, V> values) {
+        values.forEach((key, value) -> flights.compute(key, (k, flight) -> {
+            if (flight == null || flight.future.isCompletedExceptionally()) {
+                return new Flight<>(CompletableFuture.completedFuture(value), false);
+            }
+            if (flight.reserved) {
+                flight.future.complete(value);
+            }
+            return flight;
+        }));
+        return this;
+    }
+
+    /**
+     * Claims the missing keys, so their values are created by the caller. Every claimed key must be completed with
+     * {@link #complete(Object, Object)}, the callers of the key wait for it until then.
+     *
+     * @param keys - The keys.
+     * @return - The claimed keys, in the order of the given keys. The keys which have a value, which are being
+     * created or whose creation failed less than the failure TTL ago are not claimed.
+     */
+    List<K> reserve(Collection<K> keys) {
+        List<K> reserved = new ArrayList<>();
+        for (K key : keys) {
+            while (true) {
+                Flight<V> flight = flights.get(key);
+                if (flight == null) {
+                    if (flights.putIfAbsent(key, new Flight<>(new CompletableFuture<>(), true)) == null) {
+                        reserved.add(key);
+                        break;
+                    }
+                } else if (flight.isExpired(failureTtlNanos)) {
+                    flights.remove(key, flight);
+                } else {
+                    break;
+                }
+            }
+        }
+        return reserved;
+    }
+
+    /**
+     * Completes a claimed key. A null value drops the key, so the callers which wait for it, and the next ones, create
+     * the value by themselves. A key which was completed meanwhile by {@link #putAll(Map)} is not changed.
+     *
+     * @param key   - The claimed key.
+     * @param value - The created value or null if it was not created.
+     */
+    void complete(K key, V value) {
+        flights.computeIfPresent(key, (k, flight) -> {
+            if (!flight.reserved || flight.future.isDone()) {
+                return flight;
+            }
+            flight.future.complete(value);
+            return value != null ? flight : null;
+        });
+    }
+
+    /**
+     * @param key - The key.
+     * @return - The value of the key or null if it was not created (yet).
+     */
+    V getIfPresent(K key) {
+        Flight<V> flight = flights.get(key);
+        if (flight == null || !flight.future.isDone() || flight.future.isCompletedExceptionally()) {
+            return null;
+        }
+        return flight.future.join();
+    }
+
+    /**
+     * Returns the value of a key, waiting for it if the key is being created.
+     *
+     * @param key - The key.
+     * @return - The value of the key or null if it is missing, it could not be created or its creation failed.
+     */
+    V awaitIfPresent(K key) {
+        Flight<V> flight = flights.get(key);
+        if (flight == null || flight.future.isCompletedExceptionally()) {
+            return null;
+        }
+        try {
+            return await(flight);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the value of a key, creating it if it is missing. The creator is called in the thread of the first caller,
+     * the other callers of the key wait until the value is created.
+     *
+     * @param key     - The key.
+     * @param creator - Creates the value of the key.
+     * @return - The value of the key, or null if the creator returned null.
+     */
+    V get(K key, Function<? super K, ? extends V> creator) {
+        while (true) {
+            Flight<V> flight = flights.get(key);
+            if (flight == null) {
+                Flight<V> created = new Flight<>(new CompletableFuture<>(), false);
+                flight = flights.putIfAbsent(key, created);
+                if (flight == null) {
+                    return create(key, created, creator);
+                }
+            }
+
+            if (flight.isExpired(failureTtlNanos)) {
+                flights.remove(key, flight);
+                continue;
+            }
+            V value = await(flight);
+            if (value == null && flight.reserved) {
+                // the claim was dropped, so this caller creates the value
+                continue;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * @return - The number of keys, including the failed creations which are still kept.
+     */
+    int size() {
+        return flights.size();
+    }
+
+    private V create(K key, Flight<V> flight, Function<? super K, ? extends V> creator) {
+        V value;
+        try {
+            value = creator.apply(key);
+        } catch (RuntimeException | Error e) {
+            flight.failedAt = System.nanoTime();
+            flight.future.completeExceptionally(e);
+            throw e;
+        }
+
+        if (value == null) {
+            flights.remove(key, flight);
+        }
+        flight.future.complete(value);
+        return value;
+    }
+
+    private V await(Flight<V> flight) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return flight.future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The creation of a value, started by a caller of {@link #get(Object, Function)} or claimed by
+     * {@link #reserve(Collection)}.
+     */
+    private static final class Flight<V> {
+        private final CompletableFuture<V> future;
+        private final boolean reserved;
+        private volatile long failedAt;
+
+        Flight(CompletableFuture<V> future, boolean reserved) {
+            this.future = future;
+            this.reserved = reserved;
+        }
+
+        boolean isExpired(long failureTtlNanos) {
+            return future.isCompletedExceptionally() && System.nanoTime() - failedAt >= failureTtlNanos;
+        }
+    }
+}
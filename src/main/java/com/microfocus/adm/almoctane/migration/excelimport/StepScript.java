@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * This class holds the UTF-8 encoded JSON body of a script upload request as a list of byte chunks.
+ * The body is kept in its encoded form while the upload waits in the executor queue and it is streamed into the
+ * request when the upload is executed.
+ */
+final class StepScript {
+    private final List<byte[]> chunks;
+    private final long length;
+
+    /**
+     * @param chunks - The chunks with the encoded JSON. Every chunk is entirely filled.
+     * @param length - The total number of bytes of the chunks.
+     */
+    StepScript(List<byte[]> chunks, long length) {
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    /**
+     * @return - The number of bytes of the encoded JSON.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Writes the encoded JSON to the output stream.
+     *
+     * @param out - The output stream where the JSON is written.
+     * @throws IOException - In case the output stream cannot be written.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        for (byte[] chunk : chunks) {
+            out.write(chunk);
+        }
+    }
+
+    /**
+     * Decodes the JSON. This should be used only for logging and testing, the upload streams the encoded bytes.
+     *
+     * @return - The JSON as a string.
+     */
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, bytes, offset, chunk.length);
+            offset += chunk.length;
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
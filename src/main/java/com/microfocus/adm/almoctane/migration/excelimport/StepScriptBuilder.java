@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class builds the JSON body used to upload the script of a manual test.
+ * Every step is escaped into a reusable buffer and then encoded as UTF-8 directly into byte chunks, so a built
+ * script takes roughly its encoded size in memory. The builder can be reused for the next test after calling build
+ * or reset.
+ */
+class StepScriptBuilder {
+    private static final String JSON_PREFIX = "{\"script\":\"";
+    private static final String JSON_SUFFIX = "\",\"comment\":\"\",\"revision_type\":\"Minor\"}";
+
+    private static final String SIMPLE_STEP_PREFIX = "- ";
+    private static final String VALIDATION_STEP_PREFIX = "- ?";
+    private static final String CALL_STEP_PREFIX = "- @";
+    private static final String STEP_SEPARATOR = "\\n";
+
+    private static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+    private final int chunkSize;
+    private final StringBuilder stepBuffer;
+
+    private List<byte[]> chunks;
+    private byte[] currentChunk;
+    private int position;
+    private long length;
+    private boolean hasSteps;
+
+    public StepScriptBuilder() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize - The size in bytes of the chunks where the script is encoded.
+     */
+    public StepScriptBuilder(int chunkSize) {
+        this.chunkSize = Math.max(chunkSize, 16);
+        this.stepBuffer = new StringBuilder(256);
+        this.currentChunk = new byte[this.chunkSize];
+
+        reset();
+    }
+
+    /**
+     * Appends a simple step to the script.
+     *
+     * @param step - The step description.
+     * @return - The current StepScriptBuilder
+     */
+    public StepScriptBuilder appendSimpleStep(String step) {
+        return appendStep(SIMPLE_STEP_PREFIX, step);
+    }
+
+    /**
+     * Appends a validation step to the script.
+     *
+     * @param step - The step description.
+     * @return - The current StepScriptBuilder
+     */
+    public StepScriptBuilder appendValidationStep(String step) {
+        return appendStep(VALIDATION_STEP_PREFIX, step);
+    }
+
+    /**
+     * Appends a call step to the script.
+     *
+     * @param testId - The Octane id of the called test.
+     * @return - The current StepScriptBuilder
+     */
+    public StepScriptBuilder appendCallStep(String testId) {
+        stepBuffer.setLength(0);
+        stepBuffer.append(CALL_STEP_PREFIX).append(testId).append(STEP_SEPARATOR);
+        encode(stepBuffer);
+        hasSteps = true;
+        return this;
+    }
+
+    /**
+     * @return - true if at least one step was appended since the last reset.
+     */
+    public boolean hasSteps() {
+        return hasSteps;
+    }
+
+    /**
+     * Creates the JSON body for the script upload request and resets the builder for the next test.
+     * The full chunks are handed over to the created script and only the last one is copied to its exact size.
+     *
+     * @return - The encoded JSON containing the script.
+     */
+    public StepScript build() {
+        encode(JSON_SUFFIX);
+
+        if (position > 0) {
+            chunks.add(Arrays.copyOf(currentChunk, position));
+        }
+        StepScript stepScript = new StepScript(chunks, length);
+
+        reset();
+
+        return stepScript;
+    }
+
+    /**
+     * Removes all the steps, keeping the allocated buffers.
+     */
+    public void reset() {
+        chunks = new ArrayList<>();
+        position = 0;
+        length = 0;
+        hasSteps = false;
+
+        encode(JSON_PREFIX);
+    }
+
+    /**
+     * Appends a step, escaping its description.
+     *
+     * @param prefix - The prefix which marks the step type.
+     * @param step   - The step description.
+     * @return - The current StepScriptBuilder
+     */
+    private StepScriptBuilder appendStep(String prefix, String step) {
+        stepBuffer.setLength(0);
+        stepBuffer.append(prefix);
+        StringUtils.appendJsonEscaped(stepBuffer, step);
+        stepBuffer.append(STEP_SEPARATOR);
+
+        encode(stepBuffer);
+        hasSteps = true;
+        return this;
+    }
+
+    /**
+     * Encodes the characters as UTF-8 into the chunks. Unpaired surrogates are replaced with '?'.
+     *
+     * @param chars - The characters which are encoded.
+     */
+    private void encode(CharSequence chars) {
+        final int charsLength = chars.length();
+
+        for (int i = 0; i < charsLength; i++) {
+            int c = chars.charAt(i);
+
+            if (c < 0x80) {
+                write(c);
+            } else if (c < 0x800) {
+                write(0xC0 | (c >> 6));
+                write(0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate((char) c)) {
+                if (Character.isHighSurrogate((char) c) && i + 1 < charsLength
+                        && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint((char) c, chars.charAt(++i));
+                    write(0xF0 | (codePoint >> 18));
+                    write(0x80 | ((codePoint >> 12) & 0x3F));
+                    write(0x80 | ((codePoint >> 6) & 0x3F));
+                    write(0x80 | (codePoint & 0x3F));
+                } else {
+                    write('?');
+                }
+            } else {
+                write(0xE0 | (c >> 12));
+                write(0x80 | ((c >> 6) & 0x3F));
+                write(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Writes a byte in the current chunk. When the chunk is full it is added to the script and a new one is started.
+     *
+     * @param b - The byte which is written.
+     */
+    private void write(int b) {
+        if (position == currentChunk.length) {
+            chunks.add(currentChunk);
+            currentChunk = new byte[chunkSize];
+            position = 0;
+        }
+
+        currentChunk[position++] = (byte) b;
+        length++;
+    }
+}
@@ -23,21 +23,97 @@ import java.util.Arrays;
  */
 class StringUtils {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /**
-     * Creates a new String with the special characters escaped.
+     * Creates a new String with the special characters escaped so it can be used as a JSON string value.
      *
      * @param inputString - The string which contains special characters.
      * @return - A new String with the special characters escaped.
      */
     public static String escapeMetaCharacters(String inputString) {
-        final String[] metaCharacters = {/*"\\", "^", "$", "{", "}", "[", "]", "(", ")", ".", "*", "+", "?", "|", "<", ">", "-", "&", "%",*/  "\"", "'"};
+        StringBuilder sb = new StringBuilder(inputString.length() + 16);
+        appendJsonEscaped(sb, inputString);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the value to the string builder escaped as the content of a JSON string, in a single pass.
+     * Quotes, backslashes and control characters are escaped, a sequence of line breaks is collapsed into one
+     * {@code \n} and a tab followed by a line feed (left by excel in wrapped cells) is dropped.
+     *
+     * @param sb    - The string builder where the escaped value is appended.
+     * @param value - The value which will be escaped.
+     */
+    public static void appendJsonEscaped(StringBuilder sb, CharSequence value) {
+        final int length = value.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
 
-        for (String metaCharacter : metaCharacters) {
-            if (inputString.contains(metaCharacter)) {
-                inputString = inputString.replace(metaCharacter, "\\" + metaCharacter);
+            if (c == '\r' || c == '\n') {
+                while (i + 1 < length && (value.charAt(i + 1) == '\r' || value.charAt(i + 1) == '\n')) {
+                    i++;
+                }
+                sb.append('\\').append('n');
+            } else if (c == '\t' && i + 1 < length && value.charAt(i + 1) == '\n') {
+                i++;
+            } else {
+                appendJsonEscapedChar(sb, c);
             }
         }
-        return inputString.replaceAll("(\\r|\\n|\\r\\n)+", "\\\\n");
+    }
+
+    /**
+     * Appends the value to the string builder as a quoted JSON string. The value is kept unchanged.
+     *
+     * @param sb    - The string builder where the JSON string is appended.
+     * @param value - The value of the JSON string.
+     */
+    public static void appendJsonString(StringBuilder sb, CharSequence value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            appendJsonEscapedChar(sb, value.charAt(i));
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Appends a character escaped as part of a JSON string.
+     *
+     * @param sb - The string builder where the character is appended.
+     * @param c  - The character.
+     */
+    private static void appendJsonEscapedChar(StringBuilder sb, char c) {
+        switch (c) {
+            case '"':
+                sb.append('\\').append('"');
+                break;
+            case '\\':
+                sb.append('\\').append('\\');
+                break;
+            case '\n':
+                sb.append('\\').append('n');
+                break;
+            case '\r':
+                sb.append('\\').append('r');
+                break;
+            case '\t':
+                sb.append('\\').append('t');
+                break;
+            case '\b':
+                sb.append('\\').append('b');
+                break;
+            case '\f':
+                sb.append('\\').append('f');
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                } else {
+                    sb.append(c);
+                }
+        }
     }
 
     /**
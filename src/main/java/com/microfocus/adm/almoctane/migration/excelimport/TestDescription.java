@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This class contains a manual test read from the excel sheet together with its steps. The rows are detached from the
+ * sheet and nothing depends on the workspace where the test is imported, so the same description can be imported in
+ * several workspaces at the same time.
+ *
+ * A description can also contain a row which is not a manual test (i.e. a row without a type). Such a row is rejected
+ * by every workspace.
+ */
+final class TestDescription {
+    private final ExcelImportRow testRow;
+    private final List<ExcelImportRow> stepRows;
+
+    /**
+     * @param testRow  - The detached row of the manual test.
+     * @param stepRows - The detached rows of the steps, in the order of the sheet.
+     */
+    TestDescription(ExcelImportRow testRow, List<ExcelImportRow> stepRows) {
+        this.testRow = testRow;
+        this.stepRows = Collections.unmodifiableList(stepRows);
+    }
+
+    /**
+     * Groups the rows of the sheet into test descriptions. The steps which follow a manual test belong to it, the rows
+     * which are neither manual tests nor steps of a manual test are described alone, so they are rejected.
+     *
+     * @param rows         - The rows, in the order of the sheet. They are detached by this method.
+     * @param descriptions - The consumer of the descriptions.
+     */
+    static void group(Iterator<ExcelImportRow> rows, Consumer<TestDescription> descriptions) {
+        ExcelImportRow testRow = null;
+        List<ExcelImportRow> stepRows = null;
+
+        while (rows.hasNext()) {
+            ExcelImportRow row = rows.next();
+
+            if (row.isManualTestRootRow()) {
+                if (testRow != null) {
+                    descriptions.accept(new TestDescription(testRow, stepRows));
+                }
+                testRow = row.detach();
+                stepRows = new ArrayList<>();
+            } else if (testRow == null) {
+                descriptions.accept(new TestDescription(row.detach(), Collections.emptyList()));
+            } else if ("step".equals(row.getType())) {
+                stepRows.add(row.detach());
+            }
+        }
+
+        if (testRow != null) {
+            descriptions.accept(new TestDescription(testRow, stepRows));
+        }
+    }
+
+    /**
+     * @return - The row of the manual test.
+     */
+    ExcelImportRow getTestRow() {
+        return testRow;
+    }
+
+    /**
+     * @return - The rows of the steps of the manual test.
+     */
+    List<ExcelImportRow> getStepRows() {
+        return stepRows;
+    }
+
+    /**
+     * @return - true if the test row is a manual test.
+     */
+    boolean isManualTest() {
+        return testRow.getType() != null && testRow.isManualTestRootRow();
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+/**
+ * A source of test descriptions, which are imported in the order they are returned.
+ */
+interface TestDescriptionSource {
+
+    /**
+     * Returns the next description, waiting until it is available.
+     *
+     * @return - The next description or null if there are no more descriptions.
+     * @throws InterruptedException - In case the thread is interrupted while waiting.
+     */
+    TestDescription next() throws InterruptedException;
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is an ordered stream of test descriptions which is written by one reader of the excel sheet and consumed
+ * concurrently by several workspaces. Every consumer has its own cursor and sees all the descriptions in the order of
+ * the sheet. A description is kept only until all the open cursors have passed it.
+ *
+ * The reader waits when it is a whole window of descriptions ahead of the slowest open cursor, so a slow workspace
+ * bounds the descriptions kept in memory instead of letting the whole sheet pile up behind it.
+ */
+final class TestDescriptionStream {
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private final int capacity;
+    private final List<TestDescription> descriptions = new ArrayList<>();
+    private final List<Cursor> cursors = new ArrayList<>();
+    private int published;
+    private int released;
+    private int removed;
+    private boolean finished;
+    private boolean publisherWaiting;
+    private RuntimeException failure;
+
+    /**
+     * Creates a stream which keeps up to {@value #DEFAULT_CAPACITY} descriptions for the slowest cursor.
+     */
+    TestDescriptionStream() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity - The number of descriptions which are kept for the slowest cursor before the reader waits.
+     */
+    TestDescriptionStream(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Opens a cursor positioned at the start of the stream. The cursors must be opened before the first description
+     * is published.
+     *
+     * @return - The new cursor.
+     */
+    synchronized Cursor openCursor() {
+        if (published > 0) {
+            throw new IllegalStateException("The cursors must be opened before the first description is published");
+        }
+
+        Cursor cursor = new Cursor();
+        cursors.add(cursor);
+        return cursor;
+    }
+
+    /**
+     * Adds a description at the end of the stream. This waits while the slowest open cursor has not read the last
+     * capacity descriptions.
+     *
+     * @param description - The test description.
+     * @throws RuntimeException - In case the thread is interrupted while waiting.
+     */
+    synchronized void publish(TestDescription description) {
+        if (finished) {
+            throw new IllegalStateException("The stream is finished");
+        }
+
+        try {
+            while (published - released >= capacity) {
+                publisherWaiting = true;
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the workspaces to read the tests", e);
+        } finally {
+            publisherWaiting = false;
+        }
+
+        descriptions.add(description);
+        published++;
+        releasePassedDescriptions();
+        notifyAll();
+    }
+
+    /**
+     * Marks the end of the stream. The cursors return null after the last description.
+     */
+    synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Ends the stream because the sheet could not be read. The cursors throw the failure after the last description.
+     *
+     * @param e - The reason of the failure.
+     */
+    synchronized void fail(RuntimeException e) {
+        failure = e;
+        finish();
+    }
+
+    /**
+     * @return - The number of descriptions which are kept for the cursors which did not read them yet.
+     */
+    synchronized int getRetainedDescriptions() {
+        return published - released;
+    }
+
+    /**
+     * Drops the descriptions which were passed by all the open cursors and wakes up the reader if it waits for them.
+     * The list is compacted only when most of it was dropped, so the cost of the compaction is spread over the
+     * published descriptions.
+     */
+    private void releasePassedDescriptions() {
+        int minPosition = published;
+        for (Cursor cursor : cursors) {
+            minPosition = Math.min(minPosition, cursor.position);
+        }
+
+        if (released < minPosition && publisherWaiting) {
+            notifyAll();
+        }
+        while (released < minPosition) {
+            descriptions.set(released - removed, null);
+            released++;
+        }
+
+        if (released - removed > descriptions.size() / 2) {
+            descriptions.subList(0, released - removed).clear();
+            removed = released;
+        }
+    }
+
+    /**
+     * The position of a consumer in the stream.
+     */
+    final class Cursor implements TestDescriptionSource, AutoCloseable {
+        private int position;
+        private boolean closed;
+
+        private Cursor() {
+        }
+
+        /**
+         * Returns the next description, waiting until it is published.
+         *
+         * @return - The next description or null if the stream is finished.
+         * @throws InterruptedException - In case the thread is interrupted while waiting.
+         */
+        @Override
+        public TestDescription next() throws InterruptedException {
+            synchronized (TestDescriptionStream.this) {
+                if (closed) {
+                    throw new IllegalStateException("The cursor is closed");
+                }
+
+                while (position >= published && !finished) {
+                    TestDescriptionStream.this.wait();
+                }
+
+                if (position < published) {
+                    TestDescription description = descriptions.get(position - removed);
+                    position++;
+                    releasePassedDescriptions();
+                    return description;
+                }
+
+                if (failure != null) {
+                    throw failure;
+                }
+                return null;
+            }
+        }
+
+        /**
+         * Closes the cursor, so the descriptions it did not read yet are not kept for it.
+         */
+        @Override
+        public void close() {
+            synchronized (TestDescriptionStream.this) {
+                if (!closed) {
+                    closed = true;
+                    cursors.remove(this);
+                    releasePassedDescriptions();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.exception.OctaneException;
+import com.hpe.adm.nga.sdk.model.ErrorModel;
+import com.hpe.adm.nga.sdk.model.FieldModel;
+import com.hpe.adm.nga.sdk.model.LongFieldModel;
+import com.hpe.adm.nga.sdk.model.StringFieldModel;
+import com.hpe.adm.nga.sdk.network.OctaneHttpRequest;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class records the Octane requests of a migration and their responses (including the errors and the duration
+ * of every request) in a cassette file, which can be replayed later by {@link ReplayHttpClient}.
+ *
+ * The cassette is a gzip compressed file with one JSON object per line. The first line describes the cassette and
+ * every other line holds one exchange: the method, the url relative to the server, the digest of the request body
+ * (for the requests which have one), the start offset and duration, and either the status and content of the response
+ * or the fields of the error. The digest tells apart the POST and PUT requests sent to the same url, i.e. the requests
+ * which create different tests.
+ */
+final class TrafficCassette implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TrafficCassette.class);
+
+    private static final int VERSION = 2;
+    private static final String HTTP_STATUS_CODE = "http_status_code";
+
+    private final Writer writer;
+    private final long startNanos = System.nanoTime();
+    private long exchanges;
+    private boolean failed;
+
+    private TrafficCassette(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Creates a cassette file and starts the recording.
+     *
+     * @param file   - The cassette file.
+     * @param server - The Octane server which is recorded.
+     * @return - The cassette which records the exchanges.
+     * @throws IOException - In case the file cannot be created.
+     */
+    static TrafficCassette record(Path file, String server) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024), StandardCharsets.UTF_8), 64 * 1024);
+        writer.write(new JSONObject()
+                .put("version", VERSION)
+                .put("server", server)
+                .put("recorded_at", System.currentTimeMillis())
+                .toString());
+        writer.write('\n');
+
+        return new TrafficCassette(writer);
+    }
+
+    /**
+     * Records a request which received a response.
+     *
+     * @param method        - The HTTP method.
+     * @param url           - The url relative to the server.
+     * @param bodyDigest    - The digest of the request body or null if the request has no body.
+     * @param requestStart  - The System.nanoTime() when the request started.
+     * @param durationNanos - The duration of the request.
+     * @param statusCode    - The status of the response.
+     * @param content       - The content of the response.
+     */
+    void recordResponse(String method, String url, String bodyDigest, long requestStart, long durationNanos,
+                        int statusCode, String content) {
+        write(exchange(method, url, bodyDigest, requestStart, durationNanos)
+                .put("status", statusCode)
+                .put("content", content == null ? JSONObject.NULL : content));
+    }
+
+    /**
+     * Records a request which failed with an Octane error.
+     *
+     * @param method        - The HTTP method.
+     * @param url           - The url relative to the server.
+     * @param bodyDigest    - The digest of the request body or null if the request has no body.
+     * @param requestStart  - The System.nanoTime() when the request started.
+     * @param durationNanos - The duration of the request.
+     * @param e             - The error.
+     */
+    void recordError(String method, String url, String bodyDigest, long requestStart, long durationNanos,
+                     OctaneException e) {
+        JSONObject error = new JSONObject();
+        if (e.getError() != null && e.getError().getValues() != null) {
+            for (FieldModel field : e.getError().getValues()) {
+                error.put(field.getName(), field.getValue() == null ? JSONObject.NULL : field.getValue().toString());
+            }
+        }
+
+        write(exchange(method, url, bodyDigest, requestStart, durationNanos)
+                .put("status", ImporterHttpClient.getHttpStatusCode(e))
+                .put("error", error));
+    }
+
+    private JSONObject exchange(String method, String url, String bodyDigest, long requestStart, long durationNanos) {
+        return new JSONObject()
+                .put("method", method)
+                .put("url", url)
+                .put("body_digest", bodyDigest == null ? JSONObject.NULL : bodyDigest)
+                .put("start_us", (requestStart - startNanos) / 1000)
+                .put("duration_us", durationNanos / 1000);
+    }
+
+    private synchronized void write(JSONObject exchange) {
+        if (failed) {
+            return;
+        }
+
+        try {
+            writer.write(exchange.toString());
+            writer.write('\n');
+            exchanges++;
+        } catch (IOException e) {
+            failed = true;
+            StringUtils.logException(logger, "Unable to write to the traffic cassette, the recording is stopped", e);
+        }
+    }
+
+    /**
+     * Finishes the recording.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+            logger.info(String.format("Recorded %s Octane requests", exchanges));
+        } catch (IOException e) {
+            StringUtils.logException(logger, "Unable to close the traffic cassette", e);
+        }
+    }
+
+    /**
+     * Reads a cassette file.
+     *
+     * @param file - The cassette file.
+     * @return - The recorded exchanges mapped by their method, url and body digest, in the recorded order.
+     * @throws IOException - In case the file cannot be read.
+     */
+    static Map<String, Deque<Exchange>> load(Path file) throws IOException {
+        Map<String, Deque<Exchange>> exchanges = new HashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (line == null || new JSONObject(line).optInt("version") != VERSION) {
+                throw new IOException(String.format("The file %s is not a traffic cassette of version %s", file, VERSION));
+            }
+
+            while ((line = reader.readLine()) != null) {
+                JSONObject json = new JSONObject(line);
+                Exchange exchange = new Exchange(
+                        json.getInt("status"),
+                        json.isNull("content") ? null : json.optString("content", null),
+                        json.optJSONObject("error"),
+                        json.getLong("duration_us") * 1000);
+                String bodyDigest = json.isNull("body_digest") ? null : json.optString("body_digest", null);
+                exchanges.computeIfAbsent(key(json.getString("method"), json.getString("url"), bodyDigest),
+                        k -> new ArrayDeque<>()).add(exchange);
+            }
+        }
+
+        return exchanges;
+    }
+
+    /**
+     * @param method     - The HTTP method.
+     * @param url        - The url relative to the server.
+     * @param bodyDigest - The digest of the request body or null if the request has no body.
+     * @return - The key of the exchanges of a request.
+     */
+    static String key(String method, String url, String bodyDigest) {
+        return bodyDigest == null ? method + ' ' + url : method + ' ' + url + ' ' + bodyDigest;
+    }
+
+    /**
+     * Returns the SHA-256 digest of the request body. A JSON body is digested in a canonical form, with the keys of
+     * every object sorted, so the same entities give the same digest whatever the order of their fields. The body of
+     * a script upload is digested as it is streamed.
+     *
+     * @param octaneHttpRequest - The request.
+     * @return - The Base64 encoded digest or null if the request has no body (i.e. GET or DELETE).
+     */
+    static String bodyDigest(OctaneHttpRequest octaneHttpRequest) {
+        MessageDigest digest = newDigest();
+
+        if (octaneHttpRequest instanceof ImporterHttpClient.StepScriptPutRequest) {
+            try {
+                ((ImporterHttpClient.StepScriptPutRequest) octaneHttpRequest).getStepScript().writeTo(new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                        digest.update((byte) b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        digest.update(b, off, len);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else if (octaneHttpRequest instanceof OctaneHttpRequest.PostOctaneHttpRequest) {
+            digest.update(canonicalize(((OctaneHttpRequest.PostOctaneHttpRequest) octaneHttpRequest).getContent()));
+        } else if (octaneHttpRequest instanceof OctaneHttpRequest.PutOctaneHttpRequest) {
+            digest.update(canonicalize(((OctaneHttpRequest.PutOctaneHttpRequest) octaneHttpRequest).getContent()));
+        } else {
+            return null;
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    private static byte[] canonicalize(String content) {
+        if (content == null) {
+            return new byte[0];
+        }
+
+        String trimmed = content.trim();
+        try {
+            if (trimmed.startsWith("{")) {
+                StringBuilder canonical = new StringBuilder(content.length());
+                appendCanonical(new JSONObject(trimmed), canonical);
+                return canonical.toString().getBytes(StandardCharsets.UTF_8);
+            }
+        } catch (JSONException e) {
+            logger.debug("The request body is not JSON, it is digested as it is", e);
+        }
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendCanonical(Object value, StringBuilder canonical) {
+        if (value instanceof JSONObject) {
+            JSONObject json = (JSONObject) value;
+            canonical.append('{');
+            String separator = "";
+            for (String key : new TreeSet<>(json.keySet())) {
+                canonical.append(separator).append(JSONObject.quote(key)).append(':');
+                appendCanonical(json.get(key), canonical);
+                separator = ",";
+            }
+            canonical.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            canonical.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) {
+                    canonical.append(',');
+                }
+                appendCanonical(array.get(i), canonical);
+            }
+            canonical.append(']');
+        } else {
+            canonical.append(JSONObject.valueToString(value));
+        }
+    }
+
+    /**
+     * A recorded response or error.
+     */
+    static final class Exchange {
+        private final int statusCode;
+        private final String content;
+        private final JSONObject error;
+        private final long durationNanos;
+
+        Exchange(int statusCode, String content, JSONObject error, long durationNanos) {
+            this.statusCode = statusCode;
+            this.content = content;
+            this.error = error;
+            this.durationNanos = durationNanos;
+        }
+
+        /**
+         * @return - The status of the response.
+         */
+        int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * @return - The content of the response or null if the request failed.
+         */
+        String getContent() {
+            return content;
+        }
+
+        /**
+         * @return - The recorded duration of the request.
+         */
+        long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * @return - The recorded error or null if the request received a response.
+         */
+        OctaneException toException() {
+            if (error == null) {
+                return null;
+            }
+
+            Set<FieldModel> fields = new HashSet<>();
+            for (String name : error.keySet()) {
+                if (HTTP_STATUS_CODE.equals(name)) {
+                    fields.add(new LongFieldModel(name, (long) statusCode));
+                } else {
+                    fields.add(new StringFieldModel(name, error.isNull(name) ? null : error.getString(name)));
+                }
+            }
+            return new OctaneException(new ErrorModel(fields));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.network.OctaneHttpRequest;
+
+/**
+ * The classes of the Octane requests, in the order of their priority in the {@link RequestScheduler}. The small
+ * requests which the creation of the tests waits for (the reads of the metadata and of the referenced entities, the
+ * creation of the tests, user tags and application modules) go before the large script uploads, which run in the
+ * background.
+ */
+enum TrafficClass {
+    METADATA("metadata"),
+    ENTITY_CREATE("entity_create"),
+    SCRIPT_UPLOAD("script_upload");
+
+    private final String label;
+
+    TrafficClass(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @param octaneHttpRequest - The request.
+     * @return - The class of the request.
+     */
+    static TrafficClass of(OctaneHttpRequest octaneHttpRequest) {
+        if (octaneHttpRequest instanceof ImporterHttpClient.StepScriptPutRequest) {
+            return SCRIPT_UPLOAD;
+        }
+        return octaneHttpRequest.getOctaneRequestMethod() == OctaneHttpRequest.OctaneRequestMethod.GET
+                ? METADATA
+                : ENTITY_CREATE;
+    }
+
+    /**
+     * @return - The name of the class in the logs and in the metrics labels (i.e. script_upload).
+     */
+    String label() {
+        return label;
+    }
+}
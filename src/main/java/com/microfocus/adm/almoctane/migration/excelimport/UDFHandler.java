@@ -23,138 +23,55 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
- * This can be used in order to add UDFs to the entity models. In order to add UDFs add them in the udfTypes and
- * udfSubtypes.
+ * This can be used in order to add UDFs to the entity models. The UDFs are discovered from the Octane metadata of
+ * the manual test fields: every column of the excel header which matches an editable field gets a converter.
+ * Every migration has its own handler, since the metadata, the lists and the referenced entities belong to the
+ * workspace of the migration.
  */
 class UDFHandler {
-    private static String defaultRelease;
-    private static Map<String, Integer> rowIndexes;
+    private static final String MANUAL_TEST = "test_manual";
+    private static final String RESOLVE_REFERENCE_STAGE = "resolve_reference";
+
+    private final ImportTracer tracer;
+    private OctaneRequestHelper requestHelper;
+    private String defaultRelease;
+    private Map<String, FieldDefinition> fieldDefinitions = new HashMap<>();
+    private Map<String, Map<String, EntityModel>> listItems = new HashMap<>();
+    private final ConcurrentMap<String, Optional<EntityModel>> referenceCache = new ConcurrentHashMap<>();
+    private UDFColumn[] conversionPlan = new UDFColumn[0];
     private static final Logger logger = LoggerFactory.getLogger(UDFHandler.class);
 
     //This formatter can be changed in case the file has any other format
     private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss z");
 
-    private class UDFNames {
-        static final String USR_UDF = "usr_udf";
-        static final String INT_UDF = "int_udf";
-        static final String DATE_UDF = "date_udf";
-        static final String LONG_UDF = "long_udf";
-        static final String MEMO_UDF = "memo_udf";
-        static final String STRING_UDF = "str_udf";
-        static final String RELEASE_UDF = "rel_udf";
-        static final String BOOLEAN_UDF = "bool_udf";
-        static final String DEF_LIST_UDF = "def_list_udf";
-        static final String REL_REF_UDF = "rel_ref_udf";
-        static final String USR_REF_UDF = "usr_ref_udf";
-        static final String LIST_REF_UDF = "list_ref_udf";
-
-    }
-
-    /*****************************************************************************************************************
-     * This map contains the UDFs that are defined in the excel and their type. These UDFs must be already
-     * created in Octane. Possible values for udf subtypes: string, long(this is for long string UDFs), boolean, date,
-     * reference, multiReference. Use the UDFTypes below in order to define your udf map.
-     *****************************************************************************************************************
-     */
-    private static final Map<String, String> udfTypes = new HashMap<String, String>() {{
-        put(UDFNames.INT_UDF, UDFTypes.FLOAT);
-        put(UDFNames.DATE_UDF, UDFTypes.DATE);
-        put(UDFNames.MEMO_UDF, UDFTypes.STRING);
-        put(UDFNames.LONG_UDF, UDFTypes.STRING);
-        put(UDFNames.STRING_UDF, UDFTypes.STRING);
-        put(UDFNames.BOOLEAN_UDF, UDFTypes.BOOLEAN);
-        put(UDFNames.USR_REF_UDF, UDFTypes.REFERENCE);
-        put(UDFNames.REL_REF_UDF, UDFTypes.REFERENCE);
-        put(UDFNames.LIST_REF_UDF, UDFTypes.REFERENCE);
-        put(UDFNames.USR_UDF, UDFTypes.MULTI_REFERENCE);
-        put(UDFNames.RELEASE_UDF, UDFTypes.MULTI_REFERENCE);
-        put(UDFNames.DEF_LIST_UDF, UDFTypes.MULTI_REFERENCE);
-    }};
-
-    private class UDFTypes {
-        static final String DATE = "date";
-        //the long value is used for Integer fields
-        static final String LONG = "long";
-        static final String FLOAT = "float";
-        static final String STRING = "string";
-        static final String BOOLEAN = "boolean";
-        static final String REFERENCE = "reference";
-        static final String MULTI_REFERENCE = "multiReference";
-    }
-
-    private static class ListNames {
-        static final String DEF_LIST = "def_list";
-    }
-
-    /*****************************************************************************************************************
-     * This map contains the subtype of the UDF. Possible values:
-     * - user
-     * - release
-     * - list - The list value must be followed by the list's name (i.e. ("name_udf", "list,list_name"))
-     *****************************************************************************************************************
+    /**
+     * @param tracer - The tracer of the migration, which records the searches of the referenced entities.
      */
-    private static final Map<String, String> udfSubtypes = new HashMap<String, String>() {{
-        put(UDFNames.DEF_LIST_UDF, String.format("%s,%s", UDFSubtypes.LIST, ListNames.DEF_LIST));
-        put(UDFNames.USR_UDF, UDFSubtypes.USER);
-        put(UDFNames.RELEASE_UDF, UDFSubtypes.RELEASE);
-        put(UDFNames.LIST_REF_UDF, String.format("%s,%s", UDFSubtypes.LIST, ListNames.DEF_LIST));
-        put(UDFNames.USR_REF_UDF, UDFSubtypes.USER);
-        put(UDFNames.REL_REF_UDF, UDFSubtypes.RELEASE);
-    }};
-
-    private class UDFSubtypes {
-        static final String LIST = "list";
-        static final String USER = "user";
-        static final String RELEASE = "release";
+    UDFHandler(ImportTracer tracer) {
+        this.tracer = tracer;
     }
 
     /**
-     * This method sets the udf values of the manual test.
+     * This method sets the udf values of the manual test. Only the UDF columns found in the header are converted,
+     * using the converters compiled by initRowIndexes.
      *
      * @param row         - The excel row from where the data is taken
      * @param entityModel - The entity model of the manual test
      */
-    public void addUDFsToEntityModel(Row row, EntityModel entityModel) {
-        for (String udfName : udfTypes.keySet()) {
-            if (rowIndexes.get(udfName) == null) {
-                return;
-            }
-            if (row.getCell(rowIndexes.get(udfName)) == null) {
+    public void addUDFsToEntityModel(ExcelImportRow row, EntityModel entityModel) {
+        for (UDFColumn udfColumn : conversionPlan) {
+            String cellValue = row.getCell(udfColumn.columnIndex);
+            if (cellValue == null) {
                 continue;
             }
 
-            FieldModel fm = null;
-
-            switch (udfTypes.get(udfName)) {
-                case UDFTypes.STRING:
-                    fm = new StringFieldModel(udfName, getCellStringValue(row, udfName));
-                    break;
-                case UDFTypes.LONG:
-                    fm = new LongFieldModel(udfName, getLongValue(row, udfName));
-                    break;
-                case UDFTypes.FLOAT:
-                    fm = new FloatFieldModel(udfName, getFloatValue(row, udfName));
-                    break;
-                case UDFTypes.BOOLEAN:
-                    fm = new BooleanFieldModel(udfName, getBooleanValue(row, udfName));
-                    break;
-                case UDFTypes.DATE:
-                    ZonedDateTime date = getDateValue(row, udfName);
-                    if (date != null) {
-                        fm = new DateFieldModel(udfName, date);
-                    }
-                    break;
-                case UDFTypes.REFERENCE: {
-                    fm = getReferenceFieldModel(row, udfName);
-                    break;
-                }
-                case UDFTypes.MULTI_REFERENCE: {
-                    fm = getMultiReferenceFieldModel(row, udfName);
-                    break;
-                }
-            }
+            FieldModel fm = udfColumn.converter.convert(row, udfColumn.udfName, cellValue);
             if (fm != null) {
                 entityModel.setValue(fm);
             }
@@ -162,290 +79,358 @@ class UDFHandler {
     }
 
     /**
-     * Return the date specified in the excel.
+     * Loads the metadata of the manual test fields. This should be done once, before the header is read.
      *
-     * @param row     - The excel row from where the data is taken.
-     * @param udfName - Name of the udf.
-     * @return - The date specified in the excel.
+     * @param requestHelper - The helper used to execute the request.
      */
-    private ZonedDateTime getDateValue(Row row, String udfName) {
-        try {
-            return ZonedDateTime.parse(getCellStringValue(row, udfName), dateTimeFormatter);
-        } catch (DateTimeParseException e) {
-            logParseWarning(row, e, udfName, getCellStringValue(row, udfName));
-            return null;
-        }
+    public void initFieldDefinitions(OctaneRequestHelper requestHelper) {
+        this.requestHelper = requestHelper;
+        initFieldDefinitions(requestHelper.getFieldDefinitions(MANUAL_TEST));
     }
 
     /**
-     * Return the float value specified in the excel.
+     * Sets the metadata of the manual test fields.
      *
-     * @param row     - The excel row from where the data is taken.
-     * @param udfName - Name of the udf.
-     * @return - The float value specified in the excel.
+     * @param definitions - The definitions of the manual test fields.
      */
-    private Float getFloatValue(Row row, String udfName) {
-        try {
-            return Float.valueOf(getCellStringValue(row, udfName));
-        } catch (NumberFormatException e) {
-            logParseWarning(row, e, udfName, getCellStringValue(row, udfName));
-            return null;
+    void initFieldDefinitions(Collection<FieldDefinition> definitions) {
+        Map<String, FieldDefinition> definitionsByName = new HashMap<>();
+        for (FieldDefinition fieldDefinition : definitions) {
+            definitionsByName.put(fieldDefinition.getName(), fieldDefinition);
         }
+        fieldDefinitions = definitionsByName;
     }
 
     /**
-     * Return the string value specified in the excel.
-     *
-     * @param row     - The excel row from where the data is taken.
-     * @param udfName - Name of the udf.
-     * @return - The string value specified in the excel.
+     * @return - The metadata of the manual test fields.
      */
-    private String getCellStringValue(Row row, String udfName) {
-        return row.getCell(rowIndexes.get(udfName)).toString();
+    Collection<FieldDefinition> getFieldDefinitions() {
+        return Collections.unmodifiableCollection(fieldDefinitions.values());
     }
 
     /**
-     * Return the boolean value specified in the excel.
+     * Initializes the default release name.
      *
-     * @param row     - The excel row from where the data is taken.
-     * @param udfName - Name of the udf.
-     * @return - The boolean value specified in the excel.
+     * @param releaseName - The name of the release which will be used as default.
      */
-    private Boolean getBooleanValue(Row row, String udfName) {
-        try {
-            return Boolean.valueOf(getCellStringValue(row, udfName));
-        } catch (NumberFormatException e) {
-            logParseWarning(row, e, udfName, getCellStringValue(row, udfName));
-            return false;
-        }
+    public void initDefaultRelease(String releaseName) {
+        defaultRelease = releaseName;
     }
 
     /**
-     * Return the long value specified in the excel.
+     * The conversion plan is compiled based on the header of the excel file. It contains, in the order of the columns,
+     * a converter for every column which matches an editable manual test field. If a column is duplicated, only the
+     * first one is used. The items of all the lists referenced by the header are loaded before the import starts.
      *
-     * @param row     - The excel row from where the data is taken.
-     * @param udfName - Name of the udf.
-     * @return - The long value specified in the excel.
+     * @param firstRow      - The header of the excel file.
+     * @param requestHelper - The helper used to load the list items and to search the referenced entities.
      */
-    private Long getLongValue(Row row, String udfName) {
-        try {
-            return Double.valueOf(getCellStringValue(row, udfName)).longValue();
-        } catch (NumberFormatException e) {
-            logParseWarning(row, e, udfName, getCellStringValue(row, udfName));
-            return null;
-        }
+    public void initRowIndexes(Row firstRow, OctaneRequestHelper requestHelper) {
+        initRowIndexes(ExcelImportRow.readCells(firstRow), requestHelper);
     }
 
     /**
-     * Logs a warning in in case of a parsing exception.
+     * Compiles the conversion plan based on the column names of the excel header.
      *
-     * @param row       - The excel row from where the data is taken.
-     * @param e         - The exception.
-     * @param cellName  - The name of the UDF.
-     * @param cellValue - The value of the UDF.
+     * @param header        - The column names indexed by the column index. The missing columns are null.
+     * @param requestHelper - The helper used to load the list items and to search the referenced entities.
      */
-    private void logParseWarning(Row row, Exception e, String cellName, String cellValue) {
-        logger.warn(String.format("Error converting cell value! At row unique id: \"%s\". Exception detailed message: \"%s\". The field with name \"%s\" will be left blank by default. Field original content: \"%s\"",
-                new ExcelImportRow(row).getUniqueId(),
-                e.getMessage(),
-                cellName,
-                cellValue));
-    }
+    void initRowIndexes(String[] header, OctaneRequestHelper requestHelper) {
+        this.requestHelper = requestHelper;
+        Map<FieldDefinition, Integer> udfColumnIndexes = new LinkedHashMap<>();
+        List<String> mandatoryFields = MandatoryFields.getMandatoryFieldsList();
+        Map<String, Integer> unusedFields = new HashMap<>();
 
-    /**
-     * Initializes the default release name.
-     *
-     * @param releaseName - The name of the release which will be used as default.
-     */
-    public static void initDefaultRelease(String releaseName) {
-        defaultRelease = releaseName;
+        for (int columnIndex = 0; columnIndex < header.length; columnIndex++) {
+            String columnName = header[columnIndex];
+            if (columnName == null || mandatoryFields.contains(columnName)) {
+                continue;
+            }
+
+            FieldDefinition fieldDefinition = fieldDefinitions.get(columnName);
+            if (fieldDefinition != null && fieldDefinition.isEditable()
+                    && fieldDefinition.getFieldType() != FieldDefinition.FieldType.UNSUPPORTED) {
+                udfColumnIndexes.putIfAbsent(fieldDefinition, columnIndex);
+            } else {
+                unusedFields.put(columnName, columnIndex);
+            }
+        }
+
+        Set<String> listRoots = new HashSet<>();
+        for (FieldDefinition fieldDefinition : udfColumnIndexes.keySet()) {
+            if (fieldDefinition.getListRootLogicalName() != null) {
+                listRoots.add(fieldDefinition.getListRootLogicalName());
+            }
+        }
+        listItems = listRoots.isEmpty() ? new HashMap<>() : requestHelper.getListItemsByListRoot(listRoots);
+        referenceCache.clear();
+
+        List<UDFColumn> udfColumns = new ArrayList<>();
+        udfColumnIndexes.forEach((fieldDefinition, columnIndex) -> {
+            UDFConverter converter = createConverter(fieldDefinition);
+            if (converter != null) {
+                udfColumns.add(new UDFColumn(fieldDefinition.getName(), columnIndex, converter));
+            } else {
+                unusedFields.put(fieldDefinition.getName(), columnIndex);
+            }
+        });
+        conversionPlan = udfColumns.toArray(new UDFColumn[0]);
+
+        logUnusedFields(unusedFields);
     }
 
     /**
-     * The reference field model is build based on the type of the udf. The type can be: list, user, release.
+     * Creates the converter for a field based on its metadata.
      *
-     * @param row     - The excel row from where the data is taken
-     * @param udfName - The name of the UDF.
-     * @return - The reference field model for the UDF.
+     * @param fieldDefinition - The metadata of the field.
+     * @return - The converter for the field values or null if the field cannot be imported.
      */
-    private FieldModel getReferenceFieldModel(Row row, String udfName) {
-        String type = udfSubtypes.get(udfName).split(",")[0];
-
-        switch (type) {
-            case UDFSubtypes.LIST:
-                String entityName = udfSubtypes.get(udfName).split(",")[1];
-                try {
-                    EntityModel listItem = OctaneRequestHelper.getListItem(
-                            OctaneRequestHelper.getListRoot(entityName).getId(),
-                            getCellStringValue(row, udfName));
-                    return new ReferenceFieldModel(udfName, listItem);
-                } catch (RuntimeException e) {
-                    logger.warn(String.format("For the entity with unique_id \"%s\" the list item \"%s\" for udf with name \"%s\" was not found.",
-                            new ExcelImportRow(row).getUniqueId(), getCellStringValue(row, udfName), udfName));
-                }
-            case UDFSubtypes.USER:
-                EntityModel user = OctaneRequestHelper.getUserByEmail(getCellStringValue(row, udfName));
-                if (user != null) {
-                    return new ReferenceFieldModel(udfName, user);
-                } else {
-                    return new ReferenceFieldModel(udfName, OctaneRequestHelper.getDefaultUser());
+    private UDFConverter createConverter(FieldDefinition fieldDefinition) {
+        switch (fieldDefinition.getFieldType()) {
+            case STRING:
+                return (row, name, value) -> new StringFieldModel(name, value);
+            case LONG:
+                return (row, name, value) -> new LongFieldModel(name, getLongValue(row, name, value));
+            case FLOAT:
+                return (row, name, value) -> new FloatFieldModel(name, getFloatValue(row, name, value));
+            case BOOLEAN:
+                return (row, name, value) -> new BooleanFieldModel(name, getBooleanValue(row, name, value));
+            case DATE:
+                return (row, name, value) -> {
+                    ZonedDateTime date = getDateValue(row, name, value);
+                    return date != null ? new DateFieldModel(name, date) : null;
+                };
+            case REFERENCE: {
+                ReferenceResolver resolver = createReferenceResolver(fieldDefinition);
+                if (resolver == null) {
+                    return null;
                 }
-            case UDFSubtypes.RELEASE:
-                EntityModel release = OctaneRequestHelper.getEntityByName(EntityModelHelper.RELEASES,
-                        getCellStringValue(row, udfName));
-                if (release != null) {
-                    return new ReferenceFieldModel(udfName, release);
-                } else {
-                    return new ReferenceFieldModel(udfName, OctaneRequestHelper.getEntityByName(EntityModelHelper.RELEASES, defaultRelease));
+                if (fieldDefinition.isMultiple()) {
+                    return (row, name, value) -> getMultiReferenceFieldModel(row, name, value, resolver);
                 }
+                return (row, name, value) -> getReferenceFieldModel(row, name, value, resolver);
+            }
             default:
                 return null;
         }
     }
 
     /**
-     * The multi-reference field model is build based on the type of the udf. The type can be: list, user, release.
+     * Creates the resolver for the values of a reference field based on the type of the referenced entities.
+     * The list items are taken from the loaded lists, the other entities are searched in Octane once for every
+     * distinct value.
      *
-     * @param row     - The excel row from where the data is taken.
-     * @param udfName - The name of the UDF.
-     * @return - The multi-reference field model for the UDF.
+     * @param fieldDefinition - The metadata of the reference field.
+     * @return - The resolver or null if the referenced entities cannot be resolved.
      */
-    private FieldModel getMultiReferenceFieldModel(Row row, String udfName) {
-        String type = udfSubtypes.get(udfName).split(",")[0];
-        String[] cellItems = getCellStringValue(row, udfName).split(",");
-        List<EntityModel> entityModels = new ArrayList<>();
-
-        switch (type) {
-            case UDFSubtypes.LIST:
-                return getMultiReferenceFieldModelForListField(udfName, cellItems, entityModels);
-            case UDFSubtypes.USER:
-                return getMultiReferenceFieldModelForUserField(row, udfName, cellItems, entityModels);
-            case UDFSubtypes.RELEASE:
-                return getMultiReferenceFieldModelForReleaseField(row, udfName, cellItems, entityModels);
-            default:
-                return null;
+    private ReferenceResolver createReferenceResolver(FieldDefinition fieldDefinition) {
+        String targetType = fieldDefinition.getTargetType();
+        if (targetType == null) {
+            return null;
+        }
+
+        switch (targetType) {
+            case FieldDefinition.LIST_NODE: {
+                Map<String, EntityModel> items = listItems.get(fieldDefinition.getListRootLogicalName());
+                if (items == null) {
+                    logger.warn(String.format("The list \"%s\" of the field \"%s\" was not found. The field will be ignored.",
+                            fieldDefinition.getListRootLogicalName(), fieldDefinition.getName()));
+                    return null;
+                }
+                return new ReferenceResolver(items::get, () -> null);
+            }
+            case FieldDefinition.WORKSPACE_USER:
+                return new ReferenceResolver(
+                        email -> getCachedReference(EntityModelHelper.USERS, email, () -> requestHelper.getUserByEmail(email)),
+                        () -> requestHelper.getDefaultUser());
+            case FieldDefinition.RELEASE:
+                return new ReferenceResolver(
+                        name -> getCachedReference(EntityModelHelper.RELEASES, name, () -> requestHelper.getEntityByName(EntityModelHelper.RELEASES, name)),
+                        () -> getCachedReference(EntityModelHelper.RELEASES, defaultRelease, () -> requestHelper.getEntityByName(EntityModelHelper.RELEASES, defaultRelease)));
+            default: {
+                String collection = fieldDefinition.getTargetCollection();
+                return new ReferenceResolver(
+                        name -> getCachedReference(collection, name, () -> requestHelper.getEntityByName(collection, name)),
+                        () -> null);
+            }
         }
     }
 
     /**
-     * This method returns the multi-reference field for release fields.
+     * Returns the reference to an entity, searching it in Octane only the first time it is needed.
      *
-     * @param row          - The excel row from where the data is taken.
-     * @param udfName      - The name of the release UDF.
-     * @param cellItems    - The values of the UDF defined in excel.
-     * @param entityModels - The list with the UDF entity model values.
-     * @return - The multi-reference field for the user field.
+     * @param collection - The collection of the entity (i.e. releases).
+     * @param key        - The value which identifies the entity (i.e. the name or email).
+     * @param search     - The search executed if the entity was not searched before.
+     * @return - The reference to the entity or null if the entity does not exist.
      */
-    private FieldModel getMultiReferenceFieldModelForReleaseField(Row row, String udfName, String[] cellItems, List<EntityModel> entityModels) {
-        List<String> releases = new ArrayList<>();
-
-        for (String item : cellItems) {
-            EntityModel release = OctaneRequestHelper.getEntityByName(EntityModelHelper.RELEASES, item.trim());
-            if (release != null && !releases.contains(EntityModelHelper.getName(release))) {
-                entityModels.add(release);
-                releases.add(EntityModelHelper.getName(release));
-            } else {
-                release = OctaneRequestHelper.getEntityByName(EntityModelHelper.RELEASES, defaultRelease);
-                if (!releases.contains(EntityModelHelper.getName(release))) {
-                    entityModels.add(OctaneRequestHelper.getEntityByName(EntityModelHelper.RELEASES, defaultRelease));
-                    releases.add(EntityModelHelper.getName(release));
-                    logger.warn(String.format("Releases listed in the \"%s\" field do not exist. Problem is located on row with unique_id \"%s\". Only one release will be set, and the rest will be ignored. Original content: \"%s\". Problematic item: \"%s\"", udfName, new ExcelImportRow(row).getUniqueId(), getCellStringValue(row, udfName), item.trim()));
-                } else {
-                    logger.warn(String.format("Releases listed in the \"%s\" field are duplicated. Problem is located on row with unique_id \"%s\". Only one release will be set, and the rest will be ignored. Original content: \"%s\". Problematic item: \"%s\"", udfName, new ExcelImportRow(row).getUniqueId(), getCellStringValue(row, udfName), item.trim()));
-                }
+    private EntityModel getCachedReference(String collection, String key, Supplier<EntityModel> search) {
+        Object resolveEvent = ImportEvents.beginReferenceResolve(collection, key);
+        String cacheKey = collection + ':' + key;
+
+        Optional<EntityModel> cached = referenceCache.get(cacheKey);
+        if (cached != null) {
+            ImportEvents.endReferenceResolve(resolveEvent, true, cached.isPresent());
+            return cached.orElse(null);
+        }
+
+        EntityModel reference = referenceCache.computeIfAbsent(cacheKey, k -> {
+            long traceStart = tracer.begin();
+            try {
+                return Optional.ofNullable(search.get());
+            } finally {
+                tracer.end(RESOLVE_REFERENCE_STAGE, ImportTracer.STAGE_CATEGORY, traceStart, collection, 0);
             }
+        }).orElse(null);
+
+        ImportEvents.endReferenceResolve(resolveEvent, false, reference != null);
+        return reference;
+    }
+
+    /**
+     * Returns the reference field model. The fallback entity (i.e. the default user) is used if the value is not found.
+     *
+     * @param row       - The excel row from where the data is taken.
+     * @param udfName   - The name of the UDF.
+     * @param cellValue - The value of the UDF cell.
+     * @param resolver  - The resolver of the referenced entities.
+     * @return - The reference field model for the UDF or null if the value is not found and there is no fallback.
+     */
+    private FieldModel getReferenceFieldModel(ExcelImportRow row, String udfName, String cellValue, ReferenceResolver resolver) {
+        EntityModel reference = resolver.lookup.apply(cellValue.trim());
+        if (reference == null) {
+            reference = resolver.fallback.get();
         }
 
-        return new MultiReferenceFieldModel(udfName, entityModels);
+        if (reference == null) {
+            logger.warn(String.format("For the entity with unique_id \"%s\" the value \"%s\" for udf with name \"%s\" was not found.",
+                    row.getUniqueId(), cellValue, udfName));
+            return null;
+        }
+
+        return new ReferenceFieldModel(udfName, reference);
     }
 
     /**
-     * This method returns the multi-reference field for user fields.
+     * Returns the multi-reference field model. The fallback entity (i.e. the default release) is used for the values
+     * which are not found and the duplicated values are set only once.
      *
-     * @param row          - The excel row from where the data is taken.
-     * @param udfName      - The name of the user UDF.
-     * @param cellItems    - The values of the UDF defined in excel.
-     * @param entityModels - The list with the UDF entity model values.
-     * @return - The multi-reference field for the user field.
+     * @param row       - The excel row from where the data is taken.
+     * @param udfName   - The name of the UDF.
+     * @param cellValue - The value of the UDF cell.
+     * @param resolver  - The resolver of the referenced entities.
+     * @return - The multi-reference field model for the UDF.
      */
-    private FieldModel getMultiReferenceFieldModelForUserField(Row row, String udfName, String[] cellItems, List<EntityModel> entityModels) {
-        List<String> addedUsers = new ArrayList<>();
-
-        for (String item : cellItems) {
-            EntityModel user = OctaneRequestHelper.getUserByEmail(item.trim());
-            if (user != null) {
-                String userName = EntityModelHelper.getName(user);
-                if (!addedUsers.contains(userName)) {
-                    entityModels.add(user);
-                    addedUsers.add(userName);
-                    logger.warn(String.format("Users listed in the %s field are duplicated on row with unique_id %s. Only one user will be set, and the rest will be ignored. Original content: %s", udfName, new ExcelImportRow(row).getUniqueId(), getCellStringValue(row, udfName)));
-                }
-            } else {
-                user = OctaneRequestHelper.getDefaultUser();
-                String userName = EntityModelHelper.getName(user);
-                if (!addedUsers.contains(userName)) {
-                    entityModels.add(user);
-                    addedUsers.add(userName);
-                    logger.warn(String.format("Users listed in the %s field are duplicated or they do not exist on row with unique_id %s. Only one user will be set, and the rest will be ignored. Original content: %s", udfName, new ExcelImportRow(row).getUniqueId(), getCellStringValue(row, udfName)));
-                }
+    private FieldModel getMultiReferenceFieldModel(ExcelImportRow row, String udfName, String cellValue, ReferenceResolver resolver) {
+        Map<String, EntityModel> references = new LinkedHashMap<>();
+
+        for (String item : cellValue.split(",")) {
+            EntityModel reference = resolver.lookup.apply(item.trim());
+
+            if (reference == null) {
+                reference = resolver.fallback.get();
+                logger.warn(String.format("The value \"%s\" listed in the \"%s\" field does not exist. Problem is located on row with unique_id \"%s\". %s Original content: \"%s\"",
+                        item.trim(), udfName, row.getUniqueId(),
+                        reference != null ? "The default value will be used instead." : "The value will be ignored.", cellValue));
+            }
+
+            if (reference != null && references.putIfAbsent(reference.getId(), reference) != null) {
+                logger.warn(String.format("Values listed in the \"%s\" field are duplicated. Problem is located on row with unique_id \"%s\". Only one value will be set. Original content: \"%s\". Problematic item: \"%s\"",
+                        udfName, row.getUniqueId(), cellValue, item.trim()));
             }
         }
 
-        return new MultiReferenceFieldModel(udfName, entityModels);
+        return new MultiReferenceFieldModel(udfName, new ArrayList<>(references.values()));
     }
 
     /**
-     * This method returns the multi-reference field for list fields.
+     * Return the date specified in the excel.
      *
-     * @param udfName      - The name of the list UDF.
-     * @param cellItems    - The values of the UDF defined in excel.
-     * @param entityModels - The list with the UDF entity model values.
-     * @return - The multi-reference field for the user field.
+     * @param row       - The excel row from where the data is taken.
+     * @param udfName   - Name of the udf.
+     * @param cellValue - The value of the UDF cell.
+     * @return - The date specified in the excel.
      */
-    private FieldModel getMultiReferenceFieldModelForListField(String udfName, String[] cellItems, List<EntityModel> entityModels) {
-        for (String item : cellItems) {
-            String entityName = udfSubtypes.get(udfName).split(",")[1];
-            try {
-                EntityModel listItem = OctaneRequestHelper.getListItem(
-                        OctaneRequestHelper.getListRoot(entityName).getId(),
-                        item.trim());
-                if (listItem != null) {
-                    entityModels.add(listItem);
-                }
-            } catch (RuntimeException e) {
-                logger.warn(String.format("The list item \"%s\" for udf with name \"%s\" was not found.", item.trim(), udfName));
-            }
+    private ZonedDateTime getDateValue(ExcelImportRow row, String udfName, String cellValue) {
+        try {
+            return ZonedDateTime.parse(cellValue, dateTimeFormatter);
+        } catch (DateTimeParseException e) {
+            logParseWarning(row, e, udfName, cellValue);
+            return null;
         }
+    }
 
-        return new MultiReferenceFieldModel(udfName, entityModels);
+    /**
+     * Return the float value specified in the excel.
+     *
+     * @param row       - The excel row from where the data is taken.
+     * @param udfName   - Name of the udf.
+     * @param cellValue - The value of the UDF cell.
+     * @return - The float value specified in the excel.
+     */
+    private Float getFloatValue(ExcelImportRow row, String udfName, String cellValue) {
+        try {
+            return Float.valueOf(cellValue);
+        } catch (NumberFormatException e) {
+            logParseWarning(row, e, udfName, cellValue);
+            return null;
+        }
     }
 
     /**
-     * The rowIndexes is set based on the header of the excel file. The map will contain the name of the udf as key and the
-     * number of the column as value.
+     * Return the boolean value specified in the excel.
      *
-     * @param firstRow - The header of the excel file.
+     * @param row       - The excel row from where the data is taken.
+     * @param udfName   - Name of the udf.
+     * @param cellValue - The value of the UDF cell.
+     * @return - The boolean value specified in the excel.
      */
-    public static void initRowIndexes(Row firstRow) {
-        rowIndexes = new HashMap<>();
-        List<String> mandatoryFields = MandatoryFields.getMandatoryFieldsList();
-        Map<String, Integer> unusedFields = new HashMap<>();
+    private Boolean getBooleanValue(ExcelImportRow row, String udfName, String cellValue) {
+        try {
+            return Boolean.valueOf(cellValue);
+        } catch (NumberFormatException e) {
+            logParseWarning(row, e, udfName, cellValue);
+            return false;
+        }
+    }
 
-        firstRow.forEach((column) -> {
-            if (udfTypes.keySet().contains(column.toString())) {
-                rowIndexes.put(column.getStringCellValue(), column.getColumnIndex());
-            } else if (!mandatoryFields.contains(column.toString())) {
-                unusedFields.put(column.toString(), column.getColumnIndex());
-            }
-        });
+    /**
+     * Return the long value specified in the excel.
+     *
+     * @param row       - The excel row from where the data is taken.
+     * @param udfName   - Name of the udf.
+     * @param cellValue - The value of the UDF cell.
+     * @return - The long value specified in the excel.
+     */
+    private Long getLongValue(ExcelImportRow row, String udfName, String cellValue) {
+        try {
+            return Double.valueOf(cellValue).longValue();
+        } catch (NumberFormatException e) {
+            logParseWarning(row, e, udfName, cellValue);
+            return null;
+        }
+    }
 
-        logUnusedFields(unusedFields);
+    /**
+     * Logs a warning in in case of a parsing exception.
+     *
+     * @param row       - The excel row from where the data is taken.
+     * @param e         - The exception.
+     * @param cellName  - The name of the UDF.
+     * @param cellValue - The value of the UDF.
+     */
+    private void logParseWarning(ExcelImportRow row, Exception e, String cellName, String cellValue) {
+        logger.warn(String.format("Error converting cell value! At row unique id: \"%s\". Exception detailed message: \"%s\". The field with name \"%s\" will be left blank by default. Field original content: \"%s\"",
+                row.getUniqueId(),
+                e.getMessage(),
+                cellName,
+                cellValue));
     }
 
     /**
-     * This method logs the unused UDFs listed in the excel file.
+     * This method logs the unused fields listed in the excel file.
      *
-     * @param unusedFields - Map with UDF fields names mapped to their column indexes.
+     * @param unusedFields - Map with fields names mapped to their column indexes.
      */
     private static void logUnusedFields(Map<String, Integer> unusedFields) {
         if (unusedFields.size() > 0) {
@@ -458,4 +443,50 @@ class UDFHandler {
                     sb.toString());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Converts the value of a UDF cell to the field model which is set on the manual test.
+     */
+    @FunctionalInterface
+    private interface UDFConverter {
+        /**
+         * @param row       - The excel row from where the data is taken.
+         * @param udfName   - The name of the UDF.
+         * @param cellValue - The value of the UDF cell.
+         * @return - The field model for the UDF or null if the value cannot be converted.
+         */
+        FieldModel convert(ExcelImportRow row, String udfName, String cellValue);
+    }
+
+    /**
+     * Finds the entities referenced by the values of a reference field.
+     */
+    private static final class ReferenceResolver {
+        private final Function<String, EntityModel> lookup;
+        private final Supplier<EntityModel> fallback;
+
+        /**
+         * @param lookup   - Returns the referenced entity for a value or null if it does not exist.
+         * @param fallback - Returns the entity used when a value is not found or null if there is no such entity.
+         */
+        ReferenceResolver(Function<String, EntityModel> lookup, Supplier<EntityModel> fallback) {
+            this.lookup = lookup;
+            this.fallback = fallback;
+        }
+    }
+
+    /**
+     * A UDF column from the header together with the converter for its values.
+     */
+    private static final class UDFColumn {
+        private final String udfName;
+        private final int columnIndex;
+        private final UDFConverter converter;
+
+        UDFColumn(String udfName, int columnIndex, UDFConverter converter) {
+            this.udfName = udfName;
+            this.columnIndex = columnIndex;
+            this.converter = converter;
+        }
+    }
+}
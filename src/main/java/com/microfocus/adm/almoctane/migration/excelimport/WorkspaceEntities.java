@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.model.EntityModel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class keeps the references to the entities of one workspace, shared by the imports of the workspace which run
+ * in the same JVM. The references are interned, so there is only one instance for every entity of the workspace, and
+ * the JSON used to reference the entity in a request body is built only once. The user tags and the tree of the
+ * application modules are shared too, so a missing user tag or application module is created only once even when
+ * several imports of the workspace need it at the same time.
+ *
+ * The imports of the same server, shared space and workspace get the same instance, the imports of other workspaces
+ * get their own, so the references of two workspaces never mix even when their entities have the same ids. An
+ * instance is kept while an import holds it and it is dropped when the last one releases it.
+ */
+final class WorkspaceEntities {
+    private static final long FAILED_CREATE_RETRY_MILLIS = 30_000;
+    private static final Map<String, WorkspaceEntities> workspaces = new HashMap<>();
+
+    private final String key;
+    private final ConcurrentMap<String, EntityReference> references = new ConcurrentHashMap<>();
+    private final SingleFlightCache<String, EntityModel> userTags = new SingleFlightCache<>(FAILED_CREATE_RETRY_MILLIS);
+    private ProductAreaTrie productAreas;
+    private int holders;
+
+    /**
+     * @param key - The key of the workspace (i.e. its URL).
+     */
+    WorkspaceEntities(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Returns the entities of a workspace and registers the caller as one of their holders. This should be used before
+     * a migration starts and it must be paired with {@link #release()}.
+     *
+     * @param server      - The Octane server.
+     * @param sharedSpace - The shared space.
+     * @param workspace   - The workspace.
+     * @return - The entities of the workspace.
+     */
+    static WorkspaceEntities acquire(String server, int sharedSpace, int workspace) {
+        String key = server + "/api/shared_spaces/" + sharedSpace + "/workspaces/" + workspace;
+        synchronized (workspaces) {
+            WorkspaceEntities entities = workspaces.computeIfAbsent(key, WorkspaceEntities::new);
+            entities.holders++;
+            return entities;
+        }
+    }
+
+    /**
+     * Unregisters a holder. When the workspace has no holder anymore, its references, user tags and application
+     * modules are dropped. This should be used after a migration has finished.
+     */
+    void release() {
+        synchronized (workspaces) {
+            holders = Math.max(0, holders - 1);
+            if (holders == 0) {
+                workspaces.remove(key, this);
+            }
+        }
+    }
+
+    /**
+     * Returns the reference for an entity of the workspace. The reference is created only the first time the entity
+     * is referenced, or when the name of an entity referenced before without a name becomes known.
+     *
+     * @param type - The type of the entity.
+     * @param id   - The id of the entity.
+     * @param name - The name of the entity. It can be null if the name is not needed.
+     * @return - The reference for the entity.
+     */
+    EntityReference reference(String type, String id, String name) {
+        String referenceKey = type + ':' + id;
+        EntityReference reference = references.get(referenceKey);
+
+        if (reference != null && (name == null || reference.getName() != null)) {
+            return reference;
+        }
+
+        return references.merge(referenceKey, EntityReference.of(type, id, name),
+                (existing, created) -> existing.getName() != null ? existing : created);
+    }
+
+    /**
+     * Returns the reference containing only the basic fields of an entity (i.e id, name and type).
+     *
+     * @param entityModel - The fields will be taken from this entity model
+     * @return - The reference with the basic fields mentioned above
+     */
+    EntityReference reference(EntityModel entityModel) {
+        return reference(EntityModelHelper.getType(entityModel), entityModel.getId(), EntityModelHelper.getName(entityModel));
+    }
+
+    /**
+     * @return - The user tags of the workspace mapped by their name.
+     */
+    SingleFlightCache<String, EntityModel> getUserTags() {
+        return userTags;
+    }
+
+    /**
+     * Returns the tree of the application modules. The tree is created by the first import which loads the root.
+     *
+     * @param root - The root application module.
+     * @return - The tree of the application modules of the workspace.
+     */
+    synchronized ProductAreaTrie getProductAreas(EntityModel root) {
+        if (productAreas == null || !productAreas.getRoot().getId().equals(root.getId())) {
+            productAreas = new ProductAreaTrie(this, root, FAILED_CREATE_RETRY_MILLIS);
+        }
+        return productAreas;
+    }
+}
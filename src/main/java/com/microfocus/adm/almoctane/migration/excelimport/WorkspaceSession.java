@@ -0,0 +1,217 @@
+/*
+ * Copyright 2019 EntIT Software LLC, a Micro Focus company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.Octane;
+import com.hpe.adm.nga.sdk.authentication.Authentication;
+import com.hpe.adm.nga.sdk.model.EntityModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the authenticated clients of a workspace and the metadata loaded from it, so the imports run by
+ * the {@link ImportServer} do not log in and do not load the metadata again. The clients log in again by themselves
+ * when the Octane session expires, the metadata is loaded again when it is older than its time to live.
+ *
+ * The imports of a workspace must run one after the other: they share the clients and the metadata maps, which are
+ * updated with the entities created by the imports (i.e. user tags and application modules). The session holds the
+ * {@link WorkspaceEntities} of the workspace, so the user tags and the application modules are also shared with the
+ * other imports of the workspace which run in the JVM.
+ */
+final class WorkspaceSession implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(WorkspaceSession.class);
+
+    private final int workspace;
+    private final ImporterHttpClient octaneClient;
+    private final ImporterHttpClient scriptUploadClient;
+    private final Octane octane;
+    private final RequestCompression requestCompression;
+    private final WorkspaceEntities entities;
+    private final long metadataTtlNanos;
+    private Metadata metadata;
+    private long metadataLoadedAt;
+
+    private WorkspaceSession(int workspace, ImporterHttpClient octaneClient, ImporterHttpClient scriptUploadClient,
+                             Octane octane, RequestCompression requestCompression, WorkspaceEntities entities,
+                             long metadataTtlNanos) {
+        this.workspace = workspace;
+        this.octaneClient = octaneClient;
+        this.scriptUploadClient = scriptUploadClient;
+        this.octane = octane;
+        this.requestCompression = requestCompression;
+        this.entities = entities;
+        this.metadataTtlNanos = metadataTtlNanos;
+    }
+
+    /**
+     * Logs in and creates the clients of a workspace.
+     *
+     * @param server            - The Octane server.
+     * @param sharedSpace       - The shared space.
+     * @param workspace         - The workspace.
+     * @param authentication    - The authentication used by the clients.
+     * @param settings          - The settings of the imports. Only the request compression is used by the clients.
+     * @param metadataTtlMillis - The time after which the metadata is loaded again.
+     * @return - The session of the workspace.
+     */
+    static WorkspaceSession open(String server, int sharedSpace, int workspace, Authentication authentication,
+                                 ImportSettings settings, long metadataTtlMillis) {
+        RequestCompression requestCompression = settings.createRequestCompression();
+
+        ImporterHttpClient scriptUploadClient = new ImporterHttpClient(server, requestCompression, new ImportMetrics());
+        scriptUploadClient.authenticate(authentication);
+
+        ImporterHttpClient octaneClient = new ImporterHttpClient(server, requestCompression, new ImportMetrics());
+        Octane octane = new Octane.Builder(authentication, octaneClient)
+                .Server(server)
+                .sharedSpace(sharedSpace)
+                .workSpace(workspace)
+                .build();
+
+        logger.info(String.format("Opened the session of workspace %s", workspace));
+        return new WorkspaceSession(workspace, octaneClient, scriptUploadClient, octane, requestCompression,
+                WorkspaceEntities.acquire(server, sharedSpace, workspace), TimeUnit.MILLISECONDS.toNanos(metadataTtlMillis));
+    }
+
+    /**
+     * @return - The client used for the entity requests.
+     */
+    ImporterHttpClient getOctaneClient() {
+        return octaneClient;
+    }
+
+    /**
+     * @return - The client used for the step uploads.
+     */
+    ImporterHttpClient getScriptUploadClient() {
+        return scriptUploadClient;
+    }
+
+    /**
+     * @return - The Octane instance bound to the workspace.
+     */
+    Octane getOctane() {
+        return octane;
+    }
+
+    /**
+     * @return - The compression of the request bodies, shared by the imports of the session.
+     */
+    RequestCompression getRequestCompression() {
+        return requestCompression;
+    }
+
+    /**
+     * @return - The metadata of the workspace or null if it was not loaded yet or it is too old.
+     */
+    Metadata getMetadata() {
+        if (metadata != null && System.nanoTime() - metadataLoadedAt > metadataTtlNanos) {
+            logger.info(String.format("The metadata of workspace %s expired", workspace));
+            metadata = null;
+        }
+        return metadata;
+    }
+
+    /**
+     * Keeps the metadata loaded by an import for the next imports.
+     *
+     * @param metadata - The metadata of the workspace.
+     */
+    void setMetadata(Metadata metadata) {
+        this.metadata = metadata;
+        this.metadataLoadedAt = System.nanoTime();
+    }
+
+    /**
+     * Drops the metadata, so the next import loads it again.
+     */
+    void invalidateMetadata() {
+        metadata = null;
+    }
+
+    /**
+     * Signs out the clients and releases the entities of the workspace.
+     */
+    @Override
+    public void close() {
+        entities.release();
+        for (ImporterHttpClient client : new ImporterHttpClient[]{octaneClient, scriptUploadClient}) {
+            try {
+                client.signOut();
+            } catch (RuntimeException e) {
+                StringUtils.logException(logger, String.format("Unable to sign out of workspace %s", workspace), e);
+            }
+        }
+    }
+
+    /**
+     * The entities of the workspace which are loaded before an import: the users, phases, user tags and test types
+     * mapped by their name (or email), the tree of the application modules and the metadata of the manual test fields.
+     * The user tags and the application modules are shared by the imports of the session, which add the entities they
+     * create.
+     */
+    static final class Metadata {
+        private final Map<String, EntityModel> users;
+        private final Map<String, EntityModel> phases;
+        private final SingleFlightCache<String, EntityModel> userTags;
+        private final ProductAreaTrie productAreas;
+        private final Map<String, EntityModel> testTypes;
+        private final Collection<FieldDefinition> fieldDefinitions;
+
+        Metadata(Map<String, EntityModel> users,
+                 Map<String, EntityModel> phases,
+                 SingleFlightCache<String, EntityModel> userTags,
+                 ProductAreaTrie productAreas,
+                 Map<String, EntityModel> testTypes,
+                 Collection<FieldDefinition> fieldDefinitions) {
+            this.users = users;
+            this.phases = phases;
+            this.userTags = userTags;
+            this.productAreas = productAreas;
+            this.testTypes = testTypes;
+            this.fieldDefinitions = Collections.unmodifiableCollection(new ArrayList<>(fieldDefinitions));
+        }
+
+        Map<String, EntityModel> getUsers() {
+            return users;
+        }
+
+        Map<String, EntityModel> getPhases() {
+            return phases;
+        }
+
+        SingleFlightCache<String, EntityModel> getUserTags() {
+            return userTags;
+        }
+
+        ProductAreaTrie getProductAreas() {
+            return productAreas;
+        }
+
+        Map<String, EntityModel> getTestTypes() {
+            return testTypes;
+        }
+
+        Collection<FieldDefinition> getFieldDefinitions() {
+            return fieldDefinitions;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.authentication.SimpleClientAuthentication;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs several whole imports in the same JVM against the Octane stub server.
+ */
+public class ExcelImporterTests {
+    private static final String USER = OctaneStubServer.DEFAULT_USER;
+    private static final int WORKSPACE = OctaneStubServer.DEFAULT_WORKSPACE;
+    private static final int OTHER_WORKSPACE = 1003;
+
+    private final WorkbookGenerator generator = new WorkbookGenerator().tests(30).stepsPerTest(1, 4).udfColumns(3).seed(5);
+    private OctaneStubServer octane;
+    private Path workDirectory;
+    private Path sheet;
+    private int expectedTests;
+
+    @Before
+    public void StartServer() throws IOException {
+        octane = new OctaneStubServer().addFieldDefinitions(generator.getUdfDefinitions());
+        for (int workspace : new int[]{WORKSPACE, OTHER_WORKSPACE}) {
+            octane.withDefaultEntities(workspace);
+            for (String email : generator.getUsers()) {
+                octane.addEntity(workspace, "workspace_users", new JSONObject().put("name", email).put("email", email));
+            }
+        }
+        // the ids of the entities created by the imports name other entities in the other workspace
+        octane.addEntity(OTHER_WORKSPACE, EntityModelHelper.USER_TAGS, new JSONObject().put("name", "legacy"));
+        octane.start();
+
+        workDirectory = Files.createTempDirectory("excel-importer");
+        sheet = workDirectory.resolve("tests.xlsx");
+        WorkbookGenerator.Summary summary = generator.write(sheet);
+        expectedTests = summary.getTests() - summary.getRejectedTests();
+    }
+
+    @After
+    public void StopServer() throws IOException {
+        octane.close();
+        try (Stream<Path> files = Files.list(workDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(workDirectory);
+    }
+
+    @Test
+    public void ImportsTwiceInTheSameJVM() {
+        for (int i = 0; i < 2; i++) {
+            ExcelImporter excelImporter = createImporter(WORKSPACE, new ImportSettings());
+
+            assertEquals(MigrationStatus.Status.INIT_SUCCESS, excelImporter.init(new SimpleClientAuthentication(USER, "password")));
+            excelImporter.migrate();
+
+            assertEquals(expectedTests, excelImporter.getMigrationStatus().getMigratedTests());
+        }
+        assertEquals(2 * expectedTests, octane.getEntities(EntityModelHelper.MANUAL_TESTS).size());
+    }
+
+    @Test
+    public void ImportsConcurrentlyIntoTwoWorkspacesWithTheirOwnTraces() throws InterruptedException, ExecutionException, IOException {
+        int[] workspaces = {WORKSPACE, OTHER_WORKSPACE};
+        ExecutorService executorService = Executors.newFixedThreadPool(workspaces.length);
+        List<Path> traceFiles = new ArrayList<>();
+        List<Future<ExcelImporter>> imports = new ArrayList<>();
+        try {
+            for (int workspace : workspaces) {
+                Path traceFile = workDirectory.resolve("trace-" + workspace + ".json");
+                traceFiles.add(traceFile);
+                ExcelImporter excelImporter = createImporter(workspace, new ImportSettings().trace(traceFile.toString(), 1 << 12));
+                imports.add(executorService.submit(() -> {
+                    excelImporter.init(new SimpleClientAuthentication(USER, "password"));
+                    excelImporter.migrate();
+                    return excelImporter;
+                }));
+            }
+
+            for (Future<ExcelImporter> migration : imports) {
+                assertEquals(expectedTests, migration.get().getMigrationStatus().getMigratedTests());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        for (int workspace : workspaces) {
+            List<JSONObject> tests = octane.getEntities(workspace, EntityModelHelper.MANUAL_TESTS);
+            assertEquals(expectedTests, tests.size());
+
+            Set<String> userTagIds = new HashSet<>();
+            for (JSONObject userTag : octane.getEntities(workspace, EntityModelHelper.USER_TAGS)) {
+                userTagIds.add(userTag.getString("id"));
+            }
+            for (JSONObject test : tests) {
+                JSONArray userTags = test.has("user_tags") ? test.getJSONObject("user_tags").getJSONArray("data") : new JSONArray();
+                for (int i = 0; i < userTags.length(); i++) {
+                    assertTrue(userTagIds.contains(userTags.getJSONObject(i).getString("id")));
+                }
+            }
+        }
+        for (Path traceFile : traceFiles) {
+            JSONArray events = new JSONObject(new String(Files.readAllBytes(traceFile), StandardCharsets.UTF_8))
+                    .getJSONArray("traceEvents");
+            assertEquals(expectedTests, countSpans(events, "create_test"));
+        }
+    }
+
+    @Test
+    public void CreatesTheMissingReferencesOnceForConcurrentImports() throws InterruptedException, ExecutionException {
+        octane.latency(EntityModelHelper.USER_TAGS, OctaneStubServer.LatencyDistribution.fixed(50))
+                .latency(EntityModelHelper.PRODUCT_AREAS, OctaneStubServer.LatencyDistribution.fixed(50));
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        List<Future<ExcelImporter>> imports = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                ExcelImporter excelImporter = createImporter(WORKSPACE, new ImportSettings());
+                imports.add(executorService.submit(() -> {
+                    excelImporter.init(new SimpleClientAuthentication(USER, "password"));
+                    excelImporter.migrate();
+                    return excelImporter;
+                }));
+            }
+
+            for (Future<ExcelImporter> migration : imports) {
+                assertEquals(expectedTests, migration.get().getMigrationStatus().getMigratedTests());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertEquals(2 * expectedTests, octane.getEntities(EntityModelHelper.MANUAL_TESTS).size());
+        assertOnePerName(octane.getEntities(EntityModelHelper.USER_TAGS));
+        assertOnePerName(octane.getEntities(EntityModelHelper.PRODUCT_AREAS));
+    }
+
+    @Test
+    public void ReplaysTheRecordedTrafficWithoutTheServer() throws IOException {
+        Path cassette = workDirectory.resolve("traffic.jsonl.gz");
+        ExcelImporter recording = createImporter(WORKSPACE, new ImportSettings().recordTraffic(cassette.toString()));
+        recording.init(new SimpleClientAuthentication(USER, "password"));
+        recording.migrate();
+        ExcelImporter replay = createImporter(WORKSPACE, new ImportSettings().replayTraffic(cassette.toString(), 0));
+        // the replay fails if it sends any request to the server
+        octane.close();
+
+        assertEquals(MigrationStatus.Status.INIT_SUCCESS, replay.init(new SimpleClientAuthentication(USER, "password")));
+        replay.migrate();
+
+        assertEquals(expectedTests, recording.getMigrationStatus().getMigratedTests());
+        assertEquals(expectedTests, replay.getMigrationStatus().getMigratedTests());
+        assertEquals(0, replay.getMigrationStatus().getFailedTests());
+        assertEquals(0, replay.getMigrationStatus().getFailedSteps());
+        assertEquals(expectedTests, octane.getEntities(EntityModelHelper.MANUAL_TESTS).size());
+    }
+
+    private ExcelImporter createImporter(int workspace, ImportSettings settings) {
+        return new ExcelImporter(octane.getUrl(), 1001, workspace, sheet.toFile(), USER, settings.reportProgress(0));
+    }
+
+    static void assertOnePerName(List<JSONObject> entities) {
+        Set<String> names = new HashSet<>();
+        for (JSONObject entity : entities) {
+            JSONObject parent = entity.optJSONObject("parent");
+            String path = (parent != null ? parent.getString("id") + "/" : "") + entity.getString("name");
+            assertTrue(String.format("%s was created more than once", path), names.add(path));
+        }
+    }
+
+    private static int countSpans(JSONArray events, String name) {
+        int count = 0;
+        for (int i = 0; i < events.length(); i++) {
+            if (name.equals(events.getJSONObject(i).getString("name"))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
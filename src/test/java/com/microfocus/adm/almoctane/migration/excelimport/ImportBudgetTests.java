@@ -0,0 +1,129 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.authentication.SimpleClientAuthentication;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a whole import of a generated large sheet against the Octane stub server and checks the used resources
+ * against the budgets recorded in scale-budgets.properties. The tests are run only by the scale profile, which gives
+ * every test class its own JVM with a constrained heap.
+ */
+public class ImportBudgetTests {
+    private static final Logger logger = LoggerFactory.getLogger(ImportBudgetTests.class);
+
+    private static final String BUDGETS = "scale-budgets.properties";
+    private static final String RECORD_BUDGETS = "scale.recordBudgets";
+    private static final double RECORDED_HEADROOM = 1.25;
+    private static final long FULL_GC_INTERVAL_MILLIS = 10_000;
+    private static final String USER = "admin@example.com";
+
+    private static Properties budgets;
+    private static Properties recordedBudgets;
+    private static Path workDirectory;
+
+    @BeforeClass
+    public static void LoadBudgets() throws IOException {
+        budgets = new Properties();
+        try (InputStream in = ImportBudgetTests.class.getClassLoader().getResourceAsStream(BUDGETS)) {
+            budgets.load(in);
+        }
+        recordedBudgets = new Properties();
+        recordedBudgets.putAll(budgets);
+        workDirectory = Files.createTempDirectory("import-budget");
+    }
+
+    @AfterClass
+    public static void SaveRecordedBudgets() throws IOException {
+        if (Boolean.getBoolean(RECORD_BUDGETS)) {
+            Path target = Paths.get("target", BUDGETS);
+            Files.createDirectories(target.getParent());
+            try (OutputStream out = Files.newOutputStream(target)) {
+                recordedBudgets.store(out, "Recorded by " + ImportBudgetTests.class.getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    public void LargeImportStaysWithinBudgets() throws IOException {
+        String name = "large_import";
+        WorkbookGenerator generator = new WorkbookGenerator()
+                .tests(getInt(name, "tests"))
+                .skewedStepsPerTest(getInt(name, "median_steps_per_test"), getInt(name, "max_steps_per_test"))
+                .udfColumns(getInt(name, "udf_columns"))
+                .callStepRate(getDouble(name, "call_step_rate"))
+                .errorRate(getDouble(name, "error_rate"));
+        Path sheet = workDirectory.resolve(name + ".xlsx");
+        WorkbookGenerator.Summary summary = generator.write(sheet);
+
+        try (OctaneStubServer server = startServer(generator, getDouble(name, "stub_median_latency_ms"))) {
+            System.gc();
+            ResourceProbe.Usage usage;
+            ExcelImporter excelImporter = new ExcelImporter(server.getUrl(), 1001, 1002, sheet.toFile(), USER,
+                    new ImportSettings().reportProgress(10));
+            try (ResourceProbe probe = ResourceProbe.start(10, FULL_GC_INTERVAL_MILLIS)) {
+                excelImporter.init(new SimpleClientAuthentication(USER, "password"));
+                excelImporter.migrate();
+                usage = probe.stop();
+            }
+
+            logger.info(String.format("%s: %s; %s; %s Octane requests, %s in flight at most",
+                    name, summary, usage, server.getTotalRequestCount(), server.getPeakInFlightRequests()));
+
+            assertEquals(summary.getTests() - summary.getRejectedTests(),
+                    excelImporter.getMigrationStatus().getMigratedTests());
+            checkBudget(name, "peak_retained_heap_mb", usage.getPeakRetainedHeapMb());
+            checkBudget(name, "allocated_mb", usage.getAllocatedMb());
+            checkBudget(name, "allocation_rate_mb_per_second", usage.getAllocationRateMbPerSecond());
+            checkBudget(name, "gc_millis", usage.getGcMillis());
+            checkBudget(name, "wall_clock_seconds", usage.getWallClockSeconds());
+        } finally {
+            Files.deleteIfExists(sheet);
+        }
+    }
+
+    private static OctaneStubServer startServer(WorkbookGenerator generator, double medianLatencyMillis) throws IOException {
+        OctaneStubServer server = new OctaneStubServer()
+                .withDefaultEntities()
+                .addFieldDefinitions(generator.getUdfDefinitions())
+                .latency(OctaneStubServer.LatencyDistribution.logNormal(medianLatencyMillis, 0.5));
+        for (String email : generator.getUsers()) {
+            server.addEntity("workspace_users", new JSONObject().put("name", email).put("email", email));
+        }
+        return server.start();
+    }
+
+    private static void checkBudget(String name, String metric, double value) {
+        String key = name + "." + metric;
+        if (Boolean.getBoolean(RECORD_BUDGETS)) {
+            recordedBudgets.setProperty(key, Long.toString((long) Math.ceil(value * RECORDED_HEADROOM)));
+            return;
+        }
+
+        double budget = getDouble(name, metric);
+        assertTrue(String.format("%s is %.1f, over the budget of %.1f", key, value, budget), value <= budget);
+    }
+
+    private static int getInt(String name, String key) {
+        return Integer.parseInt(budgets.getProperty(name + "." + key));
+    }
+
+    private static double getDouble(String name, String key) {
+        return Double.parseDouble(budgets.getProperty(name + "." + key));
+    }
+}
@@ -0,0 +1,50 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ImportEventsTests {
+    private static final String REFERENCE_RESOLVE = "com.microfocus.octane.importer.ReferenceResolve";
+
+    @Test
+    public void DoesNotCreateEventsWithoutRecording() {
+        assertNull(ImportEvents.beginReferenceResolve("releases", "R1"));
+    }
+
+    @Test
+    public void RecordsReferenceResolveEvents() throws IOException {
+        Path file = Files.createTempFile("importer", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(REFERENCE_RESOLVE);
+            recording.start();
+
+            ImportEvents.endReferenceResolve(ImportEvents.beginReferenceResolve("releases", "R1"), false, true);
+            ImportEvents.endReferenceResolve(ImportEvents.beginReferenceResolve("releases", "R1"), true, true);
+
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+            assertEquals(2, events.size());
+            assertEquals(REFERENCE_RESOLVE, events.get(0).getEventType().getName());
+            assertEquals("R1", events.get(0).getString("value"));
+            assertFalse(events.get(0).getBoolean("cacheHit"));
+            assertTrue(events.get(1).getBoolean("cacheHit"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
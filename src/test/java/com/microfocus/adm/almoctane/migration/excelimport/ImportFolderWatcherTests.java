@@ -0,0 +1,147 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.authentication.SimpleClientAuthentication;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImportFolderWatcherTests {
+    private static final String USER = OctaneStubServer.DEFAULT_USER;
+
+    private final WorkbookGenerator generator = new WorkbookGenerator().tests(10).stepsPerTest(1, 3).udfColumns(2)
+            .seed(3);
+    private OctaneStubServer octane;
+    private ImportServer importServer;
+    private Path inbox;
+
+    @Before
+    public void StartServers() throws IOException {
+        octane = new OctaneStubServer().withDefaultEntities().addFieldDefinitions(generator.getUdfDefinitions());
+        for (String email : generator.getUsers()) {
+            octane.addEntity("workspace_users", new JSONObject().put("name", email).put("email", email));
+        }
+        octane.start();
+        importServer = new ImportServer(octane.getUrl(), 1001, USER, new SimpleClientAuthentication(USER, "password"),
+                new ImportSettings().reportProgress(0), 60_000);
+        inbox = Files.createTempDirectory("importer-inbox");
+    }
+
+    @After
+    public void StopServers() throws IOException {
+        importServer.close();
+        octane.close();
+        try (Stream<Path> files = Files.walk(inbox)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void MovesTheFailedFilesWithTheirReports() throws IOException, InterruptedException {
+        Files.write(inbox.resolve("ignored.csv"), "name".getBytes(StandardCharsets.UTF_8));
+        Path failed = inbox.resolve(ImportFolderWatcher.FAILED_DIRECTORY).resolve("tests.xlsx");
+        Path report = failed.resolveSibling("tests.xlsx" + ImportFolderWatcher.REPORT_SUFFIX);
+
+        ImportFolderWatcher watcher = new ImportFolderWatcher(importServer, inbox, 1002, 50).start();
+        try {
+            Files.write(inbox.resolve("tests.xlsx"), "not a workbook".getBytes(StandardCharsets.UTF_8));
+            awaitFile(report);
+        } finally {
+            watcher.close();
+        }
+
+        assertTrue(Files.exists(failed));
+        JSONObject job = new JSONObject(new String(Files.readAllBytes(report), StandardCharsets.UTF_8));
+        assertEquals(ImportJob.State.FAILED.name(), job.getString("state"));
+        assertEquals(MigrationStatus.Status.INIT_SHEET_FAILED.name(), job.getString("status"));
+        assertFalse(Files.exists(inbox.resolve("tests.xlsx")));
+        assertTrue(Files.exists(inbox.resolve("ignored.csv")));
+    }
+
+    @Test
+    public void MovesTheImportedFilesWithTheirReports() throws IOException, InterruptedException {
+        Path done = inbox.resolve(ImportFolderWatcher.DONE_DIRECTORY).resolve("tests.xlsx");
+        Path report = done.resolveSibling("tests.xlsx" + ImportFolderWatcher.REPORT_SUFFIX);
+        ByteArrayOutputStream workbook = new ByteArrayOutputStream();
+        WorkbookGenerator.Summary summary = generator.write(workbook);
+
+        ImportFolderWatcher watcher = new ImportFolderWatcher(importServer, inbox, 1002, 50).start();
+        try {
+            Files.write(inbox.resolve("tests.xlsx"), workbook.toByteArray());
+            awaitFile(report);
+        } finally {
+            watcher.close();
+        }
+
+        assertTrue(Files.exists(done));
+        assertFalse(Files.exists(inbox.resolve("tests.xlsx")));
+        assertFalse(Files.exists(inbox.resolve(ImportFolderWatcher.PROCESSING_DIRECTORY).resolve("tests.xlsx")));
+        JSONObject job = new JSONObject(new String(Files.readAllBytes(report), StandardCharsets.UTF_8));
+        assertEquals(ImportJob.State.FINISHED.name(), job.getString("state"));
+        assertEquals(1002, job.getInt("workspace"));
+        int migratedTests = summary.getTests() - summary.getRejectedTests();
+        assertEquals(migratedTests, job.getInt("migrated_tests"));
+        assertEquals(migratedTests, octane.getEntities(EntityModelHelper.MANUAL_TESTS).size());
+    }
+
+    @Test
+    public void ImportsTheRenamedFilesWithoutWaitingForTheSettleTime() throws IOException, InterruptedException {
+        Path staging = Files.createDirectory(inbox.resolve("staging"));
+        Path exported = staging.resolve("renamed.xlsx");
+        generator.write(exported);
+        long exportedMillis = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10);
+        Files.setLastModifiedTime(exported, FileTime.fromMillis(exportedMillis));
+        Path report = inbox.resolve(ImportFolderWatcher.DONE_DIRECTORY)
+                .resolve("renamed.xlsx" + ImportFolderWatcher.REPORT_SUFFIX);
+
+        long settleMillis = TimeUnit.MINUTES.toMillis(5);
+        ImportFolderWatcher watcher = new ImportFolderWatcher(importServer, inbox, 1002, settleMillis).start();
+        try {
+            Files.write(inbox.resolve("written.xlsx"), "still being written".getBytes(StandardCharsets.UTF_8));
+            Files.move(exported, inbox.resolve("renamed.xlsx"));
+            awaitFile(report);
+
+            assertTrue(Files.exists(report));
+            assertTrue(Files.exists(inbox.resolve("written.xlsx")));
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void ImportsAgainTheUnfinishedFiles() throws IOException, InterruptedException {
+        Files.createDirectories(inbox.resolve(ImportFolderWatcher.PROCESSING_DIRECTORY));
+        Files.write(inbox.resolve(ImportFolderWatcher.PROCESSING_DIRECTORY).resolve("tests.xlsx"),
+                "not a workbook".getBytes(StandardCharsets.UTF_8));
+        Path failed = inbox.resolve(ImportFolderWatcher.FAILED_DIRECTORY).resolve("tests.xlsx");
+
+        ImportFolderWatcher watcher = new ImportFolderWatcher(importServer, inbox, 1002, 50).start();
+        try {
+            awaitFile(failed);
+        } finally {
+            watcher.close();
+        }
+
+        assertTrue(Files.exists(failed));
+    }
+
+    private static void awaitFile(Path file) throws InterruptedException {
+        for (int i = 0; i < 200 && !Files.exists(file); i++) {
+            Thread.sleep(50);
+        }
+    }
+}
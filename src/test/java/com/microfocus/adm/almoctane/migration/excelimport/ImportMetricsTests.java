@@ -0,0 +1,71 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ImportMetricsTests {
+
+    @Test
+    public void CountsByLabels() {
+        ImportMetrics metrics = new ImportMetrics();
+
+        metrics.increment(ImportMetrics.HTTP_REQUESTS, "method", "POST", "entity", "tests");
+        metrics.increment(ImportMetrics.HTTP_REQUESTS, "method", "POST", "entity", "tests");
+        metrics.increment(ImportMetrics.HTTP_REQUESTS, "method", "GET", "entity", "tests");
+        metrics.add(ImportMetrics.STEPS_UPLOADED, 5);
+
+        assertEquals(2, metrics.getCount(ImportMetrics.HTTP_REQUESTS, "method", "POST", "entity", "tests"));
+        assertEquals(1, metrics.getCount(ImportMetrics.HTTP_REQUESTS, "method", "GET", "entity", "tests"));
+        assertEquals(5, metrics.getCount(ImportMetrics.STEPS_UPLOADED));
+        assertEquals(0, metrics.getCount(ImportMetrics.STEPS_FAILED));
+    }
+
+    @Test
+    public void EstimatesPercentilesFromBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(400));
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(100, snapshot.getCount());
+        assertEquals(5.0, snapshot.getPercentileMillis(0.5), 0);
+        assertEquals(400.0, snapshot.getPercentileMillis(0.95), 0);
+        assertEquals(400.0, snapshot.getMaxNanos() / 1_000_000.0, 0);
+    }
+
+    @Test
+    public void ExportsPrometheusTextAndJson() {
+        ImportMetrics metrics = new ImportMetrics();
+        metrics.increment(ImportMetrics.TESTS_MIGRATED);
+        metrics.record(ImportMetrics.STAGE_DURATION, TimeUnit.MILLISECONDS.toNanos(20), "stage", "create_test");
+
+        String prometheus = metrics.toPrometheus();
+
+        assertTrue(prometheus.contains("# TYPE importer_tests_migrated_total counter\nimporter_tests_migrated_total 1\n"));
+        assertTrue(prometheus.contains("importer_stage_duration_seconds_bucket{stage=\"create_test\",le=\"0.01\"} 0\n"));
+        assertTrue(prometheus.contains("importer_stage_duration_seconds_bucket{stage=\"create_test\",le=\"0.025\"} 1\n"));
+        assertTrue(prometheus.contains("importer_stage_duration_seconds_bucket{stage=\"create_test\",le=\"+Inf\"} 1\n"));
+        assertTrue(prometheus.contains("importer_stage_duration_seconds_count{stage=\"create_test\"} 1\n"));
+
+        JSONObject histogram = metrics.toJson().getJSONArray("histograms").getJSONObject(0);
+        assertEquals("create_test", histogram.getJSONObject("labels").getString("stage"));
+        assertEquals(1, histogram.getLong("count"));
+    }
+
+    @Test
+    public void FindsEntityTypeInRequestUrl() {
+        assertEquals("tests", ImporterHttpClient.getEntityType("https://octane/api/shared_spaces/1001/workspaces/1002/tests/1003/script"));
+        assertEquals("list_nodes", ImporterHttpClient.getEntityType("https://octane/api/shared_spaces/1001/workspaces/1002/list_nodes?query=x"));
+        assertEquals("other", ImporterHttpClient.getEntityType("https://octane/authentication/sign_in"));
+    }
+}
@@ -0,0 +1,130 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.authentication.SimpleClientAuthentication;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ImportServerTests {
+    private static final String USER = OctaneStubServer.DEFAULT_USER;
+
+    private OctaneStubServer octane;
+    private ImportServer importServer;
+
+    @Before
+    public void StartServers() throws IOException {
+        octane = new OctaneStubServer().withDefaultEntities().start();
+        importServer = new ImportServer(octane.getUrl(), 1001, USER, new SimpleClientAuthentication(USER, "password"),
+                new ImportSettings().reportProgress(0), 60_000).start(0);
+    }
+
+    @After
+    public void StopServers() {
+        importServer.close();
+        octane.close();
+    }
+
+    @Test
+    public void RejectsInvalidJobs() throws IOException {
+        assertEquals(0, request("GET", "", null, 200).getJSONArray("jobs").length());
+        request("POST", "", "{\"workspace\":1002}", 400);
+        request("POST", "", "{\"file\":\"missing.xlsx\",\"workspace\":1002}", 400);
+        request("POST", "", "{\"file\":\"missing.xlsx\",\"workspace\":\"first\"}", 400);
+        request("GET", "/42", null, 404);
+    }
+
+    @Test
+    public void ReportsTheStatusOfAFailedJob() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("not-a-workbook", ".xlsx");
+        try {
+            JSONObject job = awaitJob(submit(file));
+
+            assertEquals(ImportJob.State.FAILED.name(), job.getString("state"));
+            assertEquals(MigrationStatus.Status.INIT_SHEET_FAILED.name(), job.getString("status"));
+            assertEquals(1, request("GET", "", null, 200).getJSONArray("jobs").length());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void ReusesTheSessionOfTheWorkspace() throws IOException, InterruptedException {
+        WorkbookGenerator generator = new WorkbookGenerator().tests(20).stepsPerTest(1, 3).udfColumns(2).seed(11);
+        octane.addFieldDefinitions(generator.getUdfDefinitions());
+        for (String email : generator.getUsers()) {
+            octane.addEntity("workspace_users", new JSONObject().put("name", email).put("email", email));
+        }
+
+        Path file = Files.createTempFile("tests", ".xlsx");
+        try {
+            WorkbookGenerator.Summary summary = generator.write(file);
+
+            JSONObject first = awaitJob(submit(file));
+            long signIns = octane.getRequestCount("POST", "authentication");
+            long metadataRequests = octane.getRequestCount("GET", "metadata");
+            JSONObject second = awaitJob(submit(file));
+
+            for (JSONObject job : new JSONObject[]{first, second}) {
+                assertEquals(ImportJob.State.FINISHED.name(), job.getString("state"));
+                assertEquals(summary.getTests() - summary.getRejectedTests(), job.getInt("migrated_tests"));
+            }
+            assertTrue(signIns > 0);
+            assertTrue(metadataRequests > 0);
+            assertEquals(signIns, octane.getRequestCount("POST", "authentication"));
+            assertEquals(metadataRequests, octane.getRequestCount("GET", "metadata"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private String submit(Path file) throws IOException {
+        return request("POST", "", new JSONObject().put("file", file.toString()).put("workspace", 1002).toString(), 202)
+                .getString("id");
+    }
+
+    private JSONObject awaitJob(String id) throws IOException, InterruptedException {
+        JSONObject job = request("GET", "/" + id, null, 200);
+        for (int i = 0; i < 300 && !job.has("finished_at"); i++) {
+            Thread.sleep(100);
+            job = request("GET", "/" + id, null, 200);
+        }
+        return job;
+    }
+
+    private JSONObject request(String method, String path, String body, int expectedStatus) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + importServer.getPort() + "/jobs" + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        assertEquals(expectedStatus, connection.getResponseCode());
+        try (InputStream in = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new JSONObject(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+}
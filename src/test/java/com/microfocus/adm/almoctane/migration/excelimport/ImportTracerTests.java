@@ -0,0 +1,90 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ImportTracerTests {
+
+    @After
+    public void ClearUniqueId() {
+        ImportTracer.setUniqueId(null);
+    }
+
+    @Test
+    public void WritesChromeTraceEvents() throws IOException {
+        ImportTracer tracer = new ImportTracer(16);
+        ImportTracer.setUniqueId("T1");
+
+        tracer.end("POST manual_tests", ImportTracer.HTTP_CATEGORY, tracer.begin(), "manual_tests", 201);
+
+        JSONArray events = write(tracer).getJSONArray("traceEvents");
+        JSONObject metadata = events.getJSONObject(0);
+        JSONObject span = events.getJSONObject(1);
+
+        assertEquals("M", metadata.getString("ph"));
+        assertEquals(Thread.currentThread().getName(), metadata.getJSONObject("args").getString("name"));
+        assertEquals("X", span.getString("ph"));
+        assertEquals("POST manual_tests", span.getString("name"));
+        assertEquals(Thread.currentThread().getId(), span.getLong("tid"));
+        assertEquals("T1", span.getJSONObject("args").getString("unique_id"));
+        assertEquals(201, span.getJSONObject("args").getInt("status"));
+    }
+
+    @Test
+    public void KeepsOnlyTheLastSpans() throws IOException {
+        ImportTracer tracer = new ImportTracer(4);
+
+        for (int i = 0; i < 10; i++) {
+            tracer.end("span" + i, ImportTracer.STAGE_CATEGORY, tracer.begin(), null, 0);
+        }
+
+        JSONObject trace = write(tracer);
+        JSONArray events = trace.getJSONArray("traceEvents");
+
+        assertEquals(6, trace.getJSONObject("otherData").getLong("dropped_spans"));
+        assertEquals(5, events.length());
+        assertEquals("span6", events.getJSONObject(1).getString("name"));
+        assertEquals("span9", events.getJSONObject(4).getString("name"));
+    }
+
+    @Test
+    public void RecordsNothingWhenDisabled() {
+        ImportTracer tracer = ImportTracer.disabled();
+
+        tracer.end("span", ImportTracer.STAGE_CATEGORY, tracer.begin(), null, 0);
+
+        assertFalse(tracer.isEnabled());
+        assertEquals(0, tracer.begin());
+    }
+
+    @Test
+    public void KeepsTheSpansOfEveryImportApart() throws IOException {
+        ImportTracer first = new ImportTracer(16);
+        ImportTracer second = new ImportTracer(16);
+
+        first.end("first", ImportTracer.STAGE_CATEGORY, first.begin(), null, 0);
+        second.end("second", ImportTracer.STAGE_CATEGORY, second.begin(), null, 0);
+
+        JSONArray firstEvents = write(first).getJSONArray("traceEvents");
+        JSONArray secondEvents = write(second).getJSONArray("traceEvents");
+
+        assertEquals(2, firstEvents.length());
+        assertEquals("first", firstEvents.getJSONObject(1).getString("name"));
+        assertEquals(2, secondEvents.length());
+        assertEquals("second", secondEvents.getJSONObject(1).getString("name"));
+    }
+
+    private static JSONObject write(ImportTracer tracer) throws IOException {
+        StringWriter writer = new StringWriter();
+        tracer.write(writer);
+        return new JSONObject(writer.toString());
+    }
+}
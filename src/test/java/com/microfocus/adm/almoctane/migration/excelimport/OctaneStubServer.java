@@ -0,0 +1,667 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An in-process HTTP server which implements the part of the Octane REST API used by the importer: sign in, entity
+ * queries and creation in a workspace, the field metadata and the test script upload. The entities are kept in
+ * memory and the queries support the EQ statements (including the {null} and {id EQ x} forms) combined with ; and ||.
+ * Every workspace has its own entities, ids and scripts, so the same id can name different entities in two
+ * workspaces; the methods without a workspace use {@value #DEFAULT_WORKSPACE}. The field metadata is shared.
+ *
+ * The latency of the responses can be set per entity collection, and a share of the requests can be answered with
+ * a server error or with 429 (Too Many Requests). Every request is counted by method and collection.
+ */
+class OctaneStubServer implements AutoCloseable {
+    static final String DEFAULT_USER = "admin@example.com";
+    static final String DEFAULT_RELEASE = "1";
+    static final int DEFAULT_WORKSPACE = 1002;
+
+    private static final Pattern WORKSPACE_PATH =
+            Pattern.compile("/api/shared_spaces/(\\d+)/workspaces/(\\d+)/([a-z_]+)(?:/([^/]+))?(?:/([a-z_]+))?/?");
+    private static final Pattern STATEMENT =
+            Pattern.compile("^!?\\(?\\s*([a-z_]+)\\s+EQ\\s+(.*?)\\s*\\)?$");
+    private static final Map<String, String> ENTITY_TYPES = new HashMap<>();
+
+    static {
+        // the JDK server sends the headers and the body of a response in two writes, so without TCP_NODELAY every
+        // response waits for the delayed ACK of the client (about 40 ms); the option is read when the first server
+        // of the JVM is created
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        ENTITY_TYPES.put("manual_tests", "test");
+        ENTITY_TYPES.put("tests", "test");
+        ENTITY_TYPES.put("workspace_users", "workspace_user");
+        ENTITY_TYPES.put("list_nodes", "list_node");
+        ENTITY_TYPES.put("phases", "phase");
+        ENTITY_TYPES.put("product_areas", "product_area");
+        ENTITY_TYPES.put("user_tags", "user_tag");
+        ENTITY_TYPES.put("releases", "release");
+        ENTITY_TYPES.put("stories", "story");
+        ENTITY_TYPES.put("features", "feature");
+        ENTITY_TYPES.put("work_items", "work_item");
+    }
+
+    private final ConcurrentMap<Integer, Workspace> workspaces = new ConcurrentHashMap<>();
+    private final List<JSONObject> fieldDefinitions = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, LatencyDistribution> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final AtomicInteger peakInFlightRequests = new AtomicInteger();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder injectedThrottles = new LongAdder();
+
+    private volatile LatencyDistribution defaultLatency = LatencyDistribution.none();
+    private volatile double errorRate = 0;
+    private volatile int errorStatus = 500;
+    private volatile double throttleRate = 0;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Adds the entities which the importer needs in order to start: the default user, the root application module,
+     * the test phases, the test type list and the default release.
+     *
+     * @return - The current server.
+     */
+    OctaneStubServer withDefaultEntities() {
+        return withDefaultEntities(DEFAULT_WORKSPACE);
+    }
+
+    /**
+     * Adds the entities which the importer needs in order to start to a workspace.
+     *
+     * @param workspace - The workspace.
+     * @return - The current server.
+     */
+    OctaneStubServer withDefaultEntities(int workspace) {
+        addEntity(workspace, "workspace_users", new JSONObject().put("name", "admin").put("email", DEFAULT_USER));
+        addEntity(workspace, "product_areas", new JSONObject().put("name", "Application Modules").put("parent", JSONObject.NULL));
+        addEntity(workspace, "phases", new JSONObject().put("name", "New").put("entity", "test_manual"));
+        addEntity(workspace, "phases", new JSONObject().put("name", "Ready").put("entity", "test_manual"));
+        addEntity(workspace, "releases", new JSONObject().put("name", DEFAULT_RELEASE));
+
+        JSONObject testTypeRoot = addEntity(workspace, "list_nodes", new JSONObject().put("name", "Test_Type").put("logical_name", "list_node.test_type"));
+        for (String testType : new String[]{"End to End", "Regression", "Sanity"}) {
+            addEntity(workspace, "list_nodes", new JSONObject().put("name", testType)
+                    .put("list_root", reference(testTypeRoot)));
+        }
+        return this;
+    }
+
+    /**
+     * Adds an entity. The id and the type are set if they are missing.
+     *
+     * @param collection - The collection of the entity (i.e. workspace_users).
+     * @param entity     - The fields of the entity.
+     * @return - The added entity.
+     */
+    JSONObject addEntity(String collection, JSONObject entity) {
+        return addEntity(DEFAULT_WORKSPACE, collection, entity);
+    }
+
+    /**
+     * Adds an entity to a workspace. The id and the type are set if they are missing.
+     *
+     * @param workspace  - The workspace.
+     * @param collection - The collection of the entity (i.e. workspace_users).
+     * @param entity     - The fields of the entity.
+     * @return - The added entity.
+     */
+    JSONObject addEntity(int workspace, String collection, JSONObject entity) {
+        Workspace entities = getWorkspace(workspace);
+        if (!entity.has("id")) {
+            entity.put("id", Long.toString(entities.nextId.getAndIncrement()));
+        }
+        if (!entity.has("type")) {
+            entity.put("type", ENTITY_TYPES.getOrDefault(collection, collection));
+        }
+        entities.entities.computeIfAbsent(collection, c -> new CopyOnWriteArrayList<>()).add(entity);
+        return entity;
+    }
+
+    /**
+     * Adds a field to the metadata returned by the metadata/fields requests. The fields are filtered by the query of
+     * the request, like the entities.
+     *
+     * @param field - The field metadata (name, entity_name, field_type, field_type_data, editable).
+     * @return - The current server.
+     */
+    OctaneStubServer addFieldDefinition(JSONObject field) {
+        fieldDefinitions.add(field);
+        return this;
+    }
+
+    /**
+     * Adds fields to the metadata returned for the manual tests.
+     *
+     * @param fields - The definitions of the fields.
+     * @return - The current server.
+     */
+    OctaneStubServer addFieldDefinitions(Collection<FieldDefinition> fields) {
+        for (FieldDefinition field : fields) {
+            JSONObject fieldTypeData = new JSONObject().put("multiple", field.isMultiple());
+            if (field.getTargetType() != null) {
+                fieldTypeData.put("targets", new JSONArray().put(new JSONObject()
+                        .put("type", field.getTargetType())
+                        .putOpt("logical_name", field.getListRootLogicalName())));
+            }
+
+            addFieldDefinition(new JSONObject()
+                    .put("name", field.getName())
+                    .put("entity_name", "test_manual")
+                    .put("field_type", getOctaneFieldType(field.getFieldType()))
+                    .put("field_type_data", fieldTypeData)
+                    .put("editable", field.isEditable()));
+        }
+        return this;
+    }
+
+    /**
+     * Sets the latency of all the responses.
+     *
+     * @param latency - The latency distribution.
+     * @return - The current server.
+     */
+    OctaneStubServer latency(LatencyDistribution latency) {
+        this.defaultLatency = latency;
+        return this;
+    }
+
+    /**
+     * Sets the latency of the responses for one collection (i.e. manual_tests, or tests for the script uploads).
+     *
+     * @param collection - The collection.
+     * @param latency    - The latency distribution.
+     * @return - The current server.
+     */
+    OctaneStubServer latency(String collection, LatencyDistribution latency) {
+        latencies.put(collection, latency);
+        return this;
+    }
+
+    /**
+     * Answers a share of the workspace requests with an error.
+     *
+     * @param rate   - The share of the requests (between 0 and 1).
+     * @param status - The HTTP status of the error.
+     * @return - The current server.
+     */
+    OctaneStubServer errors(double rate, int status) {
+        this.errorRate = rate;
+        this.errorStatus = status;
+        return this;
+    }
+
+    /**
+     * Answers a share of the workspace requests with 429 and a Retry-After header.
+     *
+     * @param rate - The share of the requests (between 0 and 1).
+     * @return - The current server.
+     */
+    OctaneStubServer throttle(double rate) {
+        this.throttleRate = rate;
+        return this;
+    }
+
+    /**
+     * Starts the server on a free local port.
+     *
+     * @return - The current server.
+     * @throws IOException - In case the server cannot be started.
+     */
+    OctaneStubServer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "octane-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * @return - The url of the server (i.e. http://127.0.0.1:4567).
+     */
+    String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * @param method     - The HTTP method.
+     * @param collection - The collection (i.e. manual_tests, or tests for the script uploads).
+     * @return - The number of requests received for the collection with the method, including the failed ones.
+     */
+    long getRequestCount(String method, String collection) {
+        LongAdder count = requestCounts.get(method + " " + collection);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return - The number of requests received.
+     */
+    long getTotalRequestCount() {
+        long total = 0;
+        for (LongAdder count : requestCounts.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return - The highest number of requests which were handled at the same time.
+     */
+    int getPeakInFlightRequests() {
+        return peakInFlightRequests.get();
+    }
+
+    /**
+     * @return - The number of requests answered with an injected error.
+     */
+    long getInjectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    /**
+     * @return - The number of requests answered with an injected 429.
+     */
+    long getInjectedThrottles() {
+        return injectedThrottles.sum();
+    }
+
+    /**
+     * @param collection - The collection.
+     * @return - The entities of the collection.
+     */
+    List<JSONObject> getEntities(String collection) {
+        return getEntities(DEFAULT_WORKSPACE, collection);
+    }
+
+    /**
+     * @param workspace  - The workspace.
+     * @param collection - The collection.
+     * @return - The entities of the collection in the workspace.
+     */
+    List<JSONObject> getEntities(int workspace, String collection) {
+        return getWorkspace(workspace).entities.getOrDefault(collection, Collections.emptyList());
+    }
+
+    /**
+     * @return - The uploaded scripts mapped by the test id.
+     */
+    Map<String, String> getScripts() {
+        return getScripts(DEFAULT_WORKSPACE);
+    }
+
+    /**
+     * @param workspace - The workspace.
+     * @return - The scripts uploaded to the workspace mapped by the test id.
+     */
+    Map<String, String> getScripts(int workspace) {
+        return getWorkspace(workspace).scripts;
+    }
+
+    private Workspace getWorkspace(int workspace) {
+        return workspaces.computeIfAbsent(workspace, id -> new Workspace());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int inFlight = inFlightRequests.incrementAndGet();
+        peakInFlightRequests.accumulateAndGet(inFlight, Math::max);
+
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+
+            if (path.startsWith("/authentication/")) {
+                count(method, "authentication");
+                exchange.getResponseHeaders().add("Set-Cookie", "LWSSO_COOKIE_KEY=stub-session; Path=/");
+                exchange.getResponseHeaders().add("Set-Cookie", "OCTANE_USER=stub; Path=/");
+                send(exchange, 200, "");
+                return;
+            }
+
+            Matcher matcher = WORKSPACE_PATH.matcher(path);
+            if (!matcher.matches()) {
+                count(method, "other");
+                send(exchange, 404, error(404, "Unknown path " + path));
+                return;
+            }
+
+            int workspace = Integer.parseInt(matcher.group(2));
+            String collection = matcher.group(3);
+            count(method, collection);
+            sleep(latencies.getOrDefault(collection, defaultLatency));
+
+            if (inject(exchange)) {
+                return;
+            }
+
+            String body = readBody(exchange);
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+
+            if ("metadata".equals(collection) && "GET".equals(method)) {
+                send(exchange, 200, page(filter(fieldDefinitions, parameters.get("query")), parameters));
+            } else if ("tests".equals(collection) && "PUT".equals(method) && "script".equals(matcher.group(5))) {
+                getScripts(workspace).put(matcher.group(4), new JSONObject(body).getString("script"));
+                send(exchange, 200, new JSONObject().put("script", "").toString());
+            } else if ("GET".equals(method)) {
+                send(exchange, 200, page(filter(getEntities(workspace, collection), parameters.get("query")), parameters));
+            } else if ("POST".equals(method)) {
+                JSONArray created = new JSONArray();
+                JSONArray data = new JSONObject(body).getJSONArray("data");
+                for (int i = 0; i < data.length(); i++) {
+                    created.put(addEntity(workspace, collection, data.getJSONObject(i)));
+                }
+                send(exchange, 201, new JSONObject().put("data", created).put("total_count", created.length()).toString());
+            } else {
+                send(exchange, 405, error(405, "Method not supported by the stub: " + method));
+            }
+        } catch (RuntimeException e) {
+            send(exchange, 500, error(500, String.valueOf(e.getMessage())));
+        } finally {
+            inFlightRequests.decrementAndGet();
+        }
+    }
+
+    private boolean inject(HttpExchange exchange) throws IOException {
+        double random = ThreadLocalRandom.current().nextDouble();
+        if (random < throttleRate) {
+            injectedThrottles.increment();
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            send(exchange, 429, error(429, "Too many requests (injected)"));
+            return true;
+        }
+        if (random < throttleRate + errorRate) {
+            injectedErrors.increment();
+            send(exchange, errorStatus, error(errorStatus, "Injected failure"));
+            return true;
+        }
+        return false;
+    }
+
+    private static List<JSONObject> filter(List<JSONObject> candidates, String query) {
+        List<JSONObject> result = new ArrayList<>();
+        for (JSONObject entity : candidates) {
+            if (query == null || matches(entity, stripQuotes(query))) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    private static boolean matches(JSONObject entity, String query) {
+        for (String alternative : splitTopLevel(query, "||")) {
+            boolean all = true;
+            for (String statement : splitTopLevel(stripParentheses(alternative), ";")) {
+                if (!matchesStatement(entity, stripParentheses(statement))) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesStatement(JSONObject entity, String statement) {
+        Matcher matcher = STATEMENT.matcher(statement.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Query not supported by the stub: " + statement);
+        }
+
+        String field = matcher.group(1);
+        String value = matcher.group(2).trim();
+        Object actual = entity.opt(field);
+
+        if (value.equals("{null}") || value.equals("null")) {
+            return actual == null || actual == JSONObject.NULL;
+        }
+        if (value.startsWith("{") && value.endsWith("}")) {
+            return actual instanceof JSONObject && matches((JSONObject) actual, value.substring(1, value.length() - 1));
+        }
+        return actual != null && actual != JSONObject.NULL && actual.toString().equals(unquote(value));
+    }
+
+    private static List<String> splitTopLevel(String query, String separator) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '\'' || c == '^') {
+                quoted = !quoted;
+            } else if (!quoted && (c == '(' || c == '{')) {
+                depth++;
+            } else if (!quoted && (c == ')' || c == '}')) {
+                depth--;
+            } else if (!quoted && depth == 0 && query.startsWith(separator, i)) {
+                parts.add(query.substring(start, i));
+                start = i + separator.length();
+                i = start - 1;
+            }
+        }
+        parts.add(query.substring(start));
+        return parts;
+    }
+
+    private static String stripParentheses(String statement) {
+        String trimmed = statement.trim();
+        while (trimmed.startsWith("(") && trimmed.endsWith(")") && splitTopLevel(trimmed.substring(1, trimmed.length() - 1), ")(").size() == 1
+                && balanced(trimmed.substring(1, trimmed.length() - 1))) {
+            trimmed = trimmed.substring(1, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+
+    private static boolean balanced(String value) {
+        int depth = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth < 0) {
+                return false;
+            }
+        }
+        return depth == 0;
+    }
+
+    private static String stripQuotes(String query) {
+        String trimmed = query.trim();
+        return trimmed.startsWith("\"") && trimmed.endsWith("\"") ? trimmed.substring(1, trimmed.length() - 1) : trimmed;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && (value.startsWith("'") && value.endsWith("'") || value.startsWith("^") && value.endsWith("^"))) {
+            return value.substring(1, value.length() - 1).replace("\\'", "'");
+        }
+        return value;
+    }
+
+    private static String page(List<JSONObject> result, Map<String, String> parameters) {
+        int offset = parameters.containsKey("offset") ? Integer.parseInt(parameters.get("offset")) : 0;
+        int limit = parameters.containsKey("limit") ? Integer.parseInt(parameters.get("limit")) : result.size();
+
+        JSONArray data = new JSONArray();
+        for (int i = offset; i < Math.min(result.size(), offset + limit); i++) {
+            data.put(result.get(i));
+        }
+        return new JSONObject().put("data", data).put("total_count", result.size()).put("exceeds_total_count", false).toString();
+    }
+
+    private static String getOctaneFieldType(FieldDefinition.FieldType fieldType) {
+        switch (fieldType) {
+            case LONG:
+                return "integer";
+            case FLOAT:
+                return "float";
+            case BOOLEAN:
+                return "boolean";
+            case DATE:
+                return "date_time";
+            case REFERENCE:
+                return "reference";
+            default:
+                return "string";
+        }
+    }
+
+    private static JSONObject reference(JSONObject entity) {
+        return new JSONObject().put("type", entity.get("type")).put("id", entity.get("id"));
+    }
+
+    private static String error(int status, String description) {
+        return new JSONObject()
+                .put("error_code", "stub.error")
+                .put("correlation_id", UUID.randomUUID().toString())
+                .put("description", description)
+                .put("description_translated", description)
+                .put("http_status_code", status)
+                .toString();
+    }
+
+    private void count(String method, String collection) {
+        requestCounts.computeIfAbsent(method + " " + collection, k -> new LongAdder()).increment();
+    }
+
+    private static void sleep(LatencyDistribution latency) {
+        long millis = latency.nextMillis(ThreadLocalRandom.current());
+        if (millis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+
+    /**
+     * The latency of the stub responses.
+     */
+    @FunctionalInterface
+    interface LatencyDistribution {
+        /**
+         * @param random - The random generator.
+         * @return - The latency of a response in milliseconds.
+         */
+        long nextMillis(Random random);
+
+        static LatencyDistribution none() {
+            return random -> 0;
+        }
+
+        static LatencyDistribution fixed(long millis) {
+            return random -> millis;
+        }
+
+        static LatencyDistribution uniform(long minMillis, long maxMillis) {
+            return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+        }
+
+        /**
+         * A log-normal latency, which has the long tail seen for real servers.
+         *
+         * @param medianMillis - The median latency.
+         * @param sigma        - The spread (i.e. 0.5).
+         * @return - The latency distribution.
+         */
+        static LatencyDistribution logNormal(double medianMillis, double sigma) {
+            return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+        }
+    }
+
+    /**
+     * The entities, the next id and the scripts of a workspace.
+     */
+    private static final class Workspace {
+        private final ConcurrentMap<String, List<JSONObject>> entities = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, String> scripts = new ConcurrentHashMap<>();
+        private final AtomicLong nextId = new AtomicLong(1001);
+    }
+}
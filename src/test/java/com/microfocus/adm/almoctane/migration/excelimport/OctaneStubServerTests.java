@@ -0,0 +1,133 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OctaneStubServerTests {
+    private static final String WORKSPACE = "/api/shared_spaces/1001/workspaces/1002/";
+
+    private OctaneStubServer server;
+
+    @Before
+    public void StartServer() throws IOException {
+        server = new OctaneStubServer().withDefaultEntities().start();
+    }
+
+    @After
+    public void StopServer() {
+        server.close();
+    }
+
+    @Test
+    public void QueriesNestedReferences() throws IOException {
+        JSONObject root = request("GET", "list_nodes?query=" + encode("\"name EQ 'Test_Type'\""), null, 200);
+        String rootId = root.getJSONArray("data").getJSONObject(0).getString("id");
+
+        JSONObject items = request("GET", "list_nodes?query=" + encode("\"list_root EQ {id EQ '" + rootId + "'}\"") + "&limit=2", null, 200);
+
+        assertEquals(3, items.getInt("total_count"));
+        assertEquals(2, items.getJSONArray("data").length());
+    }
+
+    @Test
+    public void CreatesEntitiesAndStoresScripts() throws IOException {
+        JSONObject created = request("POST", "manual_tests", "{\"data\":[{\"name\":\"T1\"},{\"name\":\"T2\"}]}", 201);
+        String testId = created.getJSONArray("data").getJSONObject(1).getString("id");
+
+        request("PUT", "tests/" + testId + "/script", "{\"script\":\"- step\"}", 200);
+        JSONObject found = request("GET", "manual_tests?query=" + encode("\"name EQ 'T1' || name EQ 'T2'\""), null, 200);
+
+        assertEquals(2, found.getInt("total_count"));
+        assertEquals("- step", server.getScripts().get(testId));
+        assertEquals(1, server.getRequestCount("POST", "manual_tests"));
+        assertEquals(1, server.getRequestCount("PUT", "tests"));
+    }
+
+    @Test
+    public void FiltersTheFieldMetadataByEntityName() throws IOException {
+        server.addFieldDefinitions(Arrays.asList(
+                new FieldDefinition("priority_udf", FieldDefinition.FieldType.STRING, null, null, false, true),
+                new FieldDefinition("risk_udf", FieldDefinition.FieldType.LONG, null, null, false, true)));
+
+        JSONObject fields = request("GET", "metadata/fields?query=" + encode("\"entity_name EQ 'test_manual'\""), null, 200);
+        JSONObject wrongEntityFields = request("GET", "metadata/fields?query=" + encode("\"entity_name EQ 'manual_test'\""), null, 200);
+
+        assertEquals(2, fields.getInt("total_count"));
+        assertEquals(0, wrongEntityFields.getInt("total_count"));
+        assertTrue(FieldDefinition.parseFields(wrongEntityFields.toString()).isEmpty());
+    }
+
+    @Test
+    public void InjectsThrottling() throws IOException {
+        server.throttle(1);
+
+        request("GET", "phases", null, 429);
+
+        assertEquals(1, server.getInjectedThrottles());
+        assertTrue(server.getTotalRequestCount() >= 1);
+    }
+
+    @Test
+    public void AnswersWithoutTheNagleDelay() throws IOException {
+        request("GET", "phases", null, 200);
+        request("POST", "user_tags", "{\"data\":[{\"name\":\"warm-up\"}]}", 201);
+
+        long[] roundTripMillis = new long[20];
+        for (int i = 0; i < roundTripMillis.length; i++) {
+            long start = System.nanoTime();
+            if (i % 2 == 0) {
+                request("GET", "phases", null, 200);
+            } else {
+                request("POST", "user_tags", "{\"data\":[{\"name\":\"tag_" + i + "\"}]}", 201);
+            }
+            roundTripMillis[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        Arrays.sort(roundTripMillis);
+
+        long median = roundTripMillis[roundTripMillis.length / 2];
+        assertTrue(String.format("The median round trip is %s ms", median), median < 20);
+    }
+
+    private JSONObject request(String method, String path, String body, int expectedStatus) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getUrl() + WORKSPACE + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        assertEquals(expectedStatus, connection.getResponseCode());
+        try (InputStream in = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new JSONObject(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String encode(String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+}
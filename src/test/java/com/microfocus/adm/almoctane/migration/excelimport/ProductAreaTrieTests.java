@@ -0,0 +1,90 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.model.EntityModel;
+import com.hpe.adm.nga.sdk.model.ReferenceFieldModel;
+import com.hpe.adm.nga.sdk.model.StringFieldModel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ProductAreaTrieTests {
+    private ProductAreaTrie trie;
+
+    @Before
+    public void setUp() {
+        EntityModel root = EntityReference.of(EntityModelHelper.PRODUCT_AREA, "1001", "Application Modules");
+        trie = new ProductAreaTrie(new WorkspaceEntities("test"), root, 1000).addAll(Arrays.asList(
+                productArea("1004", "Cards", "1005"),
+                productArea("1003", "Cards", "1002"),
+                productArea("1002", "Payments", "1001"),
+                productArea("1005", "Billing", "1001")));
+    }
+
+    @Test
+    public void ResolvesThePathsFromTheRoot() {
+        assertEquals("1003", trie.find("Payments/Cards").getId());
+        assertEquals("1004", trie.find(" Billing / Cards ").getId());
+        assertEquals("1002", trie.find("Payments").getId());
+        assertEquals("1004", trie.find("Cards").getId());
+        assertNull(trie.find("Payments/Refunds"));
+    }
+
+    @Test
+    public void CreatesTheMissingModulesLevelByLevel() {
+        List<List<String>> levels = new ArrayList<>();
+        AtomicInteger ids = new AtomicInteger(2000);
+
+        int created = trie.createMissing(Arrays.asList("Payments/Cards/Refunds", "Payments/Wallets/Refunds",
+                "Returns/Refunds", "Payments"), (names, parents) -> {
+            List<String> level = new ArrayList<>();
+            List<String> createdIds = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                level.add(parents.get(i).getId() + ":" + names.get(i));
+                createdIds.add(Integer.toString(ids.incrementAndGet()));
+            }
+            levels.add(level);
+            return createdIds;
+        });
+
+        assertEquals(5, created);
+        assertEquals(Arrays.asList(
+                Arrays.asList("1001:Returns"),
+                Arrays.asList("1002:Wallets", "2001:Refunds"),
+                Arrays.asList("1003:Refunds", "2002:Refunds")), levels);
+        assertEquals("2004", trie.find("Payments/Cards/Refunds").getId());
+        assertEquals("2005", trie.find("Payments/Wallets/Refunds").getId());
+        assertEquals("2003", trie.find("Returns/Refunds").getId());
+    }
+
+    @Test
+    public void CreatesTheMissingModulesOfAPath() {
+        List<String> created = new ArrayList<>();
+
+        assertNull(trie.getOrCreate("Payments/Wallets/Refunds", (path, name, parent) -> null));
+        EntityModel refunds = trie.getOrCreate("Payments/Wallets/Refunds", (path, name, parent) -> {
+            created.add(parent.getId() + ":" + path);
+            return Integer.toString(2000 + created.size());
+        });
+
+        assertEquals("2002", refunds.getId());
+        assertEquals(Arrays.asList("1002:Payments/Wallets", "2001:Payments/Wallets/Refunds"), created);
+        assertEquals("2002", trie.find("Payments/Wallets/Refunds").getId());
+    }
+
+    private static EntityModel productArea(String id, String name, String parentId) {
+        EntityModel productArea = new EntityModel();
+        productArea.setValue(new StringFieldModel(EntityModelHelper.Fields.ID.field(), id));
+        productArea.setValue(new StringFieldModel(EntityModelHelper.Fields.TYPE.field(), EntityModelHelper.PRODUCT_AREA));
+        productArea.setValue(new StringFieldModel(EntityModelHelper.Fields.NAME.field(), name));
+        productArea.setValue(new ReferenceFieldModel(EntityModelHelper.Fields.PARENT.field(),
+                EntityReference.of(EntityModelHelper.PRODUCT_AREA, parentId, null)));
+        return productArea;
+    }
+}
@@ -0,0 +1,34 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProgressReporterTests {
+
+    @Test
+    public void ReportsThroughputAndEta() {
+        ImportMetrics metrics = new ImportMetrics();
+        long start = System.nanoTime();
+        ProgressReporter reporter = new ProgressReporter(metrics, 100, () -> 3, 1000);
+
+        metrics.add(ImportMetrics.TESTS_MIGRATED, 18);
+        metrics.add(ImportMetrics.TESTS_FAILED, 2);
+        metrics.add(ImportMetrics.STEPS_UPLOADED, 200);
+        metrics.requestStarted();
+
+        String report = reporter.report(start + TimeUnit.SECONDS.toNanos(10));
+
+        assertTrue(report, report.startsWith("Progress: 20/100 tests (20.0%), "));
+        assertTrue(report, report.endsWith(", 1 requests in flight, 3 step uploads queued, ETA 00:00:40"));
+    }
+
+    @Test
+    public void FormatsDuration() {
+        assertEquals("00:00:00", ProgressReporter.formatDuration(0));
+        assertEquals("27:46:40", ProgressReporter.formatDuration(100000));
+    }
+}
@@ -0,0 +1,217 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestSchedulerTests {
+
+    @Test
+    public void DoesNotQueueWhenUnlimited() {
+        RequestScheduler scheduler = new RequestScheduler(0, 0);
+
+        try (RequestScheduler.Slot slot = scheduler.tenant(1002, 1).acquire(TrafficClass.ENTITY_CREATE)) {
+            assertFalse(slot.isScheduled());
+        }
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void SharesTheBudgetByWeight() throws InterruptedException {
+        RequestScheduler scheduler = new RequestScheduler(1, 0);
+        RequestScheduler.Tenant heavyJob = scheduler.tenant(1002, 3);
+        RequestScheduler.Tenant lightJob = scheduler.tenant(1002, 1);
+        RequestScheduler.Tenant otherWorkspaceJob = scheduler.tenant(1003, 1);
+        List<String> grants = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        RequestScheduler.Slot blocker = scheduler.tenant(1004, 1).acquire(TrafficClass.ENTITY_CREATE);
+        for (int i = 0; i < 8; i++) {
+            threads.add(startRequest(heavyJob, "heavy", grants));
+            threads.add(startRequest(lightJob, "light", grants));
+            threads.add(startRequest(otherWorkspaceJob, "other", grants));
+        }
+        awaitWaiting(threads);
+        blocker.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<String> firstGrants = grants.subList(0, 8);
+        assertEquals(4, Collections.frequency(firstGrants, "other"));
+        assertEquals(3, Collections.frequency(firstGrants, "heavy"));
+        assertEquals(1, Collections.frequency(firstGrants, "light"));
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void LimitsTheRequestsInFlight() throws InterruptedException {
+        RequestScheduler scheduler = new RequestScheduler(2, 0);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            RequestScheduler.Tenant tenant = scheduler.tenant(1002 + i % 2, 1);
+            Thread thread = new Thread(() -> {
+                RequestScheduler.Slot slot = tenant.acquire(TrafficClass.ENTITY_CREATE);
+                try {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    Thread.sleep(20);
+                    inFlight.decrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    slot.close();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(maxInFlight.get() <= 2);
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void ServesTheScriptUploadsLast() throws InterruptedException {
+        RequestScheduler scheduler = new RequestScheduler(1, 0);
+        RequestScheduler.Tenant job = scheduler.tenant(1002, 1);
+        List<String> grants = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        RequestScheduler.Slot blocker = scheduler.tenant(1003, 1).acquire(TrafficClass.ENTITY_CREATE);
+        for (int i = 0; i < 3; i++) {
+            threads.add(startRequest(job, TrafficClass.SCRIPT_UPLOAD, grants));
+        }
+        awaitWaiting(threads);
+        for (int i = 0; i < 2; i++) {
+            threads.add(startRequest(job, TrafficClass.ENTITY_CREATE, grants));
+            threads.add(startRequest(job, TrafficClass.METADATA, grants));
+        }
+        awaitWaiting(threads);
+        blocker.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(Arrays.asList("metadata", "metadata", "entity_create", "entity_create",
+                "script_upload", "script_upload", "script_upload"), grants);
+    }
+
+    @Test
+    public void LimitsTheScriptUploadsInFlight() throws InterruptedException {
+        RequestScheduler scheduler = new RequestScheduler(0, 0,
+                Collections.singletonMap(TrafficClass.SCRIPT_UPLOAD, 1));
+        RequestScheduler.Tenant job = scheduler.tenant(1002, 1);
+        List<String> grants = Collections.synchronizedList(new ArrayList<>());
+
+        RequestScheduler.Slot upload = job.acquire(TrafficClass.SCRIPT_UPLOAD);
+        Thread waitingUpload = startRequest(job, TrafficClass.SCRIPT_UPLOAD, grants);
+        awaitWaiting(Collections.singletonList(waitingUpload));
+        try (RequestScheduler.Slot create = job.acquire(TrafficClass.ENTITY_CREATE)) {
+            assertTrue(create.isScheduled());
+            assertEquals(1, scheduler.getInFlight(TrafficClass.SCRIPT_UPLOAD));
+            assertEquals(1, scheduler.getInFlight(TrafficClass.ENTITY_CREATE));
+        }
+        assertTrue(grants.isEmpty());
+
+        upload.close();
+        waitingUpload.join();
+        assertEquals(Collections.singletonList("script_upload"), grants);
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void ForgetsTheInterruptedRequests() throws InterruptedException {
+        RequestScheduler scheduler = new RequestScheduler(1, 0);
+        RequestScheduler.Tenant interruptedJob = scheduler.tenant(1002, 1);
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+        RequestScheduler.Slot blocker = scheduler.tenant(1003, 1).acquire(TrafficClass.ENTITY_CREATE);
+        Thread interrupted = new Thread(() -> {
+            try {
+                interruptedJob.acquire(TrafficClass.ENTITY_CREATE).close();
+            } catch (RuntimeException e) {
+                failures.add(e.getMessage());
+            }
+        });
+        interrupted.start();
+        awaitWaiting(Collections.singletonList(interrupted));
+        interrupted.interrupt();
+        interrupted.join();
+        blocker.close();
+
+        RequestScheduler.Slot next = scheduler.tenant(1004, 1).acquire(TrafficClass.ENTITY_CREATE);
+        assertTrue(next.isScheduled());
+        next.close();
+        assertEquals(1, failures.size());
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void WaitsForTheRateAfterASlotIsReleased() throws InterruptedException {
+        RequestScheduler scheduler = new RequestScheduler(1, 1);
+        RequestScheduler.Tenant job = scheduler.tenant(1002, 1);
+        List<String> grants = Collections.synchronizedList(new ArrayList<>());
+
+        RequestScheduler.Slot first = job.acquire(TrafficClass.ENTITY_CREATE);
+        List<Thread> threads = Arrays.asList(
+                startRequest(job, TrafficClass.ENTITY_CREATE, grants),
+                startRequest(job, TrafficClass.ENTITY_CREATE, grants));
+        awaitWaiting(threads);
+        first.close();
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+
+        assertEquals(Arrays.asList("entity_create", "entity_create"), grants);
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    private static Thread startRequest(RequestScheduler.Tenant tenant, String name, List<String> grants) {
+        Thread thread = new Thread(() -> {
+            RequestScheduler.Slot slot = tenant.acquire(TrafficClass.ENTITY_CREATE);
+            try {
+                grants.add(name);
+            } finally {
+                slot.close();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static Thread startRequest(RequestScheduler.Tenant tenant, TrafficClass trafficClass, List<String> grants) {
+        Thread thread = new Thread(() -> {
+            RequestScheduler.Slot slot = tenant.acquire(trafficClass);
+            try {
+                grants.add(trafficClass.label());
+            } finally {
+                slot.close();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitWaiting(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the resources used by the JVM while a piece of code runs: the peak of the heap retained after the garbage
+ * collections, the bytes allocated by all the threads since the probe was started, the total garbage collection time
+ * and the wall-clock time.
+ *
+ * The heap and the allocations are sampled on a background thread, so the threads which finish between two samples
+ * lose the allocations made after the last sample. With a sampling interval of a few milliseconds this is negligible
+ * for the long running imports measured by the scale tests.
+ *
+ * The collectors report the heap used after a collection of the old generation only, which G1 does not collect at all
+ * while the heap has room, so the probe also forces a full collection at a longer interval and takes the heap used
+ * right after it as the retained heap. This makes the retained heap independent of the size of the heap. The time of
+ * the forced collections is left out of the garbage collection time and of the wall-clock time.
+ */
+class ResourceProbe implements AutoCloseable {
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "resource-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Map<Long, Long> allocatedBytesByThread = new HashMap<>();
+    private final Map<Long, Long> startAllocatedBytesByThread = new HashMap<>();
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final long startNanos;
+    private final long startGcMillis;
+    private long peakRetainedHeapBytes;
+    private long forcedGcMillis;
+    private long forcedGcNanos;
+    private Usage usage;
+
+    private ResourceProbe(long sampleIntervalMillis, long fullGcIntervalMillis) {
+        if (!threadBean.isThreadAllocatedMemoryEnabled()) {
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+
+        // the allocated bytes of a thread count from its start, so the threads which already ran count from here
+        long[] threadIds = threadBean.getAllThreadIds();
+        long[] allocatedBytes = threadBean.getThreadAllocatedBytes(threadIds);
+        for (int i = 0; i < threadIds.length; i++) {
+            if (allocatedBytes[i] >= 0) {
+                startAllocatedBytesByThread.put(threadIds[i], allocatedBytes[i]);
+            }
+        }
+
+        startGcMillis = getGcMillis();
+        startNanos = System.nanoTime();
+        sample();
+        sampler.scheduleAtFixedRate(this::sample, sampleIntervalMillis, sampleIntervalMillis, TimeUnit.MILLISECONDS);
+        if (fullGcIntervalMillis > 0) {
+            sampler.scheduleWithFixedDelay(this::sampleRetainedHeap, fullGcIntervalMillis, fullGcIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts the measurement. The retained heap is only taken from the collections made by the JVM.
+     *
+     * @param sampleIntervalMillis - The interval between two samples of the heap and of the allocations.
+     * @return - The started probe.
+     */
+    static ResourceProbe start(long sampleIntervalMillis) {
+        return new ResourceProbe(sampleIntervalMillis, 0);
+    }
+
+    /**
+     * Starts the measurement and forces a full collection at every interval in order to measure the retained heap.
+     *
+     * @param sampleIntervalMillis - The interval between two samples of the heap and of the allocations.
+     * @param fullGcIntervalMillis - The interval between two forced full collections.
+     * @return - The started probe.
+     */
+    static ResourceProbe start(long sampleIntervalMillis, long fullGcIntervalMillis) {
+        return new ResourceProbe(sampleIntervalMillis, fullGcIntervalMillis);
+    }
+
+    /**
+     * Stops the measurement. Calling it again returns the same usage.
+     *
+     * @return - The resources used since the probe was started.
+     */
+    synchronized Usage stop() {
+        if (usage == null) {
+            long wallClockNanos = System.nanoTime() - startNanos - forcedGcNanos;
+            sampler.shutdownNow();
+            sampleLocked();
+
+            long allocatedBytes = 0;
+            for (Long bytes : allocatedBytesByThread.values()) {
+                allocatedBytes += bytes;
+            }
+            usage = new Usage(peakRetainedHeapBytes, allocatedBytes,
+                    getGcMillis() - startGcMillis - forcedGcMillis, wallClockNanos);
+        }
+        return usage;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    private synchronized void sample() {
+        if (usage == null) {
+            sampleLocked();
+        }
+    }
+
+    private synchronized void sampleRetainedHeap() {
+        if (usage != null) {
+            return;
+        }
+
+        long gcMillis = getGcMillis();
+        long start = System.nanoTime();
+        System.gc();
+        long retainedHeapBytes = memoryBean.getHeapMemoryUsage().getUsed();
+        forcedGcNanos += System.nanoTime() - start;
+        forcedGcMillis += getGcMillis() - gcMillis;
+        peakRetainedHeapBytes = Math.max(peakRetainedHeapBytes, retainedHeapBytes);
+    }
+
+    private void sampleLocked() {
+        long retainedHeapBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage collectionUsage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (collectionUsage != null) {
+                retainedHeapBytes += collectionUsage.getUsed();
+            }
+        }
+        peakRetainedHeapBytes = Math.max(peakRetainedHeapBytes, retainedHeapBytes);
+
+        long[] threadIds = threadBean.getAllThreadIds();
+        long[] allocatedBytes = threadBean.getThreadAllocatedBytes(threadIds);
+        for (int i = 0; i < threadIds.length; i++) {
+            if (allocatedBytes[i] >= 0) {
+                long startBytes = startAllocatedBytesByThread.getOrDefault(threadIds[i], 0L);
+                allocatedBytesByThread.merge(threadIds[i], allocatedBytes[i] - startBytes, Math::max);
+            }
+        }
+    }
+
+    private static long getGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * The resources used while the probe was running.
+     */
+    static class Usage {
+        private static final double MB = 1024 * 1024;
+
+        private final long peakRetainedHeapBytes;
+        private final long allocatedBytes;
+        private final long gcMillis;
+        private final long wallClockNanos;
+
+        Usage(long peakRetainedHeapBytes, long allocatedBytes, long gcMillis, long wallClockNanos) {
+            this.peakRetainedHeapBytes = peakRetainedHeapBytes;
+            this.allocatedBytes = allocatedBytes;
+            this.gcMillis = gcMillis;
+            this.wallClockNanos = wallClockNanos;
+        }
+
+        /**
+         * @return - The highest heap usage measured right after a garbage collection, in MB.
+         */
+        double getPeakRetainedHeapMb() {
+            return peakRetainedHeapBytes / MB;
+        }
+
+        /**
+         * @return - The bytes allocated by all the threads, in MB.
+         */
+        double getAllocatedMb() {
+            return allocatedBytes / MB;
+        }
+
+        /**
+         * @return - The allocated MB per second of wall-clock time.
+         */
+        double getAllocationRateMbPerSecond() {
+            return getAllocatedMb() / Math.max(1e-3, getWallClockSeconds());
+        }
+
+        /**
+         * @return - The time spent in garbage collections, in milliseconds. For the concurrent collectors this
+         * includes the concurrent phases, so it is an upper bound of the pause time.
+         */
+        long getGcMillis() {
+            return gcMillis;
+        }
+
+        /**
+         * @return - The wall-clock time in seconds.
+         */
+        double getWallClockSeconds() {
+            return wallClockNanos / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("peak retained heap %.1f MB, allocated %.1f MB (%.1f MB/s), GC %s ms, wall-clock %.1f s",
+                    getPeakRetainedHeapMb(), getAllocatedMb(), getAllocationRateMbPerSecond(), gcMillis, getWallClockSeconds());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class ResourceProbeTests {
+    private static final int MB = 1024 * 1024;
+
+    private static final List<byte[]> retained = new ArrayList<>();
+
+    @Test
+    public void CountsOnlyTheAllocationsMadeWhileRunning() {
+        allocate(200);
+
+        ResourceProbe.Usage usage;
+        try (ResourceProbe probe = ResourceProbe.start(10)) {
+            allocate(20);
+            usage = probe.stop();
+        }
+
+        assertTrue(String.format("%.1f MB were allocated", usage.getAllocatedMb()), usage.getAllocatedMb() >= 20);
+        assertTrue(String.format("%.1f MB were allocated", usage.getAllocatedMb()), usage.getAllocatedMb() < 100);
+    }
+
+    @Test
+    public void MeasuresTheRetainedHeapWithTheForcedCollections() throws InterruptedException {
+        ResourceProbe.Usage usage;
+        try (ResourceProbe probe = ResourceProbe.start(10, 50)) {
+            for (int i = 0; i < 64; i++) {
+                retained.add(new byte[MB]);
+            }
+            Thread.sleep(200);
+            usage = probe.stop();
+        } finally {
+            retained.clear();
+        }
+
+        assertTrue(String.format("%.1f MB were retained", usage.getPeakRetainedHeapMb()), usage.getPeakRetainedHeapMb() >= 64);
+        assertTrue(String.format("%.1f s of wall-clock time", usage.getWallClockSeconds()), usage.getWallClockSeconds() < 1);
+    }
+
+    private static void allocate(int megabytes) {
+        for (int i = 0; i < megabytes; i++) {
+            retained.add(new byte[MB]);
+        }
+        retained.clear();
+    }
+}
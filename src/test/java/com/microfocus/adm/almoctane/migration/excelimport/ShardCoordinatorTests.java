@@ -0,0 +1,125 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShardCoordinatorTests {
+    private XSSFWorkbook workbook;
+    private ShardPlan plan;
+    private ShardCoordinator coordinator;
+
+    @Before
+    public void StartCoordinator() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new WorkbookGenerator().tests(10).stepsPerTest(2, 2).callStepRate(0).write(out);
+        workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        plan = ShardPlan.of(workbook.getSheetAt(0), 3);
+        coordinator = new ShardCoordinator(plan, new JSONObject().put("workspace", 1002));
+    }
+
+    @After
+    public void StopCoordinator() throws IOException {
+        coordinator.close();
+        workbook.close();
+    }
+
+    @Test
+    public void HandsOutWholeTestsInTheOrderOfTheSheet() throws IOException {
+        assertEquals(4, plan.getShards().size());
+
+        try (ShardClient first = new ShardClient(coordinator.getPort());
+             ShardClient second = new ShardClient(coordinator.getPort())) {
+            JSONObject config = first.getConfig();
+            second.getConfig();
+            Map<String, Integer> columnIndexes = ShardClient.getColumnIndexes(config);
+            assertEquals(1002, config.getInt("workspace"));
+            assertEquals(10, config.getInt("total_tests"));
+
+            List<String> tests = new ArrayList<>();
+            List<TestDescription> shard;
+            boolean useFirst = true;
+            while ((shard = (useFirst ? first : second).nextShard(columnIndexes)) != null) {
+                for (TestDescription description : shard) {
+                    assertTrue(description.isManualTest());
+                    assertEquals(2, description.getStepRows().size());
+                    tests.add(description.getTestRow().getUniqueId());
+                }
+                useFirst = !useFirst;
+            }
+            assertNull(first.nextShard(columnIndexes));
+            assertNull(second.nextShard(columnIndexes));
+
+            assertEquals(10, tests.size());
+            assertEquals("T0", tests.get(0));
+            assertEquals("T9", tests.get(9));
+            assertEquals(0, coordinator.getUnfinishedShards());
+        }
+    }
+
+    @Test
+    public void ResolvesCallStepsToTestsOfOtherWorkers() throws Exception {
+        try (ShardClient first = new ShardClient(coordinator.getPort());
+             ShardClient second = new ShardClient(coordinator.getPort())) {
+            Map<String, Integer> columnIndexes = ShardClient.getColumnIndexes(first.getConfig());
+            second.getConfig();
+            first.nextShard(columnIndexes);
+            second.nextShard(columnIndexes);
+            int callerRow = plan.getTestRow("T4");
+
+            CompletableFuture<String> calledTest = CompletableFuture.supplyAsync(() -> second.resolveTest("T1", callerRow));
+            Thread.sleep(100);
+            assertFalse(calledTest.isDone());
+
+            try (ShardClient third = new ShardClient(coordinator.getPort())) {
+                third.testMigrated("T1", "1001");
+                third.testFailed("T2");
+            }
+            assertEquals("1001", calledTest.get(10, TimeUnit.SECONDS));
+            assertNull(second.resolveTest("T2", callerRow));
+            assertNull(second.resolveTest("T8", callerRow));
+        }
+    }
+
+    @Test
+    public void CreatesSharedEntitiesOnce() throws IOException, InterruptedException, ExecutionException {
+        AtomicInteger created = new AtomicInteger();
+        try (ShardClient first = new ShardClient(coordinator.getPort());
+             ShardClient second = new ShardClient(coordinator.getPort())) {
+            List<CompletableFuture<String>> ids = new ArrayList<>();
+            for (ShardClient client : new ShardClient[]{first, second}) {
+                ids.add(CompletableFuture.supplyAsync(() -> client.getOrCreate(EntityModelHelper.USER_TAG, "tag_1", () -> {
+                    created.incrementAndGet();
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "2001";
+                })));
+            }
+
+            assertEquals("2001", ids.get(0).get());
+            assertEquals("2001", ids.get(1).get());
+            assertEquals(1, created.get());
+        }
+    }
+}
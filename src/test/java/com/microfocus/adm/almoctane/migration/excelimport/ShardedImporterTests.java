@@ -0,0 +1,83 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a sharded import with several worker processes against the Octane stub server.
+ */
+public class ShardedImporterTests {
+    private static final String USER = OctaneStubServer.DEFAULT_USER;
+    private static final Pattern CALL_STEP = Pattern.compile("^- @(\\S+)$", Pattern.MULTILINE);
+
+    private final WorkbookGenerator generator = new WorkbookGenerator().tests(40).stepsPerTest(1, 4).callStepRate(0.3).seed(7);
+    private OctaneStubServer octane;
+    private Path workDirectory;
+    private Path sheet;
+    private WorkbookGenerator.Summary summary;
+
+    @Before
+    public void StartServer() throws IOException {
+        octane = new OctaneStubServer().withDefaultEntities();
+        for (String email : generator.getUsers()) {
+            octane.addEntity("workspace_users", new JSONObject().put("name", email).put("email", email));
+        }
+        octane.start();
+
+        workDirectory = Files.createTempDirectory("sharded-importer");
+        sheet = workDirectory.resolve("tests.xlsx");
+        summary = generator.write(sheet);
+    }
+
+    @After
+    public void StopServer() throws IOException {
+        octane.close();
+        Files.deleteIfExists(sheet);
+        Files.delete(workDirectory);
+    }
+
+    @Test
+    public void ImportsEveryShardOnceWithSeveralWorkerProcesses() {
+        ShardedImporter importer = new ShardedImporter(octane.getUrl(), 1001, OctaneStubServer.DEFAULT_WORKSPACE,
+                sheet.toFile(), USER, new ImportSettings().reportProgress(0));
+
+        assertEquals(MigrationStatus.Status.SUCCESS, importer.migrate(USER, "password", 3, 5));
+
+        List<JSONObject> tests = octane.getEntities(EntityModelHelper.MANUAL_TESTS);
+        assertEquals(summary.getTests(), tests.size());
+        ExcelImporterTests.assertOnePerName(tests);
+        ExcelImporterTests.assertOnePerName(octane.getEntities(EntityModelHelper.USER_TAGS));
+        ExcelImporterTests.assertOnePerName(octane.getEntities(EntityModelHelper.PRODUCT_AREAS));
+
+        Set<String> testIds = new HashSet<>();
+        for (JSONObject test : tests) {
+            testIds.add(test.getString("id"));
+        }
+        int callSteps = 0;
+        for (String script : octane.getScripts().values()) {
+            Matcher callStep = CALL_STEP.matcher(script);
+            while (callStep.find()) {
+                assertTrue(String.format("The call step to %s was not resolved", callStep.group(1)),
+                        testIds.contains(callStep.group(1)));
+                callSteps++;
+            }
+        }
+        assertTrue(summary.getCallSteps() > 0);
+        assertEquals(summary.getTests(), octane.getScripts().size());
+        assertEquals(summary.getCallSteps(), callSteps);
+    }
+}
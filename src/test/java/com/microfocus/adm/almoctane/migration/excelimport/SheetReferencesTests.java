@@ -0,0 +1,36 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class SheetReferencesTests {
+
+    @Test
+    public void CollectsTheDistinctNamesOfTheTests() throws IOException {
+        WorkbookGenerator generator = new WorkbookGenerator().tests(200).stepsPerTest(1, 3).cardinality(5, 3, 2).seed(7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.write(out);
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            XSSFSheet sheet = workbook.getSheetAt(0);
+            Iterator<Row> rowIterator = sheet.rowIterator();
+            Map<String, Integer> columnIndexes = ExcelImportRow.initRowIndices(rowIterator.next());
+
+            SheetReferences references = SheetReferences.scan(rowIterator, columnIndexes);
+
+            assertEquals(new HashSet<>(generator.getUserTags()), references.getUserTags());
+            assertEquals(new HashSet<>(generator.getProductAreas()), references.getApplicationModules());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightCacheTests {
+
+    @Test
+    public void CreatesTheValueOnceForConcurrentCallers() throws InterruptedException {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>(1000);
+        AtomicInteger creations = new AtomicInteger();
+        CountDownLatch creating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> values = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> values.add(cache.get("smoke", name -> {
+                creations.incrementAndGet();
+                creating.countDown();
+                awaitQuietly(release);
+                return name + "-1001";
+            })));
+            thread.start();
+            threads.add(thread);
+        }
+        assertTrue(creating.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, creations.get());
+        assertEquals(Collections.nCopies(8, "smoke-1001"), values);
+        assertEquals("smoke-1001", cache.getIfPresent("smoke"));
+    }
+
+    @Test
+    public void KeepsTheFailureUntilTheTtlExpires() throws InterruptedException {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>(100);
+        AtomicInteger creations = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("smoke", name -> {
+                    creations.incrementAndGet();
+                    throw new IllegalStateException("duplicate name");
+                });
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals("duplicate name", e.getMessage());
+            }
+        }
+        assertEquals(1, creations.get());
+        assertNull(cache.getIfPresent("smoke"));
+
+        Thread.sleep(150);
+        assertEquals("smoke-1001", cache.get("smoke", name -> name + "-1001"));
+    }
+
+    @Test
+    public void DoesNotKeepNullValues() {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>(1000);
+        cache.putAll(Collections.singletonMap("regression", "regression-1001"));
+
+        assertNull(cache.get("smoke", name -> null));
+        assertEquals(1, cache.size());
+        assertEquals("smoke-1002", cache.get("smoke", name -> name + "-1002"));
+        assertEquals("regression-1001", cache.get("regression", name -> null));
+    }
+
+    @Test
+    public void WaitsForTheClaimedKeys() throws InterruptedException {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>(1000);
+        cache.putAll(Collections.singletonMap("regression", "regression-1001"));
+
+        assertEquals(Arrays.asList("smoke", "sanity"), cache.reserve(Arrays.asList("regression", "smoke", "sanity", "smoke")));
+        assertTrue(cache.reserve(Collections.singletonList("smoke")).isEmpty());
+
+        List<String> values = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger creations = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (String key : new String[]{"smoke", "sanity"}) {
+            Thread thread = new Thread(() -> values.add(cache.get(key, name -> {
+                creations.incrementAndGet();
+                return name + "-1003";
+            })));
+            thread.start();
+            threads.add(thread);
+        }
+        Thread.sleep(50);
+        assertTrue(values.isEmpty());
+
+        cache.complete("smoke", "smoke-1002");
+        cache.complete("sanity", null);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, creations.get());
+        assertEquals(new HashSet<>(Arrays.asList("smoke-1002", "sanity-1003")), new HashSet<>(values));
+        assertEquals("smoke-1002", cache.awaitIfPresent("smoke"));
+    }
+
+    @Test
+    public void CompletesTheClaimedKeysWhichAreLoaded() {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>(1000);
+        cache.reserve(Collections.singletonList("smoke"));
+
+        cache.putAll(Collections.singletonMap("smoke", "smoke-1001"));
+        cache.complete("smoke", null);
+
+        assertEquals("smoke-1001", cache.getIfPresent("smoke"));
+        assertNull(cache.awaitIfPresent("sanity"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StepScriptBuilderTests {
+
+    @Test
+    public void BuildsScriptWithAllStepTypes() {
+        StepScriptBuilder builder = new StepScriptBuilder()
+                .appendSimpleStep("Open the page")
+                .appendValidationStep("Check the title")
+                .appendCallStep("1001");
+
+        JSONObject json = new JSONObject(builder.build().toString());
+
+        assertEquals("- Open the page\n- ?Check the title\n- @1001\n", json.getString("script"));
+        assertEquals("", json.getString("comment"));
+        assertEquals("Minor", json.getString("revision_type"));
+    }
+
+    @Test
+    public void EscapesJsonSpecialCharacters() {
+        String step = "Type \"C:\\temp\\file\" and 'quote'\tthen\u0001done";
+
+        JSONObject json = new JSONObject(new StepScriptBuilder().appendSimpleStep(step).build().toString());
+
+        assertEquals("- " + step + "\n", json.getString("script"));
+    }
+
+    @Test
+    public void CollapsesLineBreaksAndDropsTabLineFeeds() {
+        JSONObject json = new JSONObject(new StepScriptBuilder().appendSimpleStep("first\r\n\r\nsecond\t\nthird").build().toString());
+
+        assertEquals("- first\nsecondthird\n", json.getString("script"));
+    }
+
+    @Test
+    public void ResetKeepsOnlyTheNextTestSteps() {
+        StepScriptBuilder builder = new StepScriptBuilder(8);
+        builder.appendSimpleStep("old step");
+        builder.reset();
+
+        assertFalse(builder.hasSteps());
+
+        builder.appendValidationStep("new step");
+
+        assertTrue(builder.hasSteps());
+        assertEquals("- ?new step\n", new JSONObject(builder.build().toString()).getString("script"));
+    }
+
+    @Test
+    public void BuildResetsTheBuilder() {
+        StepScriptBuilder builder = new StepScriptBuilder();
+        builder.appendSimpleStep("first test step").build();
+
+        assertFalse(builder.hasSteps());
+        assertEquals("- second test step\n",
+                new JSONObject(builder.appendSimpleStep("second test step").build().toString()).getString("script"));
+    }
+
+    @Test
+    public void EncodesMultiByteCharactersAcrossChunks() {
+        String step = "\u00e9t\u00e9 \u6d4b\u8bd5 \ud83d\ude00 end";
+        StepScriptBuilder builder = new StepScriptBuilder(16);
+        for (int i = 0; i < 50; i++) {
+            builder.appendSimpleStep(step);
+        }
+
+        StepScript stepScript = builder.build();
+        String json = stepScript.toString();
+
+        assertEquals(json.getBytes(StandardCharsets.UTF_8).length, stepScript.length());
+        String script = new JSONObject(json).getString("script");
+        assertEquals(50 * ("- " + step + "\n").length(), script.length());
+        assertTrue(script.startsWith("- " + step + "\n- " + step));
+    }
+
+    @Test
+    public void EscapeMetaCharactersProducesValidJsonContent() {
+        String escaped = StringUtils.escapeMetaCharacters("a\"b\\c\nd");
+
+        assertEquals("a\\\"b\\\\c\\nd", escaped);
+    }
+}
@@ -0,0 +1,140 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestDescriptionStreamTests {
+
+    @Test
+    public void EveryCursorReadsAllTheDescriptionsInOrder() throws InterruptedException {
+        TestDescriptionStream stream = new TestDescriptionStream();
+        TestDescriptionStream.Cursor first = stream.openCursor();
+        TestDescriptionStream.Cursor second = stream.openCursor();
+
+        List<TestDescription> published = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            TestDescription description = new TestDescription(null, new ArrayList<>());
+            published.add(description);
+            stream.publish(description);
+        }
+        stream.finish();
+
+        for (TestDescription description : published) {
+            assertSame(description, first.next());
+        }
+        assertNull(first.next());
+        assertEquals(10, stream.getRetainedDescriptions());
+
+        for (int i = 0; i < 5; i++) {
+            assertSame(published.get(i), second.next());
+        }
+        assertEquals(5, stream.getRetainedDescriptions());
+
+        second.close();
+        assertEquals(0, stream.getRetainedDescriptions());
+    }
+
+    @Test
+    public void WaitsForTheSlowestCursor() throws InterruptedException {
+        TestDescriptionStream stream = new TestDescriptionStream(3);
+        TestDescriptionStream.Cursor fast = stream.openCursor();
+        TestDescriptionStream.Cursor slow = stream.openCursor();
+        AtomicInteger published = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            for (int i = 0; i < 10; i++) {
+                stream.publish(new TestDescription(null, new ArrayList<>()));
+                published.incrementAndGet();
+            }
+            stream.finish();
+        });
+        reader.start();
+
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(fast.next());
+        }
+        Thread.sleep(100);
+        assertEquals(3, published.get());
+        assertEquals(3, stream.getRetainedDescriptions());
+
+        assertNotNull(slow.next());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (published.get() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertEquals(4, published.get());
+
+        slow.close();
+        int read = 0;
+        while (fast.next() != null) {
+            read++;
+        }
+        reader.join();
+
+        assertEquals(7, read);
+        assertEquals(10, published.get());
+    }
+
+    @Test
+    public void StepsBelongToTheTestAbove() throws IOException, InterruptedException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            XSSFSheet sheet = workbook.createSheet();
+            addRow(sheet, MandatoryFields.UNIQUE_ID.fieldName(), MandatoryFields.TYPE.fieldName(), MandatoryFields.STEP_DESCRIPTION.fieldName());
+            addRow(sheet, "1", null, null);
+            addRow(sheet, "2", "test_manual", null);
+            addRow(sheet, "3", "step", "open");
+            addRow(sheet, "4", "step", "close");
+            addRow(sheet, "5", "test_manual", null);
+
+            Map<String, Integer> columnIndexes = new HashMap<>();
+            columnIndexes.put(MandatoryFields.UNIQUE_ID.fieldName(), 0);
+            columnIndexes.put(MandatoryFields.TYPE.fieldName(), 1);
+            columnIndexes.put(MandatoryFields.STEP_DESCRIPTION.fieldName(), 2);
+
+            TestDescriptionStream stream = new TestDescriptionStream();
+            TestDescriptionStream.Cursor cursor = stream.openCursor();
+            Iterator<Row> rowIterator = sheet.iterator();
+            rowIterator.next();
+            FanOutImporter.publishTests(rowIterator, columnIndexes, stream, ImportTracer.disabled());
+
+            TestDescription rejected = cursor.next();
+            TestDescription withSteps = cursor.next();
+            TestDescription withoutSteps = cursor.next();
+
+            assertFalse(rejected.isManualTest());
+            assertTrue(withSteps.isManualTest());
+            assertEquals("2", withSteps.getTestRow().getUniqueId());
+            assertEquals(2, withSteps.getStepRows().size());
+            assertEquals("close", withSteps.getStepRows().get(1).getStep());
+            assertEquals("5", withoutSteps.getTestRow().getUniqueId());
+            assertEquals(0, withoutSteps.getStepRows().size());
+            assertNull(cursor.next());
+        }
+    }
+
+    private static void addRow(XSSFSheet sheet, String... values) {
+        Row row = sheet.createRow(sheet.getPhysicalNumberOfRows());
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                row.createCell(i).setCellValue(values[i]);
+            }
+        }
+    }
+}
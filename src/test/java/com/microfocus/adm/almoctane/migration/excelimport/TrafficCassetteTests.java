@@ -0,0 +1,91 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.network.OctaneHttpRequest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Deque;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TrafficCassetteTests {
+
+    @Test
+    public void LoadsRecordedResponsesInOrder() throws IOException {
+        Path file = Files.createTempFile("traffic", ".jsonl.gz");
+        String url = "/api/shared_spaces/1001/workspaces/1002/manual_tests";
+        try {
+            try (TrafficCassette cassette = TrafficCassette.record(file, "http://octane")) {
+                long start = System.nanoTime();
+                cassette.recordResponse("POST", url, "a", start, 2_000_000, 201, "{\"data\":[{\"id\":\"1\"}]}");
+                cassette.recordResponse("POST", url, "a", start, 3_000_000, 201, "{\"data\":[{\"id\":\"2\"}]}");
+                cassette.recordResponse("GET", url, null, start, 1_000_000, 200, null);
+            }
+
+            Map<String, Deque<TrafficCassette.Exchange>> exchanges = TrafficCassette.load(file);
+            Deque<TrafficCassette.Exchange> posts = exchanges.get(TrafficCassette.key("POST", url, "a"));
+            TrafficCassette.Exchange get = exchanges.get(TrafficCassette.key("GET", url, null)).peek();
+
+            assertEquals(2, posts.size());
+            assertEquals("{\"data\":[{\"id\":\"1\"}]}", posts.peek().getContent());
+            assertEquals(2_000_000, posts.poll().getDurationNanos());
+            assertEquals(201, posts.peek().getStatusCode());
+            assertNull(get.getContent());
+            assertNull(get.toException());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void DigestsTheBodiesWhateverTheOrderOfTheFields() {
+        String url = "http://octane/api/shared_spaces/1001/workspaces/1002/manual_tests";
+        String created = TrafficCassette.bodyDigest(new OctaneHttpRequest.PostOctaneHttpRequest(url,
+                OctaneHttpRequest.JSON_CONTENT_TYPE, "{\"data\":[{\"name\":\"Login\",\"phase\":{\"id\":\"1\"}}]}"));
+        String reordered = TrafficCassette.bodyDigest(new OctaneHttpRequest.PostOctaneHttpRequest(url,
+                OctaneHttpRequest.JSON_CONTENT_TYPE, "{\"data\":[{\"phase\":{\"id\":\"1\"},\"name\":\"Login\"}]}"));
+        String other = TrafficCassette.bodyDigest(new OctaneHttpRequest.PostOctaneHttpRequest(url,
+                OctaneHttpRequest.JSON_CONTENT_TYPE, "{\"data\":[{\"name\":\"Logout\",\"phase\":{\"id\":\"1\"}}]}"));
+
+        assertEquals(created, reordered);
+        assertNotEquals(created, other);
+        assertNull(TrafficCassette.bodyDigest(new OctaneHttpRequest.GetOctaneHttpRequest(url)));
+    }
+
+    @Test
+    public void FailsWhenTheRecordedCreatesAreUsedUp() throws IOException {
+        Path file = Files.createTempFile("traffic", ".jsonl.gz");
+        String server = "http://octane";
+        String url = "/api/shared_spaces/1001/workspaces/1002/manual_tests";
+        OctaneHttpRequest create = new OctaneHttpRequest.PostOctaneHttpRequest(server + url,
+                OctaneHttpRequest.JSON_CONTENT_TYPE, "{\"data\":[{\"name\":\"Login\"}]}");
+        OctaneHttpRequest read = new OctaneHttpRequest.GetOctaneHttpRequest(server + url);
+        try {
+            try (TrafficCassette cassette = TrafficCassette.record(file, server)) {
+                long start = System.nanoTime();
+                cassette.recordResponse("POST", url, TrafficCassette.bodyDigest(create), start, 0, 201, "{\"data\":[{\"id\":\"1\"}]}");
+                cassette.recordResponse("GET", url, null, start, 0, 200, "{\"data\":[]}");
+            }
+            ReplayHttpClient client = new ReplayHttpClient(server, TrafficCassette.load(file), 0, new ImportMetrics());
+
+            assertEquals("{\"data\":[{\"id\":\"1\"}]}", client.execute(create).getContent());
+            assertEquals("{\"data\":[]}", client.execute(read).getContent());
+            assertEquals("{\"data\":[]}", client.execute(read).getContent());
+            try {
+                client.execute(create);
+                fail("The recorded response of the create was served twice");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().contains("used up"));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import com.hpe.adm.nga.sdk.model.EntityModel;
+import com.hpe.adm.nga.sdk.model.FieldModel;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class UDFHandlerTests {
+    private static final String FIELDS_METADATA = "metadata/test_manual_fields.json";
+    private static final String DEFAULT_USER_EMAIL = "default.user@example.com";
+    private static final String DEFAULT_RELEASE = "Release 1";
+
+    private CannedRequestHelper requestHelper;
+    private UDFHandler udfHandler;
+
+    @Before
+    public void setUp() throws IOException {
+        requestHelper = new CannedRequestHelper(readResource(FIELDS_METADATA));
+        udfHandler = new UDFHandler(ImportTracer.disabled());
+        udfHandler.initFieldDefinitions(requestHelper);
+        udfHandler.initDefaultRelease(DEFAULT_RELEASE);
+    }
+
+    @Test
+    public void LoadsTheFieldsOfTheManualTests() {
+        Set<String> names = new HashSet<>();
+        for (FieldDefinition fieldDefinition : udfHandler.getFieldDefinitions()) {
+            names.add(fieldDefinition.getName());
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList("name", "priority_udf", "risk_udf", "automated_udf", "creation_time",
+                "attachments", "automation_status", "reviewer_udf", "target_releases_udf")), names);
+    }
+
+    @Test
+    public void CompilesTheHeaderColumnsOfTheUDFs() {
+        String[] header = {"unique_id", "name", "priority_udf", "risk_udf", "automated_udf", "priority_udf"};
+        udfHandler.initRowIndexes(header, requestHelper);
+
+        EntityModel entityModel = convert(header, "1", "Test 1", "High", "3.0", "true", "Low");
+
+        assertEquals("High", getValue(entityModel, "priority_udf"));
+        assertEquals(3L, getValue(entityModel, "risk_udf"));
+        assertEquals(true, getValue(entityModel, "automated_udf"));
+        assertNull(entityModel.getValue("name"));
+        assertTrue(requestHelper.listRoots.isEmpty());
+    }
+
+    @Test
+    public void IgnoresTheUnknownAndTheReadOnlyColumns() {
+        String[] header = {"unique_id", "unknown_udf", "creation_time", "attachments", "priority_udf"};
+        udfHandler.initRowIndexes(header, requestHelper);
+
+        EntityModel entityModel = convert(header, "1", "value", "01-01-2020 10:00:00 UTC", "file.txt", "High");
+
+        assertNull(entityModel.getValue("unknown_udf"));
+        assertNull(entityModel.getValue("creation_time"));
+        assertNull(entityModel.getValue("attachments"));
+        assertEquals("High", getValue(entityModel, "priority_udf"));
+    }
+
+    @Test
+    public void ResolvesTheListUserAndReleaseReferences() {
+        String[] header = {"unique_id", "automation_status", "reviewer_udf", "target_releases_udf"};
+        udfHandler.initRowIndexes(header, requestHelper);
+
+        assertEquals(Collections.singleton("list_node.automation_status"), requestHelper.listRoots);
+
+        EntityModel first = convert(header, "1", "Automated", "john@example.com", "Release 2, Release 3");
+        EntityModel second = convert(header, "2", "Missing status", "unknown@example.com", "Release 2, Missing release, Release 2");
+
+        assertEquals("1001", ((EntityModel) getValue(first, "automation_status")).getId());
+        assertEquals("2001", ((EntityModel) getValue(first, "reviewer_udf")).getId());
+        assertEquals(Arrays.asList("3002", "3003"), getIds(first, "target_releases_udf"));
+
+        assertNull(second.getValue("automation_status"));
+        assertEquals("2000", ((EntityModel) getValue(second, "reviewer_udf")).getId());
+        assertEquals(Arrays.asList("3002", "3001"), getIds(second, "target_releases_udf"));
+
+        assertEquals(Arrays.asList("Release 2", "Release 3", "Missing release", DEFAULT_RELEASE), requestHelper.releaseSearches);
+    }
+
+    private EntityModel convert(String[] header, String... cells) {
+        Map<String, Integer> columnIndexes = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            columnIndexes.putIfAbsent(header[i], i);
+        }
+
+        EntityModel entityModel = new EntityModel();
+        udfHandler.addUDFsToEntityModel(ExcelImportRow.detached(cells, 1, columnIndexes), entityModel);
+        return entityModel;
+    }
+
+    private static Object getValue(EntityModel entityModel, String fieldName) {
+        FieldModel<?> fieldModel = entityModel.getValue(fieldName);
+        assertNotNull(fieldName, fieldModel);
+        return fieldModel.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> getIds(EntityModel entityModel, String fieldName) {
+        List<String> ids = new ArrayList<>();
+        for (EntityModel reference : (Collection<EntityModel>) getValue(entityModel, fieldName)) {
+            ids.add(reference.getId());
+        }
+        return ids;
+    }
+
+    private static String readResource(String name) throws IOException {
+        try (InputStream in = UDFHandlerTests.class.getClassLoader().getResourceAsStream(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Answers the requests of the UDF handler from the canned metadata and from a few known entities.
+     */
+    private static final class CannedRequestHelper extends OctaneRequestHelper {
+        private final String fieldsMetadata;
+        private final Set<String> listRoots = new HashSet<>();
+        private final List<String> releaseSearches = new ArrayList<>();
+
+        CannedRequestHelper(String fieldsMetadata) {
+            super("http://localhost/api/shared_spaces/1001/workspaces/1002", null, null, null, DEFAULT_USER_EMAIL, null,
+                    ImportTracer.disabled(), new WorkspaceEntities("test"));
+            this.fieldsMetadata = fieldsMetadata;
+        }
+
+        @Override
+        public List<FieldDefinition> getFieldDefinitions(String entityName) {
+            JSONArray fields = new JSONArray();
+            JSONArray data = new JSONObject(fieldsMetadata).getJSONArray("data");
+            for (int i = 0; i < data.length(); i++) {
+                if (entityName.equals(data.getJSONObject(i).getString("entity_name"))) {
+                    fields.put(data.getJSONObject(i));
+                }
+            }
+            return FieldDefinition.parseFields(new JSONObject().put("data", fields).toString());
+        }
+
+        @Override
+        public Map<String, Map<String, EntityModel>> getListItemsByListRoot(Collection<String> listRootLogicalNames) {
+            listRoots.addAll(listRootLogicalNames);
+            Map<String, Map<String, EntityModel>> listItems = new HashMap<>();
+            Map<String, EntityModel> items = new HashMap<>();
+            items.put("Automated", EntityReference.of(EntityModelHelper.LIST_NODES, "1001", "Automated"));
+            items.put("Not automated", EntityReference.of(EntityModelHelper.LIST_NODES, "1002", "Not automated"));
+            listItems.put("list_node.automation_status", items);
+            return listItems;
+        }
+
+        @Override
+        public EntityModel getUserByEmail(String email) {
+            switch (email) {
+                case DEFAULT_USER_EMAIL:
+                    return EntityReference.of(EntityModelHelper.USERS, "2000", email);
+                case "john@example.com":
+                    return EntityReference.of(EntityModelHelper.USERS, "2001", email);
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public EntityModel getEntityByName(String entityType, String itemName) {
+            assertEquals(EntityModelHelper.RELEASES, entityType);
+            releaseSearches.add(itemName);
+            switch (itemName) {
+                case DEFAULT_RELEASE:
+                    return EntityReference.of(entityType, "3001", itemName);
+                case "Release 2":
+                    return EntityReference.of(entityType, "3002", itemName);
+                case "Release 3":
+                    return EntityReference.of(entityType, "3003", itemName);
+                default:
+                    return null;
+            }
+        }
+    }
+}
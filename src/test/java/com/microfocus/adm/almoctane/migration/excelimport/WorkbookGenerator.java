@@ -0,0 +1,448 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Generates large excel sheets in the importer format for the scale tests. The workbook is written through an
+ * {@link SXSSFWorkbook}, so only a small window of rows is kept in memory and sheets with millions of rows can be
+ * generated. The content depends only on the settings and on the seed.
+ *
+ * A share of the tests can be generated with a deliberate error (see {@link ErrorKind}), which the importer must
+ * report without stopping the migration.
+ */
+class WorkbookGenerator {
+    private static final int ROW_ACCESS_WINDOW = 100;
+    private static final FieldDefinition.FieldType[] UDF_TYPES = {
+            FieldDefinition.FieldType.STRING,
+            FieldDefinition.FieldType.LONG,
+            FieldDefinition.FieldType.BOOLEAN,
+            FieldDefinition.FieldType.DATE,
+            FieldDefinition.FieldType.FLOAT
+    };
+    private static final String[] WORDS = {
+            "open", "the", "login", "page", "and", "verify", "that", "\"Submit\"", "button", "is", "enabled",
+            "C:\\temp\\export.csv", "Gr\u00f6\u00dfe", "na\u00efve", "configuration", "user", "selects", "tab", "\u2192", "result"
+    };
+
+    /**
+     * The deliberate errors which can be generated.
+     */
+    enum ErrorKind {
+        /** The test row has an unknown type, so the test is not migrated. */
+        WRONG_ROW_TYPE,
+        /** A step of the test has an unknown step type, so the step is ignored. */
+        WRONG_STEP_TYPE,
+        /** A call step references a test which does not exist, so the step is ignored. */
+        MISSING_CALLED_TEST,
+        /** The estimated duration is not a number, so it is left blank. */
+        INVALID_ESTIMATED_DURATION,
+        /** The owner is not an Octane user, so the default owner is used. */
+        UNKNOWN_OWNER
+    }
+
+    private int tests = 100;
+    private int minStepsPerTest = 5;
+    private int maxStepsPerTest = 10;
+    private double medianStepsPerTest = 0;
+    private int udfColumns = 0;
+    private double callStepRate = 0;
+    private int userTags = 10;
+    private int productAreas = 10;
+    private int users = 10;
+    private double errorRate = 0;
+    private long seed = 42;
+
+    /**
+     * @param tests - The number of tests.
+     * @return - The current generator.
+     */
+    WorkbookGenerator tests(int tests) {
+        this.tests = tests;
+        return this;
+    }
+
+    /**
+     * Uses a uniform distribution for the number of steps of a test.
+     *
+     * @param min - The minimum number of steps.
+     * @param max - The maximum number of steps.
+     * @return - The current generator.
+     */
+    WorkbookGenerator stepsPerTest(int min, int max) {
+        this.minStepsPerTest = min;
+        this.maxStepsPerTest = max;
+        this.medianStepsPerTest = 0;
+        return this;
+    }
+
+    /**
+     * Uses a log-normal distribution for the number of steps of a test, which gives the few very long tests found in
+     * real repositories.
+     *
+     * @param median - The median number of steps.
+     * @param max    - The maximum number of steps.
+     * @return - The current generator.
+     */
+    WorkbookGenerator skewedStepsPerTest(int median, int max) {
+        this.minStepsPerTest = 0;
+        this.maxStepsPerTest = max;
+        this.medianStepsPerTest = median;
+        return this;
+    }
+
+    /**
+     * @param count - The number of UDF columns. Their types cycle through string, integer, boolean, date and float.
+     * @return - The current generator.
+     */
+    WorkbookGenerator udfColumns(int count) {
+        this.udfColumns = count;
+        return this;
+    }
+
+    /**
+     * @param rate - The share of the steps which call a test generated before (between 0 and 1).
+     * @return - The current generator.
+     */
+    WorkbookGenerator callStepRate(double rate) {
+        this.callStepRate = rate;
+        return this;
+    }
+
+    /**
+     * @param userTags     - The number of distinct user tags.
+     * @param productAreas - The number of distinct application modules.
+     * @param users        - The number of distinct owners and designers.
+     * @return - The current generator.
+     */
+    WorkbookGenerator cardinality(int userTags, int productAreas, int users) {
+        this.userTags = userTags;
+        this.productAreas = productAreas;
+        this.users = users;
+        return this;
+    }
+
+    /**
+     * @param rate - The share of the tests which have a deliberate error (between 0 and 1).
+     * @return - The current generator.
+     */
+    WorkbookGenerator errorRate(double rate) {
+        this.errorRate = rate;
+        return this;
+    }
+
+    /**
+     * @param seed - The seed of the random generator.
+     * @return - The current generator.
+     */
+    WorkbookGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @return - The definitions of the generated UDF columns.
+     */
+    List<FieldDefinition> getUdfDefinitions() {
+        List<FieldDefinition> definitions = new ArrayList<>(udfColumns);
+        for (int i = 0; i < udfColumns; i++) {
+            FieldDefinition.FieldType fieldType = UDF_TYPES[i % UDF_TYPES.length];
+            definitions.add(new FieldDefinition(getUdfName(i), fieldType, null, null, false, true));
+        }
+        return definitions;
+    }
+
+    /**
+     * @return - The names of the generated user tags.
+     */
+    List<String> getUserTags() {
+        return names("tag_", userTags);
+    }
+
+    /**
+     * @return - The names of the generated application modules.
+     */
+    List<String> getProductAreas() {
+        return names("Area ", productAreas);
+    }
+
+    /**
+     * @return - The emails of the generated owners and designers.
+     */
+    List<String> getUsers() {
+        List<String> emails = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            emails.add(getUserEmail(i));
+        }
+        return emails;
+    }
+
+    /**
+     * Writes the workbook to a file.
+     *
+     * @param file - The file.
+     * @return - The summary of the generated content.
+     * @throws IOException - In case the file cannot be written.
+     */
+    Summary write(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            return write(out);
+        }
+    }
+
+    /**
+     * Writes the workbook to a stream.
+     *
+     * @param out - The stream.
+     * @return - The summary of the generated content.
+     * @throws IOException - In case the stream cannot be written.
+     */
+    Summary write(OutputStream out) throws IOException {
+        Random random = new Random(seed);
+        Summary summary = new Summary();
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+        workbook.setCompressTempFiles(true);
+
+        try {
+            Sheet sheet = workbook.createSheet();
+            Map<String, Integer> columns = writeHeader(sheet);
+            int rowIndex = 1;
+
+            for (int test = 0; test < tests; test++) {
+                ErrorKind error = random.nextDouble() < errorRate
+                        ? ErrorKind.values()[random.nextInt(ErrorKind.values().length)]
+                        : null;
+                if (error != null) {
+                    summary.errors.merge(error, 1, Integer::sum);
+                }
+
+                writeTest(sheet.createRow(rowIndex++), columns, random, test, error);
+                summary.tests++;
+
+                int steps = nextStepCount(random);
+                int wrongStep = error == ErrorKind.WRONG_STEP_TYPE || error == ErrorKind.MISSING_CALLED_TEST
+                        ? random.nextInt(Math.max(1, steps))
+                        : -1;
+                if (wrongStep >= 0 && steps == 0) {
+                    steps = 1;
+                }
+
+                for (int step = 0; step < steps; step++) {
+                    Row row = sheet.createRow(rowIndex++);
+                    set(row, columns, MandatoryFields.UNIQUE_ID, "T" + test + "-" + step);
+                    set(row, columns, MandatoryFields.TYPE, "step");
+
+                    if (step == wrongStep && error == ErrorKind.WRONG_STEP_TYPE) {
+                        set(row, columns, MandatoryFields.STEP_TYPE, "manual");
+                        set(row, columns, MandatoryFields.STEP_DESCRIPTION, text(random, 5));
+                    } else if (step == wrongStep) {
+                        set(row, columns, MandatoryFields.STEP_TYPE, EntityModelHelper.StepTypes.CALL.stepTypeName());
+                        set(row, columns, MandatoryFields.STEP_DESCRIPTION, "MISSING-" + test);
+                    } else if (test > 0 && random.nextDouble() < callStepRate) {
+                        set(row, columns, MandatoryFields.STEP_TYPE, EntityModelHelper.StepTypes.CALL.stepTypeName());
+                        set(row, columns, MandatoryFields.STEP_DESCRIPTION, "T" + random.nextInt(test));
+                        summary.callSteps++;
+                    } else {
+                        set(row, columns, MandatoryFields.STEP_TYPE, step % 3 == 2
+                                ? EntityModelHelper.StepTypes.VALIDATION.stepTypeName()
+                                : EntityModelHelper.StepTypes.SIMPLE.stepTypeName());
+                        set(row, columns, MandatoryFields.STEP_DESCRIPTION, text(random, 10 + random.nextInt(40)));
+                    }
+                    summary.steps++;
+                }
+            }
+
+            summary.rows = rowIndex;
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+
+        return summary;
+    }
+
+    private Map<String, Integer> writeHeader(Sheet sheet) {
+        List<String> header = new ArrayList<>(MandatoryFields.getMandatoryFieldsList());
+        for (int i = 0; i < udfColumns; i++) {
+            header.add(getUdfName(i));
+        }
+
+        Map<String, Integer> columns = new HashMap<>();
+        Row row = sheet.createRow(0);
+        for (int i = 0; i < header.size(); i++) {
+            row.createCell(i).setCellValue(header.get(i));
+            columns.put(header.get(i), i);
+        }
+        return columns;
+    }
+
+    private void writeTest(Row row, Map<String, Integer> columns, Random random, int test, ErrorKind error) {
+        set(row, columns, MandatoryFields.UNIQUE_ID, "T" + test);
+        set(row, columns, MandatoryFields.TYPE, error == ErrorKind.WRONG_ROW_TYPE ? "test_automated" : "test_manual");
+        set(row, columns, MandatoryFields.NAME, "Test " + test + " " + text(random, 6));
+        set(row, columns, MandatoryFields.DESCRIPTION, "<p>" + text(random, 40) + "</p>");
+        set(row, columns, MandatoryFields.PHASE, "New");
+        set(row, columns, MandatoryFields.OWNER, error == ErrorKind.UNKNOWN_OWNER
+                ? "unknown" + test + "@example.com"
+                : getUserEmail(random.nextInt(Math.max(1, users))));
+        set(row, columns, MandatoryFields.DESIGNER, getUserEmail(random.nextInt(Math.max(1, users))));
+        set(row, columns, MandatoryFields.USER_TAG, pick(random, "tag_", userTags, 3));
+        set(row, columns, MandatoryFields.TEST_TYPE, "End to End");
+        set(row, columns, MandatoryFields.PRODUCT_AREAS, pick(random, "Area ", productAreas, 2));
+        set(row, columns, MandatoryFields.ESTIMATED_DURATION, error == ErrorKind.INVALID_ESTIMATED_DURATION
+                ? "about an hour"
+                : Integer.toString(5 + random.nextInt(60)));
+
+        for (int i = 0; i < udfColumns; i++) {
+            Integer column = columns.get(getUdfName(i));
+            switch (UDF_TYPES[i % UDF_TYPES.length]) {
+                case LONG:
+                    row.createCell(column).setCellValue(Integer.toString(random.nextInt(5)));
+                    break;
+                case BOOLEAN:
+                    row.createCell(column).setCellValue(Boolean.toString(random.nextBoolean()));
+                    break;
+                case DATE:
+                    row.createCell(column).setCellValue(String.format("%02d-03-2019 10:15:00 UTC", 1 + random.nextInt(28)));
+                    break;
+                case FLOAT:
+                    row.createCell(column).setCellValue(Integer.toString(random.nextInt(100)) + ".5");
+                    break;
+                default:
+                    row.createCell(column).setCellValue(text(random, 12));
+            }
+        }
+    }
+
+    private int nextStepCount(Random random) {
+        if (medianStepsPerTest > 0) {
+            long steps = Math.round(medianStepsPerTest * Math.exp(0.75 * random.nextGaussian()));
+            return (int) Math.max(0, Math.min(maxStepsPerTest, steps));
+        }
+        return minStepsPerTest + random.nextInt(maxStepsPerTest - minStepsPerTest + 1);
+    }
+
+    /**
+     * @param random - The random generator.
+     * @param words  - The number of words.
+     * @return - A text with the given number of words and, from time to time, line breaks.
+     */
+    static String text(Random random, int words) {
+        StringBuilder sb = new StringBuilder(words * 8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(random.nextInt(15) == 0 ? "\r\n" : " ");
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String pick(Random random, String prefix, int cardinality, int maxValues) {
+        if (cardinality <= 0) {
+            return "";
+        }
+
+        Set<Integer> picked = new TreeSet<>();
+        int values = 1 + random.nextInt(Math.min(maxValues, cardinality));
+        while (picked.size() < values) {
+            picked.add(random.nextInt(cardinality));
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Integer value : picked) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(prefix).append(value);
+        }
+        return sb.toString();
+    }
+
+    private static List<String> names(String prefix, int count) {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(prefix + i);
+        }
+        return names;
+    }
+
+    private static String getUdfName(int index) {
+        return "generated_" + UDF_TYPES[index % UDF_TYPES.length].name().toLowerCase(Locale.ENGLISH) + "_" + index + "_udf";
+    }
+
+    private static String getUserEmail(int index) {
+        return "user" + index + "@example.com";
+    }
+
+    private static void set(Row row, Map<String, Integer> columns, MandatoryFields field, String value) {
+        row.createCell(columns.get(field.fieldName())).setCellValue(value);
+    }
+
+    /**
+     * The content of a generated workbook.
+     */
+    static class Summary {
+        private int rows;
+        private int tests;
+        private long steps;
+        private long callSteps;
+        private final Map<ErrorKind, Integer> errors = new EnumMap<>(ErrorKind.class);
+
+        /**
+         * @return - The number of rows, including the header.
+         */
+        int getRows() {
+            return rows;
+        }
+
+        /**
+         * @return - The number of tests, including the ones with errors.
+         */
+        int getTests() {
+            return tests;
+        }
+
+        /**
+         * @return - The number of steps, including the call steps and the steps with errors.
+         */
+        long getSteps() {
+            return steps;
+        }
+
+        /**
+         * @return - The number of valid call steps.
+         */
+        long getCallSteps() {
+            return callSteps;
+        }
+
+        /**
+         * @param kind - The kind of error.
+         * @return - The number of tests generated with the error.
+         */
+        int getErrors(ErrorKind kind) {
+            return errors.getOrDefault(kind, 0);
+        }
+
+        /**
+         * @return - The number of tests which are not migrated because of their errors.
+         */
+        int getRejectedTests() {
+            return getErrors(ErrorKind.WRONG_ROW_TYPE);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s tests, %s steps (%s calls), %s rows, errors %s", tests, steps, callSteps, rows, errors);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WorkbookGeneratorTests {
+
+    @Test
+    public void GeneratesSheetInImporterFormat() throws IOException {
+        WorkbookGenerator generator = new WorkbookGenerator()
+                .tests(50)
+                .skewedStepsPerTest(8, 40)
+                .udfColumns(5)
+                .callStepRate(0.1)
+                .errorRate(0.2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        WorkbookGenerator.Summary summary = generator.write(out);
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            XSSFSheet sheet = workbook.getSheetAt(0);
+            Row header = sheet.getRow(0);
+            int manualTests = 0;
+            for (Row row : sheet) {
+                if ("test_manual".equals(String.valueOf(row.getCell(column(MandatoryFields.TYPE))))) {
+                    manualTests++;
+                }
+            }
+
+            assertEquals(summary.getRows(), sheet.getLastRowNum() + 1);
+            assertEquals(MandatoryFields.getMandatoryFieldsList().size() + 5, header.getLastCellNum());
+            assertEquals(summary.getTests() - summary.getRejectedTests(), manualTests);
+            assertTrue(summary.getCallSteps() > 0);
+        }
+    }
+
+    @Test
+    public void GeneratesSameContentForSameSeed() throws IOException {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+
+        String firstSummary = new WorkbookGenerator().tests(20).errorRate(0.5).seed(7).write(first).toString();
+        String secondSummary = new WorkbookGenerator().tests(20).errorRate(0.5).seed(7).write(second).toString();
+
+        assertEquals(firstSummary, secondSummary);
+        assertArrayEquals(read(first), read(second));
+    }
+
+    private static String[] read(ByteArrayOutputStream out) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            XSSFSheet sheet = workbook.getSheetAt(0);
+            String[] names = new String[sheet.getLastRowNum() + 1];
+            for (Row row : sheet) {
+                names[row.getRowNum()] = String.valueOf(row.getCell(column(MandatoryFields.NAME)));
+            }
+            return names;
+        }
+    }
+
+    private static int column(MandatoryFields field) {
+        return MandatoryFields.getMandatoryFieldsList().indexOf(field.fieldName());
+    }
+}
@@ -0,0 +1,53 @@
+package com.microfocus.adm.almoctane.migration.excelimport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class WorkspaceEntitiesTests {
+    private static final String SERVER = "http://octane";
+
+    @Test
+    public void KeepsTheReferencesOfEveryWorkspaceApart() {
+        WorkspaceEntities payments = WorkspaceEntities.acquire(SERVER, 1001, 1002);
+        WorkspaceEntities billing = WorkspaceEntities.acquire(SERVER, 1001, 1003);
+        WorkspaceEntities otherServer = WorkspaceEntities.acquire("http://other-octane", 1001, 1002);
+        try {
+            EntityReference paymentsTag = payments.reference(EntityModelHelper.USER_TAG, "2001", "payments");
+            EntityReference billingTag = billing.reference(EntityModelHelper.USER_TAG, "2001", "billing");
+            EntityReference otherServerTag = otherServer.reference(EntityModelHelper.USER_TAG, "2001", "other");
+
+            assertEquals("payments", paymentsTag.getName());
+            assertEquals("billing", billingTag.getName());
+            assertEquals("other", otherServerTag.getName());
+            assertSame(paymentsTag, payments.reference(EntityModelHelper.USER_TAG, "2001", null));
+        } finally {
+            payments.release();
+            billing.release();
+            otherServer.release();
+        }
+    }
+
+    @Test
+    public void SharesTheReferencesOfAWorkspaceWhileItIsHeld() {
+        WorkspaceEntities first = WorkspaceEntities.acquire(SERVER, 1001, 1002);
+        WorkspaceEntities second = WorkspaceEntities.acquire(SERVER, 1001, 1002);
+        EntityReference unnamed = first.reference(EntityModelHelper.PRODUCT_AREA, "3001", null);
+        EntityReference named = second.reference(EntityModelHelper.PRODUCT_AREA, "3001", "Payments");
+
+        assertSame(first, second);
+        assertNotSame(unnamed, named);
+        assertSame(named, first.reference(EntityModelHelper.PRODUCT_AREA, "3001", null));
+
+        first.release();
+        second.release();
+        WorkspaceEntities next = WorkspaceEntities.acquire(SERVER, 1001, 1002);
+        try {
+            assertNotSame(first, next);
+        } finally {
+            next.release();
+        }
+    }
+}